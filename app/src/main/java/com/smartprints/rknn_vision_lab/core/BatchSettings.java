@@ -0,0 +1,31 @@
+package com.smartprints.rknn_vision_lab.core;
+
+/**
+ * How {@link PipelinePreset#BATCHED} gathers frames for one inference call: up to {@code maxBatch}
+ * frames, waiting at most {@code maxWaitMs} after the first one arrives. Larger values give more
+ * throughput with several streams; the wait is added to the latency of the first frame of a batch.
+ */
+public final class BatchSettings {
+    public static final BatchSettings DEFAULT = new BatchSettings(4, 10);
+
+    private final int maxBatch;
+    private final long maxWaitMs;
+
+    public BatchSettings(int maxBatch, long maxWaitMs) {
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    @Override
+    public String toString() {
+        return "maxBatch=" + maxBatch + " maxWaitMs=" + maxWaitMs;
+    }
+}
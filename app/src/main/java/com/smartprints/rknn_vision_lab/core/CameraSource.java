@@ -12,6 +12,7 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 
 import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
 
 import java.util.Collections;
 
@@ -31,7 +32,8 @@ public class CameraSource extends VideoSource {
     private final int frameWidth = 1280;
     private final int frameHeight = 720;
 
-    public CameraSource(Context context, VideoSourceListener listener, String cameraId) {
+    public CameraSource(Context context, VideoSourceListener listener, FramePool framePool, String cameraId) {
+        super(framePool);
         this.context = context;
         this.videoSourceListener = listener;
         this.cameraId = cameraId;
@@ -52,7 +54,7 @@ public class CameraSource extends VideoSource {
 
         CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
         frameRotationDegrees = CameraUtils.computeFrameRotationDegrees(context, manager, cameraId);
-        imageReader = new ImageReaderManager(videoSourceListener, frameWidth, frameHeight, frameRotationDegrees);
+        imageReader = new ImageReaderManager(this, videoSourceListener, framePool, frameWidth, frameHeight, frameRotationDegrees);
 
         try {
             manager.openCamera(cameraId, new CameraDevice.StateCallback() {
@@ -2,7 +2,6 @@ package com.smartprints.rknn_vision_lab.core;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.ImageFormat;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
@@ -14,61 +13,20 @@ import androidx.annotation.NonNull;
 
 import com.elvishew.xlog.XLog;
 
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 
 public class CameraUtils {
 
-    public static void yuv420ToArgb(Image image, Bitmap bitmap, int[] pixelBuffer) {
-        if (image.getFormat() != ImageFormat.YUV_420_888) {
-            throw new IllegalArgumentException("Image must be in YUV_420_888 format");
-        }
-
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-
-        yBuffer.position(0);
-        uBuffer.position(0);
-        vBuffer.position(0);
-
-        int yRowStride = planes[0].getRowStride();
-        int yPixelStride = planes[0].getPixelStride();
-        int uvRowStride = planes[1].getRowStride();
-        int uvPixelStride = planes[1].getPixelStride();
-
-        int offset = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int yVal = (yBuffer.get(y * yRowStride + x * yPixelStride) & 0xFF);
-
-                int uvX = x / 2;
-                int uvY = y / 2;
-                int uvIndex = uvY * uvRowStride + uvX * uvPixelStride;
+    // Single-threaded, one per calling thread; long-lived sources own a YuvToArgbConverter instead
+    private static final ThreadLocal<YuvToArgbConverter> converters =
+            ThreadLocal.withInitial(YuvToArgbConverter::new);
 
-                int uVal = (uBuffer.get(uvIndex) & 0xFF) - 128;
-                int vVal = (vBuffer.get(uvIndex) & 0xFF) - 128;
-
-                float rFloat = yVal + 1.402f * vVal;
-                float gFloat = yVal - 0.34414f * uVal - 0.71414f * vVal;
-                float bFloat = yVal + 1.772f * uVal;
-
-                int r = (int) Math.max(0, Math.min(255, rFloat));
-                int g = (int) Math.max(0, Math.min(255, gFloat));
-                int b = (int) Math.max(0, Math.min(255, bFloat));
-
-                pixelBuffer[offset++] = (0xFF << 24) | (r << 16) | (g << 8) | b;
-            }
-        }
-
-        bitmap.setPixels(pixelBuffer, 0, width, 0, 0, width, height);
+    public static void yuv420ToArgb(Image image, Bitmap bitmap, int[] pixelBuffer) {
+        converters.get().convert(image, bitmap, pixelBuffer);
     }
+
     public static List<String> getAvailableCameras(@NonNull Context context) {
         List<String> cameraList = new ArrayList<>();
         try {
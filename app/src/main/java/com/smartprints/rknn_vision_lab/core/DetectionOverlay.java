@@ -0,0 +1,129 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.smartprints.rknn_vision_lab.inference.DetectionChannel;
+import com.smartprints.rknn_vision_lab.inference.DetectionResult;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the latest detections over a frame that may be newer than the one they came from.
+ * With extrapolation on, each box is moved along the motion it showed between the previous and
+ * the current result, for at most {@link #MAX_EXTRAPOLATION_NANOS}.
+ */
+public class DetectionOverlay {
+    private static final float THICKNESS = 2f;
+    private static final long MAX_EXTRAPOLATION_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    // Results older than this are not drawn at all
+    private static final long STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    // Minimum overlap for a box to be treated as the same object in the previous result
+    private static final float MATCH_IOU = 0.3f;
+
+    private final Paint paint = new Paint();
+    private final RectF box = new RectF();
+    // left, top, right, bottom of each placed box; only touched on the drawing thread
+    private float[] boxes = new float[4 * 16];
+    private volatile boolean extrapolate = false;
+
+    public DetectionOverlay() {
+        paint.setColor(Color.RED);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(THICKNESS);
+    }
+
+    public void setExtrapolate(boolean extrapolate) {
+        this.extrapolate = extrapolate;
+    }
+
+    /**
+     * @param frameToCanvas the transform the frame bitmap was drawn with
+     */
+    public void draw(Canvas canvas, Matrix frameToCanvas, Frame frame, DetectionChannel.Snapshot snapshot) {
+        if (snapshot == null) return;
+        int needed = 4 * snapshot.getCurrent().getDetections().size();
+        if (boxes.length < needed) boxes = new float[needed];
+        int count = place(snapshot, frame, boxes);
+        for (int i = 0; i < count; i++) {
+            box.set(boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]);
+            frameToCanvas.mapRect(box);
+            canvas.drawRect(box, paint);
+        }
+    }
+
+    /**
+     * Places the snapshot's boxes on {@code frame}, in its pixels, as left, top, right, bottom runs
+     * in {@code boxes}, which must hold four floats per detection. Returns the number of boxes;
+     * none when the result belongs to another source or is stale.
+     */
+    int place(DetectionChannel.Snapshot snapshot, Frame frame, float[] boxes) {
+        DetectionResult current = snapshot.getCurrent();
+        if (current.getSourceId() != frame.getSourceId()) return 0;
+        long age = frame.getCaptureNanos() - current.getCaptureNanos();
+        if (age > STALE_NANOS) return 0;
+
+        DetectionResult previous = extrapolate ? snapshot.getPrevious() : null;
+        long horizon = Math.max(0, Math.min(age, MAX_EXTRAPOLATION_NANOS));
+        float scaleX = (float) frame.getWidth() / current.getFrameWidth();
+        float scaleY = (float) frame.getHeight() / current.getFrameHeight();
+
+        int count = 0;
+        for (DetectedObject detection : current.getDetections()) {
+            Rect r = detection.getBoundingBox();
+            float left = r.left;
+            float top = r.top;
+            float right = r.right;
+            float bottom = r.bottom;
+            if (previous != null && horizon > 0) {
+                DetectedObject match = findMatch(detection, previous.getDetections());
+                long interval = current.getCaptureNanos() - previous.getCaptureNanos();
+                if (match != null && interval > 0) {
+                    Rect p = match.getBoundingBox();
+                    float t = (float) horizon / interval;
+                    left += (r.left - p.left) * t;
+                    top += (r.top - p.top) * t;
+                    right += (r.right - p.right) * t;
+                    bottom += (r.bottom - p.bottom) * t;
+                }
+            }
+            int at = 4 * count++;
+            boxes[at] = left * scaleX;
+            boxes[at + 1] = top * scaleY;
+            boxes[at + 2] = right * scaleX;
+            boxes[at + 3] = bottom * scaleY;
+        }
+        return count;
+    }
+
+    private static DetectedObject findMatch(DetectedObject detection, List<DetectedObject> candidates) {
+        DetectedObject best = null;
+        float bestIou = MATCH_IOU;
+        for (DetectedObject candidate : candidates) {
+            if (candidate.getClassIndex() != detection.getClassIndex()) continue;
+            float iou = iou(detection.getBoundingBox(), candidate.getBoundingBox());
+            if (iou >= bestIou) {
+                bestIou = iou;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static float iou(Rect a, Rect b) {
+        int w = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+        int h = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+        if (w <= 0 || h <= 0) return 0f;
+        float inter = (float) w * h;
+        float union = (float) (a.right - a.left) * (a.bottom - a.top)
+                + (float) (b.right - b.left) * (b.bottom - b.top) - inter;
+        return union <= 0 ? 0f : inter / union;
+    }
+}
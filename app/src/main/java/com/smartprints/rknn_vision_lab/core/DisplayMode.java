@@ -0,0 +1,11 @@
+package com.smartprints.rknn_vision_lab.core;
+
+/**
+ * How {@link VideoPipeline} puts frames on screen.
+ */
+public enum DisplayMode {
+    // Only frames that went through inference are shown, with boxes drawn into them
+    INFERRED_FRAMES,
+    // Every source frame is shown at source rate; the latest detections are overlaid when drawing
+    SOURCE_RATE_OVERLAY
+}
@@ -1,9 +1,10 @@
 package com.smartprints.rknn_vision_lab.core;
 
-import static com.smartprints.rknn_vision_lab.core.CameraUtils.yuv420ToArgb;
-
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.media.Image;
 import android.media.MediaCodec;
 import android.media.MediaExtractor;
@@ -12,6 +13,8 @@ import android.net.Uri;
 import android.os.Build;
 
 import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
 
 import org.bytedeco.javacv.AndroidFrameConverter;
 import org.bytedeco.javacv.OpenCVFrameConverter;
@@ -26,7 +29,12 @@ public class FileSource extends VideoSource{
     private Uri uri;
     private Context context;
 
-    public FileSource(Context context, VideoSourceListener videoSourceListener, Uri videoFileURI) {
+    private static final int DOWNSCALE_WIDTH = 1280;
+    private static final int DOWNSCALE_HEIGHT = 720;
+    private static final int CONVERT_THREADS = 2;
+
+    public FileSource(Context context, VideoSourceListener videoSourceListener, FramePool framePool, Uri videoFileURI) {
+        super(framePool);
         this.videoSourceListener = videoSourceListener;
         this.uri = videoFileURI;
         this.context = context;
@@ -38,6 +46,7 @@ public class FileSource extends VideoSource{
             running = true;
             MediaExtractor extractor = new MediaExtractor();
             MediaCodec codec = null;
+            YuvToArgbConverter converter = new YuvToArgbConverter(CONVERT_THREADS);
 
             try {
                 extractor.setDataSource(context, uri, null);
@@ -71,9 +80,12 @@ public class FileSource extends VideoSource{
                 final long timeoutUs = 10_000;
 
                 // Lazily allocated from image crop size
-                Bitmap bitmap = null;
                 int[] pixelBuffer = null;
-                int lastW = -1, lastH = -1;
+                // Detector input straight from the decoder planes, once a detector is set up
+                YuvLetterboxKernel letterbox = null;
+                Canvas scaleCanvas = new Canvas();
+                Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+                Rect scaledRect = new Rect(0, 0, DOWNSCALE_WIDTH, DOWNSCALE_HEIGHT);
 
                 while (running) {
                     // Feed input
@@ -104,30 +116,46 @@ public class FileSource extends VideoSource{
 
                         Image image = codec.getOutputImage(outIndex);
                         if (image != null) {
+                            long captureNanos = System.nanoTime();
                             // Use the visible crop for true frame width/height
                             android.graphics.Rect crop = image.getCropRect();
                             int w = crop.width();
                             int h = crop.height();
 
-//                            if (bitmap == null || w != lastW || h != lastH) {
-                                bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                            if (pixelBuffer == null || pixelBuffer.length != w * h) {
                                 pixelBuffer = new int[w * h];
-                                lastW = w;
-                                lastH = h;
-//                            }
+                            }
 
                             // Convert without changing dimensions (no scaling)
-                            yuv420ToArgb(image, bitmap, pixelBuffer);
+                            Frame frame = framePool.lease(w, h, Bitmap.Config.ARGB_8888);
+                            try {
+                                converter.convert(image, frame.getBitmap(), pixelBuffer);
+
+                                if ( w > 2500 ) {
+                                    // Resize into a pooled frame
+                                    Frame full = frame;
+                                    frame = framePool.lease(DOWNSCALE_WIDTH, DOWNSCALE_HEIGHT, Bitmap.Config.ARGB_8888);
+                                    try {
+                                        scaleCanvas.setBitmap(frame.getBitmap());
+                                        scaleCanvas.drawBitmap(full.getBitmap(), null, scaledRect, scalePaint);
+                                    } finally {
+                                        scaleCanvas.setBitmap(null);
+                                        full.release();
+                                    }
+                                }
 
-                            if ( w > 2500 ) {
-                                // Resize
-                                int newWidth = 1280;
-                                int newHeight = 720;
-                                bitmap = Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
+                                letterbox = YuvLetterboxKernel.forDetector(letterbox);
+                                if (letterbox != null) letterbox.convert(image, 0, false, frame.getModelInput());
+                            } catch (RuntimeException e) {
+                                // Not handed to the listener yet, so nothing else holds it
+                                frame.release();
+                                image.close();
+                                throw e;
                             }
 
                             // Deliver as-is
-                            videoSourceListener.onFrameReady(bitmap);
+                            videoSourceListener.onFrameReady(stamp(frame, captureNanos,
+                                    bufferInfo.presentationTimeUs, 0, image.getFormat()));
 
                             image.close();
                         }
@@ -147,6 +175,7 @@ public class FileSource extends VideoSource{
                     try { codec.stop(); } catch (Throwable ignored) {}
                     try { codec.release(); } catch (Throwable ignored) {}
                 }
+                converter.close();
                 running = false;
             }
         }, "FileSourceDecoder").start();
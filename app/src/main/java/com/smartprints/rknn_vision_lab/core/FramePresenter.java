@@ -0,0 +1,62 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.function.Supplier;
+
+/**
+ * Presents the newest queued frame of every stream once per display vsync, so drawing is paced
+ * to the screen instead of to frame arrival. Falls back to a fixed interval when no vsync arrives
+ * (e.g. screen off).
+ */
+public class FramePresenter {
+    private static final String TAG = "FramePresenter";
+    private static final long VSYNC_TIMEOUT_MS = 100;
+
+    private final Supplier<Iterable<PipelineStream>> streams;
+    private final VsyncPacer pacer = new VsyncPacer();
+    private Thread thread;
+    private volatile boolean running = false;
+
+    public FramePresenter(Supplier<Iterable<PipelineStream>> streams) {
+        this.streams = streams;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        pacer.start();
+        thread = new Thread(this::presentLoop, "present");
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        pacer.stop();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    private void presentLoop() {
+        while (running) {
+            try {
+                pacer.awaitVsync(VSYNC_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (PipelineStream stream : streams.get()) {
+                try {
+                    stream.presentNewest();
+                } catch (Exception e) {
+                    XLog.tag(TAG).e("Present failed for stream " + stream.getId(), e);
+                }
+            }
+        }
+    }
+}
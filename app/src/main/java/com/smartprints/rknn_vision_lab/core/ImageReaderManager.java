@@ -1,10 +1,10 @@
 package com.smartprints.rknn_vision_lab.core;
 
-import static com.smartprints.rknn_vision_lab.core.CameraUtils.yuv420ToArgb;
-
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.ImageFormat;
 import android.graphics.Matrix;
+import android.graphics.RectF;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Handler;
@@ -12,18 +12,30 @@ import android.os.HandlerThread;
 import android.view.Surface;
 
 import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
 
 public class ImageReaderManager implements ImageReader.OnImageAvailableListener {
     private final String TAG = "ImageReaderManager";
+    private static final int CONVERT_THREADS = 2;
     private VideoSourceListener videoSourceListener;
+    private final VideoSource source;
     private ImageReader imageReader;
     private float frameRotationDegrees = 0;
+    private final FramePool framePool;
     private Bitmap reusableBitmap;
     private int[] pixelBuffer;
+    private final YuvToArgbConverter converter = new YuvToArgbConverter(CONVERT_THREADS);
+    private YuvLetterboxKernel letterbox;
+    private final Canvas rotationCanvas = new Canvas();
+    private final Matrix rotationMatrix = new Matrix();
+    private final RectF rotatedBounds = new RectF();
     protected Handler backgroundHandler;
     protected HandlerThread backgroundThread;
-    public ImageReaderManager(VideoSourceListener videoSourceListener, int frameWidth, int frameHeight, float frameRotationDegrees){
+    public ImageReaderManager(VideoSource source, VideoSourceListener videoSourceListener, FramePool framePool, int frameWidth, int frameHeight, float frameRotationDegrees){
         startBackgroundThread();
+        this.source = source;
+        this.framePool = framePool;
         this.frameRotationDegrees = frameRotationDegrees;
         this.videoSourceListener = videoSourceListener;
         imageReader = ImageReader.newInstance(frameWidth, frameHeight, ImageFormat.YUV_420_888, 2);
@@ -39,8 +51,14 @@ public class ImageReaderManager implements ImageReader.OnImageAvailableListener
         Image image = imageReader.acquireLatestImage();
 
         try (image) {
+            // Leased but not yet handed to the listener, so released here if conversion fails
+            Frame frame = null;
             try {
                 if (image == null) return;
+                long captureNanos = System.nanoTime();
+                // Sensor timestamp serves as the PTS; its clock base depends on the device
+                long ptsUs = image.getTimestamp() / 1000;
+                int format = image.getFormat();
 
                 int width = image.getWidth();
                 int height = image.getHeight();
@@ -50,39 +68,77 @@ public class ImageReaderManager implements ImageReader.OnImageAvailableListener
                     height = crop.height();
                 }
 
+                if (pixelBuffer == null || pixelBuffer.length != width * height) {
+                    pixelBuffer = new int[width * height];
+                }
+
+                if (frameRotationDegrees == 0) {
+                    frame = framePool.lease(width, height, Bitmap.Config.ARGB_8888);
+                    converter.convert(image, frame.getBitmap(), pixelBuffer);
+                    prepareModelInput(image, frame, 0);
+                    Frame ready = frame;
+                    frame = null;
+                    videoSourceListener.onFrameReady(source.stamp(ready, captureNanos, ptsUs, 0, format));
+                    return;
+                }
+
                 if (reusableBitmap == null
                         || reusableBitmap.getWidth() != width
                         || reusableBitmap.getHeight() != height) {
                     reusableBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-                    pixelBuffer = new int[width * height];
-                }
-
-                yuv420ToArgb(image, reusableBitmap, pixelBuffer);
-
-                if (frameRotationDegrees != 0) {
-                    Matrix matrix = new Matrix();
-                    matrix.postRotate(frameRotationDegrees);
-                    Bitmap rotated = Bitmap.createBitmap(
-                            reusableBitmap, 0, 0, width, height, matrix, false
-                    );
-                    videoSourceListener.onFrameReady(rotated);
-                } else {
-                    videoSourceListener.onFrameReady(reusableBitmap);
                 }
+                converter.convert(image, reusableBitmap, pixelBuffer);
+                frame = rotate(reusableBitmap);
+                prepareModelInput(image, frame, Math.round(frameRotationDegrees));
+                Frame ready = frame;
+                frame = null;
+                videoSourceListener.onFrameReady(source.stamp(ready, captureNanos, ptsUs,
+                        Math.round(frameRotationDegrees), format));
 
             } catch (Exception e) {
+                if (frame != null) frame.release();
                 XLog.e(TAG, "Frame conversion error: " + e.getMessage());
                 videoSourceListener.onStreamError(e.getMessage());
             }
         } catch (Exception ignore) {}
     }
 
+    // Detector input straight from the planes while the image is open, rotated like the frame
+    private void prepareModelInput(Image image, Frame frame, int rotationDegrees) {
+        letterbox = YuvLetterboxKernel.forDetector(letterbox);
+        if (letterbox == null || !YuvLetterboxKernel.supportsRotation(rotationDegrees)) return;
+        letterbox.convert(image, rotationDegrees, false, frame.getModelInput());
+    }
+
+    // Draws the source into a pooled frame instead of allocating a rotated copy
+    private Frame rotate(Bitmap source) {
+        rotatedBounds.set(0, 0, source.getWidth(), source.getHeight());
+        rotationMatrix.setRotate(frameRotationDegrees);
+        rotationMatrix.mapRect(rotatedBounds);
+        rotationMatrix.postTranslate(-rotatedBounds.left, -rotatedBounds.top);
+
+        Frame rotated = framePool.lease(Math.round(rotatedBounds.width()),
+                Math.round(rotatedBounds.height()), Bitmap.Config.ARGB_8888);
+        try {
+            rotationCanvas.setBitmap(rotated.getBitmap());
+            rotationCanvas.drawBitmap(source, rotationMatrix, null);
+        } catch (RuntimeException e) {
+            rotated.release();
+            throw e;
+        } finally {
+            rotationCanvas.setBitmap(null);
+        }
+        return rotated;
+    }
+
     public void close(){
         if ( imageReader != null ) {
             imageReader.close();
             imageReader = null;
         }
         stopBackgroundThread();
+        // After the handler thread has drained, so no conversion is in flight
+        converter.close();
     }
 
     protected void startBackgroundThread() {
@@ -0,0 +1,128 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.smartprints.rknn_vision_lab.inference.InferenceEngine;
+import com.smartprints.rknn_vision_lab.inference.InferenceJob;
+import com.smartprints.rknn_vision_lab.video.pipeline.FrameBuffer;
+import com.smartprints.rknn_vision_lab.video.pipeline.StageGraph;
+import com.smartprintsksa.rknn_sdk.backend.BackendType;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+
+import java.util.function.Consumer;
+
+/**
+ * Stage layouts for {@link VideoPipeline}. Decoding happens on each source's own thread; the first
+ * stage drains the pipeline's ingest buffer and the last stage delivers results to their stream.
+ */
+public enum PipelinePreset {
+    // Original layout: ingest queue -> one inference thread doing every model step -> deliver thread
+    CLASSIC {
+        @Override
+        StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                   FrameBuffer<InferenceJob> input, boolean annotate,
+                                                   BatchSettings batching, StageGraph.Stage<InferenceJob> deliver) {
+            return builder
+                    .stage("inference", 1, input, job -> {
+                        engine.preprocess(job);
+                        engine.infer(job);
+                        engine.postprocess(job);
+                        if (annotate) engine.annotate(job);
+                    })
+                    .stage("deliver", 1, STAGE_CAPACITY, deliver);
+        }
+    },
+    // One thread per step so frame N+1 is preprocessed while frame N is on the NPU
+    OVERLAPPED {
+        @Override
+        StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                   FrameBuffer<InferenceJob> input, boolean annotate,
+                                                   BatchSettings batching, StageGraph.Stage<InferenceJob> deliver) {
+            builder.stage("preprocess", 1, input, engine::preprocess)
+                    .stage("infer", 1, STAGE_CAPACITY, engine::infer)
+                    .stage("postprocess", 1, STAGE_CAPACITY, engine::postprocess);
+            if (annotate) builder.stage("annotate", 1, STAGE_CAPACITY, engine::annotate);
+            return builder.stage("deliver", 1, STAGE_CAPACITY, deliver);
+        }
+    },
+    // OVERLAPPED with one inference worker per NPU core; results still leave in ingest order
+    MULTI_CORE {
+        @Override
+        StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                   FrameBuffer<InferenceJob> input, boolean annotate,
+                                                   BatchSettings batching, StageGraph.Stage<InferenceJob> deliver) {
+            // Preprocessing keeps up with three cores only when it runs in parallel too
+            builder.orderedStage("preprocess", NPU_CORES, input, engine::preprocess)
+                    .orderedStage("infer", NPU_CORES, NPU_CORES, engine::infer)
+                    .stage("postprocess", 1, STAGE_CAPACITY, engine::postprocess);
+            if (annotate) builder.stage("annotate", 1, STAGE_CAPACITY, engine::annotate);
+            return builder.stage("deliver", 1, STAGE_CAPACITY, deliver);
+        }
+    },
+    // Gathers frames, typically from several streams, into one inference call; see BatchSettings
+    BATCHED {
+        @Override
+        StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                   FrameBuffer<InferenceJob> input, boolean annotate,
+                                                   BatchSettings batching, StageGraph.Stage<InferenceJob> deliver) {
+            builder.orderedStage("preprocess", NPU_CORES, input, engine::preprocess)
+                    .batchStage("infer", batching.getMaxBatch(), batching.getMaxWaitMs(),
+                            Math.max(STAGE_CAPACITY, batching.getMaxBatch()), engine::inferBatch)
+                    .stage("postprocess", 1, STAGE_CAPACITY, engine::postprocess);
+            if (annotate) builder.stage("annotate", 1, STAGE_CAPACITY, engine::annotate);
+            return builder.stage("deliver", 1, STAGE_CAPACITY, deliver);
+        }
+    },
+    // MULTI_CORE plus CPU workers that take the frames the NPU cannot start in time; the ordered
+    // infer stage merges both back into ingest order
+    HYBRID {
+        @Override
+        StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                   FrameBuffer<InferenceJob> input, boolean annotate,
+                                                   BatchSettings batching, StageGraph.Stage<InferenceJob> deliver) {
+            int workers = NPU_CORES + CPU_WORKERS;
+            builder.orderedStage("preprocess", NPU_CORES, input, engine::preprocess)
+                    .orderedStage("infer", workers, workers, engine::infer)
+                    .stage("postprocess", 1, STAGE_CAPACITY, engine::postprocess);
+            if (annotate) builder.stage("annotate", 1, STAGE_CAPACITY, engine::annotate);
+            return builder.stage("deliver", 1, STAGE_CAPACITY, deliver);
+        }
+
+        @Override
+        public BackendType getBackendType() {
+            return BackendType.HYBRID;
+        }
+    };
+
+    static final int STAGE_CAPACITY = 2;
+    // RK3588 NPU cores; extra workers just wait for a free NPU context
+    static final int NPU_CORES = 3;
+    // CPU backend workers of the SDK's hybrid backend
+    static final int CPU_WORKERS = 2;
+
+    // Backend the engine is set up with
+    public BackendType getBackendType() {
+        return BackendType.AUTO;
+    }
+
+    abstract StageGraph.Builder<InferenceJob> configure(StageGraph.Builder<InferenceJob> builder, InferenceEngine engine,
+                                                        FrameBuffer<InferenceJob> input, boolean annotate,
+                                                        BatchSettings batching, StageGraph.Stage<InferenceJob> deliver);
+
+    public StageGraph<InferenceJob> build(InferenceEngine engine, FrameBuffer<InferenceJob> input, boolean annotate,
+                                          StageGraph.Stage<InferenceJob> deliver, Consumer<InferenceJob> release,
+                                          MetricsRegistry metrics) {
+        return build(engine, input, annotate, BatchSettings.DEFAULT, deliver, release, metrics);
+    }
+
+    /**
+     * @param annotate draw boxes into the frames; off when the frames are shared with a display path
+     * @param batching used by {@link #BATCHED}, ignored by the other presets
+     */
+    public StageGraph<InferenceJob> build(InferenceEngine engine, FrameBuffer<InferenceJob> input, boolean annotate,
+                                          BatchSettings batching, StageGraph.Stage<InferenceJob> deliver,
+                                          Consumer<InferenceJob> release, MetricsRegistry metrics) {
+        return configure(new StageGraph.Builder<>(), engine, input, annotate, batching, deliver)
+                .release(release)
+                .metrics(metrics, "pipeline.")
+                .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.inference.DetectionChannel;
+import com.smartprints.rknn_vision_lab.inference.DetectionResult;
+import com.smartprints.rknn_vision_lab.video.pipeline.BufferStats;
+import com.smartprints.rknn_vision_lab.video.pipeline.DisplayQueue;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+
+import java.util.List;
+
+/**
+ * One input of a {@link VideoPipeline}. Hand it to a {@link VideoSource} as its listener; frames are
+ * tagged with this stream's id, scheduled fairly against the other streams and their results come
+ * back to this stream's renderer and result listener. {@link #attach(VideoSource)} switches the
+ * stream to another source at a frame boundary without touching the engine or worker threads.
+ */
+public class PipelineStream implements VideoSourceListener {
+    private static final String TAG = "PipelineStream";
+
+    public interface ResultListener {
+        // The frame is borrowed for the duration of the call; retain() it to keep it
+        void onResult(PipelineStream stream, Frame frame, List<DetectedObject> detections);
+    }
+
+    private final VideoPipeline pipeline;
+    private final int id;
+    private final int weight;
+    private final SurfaceRenderer renderer;
+    private final boolean overlay;
+    private final DetectionChannel detections = new DetectionChannel();
+    // Frames waiting for the next vsync; null for streams without a renderer
+    private final DisplayQueue<Frame> displayQueue;
+    private final StreamMetrics metrics;
+    private volatile ResultListener resultListener;
+    private volatile boolean lowPriority;
+    // Only frames from this source are accepted and delivered; -1 accepts any source
+    private volatile int activeSourceId = -1;
+
+    PipelineStream(VideoPipeline pipeline, int id, int weight, SurfaceRenderer renderer, boolean overlay,
+                   long displayMaxBytes, long displayMaxAgeMs,
+                   MetricsRegistry registry, LatencyHistogram pipelineGlassToGlass) {
+        this.pipeline = pipeline;
+        this.id = id;
+        this.weight = weight;
+        this.renderer = renderer;
+        this.overlay = overlay;
+        this.metrics = new StreamMetrics(registry, metricsPrefix(id), pipelineGlassToGlass);
+        if (renderer != null) {
+            displayQueue = new DisplayQueue<>(displayMaxBytes, displayMaxAgeMs,
+                    frame -> frame.getBitmap().getAllocationByteCount());
+            displayQueue.setDropListener(Frame::release);
+            registry.gauge(metricsPrefix(id) + "display_bytes", displayQueue::getBytes);
+        } else {
+            displayQueue = null;
+        }
+    }
+
+    static String metricsPrefix(int id) {
+        return "stream." + id + ".";
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    // Null for streams that are only analysed, not displayed
+    public SurfaceRenderer getRenderer() {
+        return renderer;
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Latest detections of this stream, whatever the display mode
+    public DetectionChannel getDetections() {
+        return detections;
+    }
+
+    public BufferStats getIngestStats() {
+        return pipeline.getIngestStats(id);
+    }
+
+    /**
+     * Marks the stream's frames as low priority. With {@link PipelinePreset#HYBRID} they run on the
+     * CPU whenever a CPU worker is free, leaving the NPU to the other streams.
+     */
+    public void setLowPriority(boolean lowPriority) {
+        this.lowPriority = lowPriority;
+    }
+
+    public boolean isLowPriority() {
+        return lowPriority;
+    }
+
+    public void setResultListener(ResultListener listener) {
+        this.resultListener = listener;
+    }
+
+    public void close() {
+        pipeline.closeStream(this);
+    }
+
+    /**
+     * Makes {@code source} the only source of this stream. Frames of the previous source that are
+     * still queued are dropped and those already in flight are not delivered, so the switch takes
+     * effect at the next frame boundary. The last frame stays on screen until the new source's first.
+     * Call before starting the new source.
+     */
+    public void attach(VideoSource source) {
+        activeSourceId = source.getSourceId();
+        pipeline.drain(this);
+    }
+
+    boolean accepts(Frame frame) {
+        int active = activeSourceId;
+        return active < 0 || frame.getSourceId() == active;
+    }
+
+    // Result of inference on the frame; in overlay mode the frame was already queued for display at ingest.
+    // Returns false for frames of a detached source.
+    boolean deliver(Frame frame, List<DetectedObject> results) {
+        if (!accepts(frame)) return false;
+        if (results != null) detections.publish(new DetectionResult(frame, results));
+        if (!overlay) enqueueForDisplay(frame);
+        ResultListener listener = resultListener;
+        if (listener != null) listener.onResult(this, frame, results);
+        metrics.onDelivered(frame);
+        return true;
+    }
+
+    // Borrows the frame; the display queue keeps its own reference
+    void enqueueForDisplay(Frame frame) {
+        if (displayQueue != null) displayQueue.offer(frame.retain());
+    }
+
+    // Draws the newest queued frame, if any; called once per vsync by the presenter
+    void presentNewest() {
+        if (displayQueue == null) return;
+        Frame frame = displayQueue.pollNewest();
+        if (frame == null) return;
+        try {
+            long start = System.nanoTime();
+            renderer.drawFrame(frame, overlay ? detections.snapshot() : null);
+            metrics.onDisplayed(frame, System.nanoTime() - start);
+        } finally {
+            frame.release();
+        }
+    }
+
+    void clearDisplay() {
+        if (displayQueue != null) displayQueue.clear();
+        detections.clear();
+    }
+
+    public int getActiveSourceId() {
+        return activeSourceId;
+    }
+
+    public String getDisplayStats() {
+        return displayQueue != null ? displayQueue.toString() : "none";
+    }
+
+    @Override
+    public void onFrameReady(Frame frame) {
+        if (frame == null) return;
+        pipeline.submit(this, frame);
+    }
+
+    @Override
+    public void onStreamError(String error) {
+        XLog.tag(TAG).e("Stream " + id + ": " + error);
+    }
+
+    @Override
+    public void onStreamFinished() {
+        XLog.tag(TAG).d("Stream " + id + " finished: " + metrics);
+    }
+}
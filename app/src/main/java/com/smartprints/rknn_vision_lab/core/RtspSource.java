@@ -5,15 +5,17 @@ import static com.smartprints.rknn_vision_lab.core.Constants.FRAME_HEIGHT;
 import static com.smartprints.rknn_vision_lab.core.Constants.FRAME_WIDTH;
 
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 
 import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
 
 import org.bytedeco.ffmpeg.global.avcodec;
-import org.bytedeco.javacv.AndroidFrameConverter;
 import org.bytedeco.javacv.FFmpegFrameFilter;
 import org.bytedeco.javacv.FFmpegFrameGrabber;
-import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.opencv.android.Utils;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
@@ -26,12 +28,16 @@ public class RtspSource extends VideoSource{
     private FFmpegFrameGrabber grabber = null;
     private FFmpegFrameFilter filter = null;
     private final OpenCVFrameConverter<Mat> matConverter = new OpenCVFrameConverter.ToOrgOpenCvCoreMat();
-    private final AndroidFrameConverter bitmapConverter = new AndroidFrameConverter();
+    // Reused across frames so the grab loop does not allocate native buffers per frame
+    private final Mat resized = new Mat();
+    private final Mat rgba = new Mat();
+    private final Size frameSize = new Size(FRAME_WIDTH, FRAME_HEIGHT);
     private static final int FRAME_GRABBING_RETRIES = 5;
     private static final int TIMEOUT_BEFORE_FRAME_GRABBING = 2; // seconds
     private AtomicBoolean isRunning = new AtomicBoolean(false);
 
-    public RtspSource(VideoSourceListener videoSourceListener, String rtspUrl) {
+    public RtspSource(VideoSourceListener videoSourceListener, FramePool framePool, String rtspUrl) {
+        super(framePool);
         this.videoSourceListener = videoSourceListener;
         grabber = createFrameGrabber(rtspUrl);
         if (grabber != null) filter = initializeFrameFilter(grabber);
@@ -51,7 +57,7 @@ public class RtspSource extends VideoSource{
 
                 while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
                     try {
-                        Frame frame = grabber.grabImage();
+                        org.bytedeco.javacv.Frame frame = grabber.grabImage();
 
                         if (frame == null || frame.image == null) {
                             XLog.w(TAG, "Invalid frame encountered.");
@@ -64,15 +70,18 @@ public class RtspSource extends VideoSource{
                         }
 
                         frameGrabTries = 0;
+                        long captureNanos = System.nanoTime();
 
                         Mat originalMat = matConverter.convertToOrgOpenCvCoreMat(frame);
-                        Mat resized = new Mat();
-                        Imgproc.resize(originalMat, resized, new Size(FRAME_WIDTH, FRAME_HEIGHT));
-                        Bitmap bitmap = bitmapConverter.convert(matConverter.convert(resized));
-                        videoSourceListener.onFrameReady(bitmap);
-
+                        Imgproc.resize(originalMat, resized, frameSize);
+                        Imgproc.cvtColor(resized, rgba, Imgproc.COLOR_BGR2RGBA);
                         originalMat.release();
-                        resized.release();
+
+                        Frame output = framePool.lease(FRAME_WIDTH, FRAME_HEIGHT, Bitmap.Config.ARGB_8888);
+                        Utils.matToBitmap(rgba, output.getBitmap());
+                        // The grabber hands over packed 8-bit BGR; frame.timestamp is the stream PTS in microseconds
+                        videoSourceListener.onFrameReady(stamp(output, captureNanos, frame.timestamp, 0,
+                                ImageFormat.FLEX_RGB_888));
                     } catch (Exception e) {
                         XLog.e(TAG, "Frame processing error: " + e.getMessage());
                     }
@@ -142,5 +151,8 @@ public class RtspSource extends VideoSource{
         } catch (Exception e) {
             XLog.d(TAG, "FrameGrabberManager: Failed to close FrameGrabber: " + e);
         }
+
+        resized.release();
+        rgba.release();
     }
 }
@@ -0,0 +1,177 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.metrics.HistogramSnapshot;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stream counters: frames accepted from the source, frames whose result was delivered,
+ * frames lost after ingest, frames presented on screen with their draw time and glass-to-glass
+ * latency (capture to present), and delivered/presented FPS over one-second windows. Frame
+ * sequence numbers also give the exact number of frames missing from the delivered sequence and
+ * any deliveries that arrived out of order. Registered as
+ * {@code <prefix>received|delivered|dropped|missing|reordered|displayed|fps|presented_fps|draw|glass_to_glass},
+ * plus {@code <prefix>served.<backend>} for the inference backend behind each delivered frame.
+ */
+public class StreamMetrics {
+    private final MetricsRegistry registry;
+    private final String prefix;
+    private final AtomicLong received;
+    private final AtomicLong delivered;
+    private final AtomicLong dropped;
+    private final AtomicLong missing;
+    private final AtomicLong reordered;
+    private final AtomicLong displayed;
+    private final LatencyHistogram drawTime;
+    private final LatencyHistogram glassToGlass;
+    private final LatencyHistogram pipelineGlassToGlass;
+    private final RateMeter deliveredRate = new RateMeter();
+    private final RateMeter presentedRate = new RateMeter();
+
+    private int lastSourceId = -1;
+    private long lastSequence = -1;
+
+    /**
+     * @param pipelineGlassToGlass shared histogram across streams, also fed by this stream
+     */
+    StreamMetrics(MetricsRegistry registry, String prefix, LatencyHistogram pipelineGlassToGlass) {
+        this.registry = registry;
+        this.prefix = prefix;
+        this.received = registry.counter(prefix + "received");
+        this.delivered = registry.counter(prefix + "delivered");
+        this.dropped = registry.counter(prefix + "dropped");
+        this.missing = registry.counter(prefix + "missing");
+        this.reordered = registry.counter(prefix + "reordered");
+        this.displayed = registry.counter(prefix + "displayed");
+        this.drawTime = registry.histogram(prefix + "draw");
+        this.glassToGlass = registry.histogram(prefix + "glass_to_glass");
+        this.pipelineGlassToGlass = pipelineGlassToGlass;
+        registry.gauge(prefix + "fps", () -> Math.round(deliveredRate.get()));
+        registry.gauge(prefix + "presented_fps", () -> Math.round(presentedRate.get()));
+    }
+
+    void onReceived() {
+        received.incrementAndGet();
+    }
+
+    void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void onDelivered(Frame frame) {
+        delivered.incrementAndGet();
+        deliveredRate.tick(System.nanoTime());
+        synchronized (this) {
+            long sequence = frame.getSequence();
+            if (sequence < 0) return;
+            if (frame.getSourceId() != lastSourceId) {
+                // New source on this stream; sequences restart
+                lastSourceId = frame.getSourceId();
+                lastSequence = sequence;
+            } else if (sequence > lastSequence) {
+                missing.addAndGet(sequence - lastSequence - 1);
+                lastSequence = sequence;
+            } else {
+                reordered.incrementAndGet();
+            }
+        }
+    }
+
+    void onServed(String backend) {
+        registry.counter(prefix + "served." + backend).incrementAndGet();
+    }
+
+    // Delivered frames run by the given backend, e.g. "rknn"; see YoloDetector.getServedBy
+    public long getServed(String backend) {
+        return registry.counter(prefix + "served." + backend).get();
+    }
+
+    void onDisplayed(Frame frame, long drawNanos) {
+        long now = System.nanoTime();
+        displayed.incrementAndGet();
+        drawTime.record(drawNanos);
+        glassToGlass.record(now - frame.getCaptureNanos());
+        pipelineGlassToGlass.record(now - frame.getCaptureNanos());
+        presentedRate.tick(now);
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    // Frames shed anywhere between ingest and delivery, including the stream's own ingest lane
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Sequence numbers never delivered: shed, failed, or skipped at the source
+    public long getMissing() {
+        return missing.get();
+    }
+
+    public long getReordered() {
+        return reordered.get();
+    }
+
+    public long getDisplayed() {
+        return displayed.get();
+    }
+
+    // Inference results per second
+    public float getFps() {
+        return deliveredRate.get();
+    }
+
+    // Frames drawn on screen per second
+    public float getPresentedFps() {
+        return presentedRate.get();
+    }
+
+    public HistogramSnapshot getDrawTime() {
+        return drawTime.snapshot();
+    }
+
+    public HistogramSnapshot getGlassToGlass() {
+        return glassToGlass.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "fps=%.1f presented_fps=%.1f received=%d delivered=%d displayed=%d dropped=%d missing=%d reordered=%d",
+                deliveredRate.get(), presentedRate.get(), received.get(), delivered.get(), displayed.get(),
+                dropped.get(), missing.get(), reordered.get());
+    }
+
+    // Events per second, recomputed once per one-second window
+    private static final class RateMeter {
+        private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private long windowStartNanos = System.nanoTime();
+        private int windowEvents;
+        private volatile float rate;
+
+        synchronized void tick(long now) {
+            windowEvents++;
+            long elapsed = now - windowStartNanos;
+            if (elapsed >= WINDOW_NANOS) {
+                rate = windowEvents * (float) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                windowEvents = 0;
+                windowStartNanos = now;
+            }
+        }
+
+        float get() {
+            return rate;
+        }
+    }
+}
@@ -6,27 +6,45 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.view.SurfaceHolder;
 
+import com.smartprints.rknn_vision_lab.inference.DetectionChannel;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
 public class SurfaceRenderer {
     private final SurfaceHolder holder;
+    private final Matrix matrix = new Matrix();
+    private final DetectionOverlay overlay = new DetectionOverlay();
 
     public SurfaceRenderer(SurfaceHolder holder) {
         this.holder = holder;
     }
 
-    public void drawFrame(Bitmap bitmap) {
-        if (bitmap == null) return;
+    // Borrows the frame; the caller keeps ownership of its reference
+    public void drawFrame(Frame frame) {
+        drawFrame(frame, null);
+    }
+
+    // Draws the frame with the latest detections on top; they may come from an earlier frame
+    public void drawFrame(Frame frame, DetectionChannel.Snapshot detections) {
+        if (frame == null) return;
+        Bitmap bitmap = frame.getBitmap();
         Canvas canvas = holder.lockCanvas();
         if (canvas == null) return;
         try {
             canvas.drawColor(Color.BLACK);
-            Matrix m = fitCenter(bitmap.getWidth(), bitmap.getHeight(),
+            fitCenter(matrix, bitmap.getWidth(), bitmap.getHeight(),
                     canvas.getWidth(), canvas.getHeight());
-            canvas.drawBitmap(bitmap, m, null);
+            canvas.drawBitmap(bitmap, matrix, null);
+            if (detections != null) overlay.draw(canvas, matrix, frame, detections);
         } finally {
             holder.unlockCanvasAndPost(canvas);
         }
     }
 
+    // Moves overlay boxes along their recent motion to line up with newer frames
+    public void setExtrapolateDetections(boolean extrapolate) {
+        overlay.setExtrapolate(extrapolate);
+    }
+
     public void clear() {
         Canvas canvas = holder.lockCanvas();
         if (canvas == null) return;
@@ -37,13 +55,11 @@ public class SurfaceRenderer {
         }
     }
 
-    private static Matrix fitCenter(int sw, int sh, int dw, int dh) {
+    private static void fitCenter(Matrix m, int sw, int sh, int dw, int dh) {
         float s = Math.min((float) dw / sw, (float) dh / sh);
         float tx = (dw - sw * s) / 2f;
         float ty = (dh - sh * s) / 2f;
-        Matrix m = new Matrix();
-        m.postScale(s, s);
+        m.setScale(s, s);
         m.postTranslate(tx, ty);
-        return m;
     }
 }
\ No newline at end of file
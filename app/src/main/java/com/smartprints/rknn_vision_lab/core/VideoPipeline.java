@@ -1,91 +1,279 @@
 package com.smartprints.rknn_vision_lab.core;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.view.SurfaceHolder;
 
 import com.elvishew.xlog.XLog;
 import com.smartprints.rknn_vision_lab.inference.InferenceEngine;
+import com.smartprints.rknn_vision_lab.inference.InferenceJob;
+import com.smartprints.rknn_vision_lab.inference.LazyInferenceEngine;
+import com.smartprints.rknn_vision_lab.inference.RecordingInferenceEngine;
 import com.smartprints.rknn_vision_lab.inference.RknnInferenceEngine;
-import com.smartprints.rknn_vision_lab.video.pipeline.FrameBuffer;
-import com.smartprints.rknn_vision_lab.video.pipeline.FrameReaderBuffer;
+import com.smartprints.rknn_vision_lab.video.pipeline.BackpressurePolicy;
+import com.smartprints.rknn_vision_lab.video.pipeline.BufferStats;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.StageGraph;
+import com.smartprints.rknn_vision_lab.video.pipeline.StreamScheduler;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsReporter;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsSnapshot;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs any number of streams through one shared inference engine. Each stream has its own ingest
+ * lane and the lanes are drained in weighted round-robin order, so a bursty source cannot starve
+ * the others. The pipeline itself listens as the default stream, drawn on the constructor's renderer.
+ * Frames are put on screen by a {@link FramePresenter} paced to display vsync; each stream keeps
+ * only a small byte- and age-bounded display queue. In {@link DisplayMode#SOURCE_RATE_OVERLAY}
+ * every source frame is queued for display at ingest, independent of how fast inference keeps up.
+ * <p>
+ * The engine and frame pool live until {@link #close()}: {@link #pause()}/{@link #resume()} and
+ * {@link #stop()}/{@link #start()} keep the loaded model, and pause also keeps the worker threads.
+ */
 public class VideoPipeline implements VideoSourceListener{
-    private final FrameBuffer<Bitmap> frameBuffer = new FrameReaderBuffer<>(2);
-    private final FrameBuffer<Bitmap> displayBuffer = new FrameReaderBuffer<>(30);
+    private static final String TAG = "VideoPipeline";
+    private static final int INGEST_CAPACITY = 2;
+    private static final long INGEST_BLOCK_TIMEOUT_MS = 50;
+    private static final long METRICS_REPORT_PERIOD_MS = 10_000;
+    // About three 1280x960 ARGB frames; the presenter shows the newest frame rather than a backlog
+    private static final long DISPLAY_MAX_BYTES = 16L * 1024 * 1024;
+    private static final long DISPLAY_MAX_AGE_MS = 100;
 
-    private final ExecutorService ingestExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "ingest-exec"));
-    private final ExecutorService inferenceExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "inference-exec"));
-    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "render-exec"));
+    private final FramePool framePool = new FramePool();
+    private final StreamScheduler<InferenceJob> scheduler = new StreamScheduler<>(InferenceJob::getStreamId);
+    private final StageGraph<InferenceJob> graph;
+    private final Map<Integer, PipelineStream> streams = new ConcurrentHashMap<>();
+    private final FramePresenter presenter = new FramePresenter(() -> streams.values());
+    private final AtomicInteger nextStreamId = new AtomicInteger();
+
+    // Shared with the SDK, which records its detector.* latencies there
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final LatencyHistogram glassToGlass = metrics.histogram("pipeline.glass_to_glass");
+    private final MetricsReporter metricsReporter = new MetricsReporter(metrics, METRICS_REPORT_PERIOD_MS,
+            summary -> XLog.tag(TAG).i("Metrics\n" + summary));
 
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean paused = false;
+    private volatile boolean closed = false;
 
-    private InferenceEngine engine;
-    private final SurfaceRenderer renderer;
+    private final RecordingInferenceEngine engine;
+    private final BackpressurePolicy ingestPolicy;
+    private final DisplayMode displayMode;
+    private final PipelineStream defaultStream;
 
     public VideoPipeline(Context context, SurfaceRenderer renderer) {
-        this.renderer = renderer;
-        inferenceExecutor.execute(() -> engine = new RknnInferenceEngine(context));
+        this(context, renderer, BackpressurePolicy.DROP_OLDEST);
     }
 
-    public void start() {
-        if (!running.compareAndSet(false, true)) return;
+    public VideoPipeline(Context context, SurfaceRenderer renderer, BackpressurePolicy ingestPolicy) {
+        this(context, renderer, ingestPolicy, PipelinePreset.CLASSIC);
+    }
 
-        // Inference loop
-        inferenceExecutor.execute(() -> {
-            while (running.get() && !Thread.currentThread().isInterrupted()) {
-                try {
-                    Bitmap raw = frameBuffer.take();
-                    Bitmap processed = engine.process(raw);
-                    displayBuffer.offer(processed);
-//                    raw.recycle();
-                } catch (InterruptedException ie) {
-//                    Thread.currentThread().interrupt();
-                } catch (Throwable t) {
-                    // TODO: log
-                }
-            }
-        });
+    public VideoPipeline(Context context, SurfaceRenderer renderer, BackpressurePolicy ingestPolicy, PipelinePreset preset) {
+        this(context, renderer, ingestPolicy, preset, DisplayMode.INFERRED_FRAMES);
+    }
 
-        // Render loop
-        renderExecutor.execute(() -> {
-            while (running.get() && !Thread.currentThread().isInterrupted()) {
-                try {
-                    Bitmap frame = displayBuffer.take();
-                    renderer.drawFrame(frame);
-//                    frame.recycle();
-                } catch (InterruptedException ie) {
-//                    Thread.currentThread().interrupt();
-                } catch (Throwable t) {
-                    // TODO: log
-                }
-            }
+    public VideoPipeline(Context context, SurfaceRenderer renderer, BackpressurePolicy ingestPolicy,
+                         PipelinePreset preset, DisplayMode displayMode) {
+        this(context, renderer, ingestPolicy, preset, displayMode, BatchSettings.DEFAULT);
+    }
+
+    /**
+     * @param batching batch size and maximum wait of the {@link PipelinePreset#BATCHED} inference stage
+     */
+    public VideoPipeline(Context context, SurfaceRenderer renderer, BackpressurePolicy ingestPolicy,
+                         PipelinePreset preset, DisplayMode displayMode, BatchSettings batching) {
+        this(new LazyInferenceEngine(() -> new RknnInferenceEngine(context, preset.getBackendType())),
+                renderer, ingestPolicy, preset, displayMode, batching);
+    }
+
+    /**
+     * Runs on the given engine instead of the RKNN one, e.g. a {@link
+     * com.smartprints.rknn_vision_lab.inference.ReplayInferenceEngine}. The pipeline closes it.
+     */
+    public VideoPipeline(InferenceEngine engine, SurfaceRenderer renderer, BackpressurePolicy ingestPolicy,
+                         PipelinePreset preset, DisplayMode displayMode, BatchSettings batching) {
+        this.ingestPolicy = ingestPolicy;
+        this.displayMode = displayMode;
+        this.engine = new RecordingInferenceEngine(engine);
+        boolean overlay = displayMode == DisplayMode.SOURCE_RATE_OVERLAY;
+        // Frames are shared with the display path in overlay mode, so inference must not draw into them
+        this.graph = preset.build(this.engine, scheduler, !overlay, batching, this::deliver, this::releaseJob, metrics);
+        this.defaultStream = openStream(1, renderer);
+    }
+
+    /**
+     * Adds an input. Pass the returned stream to a {@link VideoSource} as its listener.
+     *
+     * @param weight   share of inference turns relative to other busy streams
+     * @param renderer where results are drawn, or null for analysis-only streams
+     */
+    public PipelineStream openStream(int weight, SurfaceRenderer renderer) {
+        int id = nextStreamId.getAndIncrement();
+        // The registry outlives pipelines; start from clean counters if the id was used before
+        metrics.removeAll(PipelineStream.metricsPrefix(id));
+        PipelineStream stream = new PipelineStream(this, id, Math.max(1, weight), renderer,
+                displayMode == DisplayMode.SOURCE_RATE_OVERLAY, DISPLAY_MAX_BYTES, DISPLAY_MAX_AGE_MS,
+                metrics, glassToGlass);
+        streams.put(id, stream);
+        scheduler.addStream(id, stream.getWeight(), INGEST_CAPACITY, ingestPolicy, INGEST_BLOCK_TIMEOUT_MS);
+        metrics.gauge(PipelineStream.metricsPrefix(id) + "ingest_depth", () -> {
+            BufferStats stats = scheduler.getStats(id);
+            return stats != null ? stats.getDepth() : 0;
         });
+        return stream;
     }
 
+    // Queued frames of the stream are dropped; frames already in flight are not delivered
+    void closeStream(PipelineStream stream) {
+        if (streams.remove(stream.getId()) == null) return;
+        scheduler.removeStream(stream.getId());
+        stream.clearDisplay();
+        metrics.removeAll(PipelineStream.metricsPrefix(stream.getId()));
+        XLog.tag(TAG).d("Stream " + stream.getId() + " closed: " + stream.getMetrics());
+    }
+
+    public void start() {
+        if (closed) throw new IllegalStateException("VideoPipeline is closed");
+        if (!running.compareAndSet(false, true)) return;
+        graph.start();
+        presenter.start();
+        metricsReporter.start();
+    }
+
+    // Stops the worker threads; the engine stays loaded so start() is quick
     public void stop() {
         if (!running.compareAndSet(true, false)) return;
 
-        ingestExecutor.shutdownNow();
-        inferenceExecutor.shutdownNow();
-        renderExecutor.shutdownNow();
+        graph.stop();
+        presenter.stop();
+        metricsReporter.stop();
+        for (PipelineStream stream : streams.values()) {
+            stream.clearDisplay();
+            if (stream.getRenderer() != null) stream.getRenderer().clear();
+        }
+        for (String stage : graph.getStageNames()) {
+            BufferStats stats = graph.getStats(stage);
+            if (stats != null) XLog.tag(TAG).d(stage + ": " + stats);
+        }
+        for (PipelineStream stream : streams.values()) {
+            XLog.tag(TAG).d("Stream " + stream.getId() + ": " + stream.getMetrics() + " ingest " + stream.getIngestStats()
+                    + " display " + stream.getDisplayStats());
+        }
+    }
+
+    /**
+     * Stops accepting frames and drops queued ones; frames being processed finish normally.
+     * Threads, engine and model stay up, so {@link #resume()} is immediate.
+     */
+    public void pause() {
+        paused = true;
+        for (PipelineStream stream : streams.values()) {
+            drain(stream);
+        }
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
 
-        frameBuffer.clear();
-        displayBuffer.clear();
-        renderer.clear();
+    // Releases the engine and pooled frames; the pipeline cannot be started again
+    public void close() {
+        if (closed) return;
+        stop();
+        closed = true;
         engine.close();
+        framePool.close();
+    }
+
+    // Drops the stream's queued frames at a frame boundary, leaving in-flight work to finish
+    void drain(PipelineStream stream) {
+        scheduler.clearStream(stream.getId());
+        stream.clearDisplay();
+    }
+
+    /**
+     * Writes the raw model outputs of every inferred frame to {@code file} until {@link #stopRecording()},
+     * for replay off the device. Fails while the model is still loading.
+     */
+    public void startRecording(File file) throws IOException {
+        engine.startRecording(file);
+    }
+
+    public void stopRecording() {
+        engine.stopRecording();
+    }
+
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    // Stage latencies, glass-to-glass latency, queue depths and per-stream counters
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    public PipelineStream getDefaultStream() {
+        return defaultStream;
+    }
+
+    public List<PipelineStream> getStreams() {
+        return new ArrayList<>(streams.values());
+    }
+
+    // Frames shed at ingest of the default stream, broken down by reason
+    public BufferStats getIngestStats() {
+        return getIngestStats(defaultStream.getId());
+    }
+
+    public BufferStats getIngestStats(int streamId) {
+        return scheduler.getStats(streamId);
+    }
+
+    void submit(PipelineStream stream, Frame frame) {
+        if (!running.get() || paused || !stream.accepts(frame) || !streams.containsKey(stream.getId())) {
+            frame.release();
+            return;
+        }
+        stream.getMetrics().onReceived();
+        if (displayMode == DisplayMode.SOURCE_RATE_OVERLAY) stream.enqueueForDisplay(frame);
+        // Offer on the source thread; the stream's lane policy decides whether to shed or block
+        graph.submit(new InferenceJob(stream.getId(), frame, stream.isLowPriority()));
+    }
+
+    private void deliver(InferenceJob job) {
+        PipelineStream stream = streams.get(job.getStreamId());
+        if (stream == null) return;
+        if (stream.deliver(job.getFrame(), job.getDetections())) {
+            job.markDelivered();
+            if (job.getServedBy() != null) stream.getMetrics().onServed(job.getServedBy());
+        }
+    }
+
+    private void releaseJob(InferenceJob job) {
+        if (!job.isDelivered()) {
+            PipelineStream stream = streams.get(job.getStreamId());
+            if (stream != null) stream.getMetrics().onDropped();
+        }
+        job.release();
     }
 
     @Override
-    public void onFrameReady(Bitmap frame) {
-        if (!running.get() || frame == null) return;
-        ingestExecutor.execute(() -> frameBuffer.offer(frame));
+    public void onFrameReady(Frame frame) {
+        defaultStream.onFrameReady(frame);
     }
 
     @Override
@@ -4,11 +4,45 @@ import android.os.Handler;
 import android.os.HandlerThread;
 
 import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.FramePool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class VideoSource {
     private static final String TAG = "VideoSource";
+    private static final AtomicInteger NEXT_SOURCE_ID = new AtomicInteger();
     protected Handler backgroundHandler;
     protected HandlerThread backgroundThread;
+    protected final FramePool framePool;
+    private final int sourceId = NEXT_SOURCE_ID.getAndIncrement();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    protected VideoSource(FramePool framePool) {
+        this.framePool = framePool;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    // Frames emitted so far; the next frame gets this sequence number
+    public long getFrameCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Stamps the frame with this source's id and the next sequence number, right before it is
+     * handed to the listener.
+     *
+     * @param captureNanos System.nanoTime() when the source got the pixels
+     */
+    protected Frame stamp(Frame frame, long captureNanos, long ptsUs, int rotationDegrees, int sourcePixelFormat) {
+        frame.stamp(sourceId, nextSequence.getAndIncrement(), captureNanos, ptsUs, rotationDegrees, sourcePixelFormat);
+        return frame;
+    }
+
     public abstract void start();
     public abstract void stop();
     public abstract boolean isRunning();
@@ -1,9 +1,10 @@
 package com.smartprints.rknn_vision_lab.core;
 
-import android.graphics.Bitmap;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
 
 public interface VideoSourceListener {
-    void onFrameReady(Bitmap frame);
+    // Takes ownership of the frame reference; the listener must release it
+    void onFrameReady(Frame frame);
     void onStreamError(String error);
     void onStreamFinished();
 }
@@ -0,0 +1,70 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets a non-looper thread wait for the next display vsync. Choreographer callbacks run on a
+ * dedicated looper thread and wake waiters in {@link #awaitVsync(long)}.
+ */
+public class VsyncPacer implements Choreographer.FrameCallback {
+    private final Object lock = new Object();
+    private HandlerThread thread;
+    private Handler handler;
+    private volatile boolean running = false;
+    private long vsyncCount;
+    private long lastFrameTimeNanos;
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new HandlerThread("vsync");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        // Choreographer instances are per looper, so it must be obtained on that thread
+        handler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        handler.post(() -> Choreographer.getInstance().removeFrameCallback(this));
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (lock) {
+            vsyncCount++;
+            lastFrameTimeNanos = frameTimeNanos;
+            lock.notifyAll();
+        }
+        if (running) Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Blocks until the next vsync, the timeout or {@link #stop()}.
+     *
+     * @return the vsync frame time, or -1 on timeout or when stopped
+     */
+    public long awaitVsync(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (lock) {
+            long seen = vsyncCount;
+            while (running && vsyncCount == seen) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return -1;
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return vsyncCount != seen ? lastFrameTimeNanos : -1;
+        }
+    }
+}
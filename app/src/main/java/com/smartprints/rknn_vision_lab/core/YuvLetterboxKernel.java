@@ -0,0 +1,301 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.BIAS;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.B_U;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.G_U;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.G_V;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.R_V;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.SHIFT;
+import static com.smartprints.rknn_vision_lab.core.YuvToArgbConverter.clamp;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.ModelInput;
+import com.smartprintsksa.rknn_sdk.ImageTransform;
+import com.smartprintsksa.rknn_sdk.YoloDetector;
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns YUV_420_888 planes straight into the detector's packed RGB888 input in one pass: bilinear
+ * scaling, letterbox padding and an optional rotation and mirror, with the same fixed-point color
+ * conversion as {@link YuvToArgbConverter}. This replaces converting the full frame to a bitmap,
+ * scaling it, copying it out as RGBA and dropping the alpha on the native side.
+ * <p>
+ * Each output axis walks one source axis, so the source coordinates and weights are tables per
+ * output column and row, built once per source size and orientation and cached. Source rows are
+ * bulk-read and reused while consecutive output rows sample them. One frame at a time.
+ */
+public class YuvLetterboxKernel {
+    // Gray used by the YOLOv5 letterbox
+    private static final byte PAD_VALUE = (byte) 114;
+    private static final int WEIGHT_BITS = 8;
+    private static final int ONE = 1 << WEIGHT_BITS;
+    // Enough for a few sources and orientations without rebuilding tables on every switch
+    private static final int MAX_CACHED_TABLES = 4;
+
+    private final int width;
+    private final int height;
+    private final Map<Long, Tables> tables = new LinkedHashMap<Long, Tables>(MAX_CACHED_TABLES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tables> eldest) {
+            return size() > MAX_CACHED_TABLES;
+        }
+    };
+    private final RowCache luma = new RowCache();
+    private final RowCache cb = new RowCache();
+    private final RowCache cr = new RowCache();
+
+    /**
+     * @param width  model input width
+     * @param height model input height
+     */
+    public YuvLetterboxKernel(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid input size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    // A kernel for the detector's current input size, reusing current if it still fits; null until set up
+    public static YuvLetterboxKernel forDetector(YuvLetterboxKernel current) {
+        InferenceBackend backend = YoloDetector.getBackend();
+        if (backend == null) return null;
+        ModelSpec spec = backend.getModelSpec();
+        if (current != null && current.width == spec.getInputWidth() && current.height == spec.getInputHeight()) {
+            return current;
+        }
+        return new YuvLetterboxKernel(spec.getInputWidth(), spec.getInputHeight());
+    }
+
+    // True for the rotations convert() takes
+    public static boolean supportsRotation(int rotationDegrees) {
+        return rotationDegrees % 90 == 0;
+    }
+
+    /**
+     * @param rotationDegrees clockwise, a multiple of 90; should match the rotation of the frame
+     *                        the input belongs to, so boxes map back without rotating them
+     * @param mirror          mirror left to right after rotating
+     */
+    public void convert(Image image, int rotationDegrees, boolean mirror, ModelInput target) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Image must be in YUV_420_888 format");
+        }
+        Image.Plane[] planes = image.getPlanes();
+        convert(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), rotationDegrees, mirror, target);
+    }
+
+    public void convert(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int sourceWidth, int sourceHeight, int rotationDegrees, boolean mirror, ModelInput target) {
+        if (!supportsRotation(rotationDegrees)) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotationDegrees);
+        }
+        int rotation = (rotationDegrees % 360 + 360) % 360;
+        Tables t = tablesFor(sourceWidth, sourceHeight, rotation, mirror, yPixelStride, uvPixelStride);
+        byte[] dst = target.prepare(width, height);
+        fillPadding(dst, t);
+
+        ByteBuffer y = yPlane.duplicate();
+        ByteBuffer u = uPlane.duplicate();
+        ByteBuffer v = vPlane.duplicate();
+        luma.reset();
+        cb.reset();
+        cr.reset();
+        int yLength = (sourceWidth - 1) * yPixelStride + 1;
+        int uvLength = ((sourceWidth + 1) / 2 - 1) * uvPixelStride + 1;
+
+        int[] lumaCol0 = t.lumaCol0;
+        int[] lumaCol1 = t.lumaCol1;
+        int[] chromaCol0 = t.chromaCol0;
+        int[] chromaCol1 = t.chromaCol1;
+        int[] colWeight = t.colWeight;
+        int columns = colWeight.length;
+        for (int o = 0; o < t.rowWeight.length; o++) {
+            int row0 = t.row0[o];
+            int row1 = t.row1[o];
+            byte[] yTop = luma.row(y, row0, yRowStride, yLength);
+            byte[] yBottom = luma.row(y, row1, yRowStride, yLength);
+            byte[] uTop = cb.row(u, row0 >> 1, uvRowStride, uvLength);
+            byte[] uBottom = cb.row(u, row1 >> 1, uvRowStride, uvLength);
+            byte[] vTop = cr.row(v, row0 >> 1, uvRowStride, uvLength);
+            byte[] vBottom = cr.row(v, row1 >> 1, uvRowStride, uvLength);
+            int wy = t.rowWeight[o];
+            int wy0 = ONE - wy;
+
+            int at = t.base + o * t.outerStep;
+            for (int n = 0; n < columns; n++, at += t.innerStep) {
+                int wx = colWeight[n];
+                int wx0 = ONE - wx;
+                int l0 = lumaCol0[n];
+                int l1 = lumaCol1[n];
+                int c0 = chromaCol0[n];
+                int c1 = chromaCol1[n];
+                int yy = lerp(yTop, yBottom, l0, l1, wx0, wx, wy0, wy) << SHIFT;
+                int uu = lerp(uTop, uBottom, c0, c1, wx0, wx, wy0, wy) - 128;
+                int vv = lerp(vTop, vBottom, c0, c1, wx0, wx, wy0, wy) - 128;
+                dst[at] = (byte) clamp(yy + R_V * vv + BIAS);
+                dst[at + 1] = (byte) clamp(yy + BIAS - G_U * uu - G_V * vv);
+                dst[at + 2] = (byte) clamp(yy + B_U * uu + BIAS);
+            }
+        }
+        target.commit(t.transform);
+    }
+
+    // Chroma is sampled at the luma taps, as if upsampled by repetition the way YuvToArgbConverter does
+    private static int lerp(byte[] top, byte[] bottom, int i0, int i1, int wx0, int wx, int wy0, int wy) {
+        int t = (top[i0] & 0xFF) * wx0 + (top[i1] & 0xFF) * wx;
+        int b = (bottom[i0] & 0xFF) * wx0 + (bottom[i1] & 0xFF) * wx;
+        return (t * wy0 + b * wy + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS);
+    }
+
+    private void fillPadding(byte[] dst, Tables t) {
+        int rowBytes = width * 3;
+        int contentEnd = t.padY + t.contentHeight;
+        Arrays.fill(dst, 0, t.padY * rowBytes, PAD_VALUE);
+        Arrays.fill(dst, contentEnd * rowBytes, height * rowBytes, PAD_VALUE);
+        if (t.contentWidth == width) return;
+        for (int r = t.padY; r < contentEnd; r++) {
+            Arrays.fill(dst, r * rowBytes, r * rowBytes + t.padX * 3, PAD_VALUE);
+            Arrays.fill(dst, r * rowBytes + (t.padX + t.contentWidth) * 3, (r + 1) * rowBytes, PAD_VALUE);
+        }
+    }
+
+    private Tables tablesFor(int sourceWidth, int sourceHeight, int rotation, boolean mirror,
+                             int yPixelStride, int uvPixelStride) {
+        long key = ((long) sourceWidth << 40) | ((long) sourceHeight << 24) | ((long) (rotation / 90) << 20)
+                | (mirror ? 1L << 19 : 0) | ((long) yPixelStride << 8) | uvPixelStride;
+        Tables t = tables.get(key);
+        if (t == null) {
+            t = new Tables(width, height, sourceWidth, sourceHeight, rotation, mirror, yPixelStride, uvPixelStride);
+            tables.put(key, t);
+        }
+        return t;
+    }
+
+    /**
+     * Output rows and columns mapped to source taps. The outer tables walk the output axis that
+     * follows source rows, the inner ones the axis that follows source columns; with a quarter
+     * turn the outer axis is the output's horizontal one.
+     */
+    private static final class Tables {
+        final ImageTransform transform;
+        final int padX;
+        final int padY;
+        final int contentWidth;
+        final int contentHeight;
+        final int base;
+        final int outerStep;
+        final int innerStep;
+        final int[] row0;
+        final int[] row1;
+        final int[] rowWeight;
+        final int[] lumaCol0;
+        final int[] lumaCol1;
+        final int[] chromaCol0;
+        final int[] chromaCol1;
+        final int[] colWeight;
+
+        Tables(int width, int height, int sourceWidth, int sourceHeight, int rotation, boolean mirror,
+               int yPixelStride, int uvPixelStride) {
+            transform = ImageTransform.letterbox(sourceWidth, sourceHeight, width, height, rotation, mirror);
+            boolean sideways = transform.isSideways();
+            int rotatedWidth = sideways ? sourceHeight : sourceWidth;
+            int rotatedHeight = sideways ? sourceWidth : sourceHeight;
+            contentWidth = Math.round(rotatedWidth * transform.getScaleX());
+            contentHeight = Math.round(rotatedHeight * transform.getScaleY());
+            padX = (int) transform.getPadX();
+            padY = (int) transform.getPadY();
+            base = (padY * width + padX) * 3;
+
+            // Clockwise rotation: 90 reads source rows bottom-up as output columns, 180 reverses both
+            // axes, 270 reads source columns right to left as output rows
+            boolean xReversed = (rotation == 90 || rotation == 180) ^ mirror;
+            boolean yReversed = rotation == 180 || rotation == 270;
+            int[][] horizontal = axis(contentWidth, rotatedWidth, xReversed);
+            int[][] vertical = axis(contentHeight, rotatedHeight, yReversed);
+            int[][] outer = sideways ? horizontal : vertical;
+            int[][] inner = sideways ? vertical : horizontal;
+            outerStep = sideways ? 3 : width * 3;
+            innerStep = sideways ? width * 3 : 3;
+
+            row0 = outer[0];
+            row1 = outer[1];
+            rowWeight = outer[2];
+            int columns = inner[2].length;
+            lumaCol0 = new int[columns];
+            lumaCol1 = new int[columns];
+            chromaCol0 = new int[columns];
+            chromaCol1 = new int[columns];
+            for (int n = 0; n < columns; n++) {
+                lumaCol0[n] = inner[0][n] * yPixelStride;
+                lumaCol1[n] = inner[1][n] * yPixelStride;
+                chromaCol0[n] = (inner[0][n] >> 1) * uvPixelStride;
+                chromaCol1[n] = (inner[1][n] >> 1) * uvPixelStride;
+            }
+            colWeight = inner[2];
+        }
+
+        // {first tap, second tap, weight of the second tap} per output index, pixel centers aligned
+        private static int[][] axis(int outputLength, int sourceLength, boolean reversed) {
+            int[] tap0 = new int[outputLength];
+            int[] tap1 = new int[outputLength];
+            int[] weight = new int[outputLength];
+            float ratio = (float) sourceLength / outputLength;
+            for (int i = 0; i < outputLength; i++) {
+                float s = Math.max(0, Math.min(sourceLength - 1, (i + 0.5f) * ratio - 0.5f));
+                if (reversed) s = sourceLength - 1 - s;
+                int a = (int) s;
+                int w = Math.round((s - a) * ONE);
+                if (w == ONE) {
+                    a++;
+                    w = 0;
+                }
+                tap0[i] = a;
+                tap1[i] = Math.min(a + 1, sourceLength - 1);
+                weight[i] = w;
+            }
+            return new int[][]{tap0, tap1, weight};
+        }
+    }
+
+    // The last two source rows read from one plane
+    private static final class RowCache {
+        private final byte[][] data = {new byte[0], new byte[0]};
+        private final int[] rows = {-1, -1};
+        private int last;
+
+        byte[] row(ByteBuffer plane, int row, int rowStride, int length) {
+            if (rows[0] == row) {
+                last = 0;
+                return data[0];
+            }
+            if (rows[1] == row) {
+                last = 1;
+                return data[1];
+            }
+            int slot = 1 - last;
+            if (data[slot].length < length) data[slot] = new byte[length];
+            plane.position(row * rowStride);
+            plane.get(data[slot], 0, length);
+            rows[slot] = row;
+            last = slot;
+            return data[slot];
+        }
+
+        void reset() {
+            rows[0] = -1;
+            rows[1] = -1;
+        }
+    }
+}
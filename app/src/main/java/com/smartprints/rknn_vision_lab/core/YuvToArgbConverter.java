@@ -0,0 +1,256 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * YUV_420_888 to ARGB_8888 in integer fixed point, bit-exact with the BT.601 full-range float
+ * formula it replaces. Each row is read with one bulk get per plane into reusable arrays, and the
+ * inner loops are specialized for I420 (chroma pixel stride 1) and NV12/NV21 (stride 2). With
+ * more than one thread, bands of rows are converted in parallel, the caller taking the first band.
+ * <p>
+ * Converts one frame at a time; use one instance per producing thread.
+ */
+public class YuvToArgbConverter implements AutoCloseable {
+    // Coefficients scaled by 2^20. G's two terms and the rounding bias are tuned so every one of
+    // the 2^24 (Y, U, V) inputs lands on the same value as the float formula
+    static final int SHIFT = 20;
+    static final int R_V = 1470104;   // 1.402
+    static final int G_U = 360857;    // 0.34414
+    static final int G_V = 748830;    // 0.71414
+    static final int B_U = 1858077;   // 1.772
+    static final int BIAS = 16;
+    // Fewer rows per band and the hand-off costs more than the rows
+    private static final int MIN_BAND_ROWS = 32;
+    private static final AtomicInteger threadIds = new AtomicInteger();
+
+    private final ExecutorService workers;
+    private final Band[] bands;
+
+    public YuvToArgbConverter() {
+        this(1);
+    }
+
+    /**
+     * @param threads rows are split over this many threads, the caller included
+     */
+    public YuvToArgbConverter(int threads) {
+        int count = Math.max(1, threads);
+        this.bands = new Band[count];
+        for (int i = 0; i < count; i++) {
+            bands[i] = new Band();
+        }
+        this.workers = count > 1 ? Executors.newFixedThreadPool(count - 1, r -> {
+            Thread thread = new Thread(r, "yuv-convert-" + threadIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public void convert(Image image, Bitmap bitmap, int[] pixelBuffer) {
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Image must be in YUV_420_888 format");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        convert(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                width, height, pixelBuffer);
+        bitmap.setPixels(pixelBuffer, 0, width, 0, 0, width, height);
+    }
+
+    /**
+     * Converts raw planes into {@code argb}, {@code width} pixels per row. The buffers' positions
+     * are left untouched; U and V share {@code uvRowStride} and {@code uvPixelStride}.
+     */
+    public void convert(ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int width, int height, int[] argb) {
+        Frame frame = new Frame(yPlane, yRowStride, yPixelStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                width, height, argb);
+        // Bands start on even rows so no chroma row is split between threads
+        int count = Math.max(1, Math.min(bands.length, height / MIN_BAND_ROWS));
+        int rowsPerBand = ((height + count - 1) / count + 1) & ~1;
+        if (count == 1 || workers == null) {
+            bands[0].convert(frame, 0, height);
+            return;
+        }
+        List<Future<?>> pending = new ArrayList<>(count - 1);
+        for (int i = 1; i < count; i++) {
+            int start = Math.min(height, i * rowsPerBand);
+            int end = Math.min(height, start + rowsPerBand);
+            if (start >= end) break;
+            Band band = bands[i];
+            pending.add(workers.submit(() -> band.convert(frame, start, end)));
+        }
+        bands[0].convert(frame, 0, Math.min(height, rowsPerBand));
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Conversion failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) workers.shutdown();
+    }
+
+    // Branch-free: saturated channels are common and unpredictable
+    static int clamp(int value) {
+        value >>= SHIFT;
+        value &= ~(value >> 31);
+        return (value | ((255 - value) >> 31)) & 0xFF;
+    }
+
+    private static int argb(int y, int r, int g, int b) {
+        return 0xFF000000 | (clamp(y + r) << 16) | (clamp(y + g) << 8) | clamp(y + b);
+    }
+
+    private static final class Frame {
+        final ByteBuffer yPlane;
+        final int yRowStride;
+        final int yPixelStride;
+        final ByteBuffer uPlane;
+        final ByteBuffer vPlane;
+        final int uvRowStride;
+        final int uvPixelStride;
+        final int width;
+        final int height;
+        final int[] argb;
+
+        Frame(ByteBuffer yPlane, int yRowStride, int yPixelStride, ByteBuffer uPlane, ByteBuffer vPlane,
+              int uvRowStride, int uvPixelStride, int width, int height, int[] argb) {
+            this.yPlane = yPlane;
+            this.yRowStride = yRowStride;
+            this.yPixelStride = yPixelStride;
+            this.uPlane = uPlane;
+            this.vPlane = vPlane;
+            this.uvRowStride = uvRowStride;
+            this.uvPixelStride = uvPixelStride;
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+        }
+    }
+
+    // One thread's rows and its row arrays, kept between frames
+    private static final class Band {
+        private byte[] yRow = new byte[0];
+        private byte[] uRow = new byte[0];
+        private byte[] vRow = new byte[0];
+        private int[] rTerm = new int[0];
+        private int[] gTerm = new int[0];
+        private int[] bTerm = new int[0];
+
+        void convert(Frame frame, int startRow, int endRow) {
+            int width = frame.width;
+            int chromaWidth = (width + 1) / 2;
+            int yLength = (width - 1) * frame.yPixelStride + 1;
+            int uvLength = (chromaWidth - 1) * frame.uvPixelStride + 1;
+            if (yRow.length < yLength) yRow = new byte[yLength];
+            if (uRow.length < uvLength) {
+                uRow = new byte[uvLength];
+                vRow = new byte[uvLength];
+            }
+            if (rTerm.length < chromaWidth) {
+                rTerm = new int[chromaWidth];
+                gTerm = new int[chromaWidth];
+                bTerm = new int[chromaWidth];
+            }
+            // Private cursors: bands read the same planes concurrently
+            ByteBuffer yPlane = frame.yPlane.duplicate();
+            ByteBuffer uPlane = frame.uPlane.duplicate();
+            ByteBuffer vPlane = frame.vPlane.duplicate();
+
+            int chromaRow = -1;
+            for (int row = startRow; row < endRow; row++) {
+                if (row / 2 != chromaRow) {
+                    chromaRow = row / 2;
+                    uPlane.position(chromaRow * frame.uvRowStride);
+                    uPlane.get(uRow, 0, uvLength);
+                    vPlane.position(chromaRow * frame.uvRowStride);
+                    vPlane.get(vRow, 0, uvLength);
+                    chromaTerms(frame.uvPixelStride, chromaWidth);
+                }
+                yPlane.position(row * frame.yRowStride);
+                yPlane.get(yRow, 0, yLength);
+                int offset = row * width;
+                if (frame.yPixelStride == 1) {
+                    lumaRow(frame.argb, offset, width);
+                } else {
+                    lumaRowStrided(frame.argb, offset, width, frame.yPixelStride);
+                }
+            }
+        }
+
+        // Per chroma sample contributions, shared by both pixels of a pair and both rows of a chroma row
+        private void chromaTerms(int pixelStride, int chromaWidth) {
+            byte[] u = uRow;
+            byte[] v = vRow;
+            if (pixelStride == 1) {
+                // I420: planar chroma
+                for (int c = 0; c < chromaWidth; c++) {
+                    chromaTerm(c, (u[c] & 0xFF) - 128, (v[c] & 0xFF) - 128);
+                }
+            } else if (pixelStride == 2) {
+                // NV12/NV21: U and V interleaved; each plane view reads every other byte
+                for (int c = 0, i = 0; c < chromaWidth; c++, i += 2) {
+                    chromaTerm(c, (u[i] & 0xFF) - 128, (v[i] & 0xFF) - 128);
+                }
+            } else {
+                for (int c = 0, i = 0; c < chromaWidth; c++, i += pixelStride) {
+                    chromaTerm(c, (u[i] & 0xFF) - 128, (v[i] & 0xFF) - 128);
+                }
+            }
+        }
+
+        private void chromaTerm(int c, int u, int v) {
+            rTerm[c] = R_V * v + BIAS;
+            gTerm[c] = BIAS - G_U * u - G_V * v;
+            bTerm[c] = B_U * u + BIAS;
+        }
+
+        private void lumaRow(int[] argb, int offset, int width) {
+            byte[] y = yRow;
+            int x = 0;
+            for (int c = 0; x + 1 < width; c++, x += 2) {
+                int r = rTerm[c];
+                int g = gTerm[c];
+                int b = bTerm[c];
+                int y0 = (y[x] & 0xFF) << SHIFT;
+                int y1 = (y[x + 1] & 0xFF) << SHIFT;
+                argb[offset + x] = argb(y0, r, g, b);
+                argb[offset + x + 1] = argb(y1, r, g, b);
+            }
+            if (x < width) {
+                int c = x / 2;
+                argb[offset + x] = argb((y[x] & 0xFF) << SHIFT, rTerm[c], gTerm[c], bTerm[c]);
+            }
+        }
+
+        private void lumaRowStrided(int[] argb, int offset, int width, int pixelStride) {
+            byte[] y = yRow;
+            for (int x = 0; x < width; x++) {
+                int c = x / 2;
+                argb[offset + x] = argb((y[x * pixelStride] & 0xFF) << SHIFT, rTerm[c], gTerm[c], bTerm[c]);
+            }
+        }
+    }
+}
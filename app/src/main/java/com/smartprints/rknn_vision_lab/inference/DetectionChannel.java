@@ -0,0 +1,55 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest-value channel for detection results. Publishing never blocks and readers always see the
+ * newest result; older results are simply overwritten. The previous result of the same source is
+ * kept alongside so readers can estimate box motion.
+ */
+public class DetectionChannel {
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+
+    public static final class Snapshot {
+        private final DetectionResult current;
+        private final DetectionResult previous;
+
+        Snapshot(DetectionResult current, DetectionResult previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+
+        public DetectionResult getCurrent() {
+            return current;
+        }
+
+        // Null when the current result is the first one from its source
+        public DetectionResult getPrevious() {
+            return previous;
+        }
+    }
+
+    // Results older than the one already published for the same source are ignored
+    public void publish(DetectionResult result) {
+        Snapshot current;
+        Snapshot next;
+        do {
+            current = latest.get();
+            DetectionResult previous = null;
+            if (current != null && current.current.getSourceId() == result.getSourceId()) {
+                if (result.getSequence() <= current.current.getSequence()) return;
+                previous = current.current;
+            }
+            next = new Snapshot(result, previous);
+        } while (!latest.compareAndSet(current, next));
+    }
+
+    // Null until something is published
+    public Snapshot snapshot() {
+        return latest.get();
+    }
+
+    public void clear() {
+        latest.set(null);
+    }
+}
@@ -0,0 +1,53 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detections together with the stamp of the frame they were computed on, so they can be
+ * drawn over later frames of the same source. Box coordinates are in that frame's pixels.
+ */
+public class DetectionResult {
+    private final int sourceId;
+    private final long sequence;
+    private final long captureNanos;
+    private final int frameWidth;
+    private final int frameHeight;
+    private final List<DetectedObject> detections;
+
+    public DetectionResult(Frame frame, List<DetectedObject> detections) {
+        this.sourceId = frame.getSourceId();
+        this.sequence = frame.getSequence();
+        this.captureNanos = frame.getCaptureNanos();
+        this.frameWidth = frame.getWidth();
+        this.frameHeight = frame.getHeight();
+        this.detections = detections != null ? Collections.unmodifiableList(detections) : Collections.emptyList();
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public List<DetectedObject> getDetections() {
+        return detections;
+    }
+}
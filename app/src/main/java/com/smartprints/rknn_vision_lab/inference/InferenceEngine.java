@@ -1,10 +1,42 @@
 package com.smartprints.rknn_vision_lab.inference;
 
-import android.graphics.Bitmap;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public interface InferenceEngine {
-    // Process input frame and return a frame for display (can be same instance)
-    Bitmap process(Bitmap input);
+    // Process input frame and return a frame for display (can be same instance).
+    // The input is borrowed; the returned frame carries its own reference (use input.retain() to pass through).
+    Frame process(Frame input);
+
+    // Several frames, e.g. one per camera, in as few model submissions as the engine allows.
+    // Returns one frame per input, in the same order, each under the same contract as process().
+    default List<Frame> processBatch(List<Frame> inputs) {
+        List<Frame> outputs = new ArrayList<>(inputs.size());
+        for (Frame input : inputs) {
+            outputs.add(process(input));
+        }
+        return outputs;
+    }
+
+    // Stage hooks, run in this order by the pipeline stage graph; each updates the job in place.
+    // A stage with nothing to do (e.g. engine not ready) leaves the job untouched.
+    void preprocess(InferenceJob job);
+
+    void infer(InferenceJob job);
+
+    // Batched form of infer(); engines that cannot batch run the jobs one by one
+    default void inferBatch(List<InferenceJob> jobs) {
+        for (InferenceJob job : jobs) {
+            infer(job);
+        }
+    }
+
+    void postprocess(InferenceJob job);
+
+    // Draws the detections onto the job's frame
+    void annotate(InferenceJob job);
 
     void close();
 }
@@ -0,0 +1,121 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One frame moving through the pipeline stages, with the intermediate results each stage hands to the next.
+ * The job owns one reference to its frame until {@link #release()}.
+ */
+public class InferenceJob {
+    private final int streamId;
+    private final Frame frame;
+    private final boolean lowPriority;
+    private byte[] input;
+    private boolean letterboxed;
+    private YoloRawOutput rawOutput;
+    private Consumer<YoloRawOutput> rawOutputRecycler;
+    private List<DetectedObject> detections;
+    private String servedBy;
+    private volatile boolean delivered;
+
+    public InferenceJob(Frame frame) {
+        this(0, frame);
+    }
+
+    public InferenceJob(int streamId, Frame frame) {
+        this(streamId, frame, false);
+    }
+
+    /**
+     * @param lowPriority the frame may run on a slower backend so other streams keep the NPU
+     */
+    public InferenceJob(int streamId, Frame frame, boolean lowPriority) {
+        this.streamId = streamId;
+        this.frame = frame;
+        this.lowPriority = lowPriority;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public Frame getFrame() {
+        return frame;
+    }
+
+    public boolean isLowPriority() {
+        return lowPriority;
+    }
+
+    // Inference backend that ran this frame, e.g. "rknn" or "tflite"; null if it was not inferred
+    public String getServedBy() {
+        return servedBy;
+    }
+
+    public void setServedBy(String servedBy) {
+        this.servedBy = servedBy;
+    }
+
+    public byte[] getInput() {
+        return input;
+    }
+
+    public void setInput(byte[] input) {
+        this.input = input;
+    }
+
+    // The input is the frame's ModelInput, so boxes come back through its letterbox
+    public boolean isLetterboxed() {
+        return letterboxed;
+    }
+
+    public void setLetterboxed(boolean letterboxed) {
+        this.letterboxed = letterboxed;
+    }
+
+    public YoloRawOutput getRawOutput() {
+        return rawOutput;
+    }
+
+    // The recycler gets the buffers back once they are decoded or the job is dropped
+    public void setRawOutput(YoloRawOutput rawOutput, Consumer<YoloRawOutput> recycler) {
+        this.rawOutput = rawOutput;
+        this.rawOutputRecycler = recycler;
+    }
+
+    public void recycleRawOutput() {
+        if (rawOutput != null && rawOutputRecycler != null) {
+            rawOutputRecycler.accept(rawOutput);
+        }
+        rawOutput = null;
+        rawOutputRecycler = null;
+    }
+
+    public List<DetectedObject> getDetections() {
+        return detections;
+    }
+
+    public void setDetections(List<DetectedObject> detections) {
+        this.detections = detections;
+    }
+
+    // Set once the result has reached its stream; jobs released without it were dropped on the way
+    public boolean isDelivered() {
+        return delivered;
+    }
+
+    public void markDelivered() {
+        delivered = true;
+    }
+
+    public void release() {
+        recycleRawOutput();
+        input = null;
+        frame.release();
+    }
+}
@@ -0,0 +1,97 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Creates the real engine on a background thread (model loading takes seconds) and
+ * passes frames through untouched until it is ready.
+ */
+public class LazyInferenceEngine implements InferenceEngine {
+    private static final String TAG = "LazyInferenceEngine";
+    private volatile InferenceEngine delegate;
+    private boolean closed = false;
+
+    public LazyInferenceEngine(Supplier<InferenceEngine> factory) {
+        new Thread(() -> {
+            try {
+                InferenceEngine engine = factory.get();
+                synchronized (this) {
+                    if (!closed) {
+                        delegate = engine;
+                        return;
+                    }
+                }
+                engine.close();
+            } catch (Throwable t) {
+                XLog.tag(TAG).e("Engine init failed", t);
+            }
+        }, "engine-init").start();
+    }
+
+    public boolean isReady() {
+        return delegate != null;
+    }
+
+    @Override
+    public Frame process(Frame input) {
+        InferenceEngine engine = delegate;
+        return engine != null ? engine.process(input) : input.retain();
+    }
+
+    @Override
+    public List<Frame> processBatch(List<Frame> inputs) {
+        InferenceEngine engine = delegate;
+        if (engine != null) return engine.processBatch(inputs);
+        List<Frame> outputs = new ArrayList<>(inputs.size());
+        for (Frame input : inputs) {
+            outputs.add(input.retain());
+        }
+        return outputs;
+    }
+
+    @Override
+    public void preprocess(InferenceJob job) {
+        InferenceEngine engine = delegate;
+        if (engine != null) engine.preprocess(job);
+    }
+
+    @Override
+    public void infer(InferenceJob job) {
+        InferenceEngine engine = delegate;
+        if (engine != null) engine.infer(job);
+    }
+
+    @Override
+    public void inferBatch(List<InferenceJob> jobs) {
+        InferenceEngine engine = delegate;
+        if (engine != null) engine.inferBatch(jobs);
+    }
+
+    @Override
+    public void postprocess(InferenceJob job) {
+        InferenceEngine engine = delegate;
+        if (engine != null) engine.postprocess(job);
+    }
+
+    @Override
+    public void annotate(InferenceJob job) {
+        InferenceEngine engine = delegate;
+        if (engine != null) engine.annotate(job);
+    }
+
+    @Override
+    public void close() {
+        InferenceEngine engine;
+        synchronized (this) {
+            closed = true;
+            engine = delegate;
+            delegate = null;
+        }
+        if (engine != null) engine.close();
+    }
+}
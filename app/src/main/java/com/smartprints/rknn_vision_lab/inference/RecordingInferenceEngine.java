@@ -0,0 +1,118 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.YoloDetector;
+import com.smartprintsksa.rknn_sdk.backend.HybridBackend;
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecord;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Passes everything to another engine and, while recording, writes the raw outputs of each
+ * inferred job with its frame metadata to a file for {@link ReplayInferenceEngine}. Only the staged
+ * {@link #infer}/{@link #inferBatch} path is recorded. On a hybrid backend only frames the NPU ran
+ * are kept, since CPU outputs have a different shape.
+ */
+public class RecordingInferenceEngine implements InferenceEngine {
+    private static final String TAG = "RecordingInferenceEngine";
+
+    private final InferenceEngine delegate;
+    private volatile RawOutputRecorder recorder;
+
+    public RecordingInferenceEngine(InferenceEngine delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Starts writing to {@code file}, replacing an earlier recording. Needs a loaded backend.
+     */
+    public synchronized void startRecording(File file) throws IOException {
+        InferenceBackend backend = YoloDetector.getBackend();
+        if (backend == null) throw new IllegalStateException("No inference backend loaded yet");
+        if (backend instanceof HybridBackend) backend = ((HybridBackend) backend).getPrimary();
+        stopRecording();
+        recorder = new RawOutputRecorder(file, backend.getName(), backend.getModelSpec());
+        XLog.tag(TAG).i("Recording " + backend.getName() + " outputs to " + file);
+    }
+
+    public synchronized void stopRecording() {
+        RawOutputRecorder current = recorder;
+        if (current == null) return;
+        recorder = null;
+        try {
+            current.close();
+            XLog.tag(TAG).i("Recorded " + current.getRecordCount() + " frames, " + current.getSize() + " bytes");
+        } catch (IOException e) {
+            XLog.tag(TAG).e("Closing recording failed", e);
+        }
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    @Override
+    public Frame process(Frame input) {
+        return delegate.process(input);
+    }
+
+    @Override
+    public List<Frame> processBatch(List<Frame> inputs) {
+        return delegate.processBatch(inputs);
+    }
+
+    @Override
+    public void preprocess(InferenceJob job) {
+        delegate.preprocess(job);
+    }
+
+    @Override
+    public void infer(InferenceJob job) {
+        delegate.infer(job);
+        record(job);
+    }
+
+    @Override
+    public void inferBatch(List<InferenceJob> jobs) {
+        delegate.inferBatch(jobs);
+        for (InferenceJob job : jobs) {
+            record(job);
+        }
+    }
+
+    @Override
+    public void postprocess(InferenceJob job) {
+        delegate.postprocess(job);
+    }
+
+    @Override
+    public void annotate(InferenceJob job) {
+        delegate.annotate(job);
+    }
+
+    @Override
+    public void close() {
+        stopRecording();
+        delegate.close();
+    }
+
+    private void record(InferenceJob job) {
+        RawOutputRecorder current = recorder;
+        if (current == null || job.getRawOutput() == null) return;
+        if (!current.getBackendName().equals(job.getServedBy())) return;
+        Frame frame = job.getFrame();
+        RawOutputRecord record = new RawOutputRecord(job.getStreamId(), frame.getSourceId(), frame.getSequence(),
+                frame.getCaptureNanos(), frame.getWidth(), frame.getHeight());
+        try {
+            current.write(record, job.getRawOutput());
+        } catch (IOException e) {
+            XLog.tag(TAG).e("Recording failed, stopping", e);
+            stopRecording();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.RingFrameBuffer;
+import com.smartprintsksa.rknn_sdk.YoloDetector;
+import com.smartprintsksa.rknn_sdk.backend.ReplayBackend;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecord;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Engine that feeds recorded raw outputs (see {@link RecordingInferenceEngine}) through the SDK's
+ * decoding and NMS instead of running a model. Each job gets the next recording regardless of its
+ * frame, and detections are scaled to the recorded image size, so a replay gives the same results
+ * as the device did. Nothing is drawn: the boxes belong to the recorded scene.
+ */
+public class ReplayInferenceEngine implements InferenceEngine {
+    private static final int RAW_OUTPUT_POOL_SIZE = 8;
+
+    private final ReplayBackend backend;
+    private final RingFrameBuffer<YoloRawOutput> rawOutputs = new RingFrameBuffer<>(RAW_OUTPUT_POOL_SIZE);
+
+    public ReplayInferenceEngine(ReplayBackend backend) {
+        this.backend = backend;
+        YoloDetector.setup(backend);
+    }
+
+    @Override
+    public Frame process(Frame frame) {
+        InferenceJob job = new InferenceJob(frame.retain());
+        infer(job);
+        postprocess(job);
+        return job.getFrame();
+    }
+
+    @Override
+    public List<Frame> processBatch(List<Frame> inputs) {
+        List<Frame> outputs = new ArrayList<>(inputs.size());
+        for (Frame input : inputs) {
+            outputs.add(process(input));
+        }
+        return outputs;
+    }
+
+    @Override
+    public void preprocess(InferenceJob job) {
+    }
+
+    @Override
+    public void infer(InferenceJob job) {
+        ReplayOutput outputs = (ReplayOutput) rawOutputs.poll();
+        if (outputs == null) outputs = new ReplayOutput(backend.newRawOutput());
+        outputs.record = backend.nextRecord(outputs);
+        if (outputs.record == null) {
+            rawOutputs.tryOffer(outputs);
+            return;
+        }
+        job.setRawOutput(outputs, rawOutputs::tryOffer);
+        job.setServedBy(backend.getName());
+    }
+
+    @Override
+    public void inferBatch(List<InferenceJob> jobs) {
+        for (InferenceJob job : jobs) {
+            infer(job);
+        }
+    }
+
+    @Override
+    public void postprocess(InferenceJob job) {
+        ReplayOutput outputs = (ReplayOutput) job.getRawOutput();
+        if (outputs == null) return;
+        job.setDetections(YoloDetector.postProcess(outputs,
+                outputs.record.getImageWidth(), outputs.record.getImageHeight()));
+        job.recycleRawOutput();
+    }
+
+    @Override
+    public void annotate(InferenceJob job) {
+    }
+
+    /**
+     * Decodes every recording once on the calling thread, without frames, and hands each result
+     * to {@code sink}; the quickest way to benchmark post-processing.
+     *
+     * @return records replayed
+     */
+    public int replayAll(BiConsumer<RawOutputRecord, List<DetectedObject>> sink) {
+        backend.rewind();
+        YoloRawOutput outputs = backend.newRawOutput();
+        int count = 0;
+        for (int i = 0; i < backend.getRecordCount(); i++) {
+            RawOutputRecord record = backend.nextRecord(outputs);
+            if (record == null) break;
+            sink.accept(record, YoloDetector.postProcess(outputs, record.getImageWidth(), record.getImageHeight()));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        // The backend belongs to YoloDetector now and is closed when it is replaced
+    }
+
+    private static final class ReplayOutput extends YoloRawOutput {
+        RawOutputRecord record;
+
+        ReplayOutput(YoloRawOutput buffers) {
+            mGrid0Out = buffers.mGrid0Out;
+            mGrid1Out = buffers.mGrid1Out;
+            mGrid2Out = buffers.mGrid2Out;
+        }
+    }
+}
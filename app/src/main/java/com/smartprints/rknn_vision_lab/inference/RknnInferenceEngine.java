@@ -10,8 +10,15 @@ import android.graphics.Paint;
 import android.graphics.RectF;
 
 import com.elvishew.xlog.XLog;
+import com.smartprintsksa.rknn_sdk.ImageTransform;
 import com.smartprintsksa.rknn_sdk.YoloDetector;
+import com.smartprintsksa.rknn_sdk.backend.BackendType;
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprints.rknn_vision_lab.video.pipeline.ModelInput;
+import com.smartprints.rknn_vision_lab.video.pipeline.RingFrameBuffer;
 import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
 
 import org.opencv.android.Utils;
 import org.opencv.core.Mat;
@@ -31,32 +38,133 @@ public class RknnInferenceEngine implements InferenceEngine {
     private static final float FONT_SCALE = 1.0f;
     public static final int THICKNESS = 2;
     public static final int FONT_THICKNESS = 6;
+
+    // Raw output sets kept for reuse; one per frame between infer and postprocess, on any NPU core
+    private static final int RAW_OUTPUT_POOL_SIZE = 8;
+
+    private final boolean ready;
+    private final RingFrameBuffer<YoloRawOutput> rawOutputs = new RingFrameBuffer<>(RAW_OUTPUT_POOL_SIZE);
+
     public RknnInferenceEngine(Context context) {
-        // TODO: initialize RKNN model/resources here
-        YoloDetector.setup(context);
+        this(context, BackendType.AUTO);
+    }
+
+    public RknnInferenceEngine(Context context, BackendType backend) {
+        // AUTO falls back to a CPU backend off the RK3588
+        ready = YoloDetector.setup(context, backend);
+        if (ready) {
+            XLog.tag("RknnInferenceEngine").i("Inference backend: " + YoloDetector.getBackend().getName());
+        } else {
+            XLog.tag("RknnInferenceEngine").w("No inference backend available, frames pass through");
+        }
+    }
+
+    @Override
+    public Frame process(Frame frame) {
+        InferenceJob job = new InferenceJob(frame.retain());
+        preprocess(job);
+        infer(job);
+        postprocess(job);
+        annotate(job);
+        job.recycleRawOutput();
+        return job.getFrame();
+    }
+
+    @Override
+    public List<Frame> processBatch(List<Frame> inputs) {
+        List<InferenceJob> jobs = new ArrayList<>(inputs.size());
+        for (Frame input : inputs) {
+            InferenceJob job = new InferenceJob(input.retain());
+            preprocess(job);
+            jobs.add(job);
+        }
+        inferBatch(jobs);
+        List<Frame> outputs = new ArrayList<>(inputs.size());
+        for (InferenceJob job : jobs) {
+            postprocess(job);
+            annotate(job);
+            job.recycleRawOutput();
+            outputs.add(job.getFrame());
+        }
+        return outputs;
+    }
+
+    @Override
+    public void preprocess(InferenceJob job) {
+        if (!ready) return;
+        ModelSpec spec = YoloDetector.getBackend().getModelSpec();
+        ModelInput prepared = job.getFrame().getModelInput();
+        if (prepared.matches(spec.getInputWidth(), spec.getInputHeight())) {
+            // Letterboxed by the source from its YUV planes; no bitmap scaling or RGBA copy
+            job.setInput(prepared.getPixels());
+            job.setLetterboxed(true);
+            return;
+        }
+        job.setInput(YoloDetector.preprocess(job.getFrame().getBitmap()));
+    }
+
+    @Override
+    public void infer(InferenceJob job) {
+        byte[] input = job.getInput();
+        if (input == null) return;
+        YoloRawOutput outputs = rawOutputs.poll();
+        if (outputs == null) outputs = YoloDetector.newRawOutput();
+        YoloDetector.infer(input, outputs, job.isLowPriority());
+        job.setInput(null);
+        job.setRawOutput(outputs, rawOutputs::tryOffer);
+        job.setServedBy(YoloDetector.getServedBy(outputs));
+    }
+
+    // One NPU call for the whole list: one submission per model batch, or the NPU cores in parallel
+    @Override
+    public void inferBatch(List<InferenceJob> jobs) {
+        int count = 0;
+        byte[][] inputs = new byte[jobs.size()][];
+        YoloRawOutput[] outputs = new YoloRawOutput[jobs.size()];
+        for (InferenceJob job : jobs) {
+            if (job.getInput() == null) continue;
+            YoloRawOutput raw = rawOutputs.poll();
+            if (raw == null) raw = YoloDetector.newRawOutput();
+            inputs[count] = job.getInput();
+            outputs[count] = raw;
+            job.setInput(null);
+            job.setRawOutput(raw, rawOutputs::tryOffer);
+            count++;
+        }
+        if (count == 0) return;
+        YoloDetector.inferBatch(inputs, outputs, count);
+        for (InferenceJob job : jobs) {
+            if (job.getRawOutput() != null) job.setServedBy(YoloDetector.getServedBy(job.getRawOutput()));
+        }
+    }
+
+    @Override
+    public void postprocess(InferenceJob job) {
+        YoloRawOutput outputs = job.getRawOutput();
+        if (outputs == null) return;
+        Frame frame = job.getFrame();
+        if (job.isLetterboxed()) {
+            ImageTransform transform = frame.getModelInput().getFrameTransform(frame.getWidth(), frame.getHeight());
+            job.setDetections(YoloDetector.postProcess(outputs, transform));
+        } else {
+            job.setDetections(YoloDetector.postProcess(outputs, frame.getWidth(), frame.getHeight()));
+        }
+        job.recycleRawOutput();
     }
 
     @Override
-    public Bitmap process(Bitmap bitmap) {
-//        List<DetectedObject> detections = YoloDetector.detect(bitmap, 0, 0, 1, 1);
-//        XLog.d("startInference", "Total time of detection: " + YoloDetector.getPipelineExecutionTime() + " seconds");
-//
-//        // Scale detections back to original frame size
-////        float widthScaleFactor = (float) frameRGB.width() / DETECTOR_INPUT_SIZE;
-////        float heightScaleFactor = (float) frameRGB.height() / DETECTOR_INPUT_SIZE;
-//
-//        // Filter based on the cropped area
-//        List<Rect> validBoundingBoxes = detections.stream()
-//                .map(detection -> new Rect(
-//                        detection.getBoundingBox().left,
-//                        detection.getBoundingBox().top,
-//                        (detection.getBoundingBox().right - detection.getBoundingBox().left),
-//                        (detection.getBoundingBox().bottom - detection.getBoundingBox().top)
-//                ))
-//                .collect(Collectors.toList());
-//        drawBoundingBoxes(bitmap, validBoundingBoxes);
-        // TODO: run inference and draw overlays onto a mutable bitmap
-        return bitmap; // Pass-through placeholder
+    public void annotate(InferenceJob job) {
+        List<DetectedObject> detections = job.getDetections();
+        if (detections == null || detections.isEmpty()) return;
+        List<Rect> validBoundingBoxes = detections.stream()
+                .map(detection -> new Rect(
+                        detection.getBoundingBox().left,
+                        detection.getBoundingBox().top,
+                        (detection.getBoundingBox().right - detection.getBoundingBox().left),
+                        (detection.getBoundingBox().bottom - detection.getBoundingBox().top)
+                ))
+                .collect(Collectors.toList());
+        drawBoundingBoxes(job.getFrame().getBitmap(), validBoundingBoxes);
     }
 
 
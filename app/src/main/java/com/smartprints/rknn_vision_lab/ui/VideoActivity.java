@@ -43,6 +43,8 @@ import com.smartprints.rknn_vision_lab.inference.RknnInferenceEngine;
 import com.smartprints.rknn_vision_lab.core.VideoPipeline;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class VideoActivity extends AppCompatActivity implements SurfaceHolder.Callback {
     private final static String TAG = "VideoActivity";
@@ -56,6 +58,8 @@ public class VideoActivity extends AppCompatActivity implements SurfaceHolder.Ca
     private boolean isReady = false;
 
     private VideoSource currentSource;
+    // Old sources are shut down here so switching does not wait for e.g. an RTSP grabber to close
+    private final ExecutorService sourceStopper = Executors.newSingleThreadExecutor();
     private SurfaceRenderer renderer;
 //    private VideoSourceListener videoSourceListener;
 
@@ -182,44 +186,64 @@ public class VideoActivity extends AppCompatActivity implements SurfaceHolder.Ca
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
         isReady = true;
+        videoPipeline.resume();
     }
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         isReady = false;
         cleanup();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopCurrent();
+        videoPipeline.close();
+        sourceStopper.shutdown();
+    }
     @Override public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
         isReady = true;
     }
 
     public void switchToCamera(String cameraId) {
-        stopCurrent();
-        currentSource = new CameraSource(this, videoPipeline, cameraId);
-        currentSource.start();
+        switchTo(new CameraSource(this, videoPipeline, videoPipeline.getFramePool(), cameraId));
     }
 
     public void switchToFile(Uri fileUri) {
-        stopCurrent();
-        currentSource = new FileSource(this, videoPipeline, fileUri);
-        currentSource.start();
+        switchTo(new FileSource(this, videoPipeline, videoPipeline.getFramePool(), fileUri));
     }
 
     public void switchToRtsp(String rtspUrl) {
-        stopCurrent();
-        currentSource = new RtspSource(videoPipeline, rtspUrl);
-        currentSource.start();
+        switchTo(new RtspSource(videoPipeline, videoPipeline.getFramePool(), rtspUrl));
+    }
+
+    // Hot switch: the engine and pipeline threads stay up, only the source changes
+    private void switchTo(VideoSource next) {
+        VideoSource previous = currentSource;
+        currentSource = next;
+        if (previous != null) {
+            if (previous instanceof CameraSource) {
+                // The camera device is exclusive; release it before the next source may open it
+                previous.stop();
+            } else {
+                sourceStopper.execute(previous::stop);
+            }
+        }
+        videoPipeline.getDefaultStream().attach(next);
+        next.start();
     }
 
     private void stopCurrent() {
-        if (currentSource != null && currentSource.isRunning()) {
+        if (currentSource != null) {
             currentSource.stop();
+            currentSource = null;
         }
-        renderer.clear();
     }
 
     public void cleanup() {
         stopCurrent();
-        videoPipeline.stop();
+        videoPipeline.pause();
+        renderer.clear();
     }
 
     @Override
@@ -0,0 +1,15 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+/**
+ * What a {@link RingFrameBuffer} does with an offered item when it is full.
+ */
+public enum BackpressurePolicy {
+    // Keep a single slot; every new item replaces the pending one
+    LATEST_ONLY,
+    // Evict the oldest pending item to make room
+    DROP_OLDEST,
+    // Reject the incoming item
+    DROP_NEWEST,
+    // Block the producer until space frees up or the timeout expires, then reject the incoming item
+    BLOCK
+}
@@ -0,0 +1,69 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of a buffer's counters.
+ */
+public class BufferStats {
+    private final BackpressurePolicy policy;
+    private final long offered;
+    private final long taken;
+    private final long[] dropped;
+    private final int depth;
+    private final int capacity;
+
+    BufferStats(BackpressurePolicy policy, long offered, long taken, long[] dropped, int depth, int capacity) {
+        this.policy = policy;
+        this.offered = offered;
+        this.taken = taken;
+        this.dropped = dropped;
+        this.depth = depth;
+        this.capacity = capacity;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    public long getTaken() {
+        return taken;
+    }
+
+    public long getDropped(DropReason reason) {
+        return dropped[reason.ordinal()];
+    }
+
+    // Items shed by the policy; excludes items removed by clear()
+    public long getShed() {
+        long total = 0;
+        for (DropReason reason : DropReason.values()) {
+            if (reason != DropReason.CLEARED) total += dropped[reason.ordinal()];
+        }
+        return total;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.US,
+                "%s offered=%d taken=%d depth=%d/%d shed=%d",
+                policy, offered, taken, depth, capacity, getShed()));
+        for (DropReason reason : DropReason.values()) {
+            long count = dropped[reason.ordinal()];
+            if (count > 0) sb.append(' ').append(reason.name().toLowerCase(Locale.US)).append('=').append(count);
+        }
+        return sb.toString();
+    }
+}
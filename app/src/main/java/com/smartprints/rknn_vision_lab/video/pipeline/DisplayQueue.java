@@ -0,0 +1,241 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Display queue bounded by bytes and by age rather than by count. Offers never block; items over
+ * the byte budget or older than the age budget are evicted oldest first. Takes always return the
+ * newest item and drop everything older, so a consumer that falls behind skips ahead instead of
+ * showing a backlog.
+ */
+public class DisplayQueue<T> implements FrameBuffer<T> {
+    private final long maxBytes;
+    private final long maxAgeNanos;
+    private final ToLongFunction<T> sizeOf;
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+    // Recycled entries, so steady-state offers do not allocate
+    private final ArrayDeque<Entry<T>> spare = new ArrayDeque<>();
+    // Items evicted under the lock wait here to be dropped outside it; null while lent out
+    private ArrayDeque<T> scratch = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long bytes;
+    private volatile Consumer<T> dropListener;
+
+    private long offered;
+    private long taken;
+    private final AtomicLongArray dropped = new AtomicLongArray(DropReason.values().length);
+
+    /**
+     * @param maxBytes  total size of queued items; the newest item is always kept even if larger
+     * @param maxAgeMs  how long an item may wait in the queue
+     * @param sizeOf    size of an item in bytes
+     */
+    public DisplayQueue(long maxBytes, long maxAgeMs, ToLongFunction<T> sizeOf) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxAgeMs));
+        this.sizeOf = sizeOf;
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) throw new NullPointerException("item");
+        long now = System.nanoTime();
+        long size = sizeOf.applyAsLong(item);
+        ArrayDeque<T> evicted = null;
+        lock.lock();
+        try {
+            offered++;
+            Entry<T> entry = spare.pollFirst();
+            if (entry == null) entry = new Entry<>();
+            entry.item = item;
+            entry.size = size;
+            entry.enqueuedNanos = now;
+            entries.addLast(entry);
+            bytes += size;
+            // Over budget: evict oldest first, always keeping the newest
+            while (entries.size() > 1 && (bytes > maxBytes || now - entries.peekFirst().enqueuedNanos > maxAgeNanos)) {
+                if (evicted == null) evicted = borrowScratch();
+                evicted.addLast(removeFirst());
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) dropAll(evicted, DropReason.STALE);
+        return true;
+    }
+
+    /** Blocks until an item is available, then returns the newest one. */
+    @Override
+    public T take() throws InterruptedException {
+        while (true) {
+            lock.lock();
+            try {
+                while (entries.isEmpty()) {
+                    notEmpty.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+            // Null if the newest item expired meanwhile; wait for the next one
+            T item = pollNewest();
+            if (item != null) return item;
+        }
+    }
+
+    /** Waits up to the timeout for an item, then returns the newest one as {@link #take()} does. */
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            lock.lock();
+            try {
+                long remaining = deadline - System.nanoTime();
+                while (entries.isEmpty()) {
+                    if (remaining <= 0) return null;
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+            T item = pollNewest();
+            if (item != null) return item;
+        }
+    }
+
+    /**
+     * Returns the newest item that is still within the age budget, or null. Older items are
+     * dropped as superseded; an expired newest item is dropped as stale.
+     */
+    public T pollNewest() {
+        long now = System.nanoTime();
+        ArrayDeque<T> superseded = null;
+        T newest = null;
+        boolean expired = false;
+        lock.lock();
+        try {
+            if (entries.isEmpty()) return null;
+            while (entries.size() > 1) {
+                if (superseded == null) superseded = borrowScratch();
+                superseded.addLast(removeFirst());
+            }
+            expired = now - entries.peekFirst().enqueuedNanos > maxAgeNanos;
+            newest = removeFirst();
+            if (!expired) taken++;
+        } finally {
+            lock.unlock();
+        }
+        if (superseded != null) dropAll(superseded, DropReason.SUPERSEDED);
+        if (expired) {
+            drop(newest, DropReason.STALE);
+            return null;
+        }
+        return newest;
+    }
+
+    @Override
+    public void clear() {
+        while (true) {
+            T item;
+            lock.lock();
+            try {
+                if (entries.isEmpty()) return;
+                item = removeFirst();
+            } finally {
+                lock.unlock();
+            }
+            drop(item, DropReason.CLEARED);
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setDropListener(Consumer<T> listener) {
+        this.dropListener = listener;
+    }
+
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount(DropReason reason) {
+        return dropped.get(reason.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format(Locale.US, "offered=%d taken=%d depth=%d bytes=%d/%d superseded=%d stale=%d",
+                    offered, taken, entries.size(), bytes, maxBytes,
+                    dropped.get(DropReason.SUPERSEDED.ordinal()), dropped.get(DropReason.STALE.ordinal()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private T removeFirst() {
+        Entry<T> entry = entries.pollFirst();
+        T item = entry.item;
+        bytes -= entry.size;
+        entry.item = null;
+        spare.addLast(entry);
+        return item;
+    }
+
+    // Caller holds the lock; another thread may still be dropping from the shared deque
+    private ArrayDeque<T> borrowScratch() {
+        ArrayDeque<T> items = scratch;
+        if (items == null) return new ArrayDeque<>();
+        scratch = null;
+        return items;
+    }
+
+    private void dropAll(ArrayDeque<T> items, DropReason reason) {
+        T item;
+        while ((item = items.pollFirst()) != null) {
+            drop(item, reason);
+        }
+        lock.lock();
+        try {
+            scratch = items;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drop(T item, DropReason reason) {
+        dropped.incrementAndGet(reason.ordinal());
+        Consumer<T> listener = dropListener;
+        if (listener != null) listener.accept(item);
+    }
+
+    private static final class Entry<T> {
+        T item;
+        long size;
+        long enqueuedNanos;
+    }
+}
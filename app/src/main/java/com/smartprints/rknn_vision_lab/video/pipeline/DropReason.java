@@ -0,0 +1,19 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+/**
+ * Why a buffer shed an item; each reason has its own counter in {@link BufferStats}.
+ */
+public enum DropReason {
+    // Replaced by a newer item under LATEST_ONLY
+    SUPERSEDED,
+    // Evicted under DROP_OLDEST
+    EVICTED_OLDEST,
+    // Rejected on arrival under DROP_NEWEST
+    REJECTED_NEWEST,
+    // Rejected under BLOCK after waiting for the timeout
+    TIMED_OUT,
+    // Evicted for exceeding a byte or age budget
+    STALE,
+    // Removed by clear()
+    CLEARED
+}
@@ -0,0 +1,133 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference-counted frame leased from a {@link FramePool}.
+ * Whoever holds a reference calls {@link #release()} exactly once; the last release returns
+ * the bitmap to the pool. Hand a frame to another owner with {@link #retain()}.
+ * Sources stamp each frame with its origin (source id, sequence, timestamps, rotation, format)
+ * before handing it on; the stamp is reset on every lease. They may also attach a
+ * {@link ModelInput} prepared from the source planes, likewise invalidated on every lease.
+ */
+public class Frame {
+    private final FramePool pool;
+    private final Bitmap bitmap;
+    private final int width;
+    private final int height;
+    private final Bitmap.Config config;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private final ModelInput modelInput = new ModelInput();
+    public static final long NO_PTS = -1;
+
+    private long captureNanos;
+    private int sourceId = -1;
+    private long sequence = -1;
+    private long ptsUs = NO_PTS;
+    private int rotationDegrees;
+    private int sourcePixelFormat = ImageFormat.UNKNOWN;
+
+    Frame(FramePool pool, Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        this.pool = pool;
+        this.bitmap = bitmap;
+        this.width = width;
+        this.height = height;
+        this.config = config;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Bitmap.Config getConfig() {
+        return config;
+    }
+
+    // System.nanoTime() when the source got the pixels; the lease time until stamped
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * @param sequence          monotonic per source, starting at 0; gaps mean the source skipped frames
+     * @param ptsUs             media presentation time from the demuxer/decoder or sensor, or {@link #NO_PTS}
+     * @param rotationDegrees   rotation already applied to the source pixels to produce this bitmap
+     * @param sourcePixelFormat {@link ImageFormat} of the pixels before conversion to the bitmap
+     */
+    public void stamp(int sourceId, long sequence, long captureNanos, long ptsUs,
+                      int rotationDegrees, int sourcePixelFormat) {
+        this.sourceId = sourceId;
+        this.sequence = sequence;
+        this.captureNanos = captureNanos;
+        this.ptsUs = ptsUs;
+        this.rotationDegrees = rotationDegrees;
+        this.sourcePixelFormat = sourcePixelFormat;
+    }
+
+    // -1 until stamped
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    // -1 until stamped
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getPtsUs() {
+        return ptsUs;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public int getSourcePixelFormat() {
+        return sourcePixelFormat;
+    }
+
+    // Always the same holder; check isReady() before reading it
+    public ModelInput getModelInput() {
+        return modelInput;
+    }
+
+    public Frame retain() {
+        int previous;
+        do {
+            previous = refCount.get();
+            if (previous <= 0) throw new IllegalStateException("Frame already released");
+        } while (!refCount.compareAndSet(previous, previous + 1));
+        return this;
+    }
+
+    public void release() {
+        int previous;
+        do {
+            previous = refCount.get();
+            if (previous <= 0) throw new IllegalStateException("Frame released too many times");
+        } while (!refCount.compareAndSet(previous, previous - 1));
+        if (previous == 1) pool.recycle(this);
+    }
+
+    void onLeased() {
+        captureNanos = System.nanoTime();
+        sourceId = -1;
+        sequence = -1;
+        ptsUs = NO_PTS;
+        rotationDegrees = 0;
+        sourcePixelFormat = ImageFormat.UNKNOWN;
+        modelInput.invalidate();
+        refCount.set(1);
+    }
+}
@@ -1,5 +1,8 @@
 package com.smartprints.rknn_vision_lab.video.pipeline;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 public interface FrameBuffer<T> {
     // Non-blocking; may drop according to buffer policy
     boolean offer(T item);
@@ -7,5 +10,14 @@ public interface FrameBuffer<T> {
     // Blocking take; waits until an item is available
     T take() throws InterruptedException;
 
+    // Like take(), but gives up after the timeout and returns null; a zero timeout does not wait
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+
     void clear();
+
+    // Items currently queued; may be stale under concurrent use
+    int size();
+
+    // Receives every item the buffer discards (evicted on offer or removed by clear)
+    void setDropListener(Consumer<T> listener);
 }
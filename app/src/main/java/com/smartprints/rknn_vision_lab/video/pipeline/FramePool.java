@@ -0,0 +1,110 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pool of {@link Frame}s keyed by width, height and bitmap config.
+ * Leasing and recycling are lock-free and allocation-free once a size is warm.
+ */
+public class FramePool {
+    private static final int DEFAULT_FRAMES_PER_SIZE = 8;
+
+    private final int framesPerSize;
+    private final Object bucketsLock = new Object();
+    private volatile Bucket[] buckets = new Bucket[0];
+    private volatile boolean closed = false;
+
+    public FramePool() {
+        this(DEFAULT_FRAMES_PER_SIZE);
+    }
+
+    public FramePool(int framesPerSize) {
+        this.framesPerSize = Math.max(1, framesPerSize);
+    }
+
+    /** Returns a frame holding one reference; its pixel content is undefined. */
+    public Frame lease(int width, int height, Bitmap.Config config) {
+        Bucket bucket = bucketFor(width, height, config);
+        Frame frame = bucket.free.poll();
+        if (frame == null) {
+            frame = new Frame(this, allocate(width, height, config), width, height, config);
+        }
+        frame.onLeased();
+        return frame;
+    }
+
+    /** Drops idle frames and recycles their bitmaps; frames still leased are recycled on release. */
+    public void close() {
+        closed = true;
+        for (Bucket bucket : buckets) {
+            disposeIdle(bucket);
+        }
+    }
+
+    void recycle(Frame frame) {
+        if (closed) {
+            dispose(frame.getBitmap());
+            return;
+        }
+        Bucket bucket = bucketFor(frame.getWidth(), frame.getHeight(), frame.getConfig());
+        if (!bucket.free.tryOffer(frame)) {
+            dispose(frame.getBitmap());
+        } else if (closed) {
+            // close() may have emptied the bucket before the offer landed
+            disposeIdle(bucket);
+        }
+    }
+
+    // The pool owns every bitmap it allocates; tests override both to run without Android bitmaps
+    Bitmap allocate(int width, int height, Bitmap.Config config) {
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    void dispose(Bitmap bitmap) {
+        bitmap.recycle();
+    }
+
+    private void disposeIdle(Bucket bucket) {
+        Frame frame;
+        while ((frame = bucket.free.poll()) != null) {
+            dispose(frame.getBitmap());
+        }
+    }
+
+    private Bucket bucketFor(int width, int height, Bitmap.Config config) {
+        Bucket[] current = buckets;
+        for (Bucket bucket : current) {
+            if (bucket.matches(width, height, config)) return bucket;
+        }
+        synchronized (bucketsLock) {
+            current = buckets;
+            for (Bucket bucket : current) {
+                if (bucket.matches(width, height, config)) return bucket;
+            }
+            Bucket bucket = new Bucket(width, height, config, framesPerSize);
+            Bucket[] grown = new Bucket[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = bucket;
+            buckets = grown;
+            return bucket;
+        }
+    }
+
+    private static final class Bucket {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+        final RingFrameBuffer<Frame> free;
+
+        Bucket(int width, int height, Bitmap.Config config, int capacity) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            this.free = new RingFrameBuffer<>(capacity);
+        }
+
+        boolean matches(int width, int height, Bitmap.Config config) {
+            return this.width == width && this.height == height && this.config == config;
+        }
+    }
+}
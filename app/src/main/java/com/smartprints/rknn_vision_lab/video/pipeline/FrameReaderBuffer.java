@@ -1,6 +1,8 @@
 package com.smartprints.rknn_vision_lab.video.pipeline;
 
 import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -9,6 +11,7 @@ public class FrameReaderBuffer<T> implements FrameBuffer<T> {
     private final int capacity;
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition notEmpty = lock.newCondition();
+    private volatile Consumer<T> dropListener;
 
     public FrameReaderBuffer(int capacity) {
         this.capacity = Math.max(1, capacity);
@@ -16,18 +19,20 @@ public class FrameReaderBuffer<T> implements FrameBuffer<T> {
 
     @Override
     public boolean offer(T item) {
+        T evicted = null;
         lock.lock();
         try {
             if (deque.size() == capacity) {
                 // Drop oldest to keep latency small
-                deque.removeFirst();
+                evicted = deque.removeFirst();
             }
             deque.addLast(item);
             notEmpty.signal();
-            return true;
         } finally {
             lock.unlock();
         }
+        if (evicted != null) notifyDropped(evicted);
+        return true;
     }
 
     @Override
@@ -43,13 +48,53 @@ public class FrameReaderBuffer<T> implements FrameBuffer<T> {
         }
     }
 
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (deque.isEmpty()) {
+                if (remaining <= 0) return null;
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return deque.removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void clear() {
+        T item;
+        while (true) {
+            lock.lock();
+            try {
+                item = deque.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (item == null) return;
+            notifyDropped(item);
+        }
+    }
+
+    @Override
+    public int size() {
         lock.lock();
         try {
-            deque.clear();
+            return deque.size();
         } finally {
             lock.unlock();
         }
     }
+
+    @Override
+    public void setDropListener(Consumer<T> listener) {
+        this.dropListener = listener;
+    }
+
+    private void notifyDropped(T item) {
+        Consumer<T> listener = dropListener;
+        if (listener != null) listener.accept(item);
+    }
 }
@@ -0,0 +1,72 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import com.smartprintsksa.rknn_sdk.ImageTransform;
+
+/**
+ * Model input a source prepared for its {@link Frame} straight from the camera or decoder planes:
+ * packed RGB888, letterboxed into {@link #getWidth()} x {@link #getHeight()} with the same rotation
+ * as the frame's bitmap. {@link #getTransform()} maps the source planes onto it. The pixel buffer
+ * stays with the frame across leases; it is only valid while {@link #isReady()}, which every lease
+ * resets.
+ */
+public class ModelInput {
+    private byte[] pixels = new byte[0];
+    private int width;
+    private int height;
+    private ImageTransform transform;
+    private volatile boolean ready;
+
+    /**
+     * Sizes the buffer for a {@code width} x {@code height} input and returns it; the caller fills
+     * it and then calls {@link #commit}.
+     */
+    public byte[] prepare(int width, int height) {
+        ready = false;
+        int size = width * height * 3;
+        if (pixels.length != size) pixels = new byte[size];
+        this.width = width;
+        this.height = height;
+        return pixels;
+    }
+
+    /**
+     * @param transform how the planes the pixels came from were rotated, scaled and padded into them
+     */
+    public void commit(ImageTransform transform) {
+        this.transform = transform;
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean matches(int width, int height) {
+        return ready && this.width == width && this.height == height;
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ImageTransform getTransform() {
+        return transform;
+    }
+
+    // The same mapping seen from the frame's bitmap, which is already rotated like the input
+    public ImageTransform getFrameTransform(int frameWidth, int frameHeight) {
+        return transform.withRotatedSource(frameWidth, frameHeight);
+    }
+
+    void invalidate() {
+        ready = false;
+    }
+}
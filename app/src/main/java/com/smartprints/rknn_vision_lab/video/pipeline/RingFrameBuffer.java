@@ -0,0 +1,326 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Preallocated, lock-free bounded ring buffer (Vyukov MPMC sequence scheme).
+ * Safe for any number of producers and consumers; each offer unparks one waiting consumer.
+ * What happens when full is chosen by the {@link BackpressurePolicy}; the default
+ * evicts the oldest item, same as {@link FrameReaderBuffer}.
+ */
+public class RingFrameBuffer<T> implements FrameBuffer<T> {
+    private static final int DEFAULT_SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10;
+    private static final long MAX_PARK_NANOS = 1_000_000L; // 1 ms, guards against a missed unpark
+
+    private final int capacity;
+    // Slots in the ring; the sequence scheme needs two, so a one-item buffer keeps a spare slot
+    private final int slots;
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+    // Threads parked for an item to take or, under BLOCK, for a free slot
+    private final Queue<Thread> parkedConsumers = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> parkedProducers = new ConcurrentLinkedQueue<>();
+    private final int spinTries;
+    private final BackpressurePolicy policy;
+    private final long blockTimeoutNanos;
+    private volatile Consumer<T> dropListener;
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLongArray dropped = new AtomicLongArray(DropReason.values().length);
+    private final AtomicLong taken = new AtomicLong();
+
+    public RingFrameBuffer(int capacity) {
+        this(capacity, DEFAULT_SPIN_TRIES);
+    }
+
+    /**
+     * @param capacity  rounded up to the next power of two
+     * @param spinTries busy-spin iterations in {@link #take()} before yielding and then parking
+     */
+    public RingFrameBuffer(int capacity, int spinTries) {
+        this(capacity, spinTries, BackpressurePolicy.DROP_OLDEST, 0);
+    }
+
+    public RingFrameBuffer(int capacity, BackpressurePolicy policy, long blockTimeoutMs) {
+        this(capacity, DEFAULT_SPIN_TRIES, policy, blockTimeoutMs);
+    }
+
+    /**
+     * @param capacity       rounded up to the next power of two; forced to 1 for {@link BackpressurePolicy#LATEST_ONLY}
+     * @param spinTries      busy-spin iterations before yielding and then parking
+     * @param blockTimeoutMs how long {@link BackpressurePolicy#BLOCK} waits for space
+     */
+    public RingFrameBuffer(int capacity, int spinTries, BackpressurePolicy policy, long blockTimeoutMs) {
+        int requested = policy == BackpressurePolicy.LATEST_ONLY ? 1 : Math.max(1, capacity);
+        this.capacity = nextPowerOfTwo(requested);
+        this.slots = Math.max(2, this.capacity);
+        this.mask = this.slots - 1;
+        this.spinTries = Math.max(0, spinTries);
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMs));
+        this.items = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Applies the backpressure policy. Returns false if the item itself was rejected, in which
+     * case it has already been handed to the drop listener. Blocks only under {@link BackpressurePolicy#BLOCK}.
+     */
+    @Override
+    public boolean offer(T item) {
+        if (item == null) throw new NullPointerException("item");
+        offered.incrementAndGet();
+        switch (policy) {
+            case DROP_NEWEST:
+                if (!tryEnqueue(item)) {
+                    drop(item, DropReason.REJECTED_NEWEST);
+                    return false;
+                }
+                break;
+            case BLOCK:
+                if (!tryEnqueue(item) && !enqueueBlocking(item)) {
+                    drop(item, DropReason.TIMED_OUT);
+                    return false;
+                }
+                break;
+            default:
+                DropReason reason = policy == BackpressurePolicy.LATEST_ONLY
+                        ? DropReason.SUPERSEDED : DropReason.EVICTED_OLDEST;
+                while (!tryEnqueue(item)) {
+                    // Drop oldest to keep latency small
+                    T evicted = poll();
+                    if (evicted != null) drop(evicted, reason);
+                }
+                break;
+        }
+        wake(parkedConsumers);
+        return true;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item;
+        int spins = 0;
+        while ((item = poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (spins < spinTries) {
+                spins++;
+            } else if (spins < spinTries + YIELD_TRIES) {
+                spins++;
+                Thread.yield();
+            } else {
+                park(MAX_PARK_NANOS);
+            }
+        }
+        taken.incrementAndGet();
+        return item;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        T item;
+        int spins = 0;
+        while ((item = poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            if (spins < spinTries) {
+                spins++;
+            } else {
+                park(remaining);
+            }
+        }
+        taken.incrementAndGet();
+        return item;
+    }
+
+    @Override
+    public void clear() {
+        T item;
+        while ((item = poll()) != null) {
+            drop(item, DropReason.CLEARED);
+        }
+    }
+
+    @Override
+    public void setDropListener(Consumer<T> listener) {
+        this.dropListener = listener;
+    }
+
+    /** Non-blocking offer that never evicts; returns false when full. Bypasses the policy counters. */
+    public boolean tryOffer(T item) {
+        if (item == null) throw new NullPointerException("item");
+        if (!tryEnqueue(item)) return false;
+        wake(parkedConsumers);
+        return true;
+    }
+
+    /** Non-blocking take; returns null when empty. Not counted as taken. */
+    public T poll() {
+        long pos = dequeuePos.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) break;
+                pos = dequeuePos.get();
+            } else if (dif < 0) {
+                return null;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+        int index = (int) (pos & mask);
+        T item = items.get(index);
+        items.lazySet(index, null);
+        sequences.lazySet(index, pos + slots);
+        wake(parkedProducers);
+        return item;
+    }
+
+    // Non-blocking take counted like take(), for consumers that multiplex several buffers
+    T pollCounted() {
+        T item = poll();
+        if (item != null) taken.incrementAndGet();
+        return item;
+    }
+
+    @Override
+    public int size() {
+        long size = enqueuePos.get() - dequeuePos.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOfferedCount() {
+        return offered.get();
+    }
+
+    public long getDroppedCount() {
+        long total = 0;
+        for (int i = 0; i < dropped.length(); i++) {
+            total += dropped.get(i);
+        }
+        return total;
+    }
+
+    public long getDroppedCount(DropReason reason) {
+        return dropped.get(reason.ordinal());
+    }
+
+    public long getTakenCount() {
+        return taken.get();
+    }
+
+    public BufferStats getStats() {
+        long[] drops = new long[dropped.length()];
+        for (int i = 0; i < drops.length; i++) {
+            drops[i] = dropped.get(i);
+        }
+        return new BufferStats(policy, offered.get(), taken.get(), drops, size(), capacity);
+    }
+
+    private boolean tryEnqueue(T item) {
+        long pos = enqueuePos.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                // Only a one-item buffer has a free slot while full
+                if (capacity < slots && pos - dequeuePos.get() >= capacity) return false;
+                if (enqueuePos.compareAndSet(pos, pos + 1)) break;
+                pos = enqueuePos.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+        int index = (int) (pos & mask);
+        items.lazySet(index, item);
+        sequences.set(index, pos + 1);
+        return true;
+    }
+
+    private boolean enqueueBlocking(T item) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        Thread current = Thread.currentThread();
+        int spins = 0;
+        while (!tryEnqueue(item)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || current.isInterrupted()) return false;
+            if (spins < spinTries) {
+                spins++;
+            } else if (spins < spinTries + YIELD_TRIES) {
+                spins++;
+                Thread.yield();
+            } else {
+                parkedProducers.add(current);
+                if (isFull()) LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+                parkedProducers.remove(current);
+            }
+        }
+        return true;
+    }
+
+    private void drop(T item, DropReason reason) {
+        dropped.incrementAndGet(reason.ordinal());
+        Consumer<T> listener = dropListener;
+        if (listener != null) listener.accept(item);
+    }
+
+    private boolean isEmpty() {
+        long pos = dequeuePos.get();
+        return sequences.get((int) (pos & mask)) - (pos + 1) < 0;
+    }
+
+    private boolean isFull() {
+        long pos = enqueuePos.get();
+        return sequences.get((int) (pos & mask)) - pos < 0 || pos - dequeuePos.get() >= capacity;
+    }
+
+    private void park(long maxNanos) {
+        Thread current = Thread.currentThread();
+        parkedConsumers.add(current);
+        // Re-check after publishing ourselves so a concurrent offer cannot be missed
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, Math.min(maxNanos, MAX_PARK_NANOS));
+        }
+        parkedConsumers.remove(current);
+    }
+
+    // Unparks one waiter per signal; one that misses its signal still wakes on the timed park
+    private static void wake(Queue<Thread> parked) {
+        Thread thread = parked.poll();
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+}
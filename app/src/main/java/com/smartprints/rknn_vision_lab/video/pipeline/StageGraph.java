@@ -0,0 +1,371 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import com.elvishew.xlog.XLog;
+import com.smartprintsksa.rknn_sdk.metrics.HistogramSnapshot;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.npu.ReorderBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Linear chain of stages, each with its own bounded input queue and worker threads, so
+ * consecutive items overlap across stages (item N+1 in stage A while item N is in stage B).
+ * Items leave the graph through the release callback, whether they completed, were shed or failed.
+ * Each stage records its processing latency, processed count and queue depth. Ordered stages run
+ * several workers but pass items on in the order they were taken from the stage's queue. Batch
+ * stages gather several queued items and process them in one call.
+ */
+public class StageGraph<T> {
+    private static final String TAG = "StageGraph";
+    // Bounds how long stop() waits for a worker stuck in a stage's process()
+    private static final long STOP_JOIN_MS = 2000;
+
+    public interface Stage<T> {
+        void process(T item) throws Exception;
+    }
+
+    public interface BatchStage<T> {
+        // Items in queue order; each is passed on individually afterwards
+        void process(List<T> items) throws Exception;
+    }
+
+    private final List<Node<T>> nodes;
+    private final Consumer<T> release;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = false;
+    // Bumped on every start/stop so workers of an earlier run exit even if the graph is restarted quickly
+    private volatile int generation = 0;
+
+    private StageGraph(List<Node<T>> nodes, Consumer<T> release) {
+        this.nodes = nodes;
+        this.release = release;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node<T> node = nodes.get(i);
+            Node<T> next = i + 1 < nodes.size() ? nodes.get(i + 1) : null;
+            node.queue.setDropListener(release);
+            if (node.ordered) {
+                node.reorder = new ReorderBuffer<>((ticket, done) -> forward(done.item, next, done.generation));
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        int runGeneration = ++generation;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node<T> node = nodes.get(i);
+            Node<T> next = i + 1 < nodes.size() ? nodes.get(i + 1) : null;
+            for (int t = 0; t < node.threads; t++) {
+                Runnable loop = node.batchStage != null
+                        ? () -> runBatchWorker(node, next, runGeneration)
+                        : () -> runWorker(node, next, runGeneration);
+                Thread worker = new Thread(loop, node.name + "-exec-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        generation++;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        // Workers finishing an item release it rather than forward it, so once they have exited
+        // nothing refills the queues behind the clear below
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            if (worker == Thread.currentThread()) continue;
+            try {
+                worker.join(STOP_JOIN_MS);
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+            if (worker.isAlive()) XLog.tag(TAG).w(worker.getName() + " did not stop within " + STOP_JOIN_MS + " ms");
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        workers.clear();
+        for (Node<T> node : nodes) {
+            node.queue.clear();
+        }
+    }
+
+    /** Offers an item to the first stage; its queue policy decides whether to shed or block. */
+    public boolean submit(T item) {
+        return nodes.get(0).queue.offer(item);
+    }
+
+    public List<String> getStageNames() {
+        List<String> names = new ArrayList<>(nodes.size());
+        for (Node<T> node : nodes) {
+            names.add(node.name);
+        }
+        return names;
+    }
+
+    // Null for stages built on a custom input buffer; query that buffer directly
+    public BufferStats getStats(String stageName) {
+        for (Node<T> node : nodes) {
+            if (node.name.equals(stageName)) return statsOf(node);
+        }
+        throw new IllegalArgumentException("Unknown stage " + stageName);
+    }
+
+    public BufferStats getInputStats() {
+        return statsOf(nodes.get(0));
+    }
+
+    // Time spent in the stage's process(), excluding queueing
+    public HistogramSnapshot getLatency(String stageName) {
+        for (Node<T> node : nodes) {
+            if (node.name.equals(stageName)) return node.latency.snapshot();
+        }
+        throw new IllegalArgumentException("Unknown stage " + stageName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BufferStats statsOf(Node<T> node) {
+        return node.queue instanceof RingFrameBuffer ? ((RingFrameBuffer<T>) node.queue).getStats() : null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runWorker(Node<T> node, Node<T> next, int runGeneration) {
+        while (generation == runGeneration && !Thread.currentThread().isInterrupted()) {
+            T item;
+            long ticket = 0;
+            try {
+                if (node.reorder != null) {
+                    // Take and ticket together, so tickets follow queue order
+                    synchronized (node) {
+                        item = node.queue.take();
+                        ticket = node.nextTicket++;
+                        node.reorder.register(ticket);
+                    }
+                } else {
+                    item = node.queue.take();
+                }
+            } catch (InterruptedException ie) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                node.stage.process(item);
+            } catch (Throwable t) {
+                XLog.tag(TAG).e("Stage " + node.name + " failed", t);
+                release.accept(item);
+                if (node.reorder != null) node.reorder.cancel(ticket);
+                continue;
+            }
+            node.latency.recordSince(start);
+            node.processed.incrementAndGet();
+            if (node.reorder != null) {
+                node.reorder.complete(ticket, new Completed<>(item, runGeneration));
+            } else {
+                forward(item, next, runGeneration);
+            }
+        }
+    }
+
+    private void runBatchWorker(Node<T> node, Node<T> next, int runGeneration) {
+        List<T> batch = new ArrayList<>(node.maxBatch);
+        while (generation == runGeneration && !Thread.currentThread().isInterrupted()) {
+            batch.clear();
+            try {
+                batch.add(node.queue.take());
+                // Gather more until the batch is full or the first item has waited long enough
+                long deadline = System.nanoTime() + node.maxWaitNanos;
+                while (batch.size() < node.maxBatch) {
+                    T more = node.queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (more == null) break;
+                    batch.add(more);
+                }
+            } catch (InterruptedException ie) {
+                for (T item : batch) {
+                    release.accept(item);
+                }
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                node.batchStage.process(batch);
+            } catch (Throwable t) {
+                XLog.tag(TAG).e("Stage " + node.name + " failed on a batch of " + batch.size(), t);
+                for (T item : batch) {
+                    release.accept(item);
+                }
+                continue;
+            }
+            node.latency.recordSince(start);
+            node.processed.addAndGet(batch.size());
+            node.batches.incrementAndGet();
+            for (T item : batch) {
+                forward(item, next, runGeneration);
+            }
+        }
+    }
+
+    private void forward(T item, Node<T> next, int runGeneration) {
+        if (next != null && generation == runGeneration) {
+            next.queue.offer(item);
+        } else {
+            release.accept(item);
+        }
+    }
+
+    private static final class Completed<T> {
+        final T item;
+        final int generation;
+
+        Completed(T item, int generation) {
+            this.item = item;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Node<T> {
+        final String name;
+        final int threads;
+        final FrameBuffer<T> queue;
+        final Stage<T> stage;
+        final boolean ordered;
+        final BatchStage<T> batchStage;
+        final int maxBatch;
+        final long maxWaitNanos;
+        LatencyHistogram latency;
+        AtomicLong processed;
+        AtomicLong batches;
+        ReorderBuffer<Completed<T>> reorder;
+        // Guarded by the node's monitor
+        long nextTicket;
+
+        Node(String name, int threads, FrameBuffer<T> queue, Stage<T> stage, boolean ordered) {
+            this.name = name;
+            this.threads = threads;
+            this.queue = queue;
+            this.stage = stage;
+            this.ordered = ordered;
+            this.batchStage = null;
+            this.maxBatch = 1;
+            this.maxWaitNanos = 0;
+        }
+
+        // Single-threaded batch node, so batches leave in queue order
+        Node(String name, FrameBuffer<T> queue, BatchStage<T> batchStage, int maxBatch, long maxWaitMs) {
+            this.name = name;
+            this.threads = 1;
+            this.queue = queue;
+            this.stage = null;
+            this.ordered = false;
+            this.batchStage = batchStage;
+            this.maxBatch = Math.max(1, maxBatch);
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        }
+    }
+
+    public static class Builder<T> {
+        private final List<Node<T>> nodes = new ArrayList<>();
+        private Consumer<T> release = item -> { };
+        private MetricsRegistry metrics;
+        private String metricsPrefix = "";
+
+        /**
+         * Appends a stage. Keep {@code threads} at 1 for stages whose output order matters,
+         * since parallel workers may finish items out of order, or use {@link #orderedStage}.
+         */
+        public Builder<T> stage(String name, int threads, int queueCapacity, BackpressurePolicy policy,
+                                long blockTimeoutMs, Stage<T> stage) {
+            nodes.add(new Node<>(name, Math.max(1, threads),
+                    new RingFrameBuffer<>(queueCapacity, policy, blockTimeoutMs), stage, false));
+            return this;
+        }
+
+        /**
+         * Appends a stage whose workers run in parallel but hand items to the next stage in the order
+         * they were taken. An item that finishes early waits for the ones taken before it.
+         */
+        public Builder<T> orderedStage(String name, int threads, int queueCapacity, Stage<T> stage) {
+            nodes.add(new Node<>(name, Math.max(1, threads),
+                    new RingFrameBuffer<>(queueCapacity, BackpressurePolicy.DROP_OLDEST, 0), stage, true));
+            return this;
+        }
+
+        public Builder<T> orderedStage(String name, int threads, FrameBuffer<T> input, Stage<T> stage) {
+            nodes.add(new Node<>(name, Math.max(1, threads), input, stage, true));
+            return this;
+        }
+
+        public Builder<T> stage(String name, int threads, int queueCapacity, Stage<T> stage) {
+            return stage(name, threads, queueCapacity, BackpressurePolicy.DROP_OLDEST, 0, stage);
+        }
+
+        // Stage fed by a caller-supplied buffer, e.g. a StreamScheduler multiplexing several inputs
+        public Builder<T> stage(String name, int threads, FrameBuffer<T> input, Stage<T> stage) {
+            nodes.add(new Node<>(name, Math.max(1, threads), input, stage, false));
+            return this;
+        }
+
+        /**
+         * Appends a stage that processes up to {@code maxBatch} items per call. After the first item
+         * arrives the worker waits at most {@code maxWaitMs} for more, trading that much latency for
+         * fewer, larger calls. Metrics add {@code <prefix>stage.<name>.batches}; processed counts items.
+         */
+        public Builder<T> batchStage(String name, int maxBatch, long maxWaitMs, int queueCapacity,
+                                     BatchStage<T> stage) {
+            nodes.add(new Node<>(name, new RingFrameBuffer<>(queueCapacity, BackpressurePolicy.DROP_OLDEST, 0),
+                    stage, maxBatch, maxWaitMs));
+            return this;
+        }
+
+        public Builder<T> batchStage(String name, int maxBatch, long maxWaitMs, FrameBuffer<T> input,
+                                     BatchStage<T> stage) {
+            nodes.add(new Node<>(name, input, stage, maxBatch, maxWaitMs));
+            return this;
+        }
+
+        // Called exactly once for every item leaving the graph
+        public Builder<T> release(Consumer<T> release) {
+            this.release = release;
+            return this;
+        }
+
+        /**
+         * Registers stage metrics as {@code <prefix>stage.<name>.latency|processed|depth}.
+         * Without a registry the metrics are still kept and readable through the graph.
+         */
+        public Builder<T> metrics(MetricsRegistry registry, String prefix) {
+            this.metrics = registry;
+            this.metricsPrefix = prefix;
+            return this;
+        }
+
+        public StageGraph<T> build() {
+            if (nodes.isEmpty()) throw new IllegalStateException("StageGraph needs at least one stage");
+            for (Node<T> node : nodes) {
+                String name = metricsPrefix + "stage." + node.name;
+                if (metrics != null) {
+                    node.latency = metrics.histogram(name + ".latency");
+                    node.processed = metrics.counter(name + ".processed");
+                    node.batches = node.batchStage != null ? metrics.counter(name + ".batches") : new AtomicLong();
+                    metrics.gauge(name + ".depth", node.queue::size);
+                } else {
+                    node.latency = new LatencyHistogram(name + ".latency");
+                    node.processed = new AtomicLong();
+                    node.batches = new AtomicLong();
+                }
+            }
+            return new StageGraph<>(Collections.unmodifiableList(new ArrayList<>(nodes)), release);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Input buffer with one bounded lane per stream, drained in smooth weighted round-robin order.
+ * Each lane applies its own {@link BackpressurePolicy}, so a bursty stream only sheds its own
+ * items and a stream with weight w gets w turns for every turn of a weight-1 stream while both have work.
+ */
+public class StreamScheduler<T> implements FrameBuffer<T> {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10;
+    private static final long MAX_PARK_NANOS = 1_000_000L; // 1 ms, guards against a missed unpark
+
+    private final ToIntFunction<T> streamKey;
+    private final Object lanesLock = new Object();
+    private volatile Lane<T>[] lanes = newLanes(0);
+    private final AtomicReference<Thread> waiter = new AtomicReference<>();
+    private volatile Consumer<T> dropListener;
+
+    public StreamScheduler(ToIntFunction<T> streamKey) {
+        this.streamKey = streamKey;
+    }
+
+    /**
+     * Registers a lane. Re-adding an existing stream id replaces its lane; queued items are dropped.
+     *
+     * @param weight relative share of turns while other lanes also have items
+     */
+    public void addStream(int streamId, int weight, int capacity, BackpressurePolicy policy, long blockTimeoutMs) {
+        Lane<T> lane = new Lane<>(streamId, Math.max(1, weight),
+                new RingFrameBuffer<>(capacity, policy, blockTimeoutMs));
+        lane.queue.setDropListener(this::notifyDropped);
+        Lane<T> replaced = null;
+        synchronized (lanesLock) {
+            Lane<T>[] current = lanes;
+            int index = indexOf(current, streamId);
+            Lane<T>[] next;
+            if (index >= 0) {
+                replaced = current[index];
+                next = current.clone();
+                next[index] = lane;
+            } else {
+                next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = lane;
+            }
+            lanes = next;
+        }
+        if (replaced != null) replaced.queue.clear();
+    }
+
+    public void removeStream(int streamId) {
+        Lane<T> removed;
+        synchronized (lanesLock) {
+            Lane<T>[] current = lanes;
+            int index = indexOf(current, streamId);
+            if (index < 0) return;
+            removed = current[index];
+            Lane<T>[] next = newLanes(current.length - 1);
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            lanes = next;
+        }
+        removed.queue.clear();
+    }
+
+    // Drops the stream's queued items but keeps its lane
+    public void clearStream(int streamId) {
+        Lane<T> lane = find(streamId);
+        if (lane != null) lane.queue.clear();
+    }
+
+    /** Routes the item to its stream's lane. Items for unknown streams are dropped. */
+    @Override
+    public boolean offer(T item) {
+        Lane<T> lane = find(streamKey.applyAsInt(item));
+        if (lane == null) {
+            notifyDropped(item);
+            return false;
+        }
+        boolean accepted = lane.queue.offer(item);
+        if (accepted) wake();
+        return accepted;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item;
+        int spins = 0;
+        while ((item = poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (spins < SPIN_TRIES) {
+                spins++;
+            } else if (spins < SPIN_TRIES + YIELD_TRIES) {
+                spins++;
+                Thread.yield();
+            } else {
+                park(MAX_PARK_NANOS);
+            }
+        }
+        return item;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        T item;
+        int spins = 0;
+        while ((item = poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            if (spins < SPIN_TRIES) {
+                spins++;
+            } else {
+                park(remaining);
+            }
+        }
+        return item;
+    }
+
+    /** Non-blocking take from the next lane in weighted round-robin order; null when all lanes are empty. */
+    public T poll() {
+        Lane<T>[] current = lanes;
+        // Selection state is shared; consumers are few, so a short critical section is cheaper than retries
+        synchronized (this) {
+            while (true) {
+                Lane<T> best = null;
+                int totalWeight = 0;
+                for (Lane<T> lane : current) {
+                    if (lane.queue.size() == 0) continue;
+                    lane.currentWeight += lane.weight;
+                    totalWeight += lane.weight;
+                    if (best == null || lane.currentWeight > best.currentWeight) best = lane;
+                }
+                if (best == null) return null;
+                best.currentWeight -= totalWeight;
+                T item = best.queue.pollCounted();
+                if (item != null) return item;
+                // Lane emptied between size() and poll(); pick again
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Lane<T> lane : lanes) {
+            lane.queue.clear();
+        }
+    }
+
+    @Override
+    public void setDropListener(Consumer<T> listener) {
+        this.dropListener = listener;
+    }
+
+    public BufferStats getStats(int streamId) {
+        Lane<T> lane = find(streamId);
+        return lane != null ? lane.queue.getStats() : null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane<T> lane : lanes) {
+            size += lane.queue.size();
+        }
+        return size;
+    }
+
+    private Lane<T> find(int streamId) {
+        Lane<T>[] current = lanes;
+        int index = indexOf(current, streamId);
+        return index >= 0 ? current[index] : null;
+    }
+
+    private void notifyDropped(T item) {
+        Consumer<T> listener = dropListener;
+        if (listener != null) listener.accept(item);
+    }
+
+    private void park(long maxNanos) {
+        Thread current = Thread.currentThread();
+        waiter.set(current);
+        // Re-check after publishing ourselves so a concurrent offer cannot be missed
+        if (size() == 0) {
+            LockSupport.parkNanos(this, Math.min(maxNanos, MAX_PARK_NANOS));
+        }
+        waiter.compareAndSet(current, null);
+    }
+
+    private void wake() {
+        Thread thread = waiter.get();
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static <T> int indexOf(Lane<T>[] lanes, int streamId) {
+        for (int i = 0; i < lanes.length; i++) {
+            if (lanes[i].streamId == streamId) return i;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Lane<T>[] newLanes(int length) {
+        return (Lane<T>[]) new Lane[length];
+    }
+
+    private static final class Lane<T> {
+        final int streamId;
+        final int weight;
+        final RingFrameBuffer<T> queue;
+        // Guarded by the scheduler's monitor
+        int currentWeight;
+
+        Lane(int streamId, int weight, RingFrameBuffer<T> queue) {
+            this.streamId = streamId;
+            this.weight = weight;
+            this.queue = queue;
+        }
+    }
+}
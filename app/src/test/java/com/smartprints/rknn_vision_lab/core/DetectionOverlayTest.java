@@ -0,0 +1,135 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import android.graphics.Rect;
+
+import com.smartprints.rknn_vision_lab.inference.DetectionChannel;
+import com.smartprints.rknn_vision_lab.inference.DetectionResult;
+import com.smartprints.rknn_vision_lab.video.pipeline.FakeFramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Where {@link DetectionOverlay} puts the latest boxes on a newer frame: hidden once stale,
+ * scaled to the frame, and moved along their last motion when extrapolating.
+ */
+public class DetectionOverlayTest {
+    private static final int SOURCE = 4;
+
+    private final FakeFramePool pool = new FakeFramePool();
+    private final DetectionChannel channel = new DetectionChannel();
+    private final DetectionOverlay overlay = new DetectionOverlay();
+    private final float[] boxes = new float[8];
+
+    @Test
+    public void boxesAreDrawnWhereTheyWere() {
+        publish(0, 100, 100, box(0, 10, 20, 30, 40));
+        assertEquals(1, place(frame(SOURCE, ms(30), 100, 100)));
+        assertBox(10, 20, 30, 40);
+    }
+
+    @Test
+    public void boxesScaleToTheFrameSize() {
+        publish(0, 100, 50, box(0, 10, 20, 30, 40));
+        assertEquals(1, place(frame(SOURCE, ms(10), 200, 200)));
+        assertBox(20, 80, 60, 160);
+    }
+
+    @Test
+    public void staleResultsAreHidden() {
+        publish(0, 100, 100, box(0, 10, 20, 30, 40));
+        assertEquals(1, place(frame(SOURCE, ms(500), 100, 100)));
+        assertEquals(0, place(frame(SOURCE, ms(501), 100, 100)));
+    }
+
+    @Test
+    public void resultsOfAnotherSourceAreHidden() {
+        publish(0, 100, 100, box(0, 10, 20, 30, 40));
+        assertEquals(0, place(frame(SOURCE + 1, ms(10), 100, 100)));
+    }
+
+    @Test
+    public void extrapolationFollowsTheLastMotion() {
+        overlay.setExtrapolate(true);
+        // 4 px right and 2 px down per 100 ms
+        publish(ms(0), 100, 100, box(0, 10, 20, 30, 40));
+        publish(ms(100), 100, 100, box(0, 14, 22, 34, 42));
+        assertEquals(1, place(frame(SOURCE, ms(150), 100, 100)));
+        assertBox(16, 23, 36, 43);
+    }
+
+    @Test
+    public void extrapolationStopsAtItsHorizon() {
+        overlay.setExtrapolate(true);
+        publish(ms(0), 100, 100, box(0, 10, 20, 30, 40));
+        publish(ms(100), 100, 100, box(0, 20, 20, 40, 40));
+        // 400 ms after the result, but boxes move for at most 200 ms
+        assertEquals(1, place(frame(SOURCE, ms(500), 100, 100)));
+        assertBox(40, 20, 60, 40);
+    }
+
+    @Test
+    public void withoutExtrapolationBoxesStayPut() {
+        publish(ms(0), 100, 100, box(0, 10, 20, 30, 40));
+        publish(ms(100), 100, 100, box(0, 20, 25, 40, 45));
+        assertEquals(1, place(frame(SOURCE, ms(150), 100, 100)));
+        assertBox(20, 25, 40, 45);
+    }
+
+    @Test
+    public void onlyMatchingBoxesMove() {
+        overlay.setExtrapolate(true);
+        publish(ms(0), 100, 100, box(1, 10, 20, 30, 40), box(0, 60, 60, 80, 80));
+        // The first box changed class and the second no longer overlaps its old place
+        publish(ms(100), 100, 100, box(0, 20, 20, 40, 40), box(0, 0, 60, 20, 80));
+        assertEquals(2, place(frame(SOURCE, ms(150), 100, 100)));
+        assertBox(20, 20, 40, 40);
+        assertEquals(Arrays.asList(0f, 60f, 20f, 80f),
+                Arrays.asList(boxes[4], boxes[5], boxes[6], boxes[7]));
+    }
+
+    private int place(Frame frame) {
+        int count = overlay.place(channel.snapshot(), frame, boxes);
+        frame.release();
+        return count;
+    }
+
+    private void publish(long captureNanos, int width, int height, DetectedObject... detections) {
+        Frame frame = frame(SOURCE, captureNanos, width, height);
+        channel.publish(new DetectionResult(frame, Arrays.asList(detections)));
+        frame.release();
+    }
+
+    private long sequence;
+
+    private Frame frame(int sourceId, long captureNanos, int width, int height) {
+        Frame frame = pool.lease(width, height);
+        frame.stamp(sourceId, sequence++, captureNanos, Frame.NO_PTS, 0, 0);
+        return frame;
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Fields are set directly since Rect's methods do nothing in host tests
+    private static DetectedObject box(int classIndex, int left, int top, int right, int bottom) {
+        Rect rect = new Rect();
+        rect.left = left;
+        rect.top = top;
+        rect.right = right;
+        rect.bottom = bottom;
+        return new DetectedObject(rect, 1f, classIndex);
+    }
+
+    private void assertBox(float left, float top, float right, float bottom) {
+        assertEquals(Arrays.asList(left, top, right, bottom), Arrays.asList(boxes[0], boxes[1], boxes[2], boxes[3]));
+    }
+}
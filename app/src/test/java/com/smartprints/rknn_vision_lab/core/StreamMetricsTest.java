@@ -0,0 +1,51 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.FakeFramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exact frame accounting in {@link StreamMetrics} from the sequence numbers sources stamp.
+ */
+public class StreamMetricsTest {
+    private final FakeFramePool pool = new FakeFramePool();
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final StreamMetrics metrics = new StreamMetrics(registry, "test.", new LatencyHistogram("test"));
+
+    @Test
+    public void sequencesGiveMissingAndReorderedFrames() {
+        VideoSourceTest.TestSource source = new VideoSourceTest.TestSource(pool);
+        Frame[] frames = new Frame[6];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = source.emit(i, 0);
+        }
+        // 2 never arrives and 3 arrives after 4: both count as missing at 4, then 3 as reordered
+        for (int i : new int[]{0, 1, 4, 3, 5}) {
+            metrics.onDelivered(frames[i]);
+        }
+        assertEquals(5, metrics.getDelivered());
+        assertEquals(2, metrics.getMissing());
+        assertEquals(1, metrics.getReordered());
+
+        // A new source restarts the sequence without counting a gap
+        VideoSourceTest.TestSource next = new VideoSourceTest.TestSource(pool);
+        next.emit(10, 0);
+        metrics.onDelivered(next.emit(11, 0));
+        assertEquals(2, metrics.getMissing());
+        assertEquals(1, metrics.getReordered());
+    }
+
+    @Test
+    public void countersAreRegisteredUnderThePrefix() {
+        metrics.onReceived();
+        metrics.onReceived();
+        metrics.onDropped();
+        assertEquals(2, registry.counter("test.received").get());
+        assertEquals(1, registry.counter("test.dropped").get());
+    }
+}
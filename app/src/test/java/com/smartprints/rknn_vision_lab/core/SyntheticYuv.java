@@ -0,0 +1,92 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Random YUV_420_888 planes laid out as a camera or decoder would hand them over, and the
+ * per-pixel float conversion {@link YuvToArgbConverter} replaced, as the reference it must match.
+ */
+final class SyntheticYuv {
+
+    enum Layout {
+        I420, NV12, NV21
+    }
+
+    final ByteBuffer y;
+    final ByteBuffer u;
+    final ByteBuffer v;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride;
+    final int width;
+    final int height;
+
+    // Rows are padded by `padding` bytes past the pixels
+    SyntheticYuv(Random random, Layout layout, int width, int height, int padding) {
+        this.width = width;
+        this.height = height;
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        yRowStride = width + padding;
+        byte[] luma = new byte[yRowStride * height];
+        random.nextBytes(luma);
+        y = ByteBuffer.wrap(luma);
+        if (layout == Layout.I420) {
+            uvPixelStride = 1;
+            uvRowStride = chromaWidth + padding;
+            byte[] cb = new byte[uvRowStride * chromaHeight];
+            byte[] cr = new byte[uvRowStride * chromaHeight];
+            random.nextBytes(cb);
+            random.nextBytes(cr);
+            u = ByteBuffer.wrap(cb);
+            v = ByteBuffer.wrap(cr);
+        } else {
+            // One interleaved plane; U and V are views offset by one byte, one short of the end
+            uvPixelStride = 2;
+            uvRowStride = chromaWidth * 2 + padding;
+            byte[] interleaved = new byte[uvRowStride * chromaHeight];
+            random.nextBytes(interleaved);
+            ByteBuffer first = ByteBuffer.wrap(interleaved, 0, interleaved.length - 1).slice();
+            ByteBuffer second = ByteBuffer.wrap(interleaved, 1, interleaved.length - 1).slice();
+            u = layout == Layout.NV12 ? first : second;
+            v = layout == Layout.NV12 ? second : first;
+        }
+    }
+
+    void convert(YuvToArgbConverter converter, int[] argb) {
+        converter.convert(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride, width, height, argb);
+    }
+
+    void reference(int[] argb) {
+        SyntheticYuv.reference(y, yRowStride, 1, u, v, uvRowStride, uvPixelStride, width, height, argb);
+    }
+
+    // CameraUtils.yuv420ToArgb as it was before YuvToArgbConverter
+    static void reference(ByteBuffer yBuffer, int yRowStride, int yPixelStride, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                          int uvRowStride, int uvPixelStride, int width, int height, int[] pixelBuffer) {
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int yVal = (yBuffer.get(y * yRowStride + x * yPixelStride) & 0xFF);
+
+                int uvX = x / 2;
+                int uvY = y / 2;
+                int uvIndex = uvY * uvRowStride + uvX * uvPixelStride;
+
+                int uVal = (uBuffer.get(uvIndex) & 0xFF) - 128;
+                int vVal = (vBuffer.get(uvIndex) & 0xFF) - 128;
+
+                float rFloat = yVal + 1.402f * vVal;
+                float gFloat = yVal - 0.34414f * uVal - 0.71414f * vVal;
+                float bFloat = yVal + 1.772f * uVal;
+
+                int r = (int) Math.max(0, Math.min(255, rFloat));
+                int g = (int) Math.max(0, Math.min(255, gFloat));
+                int b = (int) Math.max(0, Math.min(255, bFloat));
+
+                pixelBuffer[offset++] = (0xFF << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
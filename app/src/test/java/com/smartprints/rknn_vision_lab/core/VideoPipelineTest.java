@@ -0,0 +1,215 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.elvishew.xlog.LogLevel;
+import com.elvishew.xlog.XLog;
+import com.smartprints.rknn_vision_lab.inference.InferenceEngine;
+import com.smartprints.rknn_vision_lab.inference.InferenceJob;
+import com.smartprints.rknn_vision_lab.video.pipeline.BackpressurePolicy;
+import com.smartprints.rknn_vision_lab.video.pipeline.DropReason;
+import com.smartprints.rknn_vision_lab.video.pipeline.FakeFramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pausing a {@link VideoPipeline}: queued frames are dropped at a frame boundary while the worker
+ * threads and the engine stay up, so resuming needs no restart.
+ */
+public class VideoPipelineTest {
+    private final FakeFramePool pool = new FakeFramePool();
+    private final GatedEngine engine = new GatedEngine();
+    private final BlockingQueue<String> delivered = new LinkedBlockingQueue<>();
+    private VideoPipeline pipeline;
+    private VideoSourceTest.TestSource source;
+
+    @BeforeClass
+    public static void initLogging() {
+        XLog.init(LogLevel.NONE);
+    }
+
+    @Before
+    public void setUp() {
+        pipeline = new VideoPipeline(engine, null, BackpressurePolicy.DROP_NEWEST,
+                PipelinePreset.CLASSIC, DisplayMode.INFERRED_FRAMES, BatchSettings.DEFAULT);
+        pipeline.getDefaultStream().setResultListener((stream, frame, detections) -> delivered.add(stamp(frame)));
+        source = new VideoSourceTest.TestSource(pool);
+    }
+
+    @After
+    public void tearDown() {
+        engine.unblock();
+        pipeline.close();
+    }
+
+    @Test
+    public void pauseDropsQueuedFramesAndKeepsTheWorkers() throws Exception {
+        pipeline.start();
+        engine.block();
+        pipeline.onFrameReady(source.emit(0, 0));
+        assertTrue("Frame 0 reached the engine", engine.awaitEntered());
+        Frame queued1 = source.emit(1, 0);
+        Frame queued2 = source.emit(2, 0);
+        pipeline.onFrameReady(queued1);
+        pipeline.onFrameReady(queued2);
+        assertEquals(2, pipeline.getIngestStats().getDepth());
+
+        pipeline.pause();
+        assertEquals(0, pipeline.getIngestStats().getDepth());
+        assertEquals(2, pipeline.getIngestStats().getDropped(DropReason.CLEARED));
+        assertReleased(queued1);
+        assertReleased(queued2);
+        Frame whilePaused = source.emit(3, 0);
+        pipeline.onFrameReady(whilePaused);
+        assertReleased(whilePaused);
+
+        // The frame in flight finishes normally
+        engine.unblock();
+        assertEquals(stamp(source, 0), delivered.poll(5, TimeUnit.SECONDS));
+
+        pipeline.resume();
+        pipeline.onFrameReady(source.emit(4, 0));
+        assertEquals("Runs on the same workers without a restart", stamp(source, 4), delivered.poll(5, TimeUnit.SECONDS));
+        assertTrue(delivered.isEmpty());
+        assertFalse(engine.closed);
+        assertEquals(3, awaitMissing(3));
+    }
+
+    @Test
+    public void stopAndStartKeepTheEngine() throws Exception {
+        pipeline.start();
+        pipeline.onFrameReady(source.emit(0, 0));
+        assertEquals(stamp(source, 0), delivered.poll(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        Frame whileStopped = source.emit(1, 0);
+        pipeline.onFrameReady(whileStopped);
+        assertReleased(whileStopped);
+
+        pipeline.start();
+        pipeline.onFrameReady(source.emit(2, 0));
+        assertEquals(stamp(source, 2), delivered.poll(5, TimeUnit.SECONDS));
+        assertFalse(engine.closed);
+        pipeline.close();
+        assertTrue(engine.closed);
+    }
+
+    @Test
+    public void attachingASourceDropsTheOldSourcesFrames() throws Exception {
+        pipeline.start();
+        engine.block();
+        pipeline.onFrameReady(source.emit(0, 0));
+        assertTrue(engine.awaitEntered());
+        Frame queued = source.emit(1, 0);
+        pipeline.onFrameReady(queued);
+
+        VideoSourceTest.TestSource next = new VideoSourceTest.TestSource(pool);
+        pipeline.getDefaultStream().attach(next);
+        assertReleased(queued);
+        Frame stray = source.emit(2, 0);
+        pipeline.onFrameReady(stray);
+        assertReleased(stray);
+
+        engine.unblock();
+        pipeline.onFrameReady(next.emit(10, 0));
+        // Frame 0 of the old source was in flight and is not delivered
+        assertEquals(stamp(next, 0), delivered.poll(5, TimeUnit.SECONDS));
+        assertEquals(next.getSourceId(), pipeline.getDefaultStream().getActiveSourceId());
+        assertNull(delivered.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    // Metrics count a result once its listener has returned
+    private long awaitMissing(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        long missing;
+        while ((missing = pipeline.getDefaultStream().getMetrics().getMissing()) != expected
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return missing;
+    }
+
+    private static String stamp(Frame frame) {
+        return frame.getSourceId() + "/" + frame.getSequence();
+    }
+
+    private static String stamp(VideoSource source, long sequence) {
+        return source.getSourceId() + "/" + sequence;
+    }
+
+    private static void assertReleased(Frame frame) {
+        try {
+            frame.retain();
+            fail("Frame still held");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    // Passes frames through; infer() waits while blocked
+    private static final class GatedEngine implements InferenceEngine {
+        private final Semaphore entered = new Semaphore(0);
+        private boolean blocked;
+        volatile boolean closed;
+
+        synchronized void block() {
+            blocked = true;
+        }
+
+        synchronized void unblock() {
+            blocked = false;
+            notifyAll();
+        }
+
+        boolean awaitEntered() throws InterruptedException {
+            return entered.tryAcquire(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public Frame process(Frame input) {
+            return input.retain();
+        }
+
+        @Override
+        public void preprocess(InferenceJob job) {
+        }
+
+        @Override
+        public void infer(InferenceJob job) {
+            entered.release();
+            synchronized (this) {
+                while (blocked) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            job.setServedBy("gated");
+        }
+
+        @Override
+        public void postprocess(InferenceJob job) {
+            job.setDetections(Collections.emptyList());
+        }
+
+        @Override
+        public void annotate(InferenceJob job) {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
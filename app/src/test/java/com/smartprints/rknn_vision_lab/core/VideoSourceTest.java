@@ -0,0 +1,76 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import android.graphics.ImageFormat;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.FakeFramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The stamp each {@link VideoSource} puts on its frames: source id, per-source sequence and capture details.
+ */
+public class VideoSourceTest {
+    private final FakeFramePool pool = new FakeFramePool();
+
+    @Test
+    public void sourcesStampTheirIdAndASequence() {
+        TestSource first = new TestSource(pool);
+        TestSource second = new TestSource(pool);
+        assertNotEquals(first.getSourceId(), second.getSourceId());
+
+        for (int i = 0; i < 3; i++) {
+            Frame frame = first.emit(1000 + i, 90);
+            assertEquals(first.getSourceId(), frame.getSourceId());
+            assertEquals(i, frame.getSequence());
+            assertEquals(1000 + i, frame.getCaptureNanos());
+            assertEquals(90, frame.getRotationDegrees());
+            assertEquals(ImageFormat.YUV_420_888, frame.getSourcePixelFormat());
+            frame.release();
+        }
+        Frame other = second.emit(2000, 0);
+        assertEquals(second.getSourceId(), other.getSourceId());
+        assertEquals("Sequences are per source", 0, other.getSequence());
+        assertEquals(3, first.getFrameCount());
+    }
+
+    @Test
+    public void aLeaseClearsTheLastStamp() {
+        TestSource source = new TestSource(pool);
+        Frame frame = source.emit(1000, 180);
+        frame.release();
+        Frame again = pool.lease(4, 3);
+        assertSame(frame, again);
+        assertEquals(-1, again.getSourceId());
+        assertEquals(-1, again.getSequence());
+        assertEquals(Frame.NO_PTS, again.getPtsUs());
+        assertEquals(0, again.getRotationDegrees());
+        assertEquals(ImageFormat.UNKNOWN, again.getSourcePixelFormat());
+    }
+
+    static final class TestSource extends VideoSource {
+        TestSource(FakeFramePool pool) {
+            super(pool);
+        }
+
+        Frame emit(long captureNanos, int rotationDegrees) {
+            return stamp(((FakeFramePool) framePool).lease(4, 3), captureNanos, captureNanos / 1000,
+                    rotationDegrees, ImageFormat.YUV_420_888);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean isRunning() {
+            return false;
+        }
+    }
+}
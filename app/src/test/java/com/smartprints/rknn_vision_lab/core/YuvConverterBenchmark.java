@@ -0,0 +1,56 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times {@link YuvToArgbConverter} against the per-pixel float conversion it replaced on 1280x720
+ * frames of each layout. Skipped unless benchmarks are asked for:
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests '*YuvConverterBenchmark' -Pbenchmark
+ * </pre>
+ */
+public class YuvConverterBenchmark {
+    private static final long MIN_RUN_NANOS = 300_000_000L;
+
+    @Test
+    public void convert720p() {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        Random random = new Random(7);
+        StringBuilder report = new StringBuilder();
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            SyntheticYuv planes = new SyntheticYuv(random, layout, 1280, 720, 64);
+            int[] argb = new int[1280 * 720];
+            report.append(String.format(Locale.US, "%s 1280x720%n", layout));
+            time(report, "reference", () -> planes.reference(argb));
+            for (int threads : new int[]{1, 2, 4}) {
+                try (YuvToArgbConverter converter = new YuvToArgbConverter(threads)) {
+                    time(report, "fixed point, " + threads + " thread" + (threads == 1 ? "" : "s"),
+                            () -> planes.convert(converter, argb));
+                }
+            }
+        }
+        System.out.print(report);
+    }
+
+    private static void time(StringBuilder report, String name, Runnable benchmark) {
+        // Warm up, then take the median of repeated timings
+        for (int i = 0; i < 20; i++) {
+            benchmark.run();
+        }
+        long[] samples = new long[64];
+        int n = 0;
+        long start = System.nanoTime();
+        while (n < samples.length && (n < 5 || System.nanoTime() - start < MIN_RUN_NANOS)) {
+            long t = System.nanoTime();
+            benchmark.run();
+            samples[n++] = System.nanoTime() - t;
+        }
+        Arrays.sort(samples, 0, n);
+        report.append(String.format(Locale.US, "  %-24s %8.2f ms%n", name, samples[n / 2] / 1e6));
+    }
+}
@@ -0,0 +1,204 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.ModelInput;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link YuvLetterboxKernel} against the unfused path it replaced: convert the whole frame to
+ * ARGB, rotate and mirror it, resize it bilinearly into the letterbox and pad the rest gray.
+ */
+public class YuvLetterboxKernelTest {
+    private static final int PAD = 114;
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    // At scale 1 every tap has weight zero, so the kernel must be bit-exact with the converter
+    @Test
+    public void unscaledFramesMatchExactly() {
+        Random random = new Random(3);
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            SyntheticYuv planes = new SyntheticYuv(random, layout, 33, 17, 13);
+            for (int rotation : ROTATIONS) {
+                boolean sideways = rotation % 180 != 0;
+                int width = sideways ? 17 : 33;
+                int height = sideways ? 33 : 17;
+                for (boolean mirror : new boolean[]{false, true}) {
+                    // Padding on one axis, split unevenly
+                    check(planes, new YuvLetterboxKernel(width, height + 7), rotation, mirror, 0);
+                    check(planes, new YuvLetterboxKernel(width + 7, height), rotation, mirror, 0);
+                }
+            }
+        }
+    }
+
+    // Resizing interpolates YUV before converting rather than after, which only differs by rounding
+    // while every interpolated color stays inside the RGB range
+    @Test
+    public void scaledFramesMatchWithinRounding() {
+        Random random = new Random(5);
+        int[][] sizes = {{1, 1}, {3, 5}, {33, 17}, {64, 48}, {321, 239}};
+        int[][] inputs = {{64, 64}, {96, 40}, {7, 9}};
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            for (int[] size : sizes) {
+                SyntheticYuv planes = inGamut(random, new SyntheticYuv(random, layout, size[0], size[1], 13));
+                for (int[] input : inputs) {
+                    // One kernel across orientations also checks its cached tables
+                    YuvLetterboxKernel kernel = new YuvLetterboxKernel(input[0], input[1]);
+                    for (int rotation : ROTATIONS) {
+                        for (boolean mirror : new boolean[]{false, true}) {
+                            check(planes, kernel, rotation, mirror, 2);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotationsBeyondAFullTurnWrap() {
+        SyntheticYuv planes = new SyntheticYuv(new Random(9), SyntheticYuv.Layout.NV12, 20, 10, 0);
+        YuvLetterboxKernel kernel = new YuvLetterboxKernel(16, 16);
+        ModelInput expected = new ModelInput();
+        ModelInput actual = new ModelInput();
+        convert(planes, kernel, 90, false, expected);
+        convert(planes, kernel, -270, false, actual);
+        assertArrayEquals(expected.getPixels(), actual.getPixels());
+        convert(planes, kernel, 450, false, actual);
+        assertArrayEquals(expected.getPixels(), actual.getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherRotationsAreRejected() {
+        SyntheticYuv planes = new SyntheticYuv(new Random(9), SyntheticYuv.Layout.NV12, 20, 10, 0);
+        convert(planes, new YuvLetterboxKernel(16, 16), 45, false, new ModelInput());
+    }
+
+    private static void check(SyntheticYuv planes, YuvLetterboxKernel kernel, int rotation, boolean mirror,
+                              int tolerance) {
+        ModelInput input = new ModelInput();
+        convert(planes, kernel, rotation, mirror, input);
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int[] expected = unfused(planes, width, height, rotation, mirror);
+        byte[] actual = input.getPixels();
+        String where = planes.width + "x" + planes.height + " into " + width + "x" + height
+                + " rotated " + rotation + (mirror ? " mirrored" : "");
+        for (int i = 0; i < width * height; i++) {
+            for (int c = 0; c < 3; c++) {
+                int want = expected[i] == -1 ? PAD : (expected[i] >> (16 - 8 * c)) & 0xFF;
+                int got = actual[3 * i + c] & 0xFF;
+                if (Math.abs(want - got) > tolerance) {
+                    fail(where + ": pixel (" + i % width + ", " + i / width + ") channel " + c
+                            + " is " + got + ", expected " + want);
+                }
+            }
+        }
+    }
+
+    private static void convert(SyntheticYuv planes, YuvLetterboxKernel kernel, int rotation, boolean mirror,
+                                ModelInput input) {
+        kernel.convert(planes.y, planes.yRowStride, 1, planes.u, planes.v, planes.uvRowStride,
+                planes.uvPixelStride, planes.width, planes.height, rotation, mirror, input);
+    }
+
+    // Letterboxed ARGB the unfused path would produce, with -1 for padding
+    private static int[] unfused(SyntheticYuv planes, int width, int height, int rotation, boolean mirror) {
+        int sourceWidth = planes.width;
+        int sourceHeight = planes.height;
+        int[] argb = new int[sourceWidth * sourceHeight];
+        planes.reference(argb);
+
+        // Rotate clockwise, then mirror left to right
+        boolean sideways = rotation % 180 != 0;
+        int rotatedWidth = sideways ? sourceHeight : sourceWidth;
+        int rotatedHeight = sideways ? sourceWidth : sourceHeight;
+        int[] upright = new int[argb.length];
+        for (int y = 0; y < rotatedHeight; y++) {
+            for (int x = 0; x < rotatedWidth; x++) {
+                int mx = mirror ? rotatedWidth - 1 - x : x;
+                int sx;
+                int sy;
+                switch (rotation) {
+                    case 90:
+                        sx = y;
+                        sy = sourceHeight - 1 - mx;
+                        break;
+                    case 180:
+                        sx = sourceWidth - 1 - mx;
+                        sy = sourceHeight - 1 - y;
+                        break;
+                    case 270:
+                        sx = sourceWidth - 1 - y;
+                        sy = mx;
+                        break;
+                    default:
+                        sx = mx;
+                        sy = y;
+                }
+                upright[y * rotatedWidth + x] = argb[sy * sourceWidth + sx];
+            }
+        }
+
+        // Whole pixels of content, centered
+        float fit = Math.min((float) width / rotatedWidth, (float) height / rotatedHeight);
+        int contentWidth = Math.max(1, Math.min(width, Math.round(rotatedWidth * fit)));
+        int contentHeight = Math.max(1, Math.min(height, Math.round(rotatedHeight * fit)));
+        int padX = (width - contentWidth) / 2;
+        int padY = (height - contentHeight) / 2;
+
+        int[] out = new int[width * height];
+        Arrays.fill(out, -1);
+        for (int y = 0; y < contentHeight; y++) {
+            float sy = tap(y, contentHeight, rotatedHeight);
+            int y0 = (int) sy;
+            int y1 = Math.min(y0 + 1, rotatedHeight - 1);
+            float fy = sy - y0;
+            for (int x = 0; x < contentWidth; x++) {
+                float sx = tap(x, contentWidth, rotatedWidth);
+                int x0 = (int) sx;
+                int x1 = Math.min(x0 + 1, rotatedWidth - 1);
+                float fx = sx - x0;
+                int pixel = 0;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    float top = channel(upright, rotatedWidth, x0, y0, shift) * (1 - fx)
+                            + channel(upright, rotatedWidth, x1, y0, shift) * fx;
+                    float bottom = channel(upright, rotatedWidth, x0, y1, shift) * (1 - fx)
+                            + channel(upright, rotatedWidth, x1, y1, shift) * fx;
+                    pixel |= Math.round(top * (1 - fy) + bottom * fy) << shift;
+                }
+                out[(padY + y) * width + padX + x] = pixel;
+            }
+        }
+        return out;
+    }
+
+    // Source coordinate of an output pixel center, pixel centers aligned
+    private static float tap(int i, int outputLength, int sourceLength) {
+        float s = (i + 0.5f) * sourceLength / outputLength - 0.5f;
+        return Math.max(0, Math.min(sourceLength - 1, s));
+    }
+
+    private static int channel(int[] argb, int width, int x, int y, int shift) {
+        return (argb[y * width + x] >> shift) & 0xFF;
+    }
+
+    // Rewrites the planes so every color, and every blend of colors, converts without clamping
+    private static SyntheticYuv inGamut(Random random, SyntheticYuv planes) {
+        fill(random, planes.y, 80, 90);
+        fill(random, planes.u, 108, 40);
+        fill(random, planes.v, 108, 40);
+        return planes;
+    }
+
+    private static void fill(Random random, ByteBuffer plane, int from, int range) {
+        for (int i = 0; i < plane.limit(); i++) {
+            plane.put(i, (byte) (from + random.nextInt(range + 1)));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.smartprints.rknn_vision_lab.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link YuvToArgbConverter} must be bit-exact with the float conversion it replaced, for every
+ * input value and for every plane layout the camera and decoders produce.
+ */
+public class YuvToArgbConverterTest {
+
+    // A 256x2 frame per (U, V) pair: chroma is shared by each 2x2 block, so every luma value meets every (U, V)
+    @Test
+    public void everyYuvTripleMatchesTheFloatFormula() {
+        int[] expected = new int[256 * 2];
+        int[] actual = new int[256 * 2];
+        ByteBuffer y = ByteBuffer.allocate(256 * 2);
+        ByteBuffer u = ByteBuffer.allocate(128);
+        ByteBuffer v = ByteBuffer.allocate(128);
+        for (int i = 0; i < 256; i++) {
+            y.put(i, (byte) i);
+            y.put(256 + i, (byte) (255 - i));
+        }
+        try (YuvToArgbConverter converter = new YuvToArgbConverter()) {
+            for (int uv = 0; uv < 256 * 256; uv++) {
+                for (int c = 0; c < 128; c++) {
+                    u.put(c, (byte) (uv >> 8));
+                    v.put(c, (byte) uv);
+                }
+                SyntheticYuv.reference(y, 256, 1, u, v, 128, 1, 256, 2, expected);
+                converter.convert(y, 256, 1, u, v, 128, 1, 256, 2, actual);
+                assertArrayEquals("U=" + (uv >> 8) + " V=" + (uv & 0xFF), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void i420FramesMatch() {
+        checkFrames(SyntheticYuv.Layout.I420);
+    }
+
+    @Test
+    public void nv12FramesMatch() {
+        checkFrames(SyntheticYuv.Layout.NV12);
+    }
+
+    @Test
+    public void nv21FramesMatch() {
+        checkFrames(SyntheticYuv.Layout.NV21);
+    }
+
+    @Test
+    public void planePositionsAreLeftUntouched() {
+        SyntheticYuv planes = new SyntheticYuv(new Random(1), SyntheticYuv.Layout.NV12, 64, 48, 0);
+        planes.y.position(5);
+        planes.u.position(3);
+        try (YuvToArgbConverter converter = new YuvToArgbConverter(2)) {
+            planes.convert(converter, new int[64 * 48]);
+        }
+        assertEquals(5, planes.y.position());
+        assertEquals(3, planes.u.position());
+        assertEquals(0, planes.v.position());
+    }
+
+    // Odd sizes leave a half chroma block at the right and bottom edges; padding checks the strides
+    private static void checkFrames(SyntheticYuv.Layout layout) {
+        Random random = new Random(7 + layout.ordinal());
+        int[][] sizes = {{1, 1}, {3, 5}, {33, 17}, {640, 480}, {1279, 721}};
+        for (int[] size : sizes) {
+            for (int padding : new int[]{0, 13}) {
+                SyntheticYuv planes = new SyntheticYuv(random, layout, size[0], size[1], padding);
+                int[] expected = new int[size[0] * size[1]];
+                planes.reference(expected);
+                for (int threads : new int[]{1, 3}) {
+                    int[] actual = new int[size[0] * size[1]];
+                    try (YuvToArgbConverter converter = new YuvToArgbConverter(threads)) {
+                        planes.convert(converter, actual);
+                    }
+                    assertArrayEquals(layout + " " + size[0] + "x" + size[1] + " padding " + padding
+                            + " on " + threads + " threads", expected, actual);
+                }
+            }
+        }
+    }
+}
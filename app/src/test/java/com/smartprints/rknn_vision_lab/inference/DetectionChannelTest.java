@@ -0,0 +1,93 @@
+package com.smartprints.rknn_vision_lab.inference;
+
+import com.smartprints.rknn_vision_lab.video.pipeline.FakeFramePool;
+import com.smartprints.rknn_vision_lab.video.pipeline.Frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DetectionChannel} keeps the newest result per source and the one before it.
+ */
+public class DetectionChannelTest {
+    private final FakeFramePool pool = new FakeFramePool();
+    private final DetectionChannel channel = new DetectionChannel();
+
+    @Test
+    public void theLatestResultWins() {
+        assertNull(channel.snapshot());
+        channel.publish(result(1, 0));
+        channel.publish(result(1, 1));
+        DetectionChannel.Snapshot snapshot = channel.snapshot();
+        assertEquals(1, snapshot.getCurrent().getSequence());
+        assertEquals(0, snapshot.getPrevious().getSequence());
+    }
+
+    @Test
+    public void olderResultsOfTheSameSourceAreIgnored() {
+        channel.publish(result(1, 5));
+        channel.publish(result(1, 3));
+        channel.publish(result(1, 5));
+        DetectionChannel.Snapshot snapshot = channel.snapshot();
+        assertEquals(5, snapshot.getCurrent().getSequence());
+        assertNull(snapshot.getPrevious());
+    }
+
+    @Test
+    public void anotherSourceStartsWithoutAPrevious() {
+        channel.publish(result(1, 5));
+        channel.publish(result(2, 0));
+        DetectionChannel.Snapshot snapshot = channel.snapshot();
+        assertEquals(2, snapshot.getCurrent().getSourceId());
+        assertNull(snapshot.getPrevious());
+        channel.clear();
+        assertNull(channel.snapshot());
+    }
+
+    @Test
+    public void resultsKeepTheirFrameStamp() {
+        DetectionResult result = result(3, 7);
+        assertEquals(3, result.getSourceId());
+        assertEquals(7, result.getSequence());
+        assertEquals(7_000, result.getCaptureNanos());
+        assertEquals(64, result.getFrameWidth());
+        assertEquals(48, result.getFrameHeight());
+        assertTrue(result.getDetections().isEmpty());
+    }
+
+    @Test
+    public void concurrentPublishersLeaveTheNewest() throws Exception {
+        int threads = 4;
+        int perThread = 2_000;
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    channel.publish(result(1, (long) i * threads + offset));
+                }
+            });
+            publishers.add(publisher);
+            publisher.start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        DetectionChannel.Snapshot snapshot = channel.snapshot();
+        assertEquals((long) perThread * threads - 1, snapshot.getCurrent().getSequence());
+        assertTrue(snapshot.getPrevious().getSequence() < snapshot.getCurrent().getSequence());
+    }
+
+    private DetectionResult result(int sourceId, long sequence) {
+        Frame frame = pool.lease(64, 48);
+        frame.stamp(sourceId, sequence, sequence * 1000, Frame.NO_PTS, 0, 0);
+        DetectionResult result = new DetectionResult(frame, Collections.emptyList());
+        frame.release();
+        return result;
+    }
+}
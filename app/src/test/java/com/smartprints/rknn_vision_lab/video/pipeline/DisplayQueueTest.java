@@ -0,0 +1,158 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DisplayQueue} bounds: bytes and age evict the oldest frames, takes skip to the newest,
+ * and every frame that leaves without being taken goes to the drop listener.
+ */
+public class DisplayQueueTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+    private static final long FRAME_BYTES = 4L * WIDTH * HEIGHT;
+
+    private final FakeFramePool pool = new FakeFramePool(8);
+    private final List<Frame> dropped = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void theByteBudgetEvictsTheOldest() {
+        DisplayQueue<Frame> queue = queue(2 * FRAME_BYTES, 10_000);
+        Frame first = lease();
+        Frame second = lease();
+        Frame third = lease();
+        queue.offer(first);
+        queue.offer(second);
+        assertEquals(2 * FRAME_BYTES, queue.getBytes());
+        queue.offer(third);
+        assertEquals(Collections.singletonList(first), dropped);
+        assertEquals(2, queue.size());
+        assertEquals(2 * FRAME_BYTES, queue.getBytes());
+        assertEquals(1, queue.getDroppedCount(DropReason.STALE));
+    }
+
+    @Test
+    public void theNewestFrameIsKeptEvenOverBudget() {
+        DisplayQueue<Frame> queue = queue(FRAME_BYTES / 2, 10_000);
+        Frame first = lease();
+        Frame second = lease();
+        queue.offer(first);
+        assertEquals(1, queue.size());
+        queue.offer(second);
+        assertEquals(Collections.singletonList(first), dropped);
+        assertSame(second, queue.pollNewest());
+        assertEquals(0, queue.getBytes());
+    }
+
+    @Test
+    public void theAgeBudgetEvictsTheOldest() throws Exception {
+        DisplayQueue<Frame> queue = queue(Long.MAX_VALUE, 20);
+        Frame old = lease();
+        queue.offer(old);
+        Thread.sleep(40);
+        Frame fresh = lease();
+        queue.offer(fresh);
+        assertEquals(Collections.singletonList(old), dropped);
+        Thread.sleep(40);
+        assertNull("Expired while queued", queue.pollNewest());
+        assertEquals(Arrays.asList(old, fresh), dropped);
+        assertEquals(2, queue.getDroppedCount(DropReason.STALE));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void takesReturnTheNewestAndSupersedeTheRest() throws Exception {
+        DisplayQueue<Frame> queue = queue(Long.MAX_VALUE, 10_000);
+        Frame first = lease();
+        Frame second = lease();
+        Frame third = lease();
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(third);
+        assertSame(third, queue.take());
+        assertEquals(Arrays.asList(first, second), dropped);
+        assertEquals(2, queue.getDroppedCount(DropReason.SUPERSEDED));
+        assertEquals(0, queue.size());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void droppedFramesGoBackToThePool() throws Exception {
+        DisplayQueue<Frame> queue = new DisplayQueue<>(FRAME_BYTES, 10_000, frame -> FRAME_BYTES);
+        queue.setDropListener(Frame::release);
+        Frame evicted = lease();
+        Frame superseded = lease();
+        Frame cleared = lease();
+        queue.offer(evicted);
+        queue.offer(superseded);
+        queue.offer(lease());
+        // The byte budget evicted the first; a take supersedes the second
+        queue.take().release();
+        queue.offer(cleared);
+        queue.clear();
+        assertEquals(1, queue.getDroppedCount(DropReason.CLEARED));
+
+        List<Frame> reused = Arrays.asList(lease(), lease(), lease(), lease());
+        assertTrue(reused.containsAll(Arrays.asList(evicted, superseded, cleared)));
+        assertEquals(4, pool.getAllocated());
+    }
+
+    @Test
+    public void everyFrameIsTakenOrDroppedOnce() throws Exception {
+        int producers = 3;
+        int perProducer = 20_000;
+        DisplayQueue<Integer> queue = new DisplayQueue<>(4, 10_000, item -> 1);
+        AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        queue.setDropListener(item -> seen.incrementAndGet(item));
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(offset + i);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread consumer = new Thread(() -> {
+            try {
+                while (true) {
+                    Integer item = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (item == null) return;
+                    seen.incrementAndGet(item);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        });
+        consumer.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        consumer.join();
+        queue.clear();
+        for (int i = 0; i < seen.length(); i++) {
+            assertEquals("Item " + i, 1, seen.get(i));
+        }
+    }
+
+    private DisplayQueue<Frame> queue(long maxBytes, long maxAgeMs) {
+        // Fake frames have no bitmap to measure
+        DisplayQueue<Frame> queue = new DisplayQueue<>(maxBytes, maxAgeMs, frame -> FRAME_BYTES);
+        queue.setDropListener(dropped::add);
+        return queue;
+    }
+
+    private Frame lease() {
+        return pool.lease(WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,44 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link FramePool} whose frames have no bitmap, for tests on the host where Android bitmaps
+ * cannot be created. Counts the bitmaps the pool would have allocated and recycled.
+ */
+public class FakeFramePool extends FramePool {
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger disposed = new AtomicInteger();
+
+    public FakeFramePool() {
+    }
+
+    public FakeFramePool(int framesPerSize) {
+        super(framesPerSize);
+    }
+
+    public Frame lease(int width, int height) {
+        return lease(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public int getAllocated() {
+        return allocated.get();
+    }
+
+    public int getDisposed() {
+        return disposed.get();
+    }
+
+    @Override
+    Bitmap allocate(int width, int height, Bitmap.Config config) {
+        allocated.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    void dispose(Bitmap bitmap) {
+        disposed.incrementAndGet();
+    }
+}
@@ -0,0 +1,89 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reference counting of {@link Frame}s and reuse of their bitmaps by {@link FramePool}.
+ */
+public class FramePoolTest {
+    private final FakeFramePool pool = new FakeFramePool(2);
+
+    @Test
+    public void theLastReleaseReturnsTheFrame() {
+        Frame frame = pool.lease(4, 3);
+        frame.retain().retain();
+        frame.release();
+        frame.release();
+        assertNotSame("Still held once", frame, pool.lease(4, 3));
+        frame.release();
+        assertSame(frame, pool.lease(4, 3));
+        assertEquals(2, pool.getAllocated());
+        assertEquals(0, pool.getDisposed());
+    }
+
+    @Test
+    public void framesAreReusedBySizeAndConfig() {
+        Frame small = pool.lease(4, 3);
+        Frame large = pool.lease(8, 6);
+        Frame rgb565 = pool.lease(4, 3, Bitmap.Config.RGB_565);
+        small.release();
+        large.release();
+        rgb565.release();
+        assertSame(large, pool.lease(8, 6));
+        assertSame(small, pool.lease(4, 3));
+        assertSame(rgb565, pool.lease(4, 3, Bitmap.Config.RGB_565));
+        assertNotSame(small, pool.lease(4, 3));
+        assertEquals(4, pool.getAllocated());
+        assertEquals(4, small.getWidth());
+        assertEquals(3, small.getHeight());
+    }
+
+    @Test
+    public void framesBeyondTheBucketSizeAreRecycled() {
+        Frame[] frames = {pool.lease(4, 3), pool.lease(4, 3), pool.lease(4, 3)};
+        for (Frame frame : frames) {
+            frame.release();
+        }
+        assertEquals(1, pool.getDisposed());
+    }
+
+    @Test
+    public void releaseAfterCloseRecyclesTheBitmap() {
+        Frame idle = pool.lease(4, 3);
+        Frame leased = pool.lease(4, 3);
+        idle.release();
+        pool.close();
+        assertEquals("Idle frames go at close", 1, pool.getDisposed());
+        leased.release();
+        assertEquals("Leased frames go on release", 2, pool.getDisposed());
+        assertNotSame(leased, pool.lease(4, 3));
+    }
+
+    @Test
+    public void aDoubleReleaseFailsFast() {
+        Frame frame = pool.lease(4, 3);
+        frame.release();
+        try {
+            frame.release();
+            fail("Released twice");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame("The pool still holds the frame once", frame, pool.lease(4, 3));
+        assertNotSame(frame, pool.lease(4, 3));
+    }
+
+    @Test
+    public void retainAfterReleaseFailsFast() {
+        Frame frame = pool.lease(4, 3);
+        frame.release();
+        try {
+            frame.retain();
+            fail("Retained a released frame");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hand-off throughput of {@link RingFrameBuffer} against the locked {@link FrameReaderBuffer} it
+ * replaced, both dropping the oldest item, for several producer and consumer counts. Skipped unless
+ * benchmarks are asked for:
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests '*RingFrameBufferBenchmark' -Pbenchmark
+ * </pre>
+ */
+public class RingFrameBufferBenchmark {
+    private static final long RUN_NANOS = 200_000_000L;
+    private static final int RUNS = 5;
+    private static final int CAPACITY = 64;
+    private static final Object ITEM = new Object();
+
+    @Test
+    public void handOff() throws Exception {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        StringBuilder report = new StringBuilder();
+        int[][] shapes = {{1, 1}, {2, 2}, {4, 1}, {4, 4}};
+        for (int[] shape : shapes) {
+            report.append(String.format(Locale.US, "%d producer(s), %d consumer(s)%n", shape[0], shape[1]));
+            time(report, "FrameReaderBuffer", () -> new FrameReaderBuffer<>(CAPACITY), shape[0], shape[1]);
+            time(report, "RingFrameBuffer", () -> new RingFrameBuffer<>(CAPACITY), shape[0], shape[1]);
+        }
+        System.out.print(report);
+    }
+
+    private static void time(StringBuilder report, String name, Supplier<FrameBuffer<Object>> buffers,
+                             int producers, int consumers) throws Exception {
+        // Warm up, then take the median of timed runs
+        run(buffers.get(), producers, consumers);
+        double[] taken = new double[RUNS];
+        double[] dropped = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long[] counts = run(buffers.get(), producers, consumers);
+            taken[i] = counts[0] * 1e3 / RUN_NANOS;
+            dropped[i] = counts[1] * 1e3 / RUN_NANOS;
+        }
+        Arrays.sort(taken);
+        Arrays.sort(dropped);
+        report.append(String.format(Locale.US, "  %-18s %8.2f M taken/s %8.2f M dropped/s%n",
+                name, taken[RUNS / 2], dropped[RUNS / 2]));
+    }
+
+    // Returns {taken, dropped} over one run of RUN_NANOS
+    private static long[] run(FrameBuffer<Object> buffer, int producers, int consumers) throws Exception {
+        AtomicLong taken = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+        buffer.setDropListener(item -> dropped.incrementAndGet());
+        CountDownLatch go = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                await(go);
+                while (System.nanoTime() < deadline[0]) {
+                    buffer.offer(ITEM);
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                await(go);
+                long count = 0;
+                try {
+                    while (System.nanoTime() < deadline[0]) {
+                        if (buffer.poll(1, TimeUnit.MILLISECONDS) != null) count++;
+                    }
+                } catch (InterruptedException ignored) {
+                }
+                taken.addAndGet(count);
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        deadline[0] = System.nanoTime() + RUN_NANOS;
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new long[]{taken.get(), dropped.get()};
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RingFrameBuffer} under each backpressure policy, with several producers and consumers
+ * checking that every offered item is either taken once, dropped once or still queued.
+ */
+public class RingFrameBufferTest {
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final List<Integer> drops = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new RingFrameBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingFrameBuffer<Integer>(8).capacity());
+        assertEquals(1, new RingFrameBuffer<Integer>(0).capacity());
+        assertEquals("Latest-only keeps one slot", 1,
+                new RingFrameBuffer<Integer>(16, BackpressurePolicy.LATEST_ONLY, 0).capacity());
+    }
+
+    @Test
+    public void itemsLeaveInOfferOrder() throws Exception {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(round * 4 + i));
+            }
+            assertEquals(4, buffer.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(round * 4 + i, (int) buffer.take());
+            }
+        }
+        assertEquals(0, buffer.size());
+        assertNull(buffer.poll());
+        assertEquals(12, buffer.getTakenCount());
+    }
+
+    @Test
+    public void dropOldestEvictsTheOldestItems() throws Exception {
+        RingFrameBuffer<Integer> buffer = buffer(4, BackpressurePolicy.DROP_OLDEST, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue("The new item is always kept", buffer.offer(i));
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), drops);
+        assertEquals(Arrays.asList(6, 7, 8, 9), drainAll(buffer));
+        BufferStats stats = buffer.getStats();
+        assertEquals(10, stats.getOffered());
+        assertEquals(4, stats.getTaken());
+        assertEquals(6, stats.getDropped(DropReason.EVICTED_OLDEST));
+        assertEquals(6, stats.getShed());
+    }
+
+    @Test
+    public void dropNewestRejectsTheIncomingItem() throws Exception {
+        RingFrameBuffer<Integer> buffer = buffer(2, BackpressurePolicy.DROP_NEWEST, 0);
+        assertTrue(buffer.offer(0));
+        assertTrue(buffer.offer(1));
+        assertFalse(buffer.offer(2));
+        assertFalse(buffer.offer(3));
+        assertEquals(Arrays.asList(2, 3), drops);
+        assertEquals(Arrays.asList(0, 1), drainAll(buffer));
+        assertEquals(2, buffer.getDroppedCount(DropReason.REJECTED_NEWEST));
+    }
+
+    @Test
+    public void latestOnlyKeepsTheNewestItem() throws Exception {
+        RingFrameBuffer<Integer> buffer = buffer(8, BackpressurePolicy.LATEST_ONLY, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(2, (int) buffer.take());
+        assertEquals(Arrays.asList(0, 1), drops);
+        assertEquals(2, buffer.getDroppedCount(DropReason.SUPERSEDED));
+        assertEquals(0, buffer.getDroppedCount(DropReason.EVICTED_OLDEST));
+    }
+
+    @Test
+    public void blockWaitsForSpace() throws Exception {
+        RingFrameBuffer<Integer> buffer = buffer(1, BackpressurePolicy.BLOCK, 10_000);
+        assertTrue(buffer.offer(0));
+        Future<Boolean> blocked = threads.submit(() -> buffer.offer(1));
+        Thread.sleep(50);
+        assertFalse("The producer waits while the buffer is full", blocked.isDone());
+        assertEquals(0, (int) buffer.take());
+        assertTrue(blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(1, (int) buffer.take());
+        assertTrue(drops.isEmpty());
+    }
+
+    @Test
+    public void blockRejectsAfterTheTimeout() {
+        RingFrameBuffer<Integer> buffer = buffer(1, BackpressurePolicy.BLOCK, 50);
+        assertTrue(buffer.offer(0));
+        long start = System.nanoTime();
+        assertFalse(buffer.offer(1));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(45));
+        assertEquals(Collections.singletonList(1), drops);
+        assertEquals(1, buffer.getDroppedCount(DropReason.TIMED_OUT));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void severalBlockedProducersAllGetThrough() throws Exception {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(1, 0, BackpressurePolicy.BLOCK, 10_000);
+        assertTrue(buffer.offer(0));
+        List<Future<Boolean>> producers = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            int item = i;
+            producers.add(threads.submit(() -> buffer.offer(item)));
+        }
+        List<Integer> taken = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Integer item = buffer.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Took " + taken, item);
+            taken.add(item);
+        }
+        for (Future<Boolean> producer : producers) {
+            assertTrue(producer.get(5, TimeUnit.SECONDS));
+        }
+        Collections.sort(taken);
+        assertEquals(Arrays.asList(0, 1, 2, 3), taken);
+    }
+
+    @Test
+    public void clearHandsEveryItemToTheListener() {
+        RingFrameBuffer<Integer> buffer = buffer(4, BackpressurePolicy.DROP_OLDEST, 0);
+        buffer.offer(0);
+        buffer.offer(1);
+        buffer.clear();
+        assertEquals(Arrays.asList(0, 1), drops);
+        assertEquals(2, buffer.getDroppedCount(DropReason.CLEARED));
+        assertEquals("Clearing is not shedding", 0, buffer.getStats().getShed());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void pollGivesUpAfterTheTimeout() throws Exception {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(4, 0);
+        assertNull(buffer.poll(0, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        assertNull(buffer.poll(30, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(25));
+        assertEquals(0, buffer.getTakenCount());
+    }
+
+    @Test
+    public void interruptedTakeThrows() throws Exception {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(4, 0);
+        Future<Integer> waiting = threads.submit(buffer::take);
+        Thread.sleep(20);
+        threads.shutdownNow();
+        try {
+            waiting.get(5, TimeUnit.SECONDS);
+            fail("Took an item from an empty buffer");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof InterruptedException);
+        }
+    }
+
+    @Test
+    public void everyParkedConsumerWakes() throws Exception {
+        // No spinning, so every consumer parks right away
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(8, 0);
+        int consumers = 4;
+        CountDownLatch started = new CountDownLatch(consumers);
+        List<Future<Integer>> taken = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            taken.add(threads.submit(() -> {
+                started.countDown();
+                return buffer.take();
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        for (int i = 0; i < consumers; i++) {
+            buffer.offer(i);
+        }
+        List<Integer> items = new ArrayList<>();
+        for (Future<Integer> consumer : taken) {
+            items.add(consumer.get(5, TimeUnit.SECONDS));
+        }
+        Collections.sort(items);
+        assertEquals(Arrays.asList(0, 1, 2, 3), items);
+    }
+
+    @Test
+    public void blockingProducersAndConsumersLoseNothing() throws Exception {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(16, 10, BackpressurePolicy.BLOCK, 60_000);
+        int total = runProducersAndConsumers(buffer, 4, 4, 20_000, new AtomicIntegerArray(4 * 20_000));
+        assertEquals(4 * 20_000, total);
+        BufferStats stats = buffer.getStats();
+        assertEquals(4 * 20_000, stats.getOffered());
+        assertEquals(4 * 20_000, stats.getTaken());
+        assertEquals(0, stats.getShed());
+    }
+
+    @Test
+    public void droppingProducersAccountForEveryItem() throws Exception {
+        for (BackpressurePolicy policy : new BackpressurePolicy[]{
+                BackpressurePolicy.DROP_OLDEST, BackpressurePolicy.DROP_NEWEST, BackpressurePolicy.LATEST_ONLY}) {
+            AtomicIntegerArray seen = new AtomicIntegerArray(4 * 20_000);
+            RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(8, 10, policy, 0);
+            buffer.setDropListener(item -> seen.incrementAndGet(item));
+            int taken = runProducersAndConsumers(buffer, 4, 2, 20_000, seen);
+            List<Integer> left = drainAll(buffer);
+            for (int item : left) {
+                seen.incrementAndGet(item);
+            }
+            for (int i = 0; i < seen.length(); i++) {
+                assertEquals(policy + " item " + i, 1, seen.get(i));
+            }
+            BufferStats stats = buffer.getStats();
+            assertEquals(policy.toString(), 4 * 20_000, stats.getOffered());
+            assertEquals(policy.toString(), stats.getOffered(), taken + stats.getShed() + left.size());
+        }
+    }
+
+    private RingFrameBuffer<Integer> buffer(int capacity, BackpressurePolicy policy, long blockTimeoutMs) {
+        RingFrameBuffer<Integer> buffer = new RingFrameBuffer<>(capacity, policy, blockTimeoutMs);
+        buffer.setDropListener(drops::add);
+        return buffer;
+    }
+
+    /**
+     * Producers offer disjoint ranges of item numbers while consumers take until the producers are
+     * done and the buffer looks empty. Taken items are counted in {@code seen}; returns how many were taken.
+     */
+    private int runProducersAndConsumers(RingFrameBuffer<Integer> buffer, int producers, int consumers,
+                                         int perProducer, AtomicIntegerArray seen) throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch produced = new CountDownLatch(producers);
+        AtomicLong taken = new AtomicLong();
+        List<Future<?>> running = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            running.add(threads.submit(() -> {
+                go.await();
+                for (int i = first; i < first + perProducer; i++) {
+                    buffer.offer(i);
+                }
+                produced.countDown();
+                return null;
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            running.add(threads.submit(() -> {
+                go.await();
+                while (true) {
+                    Integer item = buffer.poll(1, TimeUnit.MILLISECONDS);
+                    if (item != null) {
+                        seen.incrementAndGet(item);
+                        taken.incrementAndGet();
+                    } else if (produced.getCount() == 0) {
+                        return null;
+                    }
+                }
+            }));
+        }
+        go.countDown();
+        for (Future<?> thread : running) {
+            thread.get(60, TimeUnit.SECONDS);
+        }
+        if (buffer.getStats().getShed() == 0) {
+            for (int i = 0; i < producers * perProducer; i++) {
+                assertEquals("Item " + i, 1, seen.get(i));
+            }
+        }
+        return (int) taken.get();
+    }
+
+    private static List<Integer> drainAll(RingFrameBuffer<Integer> buffer) {
+        List<Integer> items = new ArrayList<>();
+        Integer item;
+        while ((item = buffer.pollCounted()) != null) {
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,112 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * How {@link StageGraph.Builder#batchStage} gathers items: a batch leaves as soon as it is full, or
+ * once its first item has waited {@code maxWaitMs}.
+ */
+public class StageGraphTest {
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final BlockingQueue<Integer> released = new LinkedBlockingQueue<>();
+    private StageGraph<Integer> graph;
+
+    @After
+    public void tearDown() {
+        if (graph != null) graph.stop();
+    }
+
+    @Test
+    public void fullBatchesLeaveWithoutWaiting() throws Exception {
+        graph = batchGraph(4, 10_000);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(graph.submit(i));
+        }
+        long start = System.nanoTime();
+        graph.start();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), awaitReleased(8));
+        assertTrue("Full batches do not wait for the 10 s limit",
+                System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7)), batches);
+        assertEquals(2, metrics.counter("test.stage.batch.batches").get());
+        assertEquals(8, metrics.counter("test.stage.batch.processed").get());
+    }
+
+    @Test
+    public void partialBatchesLeaveAfterTheMaxWait() throws Exception {
+        graph = batchGraph(4, 100);
+        graph.start();
+        long start = System.nanoTime();
+        graph.submit(1);
+        graph.submit(2);
+        assertEquals(Arrays.asList(1, 2), awaitReleased(2));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Left after " + waitedMs + " ms", waitedMs >= 90);
+        assertEquals(Collections.singletonList(Arrays.asList(1, 2)), batches);
+        assertEquals(1, metrics.counter("test.stage.batch.batches").get());
+    }
+
+    @Test
+    public void zeroMaxWaitTakesOnlyWhatIsQueued() throws Exception {
+        graph = batchGraph(4, 0);
+        graph.submit(1);
+        graph.start();
+        assertEquals(Collections.singletonList(1), awaitReleased(1));
+        assertEquals(Collections.singletonList(Collections.singletonList(1)), batches);
+    }
+
+    @Test
+    public void batchItemsMoveOnOneByOne() throws Exception {
+        List<Integer> next = Collections.synchronizedList(new ArrayList<>());
+        graph = new StageGraph.Builder<Integer>()
+                .batchStage("batch", 3, 10_000, 8, this::record)
+                .stage("next", 1, 8, next::add)
+                .release(released::add)
+                .metrics(metrics, "test.")
+                .build();
+        for (int i = 0; i < 3; i++) {
+            graph.submit(i);
+        }
+        graph.start();
+        assertEquals(Arrays.asList(0, 1, 2), awaitReleased(3));
+        assertEquals(Arrays.asList(0, 1, 2), next);
+        assertEquals(3, metrics.counter("test.stage.next.processed").get());
+    }
+
+    private StageGraph<Integer> batchGraph(int maxBatch, long maxWaitMs) {
+        return new StageGraph.Builder<Integer>()
+                .batchStage("batch", maxBatch, maxWaitMs, 16, this::record)
+                .release(released::add)
+                .metrics(metrics, "test.")
+                .build();
+    }
+
+    private void record(List<Integer> items) {
+        // The worker reuses its list for the next batch
+        batches.add(new ArrayList<>(items));
+    }
+
+    private List<Integer> awaitReleased(int count) throws InterruptedException {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Integer item = released.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Released " + items + " of " + count, item);
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,176 @@
+package com.smartprints.rknn_vision_lab.video.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-stream lanes of {@link StreamScheduler}: each lane sheds under its own policy, and busy lanes
+ * are drained in smooth weighted round-robin order.
+ */
+public class StreamSchedulerTest {
+    // Items are {streamId, index}
+    private final StreamScheduler<int[]> scheduler = new StreamScheduler<>(item -> item[0]);
+    private final List<int[]> dropped = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void equalWeightsAlternate() {
+        scheduler.addStream(0, 1, 8, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(1, 1, 8, BackpressurePolicy.DROP_NEWEST, 0);
+        offer(0, 4);
+        offer(1, 4);
+        assertEquals(Arrays.asList(0, 1, 0, 1, 0, 1, 0, 1), drainStreams());
+    }
+
+    @Test
+    public void weightsSetTheShareOfTurns() {
+        scheduler.addStream(0, 3, 16, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(1, 1, 16, BackpressurePolicy.DROP_NEWEST, 0);
+        offer(0, 12);
+        offer(1, 12);
+        List<Integer> order = drainStreams();
+        // Smooth: the weight-1 stream gets one of every four turns, never bunched up
+        assertEquals(Arrays.asList(0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0), order.subList(0, 16));
+        // Once the weight-3 stream runs dry the other stream has the scheduler to itself
+        assertEquals(Collections.nCopies(8, 1), order.subList(16, 24));
+    }
+
+    @Test
+    public void idleLanesAreSkipped() {
+        scheduler.addStream(0, 1, 8, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(1, 1, 8, BackpressurePolicy.DROP_NEWEST, 0);
+        offer(1, 3);
+        assertEquals(Arrays.asList(1, 1, 1), drainStreams());
+        // Stream 0 banked no turns while it had nothing queued
+        offer(0, 2);
+        offer(1, 2);
+        assertEquals(Arrays.asList(0, 1, 0, 1), drainStreams());
+    }
+
+    @Test
+    public void eachLaneShedsUnderItsOwnPolicy() {
+        scheduler.setDropListener(dropped::add);
+        scheduler.addStream(0, 1, 2, BackpressurePolicy.DROP_OLDEST, 0);
+        scheduler.addStream(1, 1, 2, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(2, 1, 2, BackpressurePolicy.LATEST_ONLY, 0);
+        offer(0, 4);
+        offer(1, 4);
+        offer(2, 4);
+
+        List<int[]> taken = drain();
+        assertEquals(Arrays.asList(2, 3), indexes(taken, 0));
+        assertEquals(Arrays.asList(0, 1), indexes(taken, 1));
+        assertEquals(Collections.singletonList(3), indexes(taken, 2));
+        assertEquals(2, scheduler.getStats(0).getDropped(DropReason.EVICTED_OLDEST));
+        assertEquals(2, scheduler.getStats(1).getDropped(DropReason.REJECTED_NEWEST));
+        assertEquals(3, scheduler.getStats(2).getDropped(DropReason.SUPERSEDED));
+        assertEquals(7, dropped.size());
+    }
+
+    @Test
+    public void aBurstyStreamOnlyShedsItsOwnItems() {
+        scheduler.addStream(0, 1, 2, BackpressurePolicy.DROP_OLDEST, 0);
+        scheduler.addStream(1, 1, 2, BackpressurePolicy.DROP_OLDEST, 0);
+        offer(1, 1);
+        offer(0, 100);
+        assertEquals(98, scheduler.getStats(0).getShed());
+        assertEquals(0, scheduler.getStats(1).getShed());
+        assertEquals(Arrays.asList(0, 1, 0), drainStreams());
+    }
+
+    @Test
+    public void blockingLanesTimeOutWithoutHoldingUpOthers() {
+        scheduler.addStream(0, 1, 1, BackpressurePolicy.BLOCK, 20);
+        scheduler.addStream(1, 1, 1, BackpressurePolicy.DROP_NEWEST, 0);
+        assertTrue(scheduler.offer(new int[]{0, 0}));
+        long start = System.nanoTime();
+        assertFalse(scheduler.offer(new int[]{0, 1}));
+        assertTrue("Waited for the timeout",
+                System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertTrue(scheduler.offer(new int[]{1, 0}));
+        assertEquals(1, scheduler.getStats(0).getDropped(DropReason.TIMED_OUT));
+    }
+
+    @Test
+    public void itemsForUnknownStreamsAreDropped() {
+        scheduler.setDropListener(dropped::add);
+        scheduler.addStream(0, 1, 2, BackpressurePolicy.DROP_NEWEST, 0);
+        assertFalse(scheduler.offer(new int[]{7, 0}));
+        assertEquals(1, dropped.size());
+        assertNull(scheduler.getStats(7));
+    }
+
+    @Test
+    public void clearingAStreamKeepsItsLane() {
+        scheduler.setDropListener(dropped::add);
+        scheduler.addStream(0, 1, 4, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(1, 1, 4, BackpressurePolicy.DROP_NEWEST, 0);
+        offer(0, 3);
+        offer(1, 2);
+        scheduler.clearStream(0);
+        assertEquals(3, dropped.size());
+        assertEquals(2, scheduler.size());
+        offer(0, 1);
+        assertEquals(Arrays.asList(0, 1, 1), drainStreams());
+        scheduler.removeStream(1);
+        assertNull(scheduler.getStats(1));
+    }
+
+    @Test
+    public void pollWaitsForAnyLane() throws Exception {
+        scheduler.addStream(0, 1, 2, BackpressurePolicy.DROP_NEWEST, 0);
+        scheduler.addStream(1, 1, 2, BackpressurePolicy.DROP_NEWEST, 0);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+            scheduler.offer(new int[]{1, 0});
+        });
+        producer.start();
+        int[] item = scheduler.poll(5, TimeUnit.SECONDS);
+        producer.join();
+        assertNotNull(item);
+        assertEquals(1, item[0]);
+        assertNull(scheduler.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    private void offer(int streamId, int count) {
+        for (int i = 0; i < count; i++) {
+            scheduler.offer(new int[]{streamId, i});
+        }
+    }
+
+    private List<int[]> drain() {
+        List<int[]> items = new ArrayList<>();
+        int[] item;
+        while ((item = scheduler.poll()) != null) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    // Stream of each item, in the order taken
+    private List<Integer> drainStreams() {
+        List<Integer> streams = new ArrayList<>();
+        for (int[] item : drain()) {
+            streams.add(item[0]);
+        }
+        return streams;
+    }
+
+    private static List<Integer> indexes(List<int[]> items, int streamId) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int[] item : items) {
+            if (item[0] == streamId) indexes.add(item[1]);
+        }
+        return indexes;
+    }
+}
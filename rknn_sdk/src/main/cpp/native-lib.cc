@@ -30,51 +30,259 @@ static char* jstringToChar(JNIEnv* env, jstring jstr) {
 }
 
 
+// Context handles are YoloContext pointers owned by the Java InferenceWrapper instance
+static YoloContext *toContext(jlong handle) {
+	return reinterpret_cast<YoloContext *>(handle);
+}
+
 extern "C"
-JNIEXPORT jint JNICALL Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1init_1yolo
+JNIEXPORT jlong JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1init_1yolo
   (JNIEnv *env, jobject obj, jint im_height, jint im_width, jint im_channel,
-   jstring model_path)
+   jstring model_path, jboolean quantized_outputs)
 {
 	char *model_path_p = jstringToChar(env, model_path);
-	return create(im_height, im_width, im_channel, model_path_p);
+	YoloContext *yolo = create(im_height, im_width, im_channel, model_path_p, quantized_outputs == JNI_TRUE);
+	delete[] model_path_p;
+	return reinterpret_cast<jlong>(yolo);
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1dup_1context
+  (JNIEnv *env, jobject obj, jlong handle, jint core_mask)
+{
+	return reinterpret_cast<jlong>(dup_context(toContext(handle), core_mask));
+}
+
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1set_1core_1mask
+  (JNIEnv *env, jobject obj, jlong handle, jint core_mask)
+{
+	return set_core_mask(toContext(handle), core_mask);
 }
 
 
 extern "C"
-JNIEXPORT void JNICALL Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1de_1init_1yolo
-		(JNIEnv *env, jobject obj) {
-	destroy();
+JNIEXPORT void JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1de_1init_1yolo
+		(JNIEnv *env, jobject obj, jlong handle) {
+	destroy(toContext(handle));
 
 }
 
 extern "C"
-JNIEXPORT jint JNICALL Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1run_1yolo
-  (JNIEnv *env, jobject obj, jbyteArray in,
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1run_1yolo
+  (JNIEnv *env, jobject obj, jlong handle, jbyteArray in,
    jbyteArray grid0Out, jbyteArray grid1Out, jbyteArray grid2Out) {
 
 
-  	jboolean inputCopy = JNI_FALSE;
-  	jbyte* const inData = env->GetByteArrayElements(in, &inputCopy);
+	YoloContext *yolo = toContext(handle);
+	jsize in_size = env->GetArrayLength(in);
+	// Model-sized RGB888 is copied once, straight into the NPU input memory
+	int slot_size = 0;
+	char *slot = get_input_buffer(yolo, 0, &slot_size);
+	jbyte *inData = NULL;
+	if (slot && in_size == slot_size) {
+		env->GetByteArrayRegion(in, 0, in_size, (jbyte *) slot);
+	} else {
+		inData = env->GetByteArrayElements(in, NULL);
+	}
 
  	jboolean outputCopy = JNI_FALSE;
 
+	// Models with fewer than three outputs pass null for the rest
   	jbyte* const y0 = env->GetByteArrayElements(grid0Out, &outputCopy);
-	jbyte* const y1 = env->GetByteArrayElements(grid1Out, &outputCopy);
-	jbyte* const y2 = env->GetByteArrayElements(grid2Out, &outputCopy);
+	jbyte* const y1 = grid1Out ? env->GetByteArrayElements(grid1Out, &outputCopy) : NULL;
+	jbyte* const y2 = grid2Out ? env->GetByteArrayElements(grid2Out, &outputCopy) : NULL;
 
-	run_model((char *)inData, (char *)y0, (char *)y1, (char *)y2);
+	bool ok = run_model(yolo, inData ? (char *)inData : slot, in_size,
+						(char *)y0, (char *)y1, (char *)y2);
 
-	env->ReleaseByteArrayElements(in, inData, JNI_ABORT); // do not copy data back
+	if (inData) env->ReleaseByteArrayElements(in, inData, JNI_ABORT); // do not copy data back
 	env->ReleaseByteArrayElements(grid0Out, y0, 0); // 0 to copy data back
-	env->ReleaseByteArrayElements(grid1Out, y1, 0);
-	env->ReleaseByteArrayElements(grid2Out, y2, 0);
+	if (y1) env->ReleaseByteArrayElements(grid1Out, y1, 0);
+	if (y2) env->ReleaseByteArrayElements(grid2Out, y2, 0);
+
+	return ok ? 0 : -1;
+}
+
+// Same as native_run_yolo on length bytes of a direct buffer from offset; a buffer over the
+// context's own input memory, see native_get_input_buffer, is run without a copy
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1run_1yolo_1direct
+  (JNIEnv *env, jobject obj, jlong handle, jobject in, jint offset, jint length,
+   jbyteArray grid0Out, jbyteArray grid1Out, jbyteArray grid2Out) {
+
+	char *base = (char *) env->GetDirectBufferAddress(in);
+	if (!base || offset < 0 || length <= 0 || offset + length > env->GetDirectBufferCapacity(in)) return -1;
+
+	jbyte* const y0 = env->GetByteArrayElements(grid0Out, NULL);
+	jbyte* const y1 = grid1Out ? env->GetByteArrayElements(grid1Out, NULL) : NULL;
+	jbyte* const y2 = grid2Out ? env->GetByteArrayElements(grid2Out, NULL) : NULL;
+
+	bool ok = run_model(toContext(handle), base + offset, length, (char *)y0, (char *)y1, (char *)y2);
+
+	env->ReleaseByteArrayElements(grid0Out, y0, 0);
+	if (y1) env->ReleaseByteArrayElements(grid1Out, y1, 0);
+	if (y2) env->ReleaseByteArrayElements(grid2Out, y2, 0);
+
+	return ok ? 0 : -1;
+}
+
+// Runs a direct buffer like native_run_yolo_direct and leaves the outputs where the NPU wrote
+// them, readable through native_get_output_buffer until the next run on this context
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1run_1yolo_1in_1place
+  (JNIEnv *env, jobject obj, jlong handle, jobject in, jint offset, jint length) {
+
+	YoloContext *yolo = toContext(handle);
+	char *base = (char *) env->GetDirectBufferAddress(in);
+	if (!base || offset < 0 || length <= 0 || offset + length > env->GetDirectBufferCapacity(in)) return -1;
+
+	char *y[3] = {NULL, NULL, NULL};
+	int n_output = get_output_count(yolo);
+	for (int k = 0; k < n_output; ++k) {
+		int size = 0;
+		y[k] = get_output_buffer(yolo, k, 0, &size);
+		if (!y[k]) return -1;
+	}
+	return run_model(yolo, base + offset, length, y[0], y[1], y[2]) ? 0 : -1;
+}
+
+// Direct buffer over the memory of one output for batch image 0, sized from the queried output
+// attributes; valid until the context is released, null without zero-copy buffers
+extern "C"
+JNIEXPORT jobject JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1output_1buffer
+  (JNIEnv *env, jobject obj, jlong handle, jint output)
+{
+	int size = 0;
+	char *buffer = get_output_buffer(toContext(handle), output, 0, &size);
+	return buffer ? env->NewDirectByteBuffer(buffer, size) : NULL;
+}
+
+// Direct buffer over the NPU input memory of batch image index, valid until the context is
+// released; null if the context has none
+extern "C"
+JNIEXPORT jobject JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1input_1buffer
+  (JNIEnv *env, jobject obj, jlong handle, jint index)
+{
+	int size = 0;
+	char *buffer = get_input_buffer(toContext(handle), index, &size);
+	return buffer ? env->NewDirectByteBuffer(buffer, size) : NULL;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1batch_1size
+  (JNIEnv *env, jobject obj, jlong handle)
+{
+	return get_batch_size(toContext(handle));
+}
+
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1set_1batch_1core_1num
+  (JNIEnv *env, jobject obj, jlong handle, jint core_num)
+{
+	return set_batch_core_num(toContext(handle), core_num);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1output_1count
+  (JNIEnv *env, jobject obj, jlong handle)
+{
+	return get_output_count(toContext(handle));
+}
+
+// {format, type, zero point, dim0, dim1, ...} of one output, or null if the index is out of range
+extern "C"
+JNIEXPORT jintArray JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1output_1attr
+  (JNIEnv *env, jobject obj, jlong handle, jint index)
+{
+	const int max_dims = 16, header = 3;
+	jint attr[max_dims + header];
+	int fmt = 0, type = 0, zp = 0;
+	float scale = 0;
+	int n_dims = get_output_attr(toContext(handle), index, &fmt, &type, &zp, &scale,
+								 (int *) attr + header, max_dims);
+	if (n_dims < 0) return NULL;
+	attr[0] = fmt;
+	attr[1] = type;
+	attr[2] = zp;
+	jintArray result = env->NewIntArray(n_dims + header);
+	env->SetIntArrayRegion(result, 0, n_dims + header, attr);
+	return result;
+}
+
+// Affine quantization scale of one output, 0 if the index is out of range
+extern "C"
+JNIEXPORT jfloat JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1get_1output_1scale
+  (JNIEnv *env, jobject obj, jlong handle, jint index)
+{
+	int fmt = 0, type = 0, zp = 0, dims[16];
+	float scale = 0;
+	if (get_output_attr(toContext(handle), index, &fmt, &type, &zp, &scale, dims, 16) < 0) return 0;
+	return scale;
+}
 
-	return 0;
+extern "C"
+JNIEXPORT jint JNICALL Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1run_1yolo_1batch
+  (JNIEnv *env, jobject obj, jlong handle, jobjectArray in, jint count,
+   jobjectArray grid0Out, jobjectArray grid1Out, jobjectArray grid2Out) {
+
+	const int max_batch = 16;
+	if (count <= 0 || count > max_batch) return -1;
+
+	YoloContext *yolo = toContext(handle);
+	jbyteArray arrays[4][max_batch];
+	jbyte *elements[4][max_batch];
+	bool in_place[max_batch] = {false};
+	jobjectArray sources[4] = {in, grid0Out, grid1Out, grid2Out};
+	for (int a = 0; a < 4; ++a) {
+		for (int i = 0; i < count; ++i) {
+			arrays[a][i] = (jbyteArray) env->GetObjectArrayElement(sources[a], i);
+			elements[a][i] = NULL;
+		}
+	}
+
+	// One format per submission: every input must have the first one's size
+	jsize in_size = arrays[0][0] ? env->GetArrayLength(arrays[0][0]) : 0;
+	bool ok = true;
+	for (int i = 0; i < count; ++i) {
+		if (!arrays[0][i] || env->GetArrayLength(arrays[0][i]) != in_size) ok = false;
+	}
+	for (int a = 0; a < 4 && ok; ++a) {
+		for (int i = 0; i < count; ++i) {
+			if (!arrays[a][i]) continue;
+			int slot_size = 0;
+			char *slot = a == 0 ? get_input_buffer(yolo, i, &slot_size) : NULL;
+			if (slot && in_size == slot_size) {
+				// Model-sized RGB888 goes straight into the NPU input memory
+				env->GetByteArrayRegion(arrays[a][i], 0, in_size, (jbyte *) slot);
+				elements[a][i] = (jbyte *) slot;
+				in_place[i] = true;
+			} else {
+				elements[a][i] = env->GetByteArrayElements(arrays[a][i], NULL);
+			}
+		}
+	}
+	ok = ok && run_model_batch(yolo, (char **) elements[0], in_size, count,
+							   (char **) elements[1], (char **) elements[2], (char **) elements[3]);
+
+	for (int a = 0; a < 4; ++a) {
+		for (int i = 0; i < count; ++i) {
+			if (!arrays[a][i]) continue;
+			// Inputs are not copied back, outputs are
+			if (elements[a][i] && !(a == 0 && in_place[i])) {
+				env->ReleaseByteArrayElements(arrays[a][i], elements[a][i], a == 0 ? JNI_ABORT : 0);
+			}
+			env->DeleteLocalRef(arrays[a][i]);
+		}
+	}
+
+	return ok ? 0 : -1;
 }
 
 extern "C"
 JNIEXPORT jint JNICALL
-Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1post_1process_1yolo(JNIEnv *env, jobject thiz,
+Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1post_1process_1yolo(JNIEnv *env, jobject thiz,
+																			   jlong handle,
 																			   jbyteArray grid0_out,
 																			   jbyteArray grid1_out,
 																			   jbyteArray grid2_out,
@@ -93,7 +301,7 @@ Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1post_1process_1y
 	jfloat* const y1 = env->GetFloatArrayElements(scores, &outputCopy);
 	jfloat* const y2 = env->GetFloatArrayElements(boxes, &outputCopy);
 
-	detect_counts = post_process((float *)grid0_buf, (float *)grid1_buf, (float *)grid2_buf,
+	detect_counts = post_process(toContext(handle), grid0_buf, grid1_buf, grid2_buf,
 									  (int *)y0, (float *)y1, (float *)y2);
 
 	env->ReleaseByteArrayElements(grid0_out, grid0_buf, JNI_ABORT);
@@ -105,3 +313,33 @@ Java_com_smartprintsksa_yolo_1detector_InferenceWrapper_native_1post_1process_1y
 
 	return detect_counts;
 }
+
+// Same as native_post_process_yolo on direct buffers, e.g. the output memory itself
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_smartprintsksa_rknn_1sdk_InferenceWrapper_native_1post_1process_1yolo_1direct(JNIEnv *env, jobject thiz,
+																					  jlong handle,
+																					  jobject grid0_out,
+																					  jobject grid1_out,
+																					  jobject grid2_out,
+																					  jintArray ids,
+																					  jfloatArray scores,
+																					  jfloatArray boxes) {
+	void *grid0_buf = env->GetDirectBufferAddress(grid0_out);
+	void *grid1_buf = env->GetDirectBufferAddress(grid1_out);
+	void *grid2_buf = env->GetDirectBufferAddress(grid2_out);
+	if (!grid0_buf || !grid1_buf || !grid2_buf) return -1;
+
+	jint*   const y0 = env->GetIntArrayElements(ids, NULL);
+	jfloat* const y1 = env->GetFloatArrayElements(scores, NULL);
+	jfloat* const y2 = env->GetFloatArrayElements(boxes, NULL);
+
+	jint detect_counts = post_process(toContext(handle), grid0_buf, grid1_buf, grid2_buf,
+									  (int *)y0, (float *)y1, (float *)y2);
+
+	env->ReleaseIntArrayElements(ids, y0, 0);
+	env->ReleaseFloatArrayElements(scores, y1, 0);
+	env->ReleaseFloatArrayElements(boxes, y2, 0);
+
+	return detect_counts;
+}
\ No newline at end of file
@@ -21,7 +21,7 @@
 #include <string.h>
 #include <sys/time.h>
 #include <vector>
-#include <set>
+#include <algorithm>
 #include "post_process.h"
 
 inline static int clamp(float val, int min, int max)
@@ -38,27 +38,37 @@ static float CalculateOverlap(float xmin0, float ymin0, float xmax0, float ymax0
     return u <= 0.f ? 0.f : (i / u);
 }
 
-static int nms(int validCount, std::vector<float> &outputLocations, std::vector<int> classIds, std::vector<int> &order,int filterId, float threshold)
+// Greedy class-aware NMS over candidates sorted once by score: order[i] is kept unless a kept box
+// of the same class overlaps it by more than threshold, and everything after the first max_keep
+// kept boxes is dropped; dropped entries become -1
+static int nms(int validCount, const std::vector<float> &outputLocations, const std::vector<int> &classIds,
+               std::vector<int> &order, float threshold, int max_keep)
 {
+    int kept = 0;
     for (int i = 0; i < validCount; ++i)
     {
-        if (order[i] == -1|| classIds[i] != filterId)
+        int n = order[i];
+        if (n == -1)
         {
             continue;
         }
-        int n = order[i];
+        if (kept == max_keep)
+        {
+            order[i] = -1;
+            continue;
+        }
+        kept++;
+        float xmin0 = outputLocations[n * 4 + 0];
+        float ymin0 = outputLocations[n * 4 + 1];
+        float xmax0 = outputLocations[n * 4 + 0] + outputLocations[n * 4 + 2];
+        float ymax0 = outputLocations[n * 4 + 1] + outputLocations[n * 4 + 3];
         for (int j = i + 1; j < validCount; ++j)
         {
             int m = order[j];
-            if (m == -1 || classIds[i] != filterId)
+            if (m == -1 || classIds[m] != classIds[n])
             {
                 continue;
             }
-            float xmin0 = outputLocations[n * 4 + 0];
-            float ymin0 = outputLocations[n * 4 + 1];
-            float xmax0 = outputLocations[n * 4 + 0] + outputLocations[n * 4 + 2];
-            float ymax0 = outputLocations[n * 4 + 1] + outputLocations[n * 4 + 3];
-
             float xmin1 = outputLocations[m * 4 + 0];
             float ymin1 = outputLocations[m * 4 + 1];
             float xmax1 = outputLocations[m * 4 + 0] + outputLocations[m * 4 + 2];
@@ -72,44 +82,7 @@ static int nms(int validCount, std::vector<float> &outputLocations, std::vector<
             }
         }
     }
-    return 0;
-}
-
-static int quick_sort_indice_inverse(
-        std::vector<float> &input,
-        int left,
-        int right,
-        std::vector<int> &indices)
-{
-    float key;
-    int key_index;
-    int low = left;
-    int high = right;
-    if (left < right)
-    {
-        key_index = indices[left];
-        key = input[left];
-        while (low < high)
-        {
-            while (low < high && input[high] <= key)
-            {
-                high--;
-            }
-            input[low] = input[high];
-            indices[low] = indices[high];
-            while (low < high && input[low] >= key)
-            {
-                low++;
-            }
-            input[high] = input[low];
-            indices[high] = indices[low];
-        }
-        input[low] = key;
-        indices[low] = key_index;
-        quick_sort_indice_inverse(input, left, low - 1, indices);
-        quick_sort_indice_inverse(input, low + 1, right, indices);
-    }
-    return low;
+    return kept;
 }
 
 static float sigmoid(float x)
@@ -149,7 +122,6 @@ static int process(float *input, int *anchor, int grid_h, int grid_w, int height
     int grid_len = grid_h * grid_w;
     float thres = unsigmoid(threshold);
     printf("THRESHOLD %f", thres);
-    //int8_t thres_i8 = qnt_f32_to_affine(thres, zp, scale);
     for (int a = 0; a < 3; a++)
     {
         for (int i = 0; i < grid_h; i++)
@@ -161,12 +133,6 @@ static int process(float *input, int *anchor, int grid_h, int grid_w, int height
                 {
                     int offset = (PROP_BOX_SIZE * a) * grid_len + i * grid_w + j;
                     float *in_ptr = input + offset;
-#if 0
-                    float box_x = sigmoid(deqnt_affine_to_f32(*in_ptr, zp, scale)) * 2.0 - 0.5;
-                    float box_y = sigmoid(deqnt_affine_to_f32(in_ptr[grid_len], zp, scale)) * 2.0 - 0.5;
-                    float box_w = sigmoid(deqnt_affine_to_f32(in_ptr[2 * grid_len], zp, scale)) * 2.0;
-                    float box_h = sigmoid(deqnt_affine_to_f32(in_ptr[3 * grid_len], zp, scale)) * 2.0;
-#endif
                     float box_x = sigmoid(*in_ptr) * 2.0 - 0.5;
                     float box_y = sigmoid(in_ptr[grid_len]) * 2.0 - 0.5;
                     float box_w = sigmoid(in_ptr[2 * grid_len]) * 2.0;
@@ -189,8 +155,6 @@ static int process(float *input, int *anchor, int grid_h, int grid_w, int height
                             maxClassProbs = prob;
                         }
                     }
-//                    float max_class_prob = deqnt_affine_to_f32(maxClassProbs, zp, scale);
-//                    float box_prob = deqnt_affine_to_f32(box_confidence, zp, scale);
                     float max_class_prob = maxClassProbs;
                     float box_prob = box_confidence;
                     if (max_class_prob * box_prob > threshold){
@@ -209,9 +173,75 @@ static int process(float *input, int *anchor, int grid_h, int grid_w, int height
     return validCount;
 }
 
-int post_process(float *input0, float *input1, float *input2, int model_in_h, int model_in_w,
-                 float conf_threshold, float nms_threshold, float scale_w, float scale_h,
-                 std::vector<int32_t> &qnt_zps, std::vector<float> &qnt_scales,
+// Affine int8 outputs: the objectness threshold is quantized once and cells are rejected by integer
+// compare, so only the few survivors are dequantized and go through sigmoid
+static int process_i8(int8_t *input, int *anchor, int grid_h, int grid_w, int stride,
+                      std::vector<float> &boxes, std::vector<float> &objProbs, std::vector<int> &classId,
+                      float threshold, int32_t zp, float scale)
+{
+    int validCount = 0;
+    int grid_len = grid_h * grid_w;
+    // Truncation can only admit one level too many; the float check below settles it
+    int8_t thres_i8 = qnt_f32_to_affine(unsigmoid(threshold), zp, scale);
+    for (int a = 0; a < 3; a++)
+    {
+        for (int i = 0; i < grid_h; i++)
+        {
+            for (int j = 0; j < grid_w; j++)
+            {
+                int offset = (PROP_BOX_SIZE * a) * grid_len + i * grid_w + j;
+                int8_t *in_ptr = input + offset;
+                int8_t box_confidence = in_ptr[4 * grid_len];
+                if (box_confidence < thres_i8)
+                {
+                    continue;
+                }
+
+                // Dequantization is monotonic, so the arg max can stay in int8 too
+                int8_t maxClassProbs = in_ptr[5 * grid_len];
+                int maxClassId = 0;
+                for (int k = 1; k < OBJ_CLASS_NUM; ++k)
+                {
+                    int8_t prob = in_ptr[(5 + k) * grid_len];
+                    if (prob > maxClassProbs)
+                    {
+                        maxClassId = k;
+                        maxClassProbs = prob;
+                    }
+                }
+                float prob = sigmoid(deqnt_affine_to_f32(box_confidence, zp, scale)) *
+                             sigmoid(deqnt_affine_to_f32(maxClassProbs, zp, scale));
+                if (prob < threshold)
+                {
+                    continue;
+                }
+
+                float box_x = sigmoid(deqnt_affine_to_f32(*in_ptr, zp, scale)) * 2.0 - 0.5;
+                float box_y = sigmoid(deqnt_affine_to_f32(in_ptr[grid_len], zp, scale)) * 2.0 - 0.5;
+                float box_w = sigmoid(deqnt_affine_to_f32(in_ptr[2 * grid_len], zp, scale)) * 2.0;
+                float box_h = sigmoid(deqnt_affine_to_f32(in_ptr[3 * grid_len], zp, scale)) * 2.0;
+                box_x = (box_x + j) * (float)stride;
+                box_y = (box_y + i) * (float)stride;
+                box_w = box_w * box_w * (float)anchor[a * 2];
+                box_h = box_h * box_h * (float)anchor[a * 2 + 1];
+                box_x -= (box_w / 2.0);
+                box_y -= (box_h / 2.0);
+
+                boxes.push_back(box_x);
+                boxes.push_back(box_y);
+                boxes.push_back(box_w);
+                boxes.push_back(box_h);
+                objProbs.push_back(prob);
+                classId.push_back(maxClassId);
+                validCount++;
+            }
+        }
+    }
+    return validCount;
+}
+
+int post_process(void *input0, void *input1, void *input2, int model_in_h, int model_in_w,
+                 float conf_threshold, float nms_threshold, bool quantized, std::vector<int32_t> &qnt_zps, std::vector<float> &qnt_scales,
                  detect_result_group_t *group)
 {
 //    LOGI("post process start.");
@@ -233,24 +263,33 @@ int post_process(float *input0, float *input1, float *input2, int model_in_h, in
     int grid_h0 = model_in_h / stride0;
     int grid_w0 = model_in_w / stride0;
     int validCount0 = 0;
-    validCount0 = process(input0, (int *)anchor0, grid_h0, grid_w0, model_in_h, model_in_w,
-                          stride0, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
+    validCount0 = quantized
+            ? process_i8((int8_t *)input0, (int *)anchor0, grid_h0, grid_w0, stride0, filterBoxes, objProbs,
+                         classId, conf_threshold, qnt_zps[0], qnt_scales[0])
+            : process((float *)input0, (int *)anchor0, grid_h0, grid_w0, model_in_h, model_in_w,
+                      stride0, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
 
     // stride 16
     int stride1 = 16;
     int grid_h1 = model_in_h / stride1;
     int grid_w1 = model_in_w / stride1;
     int validCount1 = 0;
-    validCount1 = process(input1, (int *)anchor1, grid_h1, grid_w1, model_in_h, model_in_w,
-                          stride1, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
+    validCount1 = quantized
+            ? process_i8((int8_t *)input1, (int *)anchor1, grid_h1, grid_w1, stride1, filterBoxes, objProbs,
+                         classId, conf_threshold, qnt_zps[1], qnt_scales[1])
+            : process((float *)input1, (int *)anchor1, grid_h1, grid_w1, model_in_h, model_in_w,
+                      stride1, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
 
     // stride 32
     int stride2 = 32;
     int grid_h2 = model_in_h / stride2;
     int grid_w2 = model_in_w / stride2;
     int validCount2 = 0;
-    validCount2 = process(input2, (int *)anchor2, grid_h2, grid_w2, model_in_h, model_in_w,
-                          stride2, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
+    validCount2 = quantized
+            ? process_i8((int8_t *)input2, (int *)anchor2, grid_h2, grid_w2, stride2, filterBoxes, objProbs,
+                         classId, conf_threshold, qnt_zps[2], qnt_scales[2])
+            : process((float *)input2, (int *)anchor2, grid_h2, grid_w2, model_in_h, model_in_w,
+                      stride2, filterBoxes, objProbs, classId, conf_threshold, 0, 1);
 
     int validCount = validCount0 + validCount1 + validCount2;
 //    LOGI("vc0: %d, vc1: %d, vc2: %d\n", validCount0, validCount1, validCount2);
@@ -261,19 +300,16 @@ int post_process(float *input0, float *input1, float *input2, int model_in_h, in
         return 0;
     }
 
-    std::vector<int> indexArray;
+    // Sort once by score, highest first; ties keep candidate order
+    std::vector<int> indexArray(validCount);
     for (int i = 0; i < validCount; ++i)
     {
-        indexArray.push_back(i);
+        indexArray[i] = i;
     }
+    std::stable_sort(indexArray.begin(), indexArray.end(),
+                     [&objProbs](int a, int b) { return objProbs[a] > objProbs[b]; });
 
-    quick_sort_indice_inverse(objProbs, 0, validCount - 1, indexArray);
-
-    std::set<int> class_set(std::begin(classId),std::end(classId));
-
-    for(auto c : class_set){
-        nms(validCount, filterBoxes, classId, indexArray, c, nms_threshold);
-    }
+    nms(validCount, filterBoxes, classId, indexArray, nms_threshold, OBJ_NUMB_MAX_SIZE);
 
     int last_count = 0;
     group->count = 0;
@@ -292,12 +328,12 @@ int post_process(float *input0, float *input1, float *input2, int model_in_h, in
         float x2 = x1 + filterBoxes[n * 4 + 2];
         float y2 = y1 + filterBoxes[n * 4 + 3];
         int id = classId[n];
-        float obj_conf = objProbs[i];
+        float obj_conf = objProbs[n];
 
-        group->results[last_count].box.left = (int)(clamp(x1, 0, model_in_w) / scale_w);
-        group->results[last_count].box.top = (int)(clamp(y1, 0, model_in_h) / scale_h);
-        group->results[last_count].box.right = (int)(clamp(x2, 0, model_in_w) / scale_w);
-        group->results[last_count].box.bottom = (int)(clamp(y2, 0, model_in_h) / scale_h);
+        group->results[last_count].box.left = (int) clamp(x1, 0, model_in_w);
+        group->results[last_count].box.top = (int) clamp(y1, 0, model_in_h);
+        group->results[last_count].box.right = (int) clamp(x2, 0, model_in_w);
+        group->results[last_count].box.bottom = (int) clamp(y2, 0, model_in_h);
         group->results[last_count].prop = obj_conf;
         group->results[last_count].class_id = id;
 //        char *label = labels[id];
@@ -55,9 +55,10 @@ typedef struct _detect_result_group_t
     detect_result_t results[OBJ_NUMB_MAX_SIZE];
 } detect_result_group_t;
 
-int post_process(float *input0, float *input1, float *input2, int model_in_h, int model_in_w,
-                 float conf_threshold, float nms_threshold, float scale_w, float scale_h,
-                 std::vector<int32_t> &qnt_zps, std::vector<float> &qnt_scales,
+// Inputs are float, or affine int8 with the given zero points and scales when quantized. Boxes
+// come out in model input pixels; mapping them to an image is the caller's ImageTransform
+int post_process(void *input0, void *input1, void *input2, int model_in_h, int model_in_w,
+                 float conf_threshold, float nms_threshold, bool quantized, std::vector<int32_t> &qnt_zps, std::vector<float> &qnt_scales,
                  detect_result_group_t *group);
 
 void deinitPostProcess();
@@ -14,104 +14,176 @@
 #define ZERO_COPY 1
 #define DO_NOT_FLIP -1
 
-// Global state for RKNN context and initialization
-static rknn_context ctx = 0;
-static bool created = false;
-
-// Image dimensions: original input and model input
-static int img_width = 0, img_height = 0;
-static int m_in_width = 0, m_in_height = 0, m_in_channel = 0;
-static float scale_w = 0.0f, scale_h = 0.0f;
-
-// RKNN model configuration
-static const uint32_t n_input = 1, n_output = 3;
-static rknn_tensor_attr input_attrs[n_input], output_attrs[n_output];
-static rknn_tensor_mem *input_mems[n_input], *output_mems[n_output];
-static rga_buffer_t g_rga_src, g_rga_dst;
-static std::vector<float> out_scales;
-static std::vector<int32_t> out_zps;
+// RKNN model configuration; models may have 1 to max_output outputs
+static const uint32_t n_input = 1, max_output = 3;
+
+// Per-context state; each context owns its I/O buffers so contexts can run in parallel
+struct YoloContext {
+    rknn_context ctx = 0;
+
+    // Image dimensions: original input and model input
+    int img_width = 0, img_height = 0;
+    int m_in_width = 0, m_in_height = 0, m_in_channel = 0;
+    // Images per submission, fixed when the model was converted
+    int batch = 1;
+    uint32_t n_output = 0;
+    // Outputs handed out as raw int8 rather than float; only affine int8 outputs qualify
+    bool quantized_outputs = false;
+    bool out_quantized[max_output] = {false, false, false};
+
+    rknn_tensor_attr input_attrs[n_input], output_attrs[max_output];
+    rknn_tensor_mem *input_mems[n_input] = {nullptr};
+    rknn_tensor_mem *output_mems[max_output] = {nullptr, nullptr, nullptr};
+    void *in_base = nullptr;  // model input, batch images back to back
+    void *in_data = nullptr;
+    std::vector<float> out_scales;
+    std::vector<int32_t> out_zps;
+};
 
 // Helper function to clean up allocated memory
-static void cleanup_memory() {
+static void cleanup_memory(YoloContext *yolo) {
     for (int i = 0; i < n_input; ++i) {
-        if (input_mems[i]) {
-            rknn_destroy_mem(ctx, input_mems[i]);
-            input_mems[i] = nullptr;
+        if (yolo->input_mems[i]) {
+            rknn_destroy_mem(yolo->ctx, yolo->input_mems[i]);
+            yolo->input_mems[i] = nullptr;
         }
     }
-    for (int i = 0; i < n_output; ++i) {
-        if (output_mems[i]) {
-            rknn_destroy_mem(ctx, output_mems[i]);
-            output_mems[i] = nullptr;
+    for (int i = 0; i < max_output; ++i) {
+        if (yolo->output_mems[i]) {
+            rknn_destroy_mem(yolo->ctx, yolo->output_mems[i]);
+            yolo->output_mems[i] = nullptr;
         }
     }
+    free(yolo->in_data);
+    yolo->in_data = nullptr;
+}
+
+// Bytes per element of output i as handed to the caller
+static size_t out_elem_size(YoloContext *yolo, int i) {
+    return yolo->out_quantized[i] ? sizeof(int8_t) : sizeof(float);
 }
 
 // Setup input/output buffers for zero-copy or regular mode
-static bool setup_io_buffers() {
+static bool setup_io_buffers(YoloContext *yolo) {
 #if ZERO_COPY
     // Create input memory buffer for zero-copy mode
-    input_mems[0] = rknn_create_mem(ctx, input_attrs[0].size_with_stride);
-    if (!input_mems[0]) {
+    yolo->input_mems[0] = rknn_create_mem(yolo->ctx, yolo->input_attrs[0].size_with_stride);
+    if (!yolo->input_mems[0]) {
         LOGE("Failed to create input memory");
         return false;
     }
     
-    memset(input_mems[0]->virt_addr, 0, input_attrs[0].size_with_stride);
+    memset(yolo->input_mems[0]->virt_addr, 0, yolo->input_attrs[0].size_with_stride);
     
     // Configure input tensor attributes
-    input_attrs[0].index = 0;
-    input_attrs[0].type = RKNN_TENSOR_UINT8;
-    input_attrs[0].size = m_in_height * m_in_width * m_in_channel;
-    input_attrs[0].fmt = RKNN_TENSOR_NHWC;
-    input_attrs[0].pass_through = 0;
+    yolo->input_attrs[0].index = 0;
+    yolo->input_attrs[0].type = RKNN_TENSOR_UINT8;
+    yolo->input_attrs[0].size = yolo->batch * yolo->m_in_height * yolo->m_in_width * yolo->m_in_channel;
+    yolo->input_attrs[0].fmt = RKNN_TENSOR_NHWC;
+    yolo->input_attrs[0].pass_through = 0;
     
-    if (rknn_set_io_mem(ctx, input_mems[0], &input_attrs[0]) < 0) {
+    if (rknn_set_io_mem(yolo->ctx, yolo->input_mems[0], &yolo->input_attrs[0]) < 0) {
         LOGE("Failed to set input memory");
         return false;
     }
     
-    // Setup RGA destination buffer pointing to input memory
-    g_rga_dst = wrapbuffer_virtualaddr(input_mems[0]->virt_addr, m_in_width, m_in_height, RK_FORMAT_RGB_888);
+    // RGA writes straight into the input memory
+    yolo->in_base = yolo->input_mems[0]->virt_addr;
 
     // Create output memory buffers for each output tensor
-    for (int i = 0; i < n_output; ++i) {
-        output_mems[i] = rknn_create_mem(ctx, output_attrs[i].n_elems * sizeof(float));
-        if (!output_mems[i]) {
+    for (int i = 0; i < yolo->n_output; ++i) {
+        size_t out_size = yolo->output_attrs[i].n_elems * out_elem_size(yolo, i);
+        yolo->output_mems[i] = rknn_create_mem(yolo->ctx, out_size);
+        if (!yolo->output_mems[i]) {
             LOGE("Failed to create output memory %d", i);
             return false;
         }
         
-        memset(output_mems[i]->virt_addr, 0, output_attrs[i].n_elems * sizeof(float));
-        output_attrs[i].type = RKNN_TENSOR_FLOAT32;
+        memset(yolo->output_mems[i]->virt_addr, 0, out_size);
+        // Quantized outputs skip the runtime's dequantization and are 4x smaller to copy
+        yolo->output_attrs[i].type = yolo->out_quantized[i] ? RKNN_TENSOR_INT8 : RKNN_TENSOR_FLOAT32;
         
-        if (rknn_set_io_mem(ctx, output_mems[i], &output_attrs[i]) < 0) {
+        if (rknn_set_io_mem(yolo->ctx, yolo->output_mems[i], &yolo->output_attrs[i]) < 0) {
             LOGE("Failed to set output memory %d", i);
             return false;
         }
     }
 #else
     // Allocate separate input buffer for non-zero-copy mode
-    void *in_data = malloc(m_in_width * m_in_height * m_in_channel);
-    if (!in_data) return false;
-    g_rga_dst = wrapbuffer_virtualaddr(in_data, m_in_width, m_in_height, RK_FORMAT_RGB_888);
+    yolo->in_data = malloc(yolo->batch * yolo->m_in_width * yolo->m_in_height * yolo->m_in_channel);
+    if (!yolo->in_data) return false;
+    yolo->in_base = yolo->in_data;
 #endif
     return true;
 }
 
-// Initialize YOLO model: load model file, setup RKNN context, configure I/O
-int create(int im_height, int im_width, int im_channel, char *model_path) {
-    if (created) return 0;
-    
-    // Store input image dimensions
-    img_height = im_height;
-    img_width = im_width;
+// Query tensor attributes and allocate I/O buffers for a freshly initialized or duplicated context
+static bool setup_context(YoloContext *yolo) {
+    // Verify model has expected input/output count
+    rknn_input_output_num io_num;
+    if (rknn_query(yolo->ctx, RKNN_QUERY_IN_OUT_NUM, &io_num, sizeof(io_num)) != RKNN_SUCC ||
+        io_num.n_input != n_input || io_num.n_output < 1 || io_num.n_output > max_output) {
+        LOGE("Invalid model input/output");
+        return false;
+    }
+    yolo->n_output = io_num.n_output;
+
+    // Query input tensor attributes to get model dimensions
+    for (int i = 0; i < n_input; ++i) {
+        memset(&yolo->input_attrs[i], 0, sizeof(rknn_tensor_attr));
+        yolo->input_attrs[i].index = i;
+        if (rknn_query(yolo->ctx, RKNN_QUERY_INPUT_ATTR, &yolo->input_attrs[i], sizeof(rknn_tensor_attr)) < 0) {
+            LOGE("Query input failed");
+            return false;
+        }
+    }
+
+    // Extract model input dimensions based on tensor format
+    if (yolo->input_attrs[0].fmt == RKNN_TENSOR_NHWC) {
+        yolo->m_in_height = yolo->input_attrs[0].dims[1];
+        yolo->m_in_width = yolo->input_attrs[0].dims[2];
+        yolo->m_in_channel = yolo->input_attrs[0].dims[3];
+    } else if (yolo->input_attrs[0].fmt == RKNN_TENSOR_NCHW) {
+        yolo->m_in_height = yolo->input_attrs[0].dims[2];
+        yolo->m_in_width = yolo->input_attrs[0].dims[3];
+        yolo->m_in_channel = yolo->input_attrs[0].dims[1];
+    } else {
+        LOGE("Unsupported input format");
+        return false;
+    }
+    yolo->batch = yolo->input_attrs[0].n_dims == 4 && yolo->input_attrs[0].dims[0] > 0 ? yolo->input_attrs[0].dims[0] : 1;
 
+    // Query output tensor attributes and store quantization parameters
+    yolo->out_scales.clear();
+    yolo->out_zps.clear();
+    for (int i = 0; i < yolo->n_output; ++i) {
+        memset(&yolo->output_attrs[i], 0, sizeof(rknn_tensor_attr));
+        yolo->output_attrs[i].index = i;
+        if (rknn_query(yolo->ctx, RKNN_QUERY_OUTPUT_ATTR, &yolo->output_attrs[i], sizeof(rknn_tensor_attr)) < 0) {
+            LOGE("Query output failed");
+            return false;
+        }
+        yolo->out_scales.push_back(yolo->output_attrs[i].scale);
+        yolo->out_zps.push_back(yolo->output_attrs[i].zp);
+        yolo->out_quantized[i] = yolo->quantized_outputs && yolo->output_attrs[i].type == RKNN_TENSOR_INT8 &&
+                                 yolo->output_attrs[i].qnt_type == RKNN_TENSOR_QNT_AFFINE_ASYMMETRIC;
+    }
+
+    // Setup I/O buffers for inference
+    if (!setup_io_buffers(yolo)) {
+        cleanup_memory(yolo);
+        return false;
+    }
+    return true;
+}
+
+// Initialize YOLO model: load model file, setup RKNN context, configure I/O
+YoloContext *create(int im_height, int im_width, int im_channel, char *model_path, bool quantized_outputs) {
     // Load model file into memory
     FILE *fp = fopen(model_path, "rb");
     if (!fp) {
         LOGE("Failed to open model: %s", model_path);
-        return -1;
+        return nullptr;
     }
     
     fseek(fp, 0, SEEK_END);
@@ -123,164 +195,255 @@ int create(int im_height, int im_width, int im_channel, char *model_path) {
         LOGE("Failed to read model");
         free(model);
         fclose(fp);
-        return -1;
+        return nullptr;
     }
     fclose(fp);
 
+    // Store input image dimensions
+    YoloContext *yolo = new YoloContext();
+    yolo->img_height = im_height;
+    yolo->img_width = im_width;
+    yolo->quantized_outputs = quantized_outputs;
+
     // Initialize RKNN context with model data
-    int ret = rknn_init(&ctx, model, model_len, 0, nullptr);
+    int ret = rknn_init(&yolo->ctx, model, model_len, 0, nullptr);
     free(model);
     if (ret < 0) {
         LOGE("rknn_init failed: %d", ret);
-        return -1;
+        delete yolo;
+        return nullptr;
     }
 
-    // Verify model has expected input/output count
-    rknn_input_output_num io_num;
-    if (rknn_query(ctx, RKNN_QUERY_IN_OUT_NUM, &io_num, sizeof(io_num)) != RKNN_SUCC ||
-        io_num.n_input != n_input || io_num.n_output != n_output) {
-        LOGE("Invalid model input/output");
-        rknn_destroy(ctx);
-        return -1;
+    if (!setup_context(yolo)) {
+        rknn_destroy(yolo->ctx);
+        delete yolo;
+        return nullptr;
     }
+    return yolo;
+}
 
-    // Query input tensor attributes to get model dimensions
-    for (int i = 0; i < n_input; ++i) {
-        input_attrs[i].index = i;
-        if (rknn_query(ctx, RKNN_QUERY_INPUT_ATTR, &input_attrs[i], sizeof(rknn_tensor_attr)) < 0) {
-            LOGE("Query input failed");
-            rknn_destroy(ctx);
-            return -1;
-        }
-    }
+// Duplicate a context: weights are shared, I/O buffers and scheduling are per context
+YoloContext *dup_context(YoloContext *src, int core_mask) {
+    if (!src) return nullptr;
 
-    // Extract model input dimensions based on tensor format
-    if (input_attrs[0].fmt == RKNN_TENSOR_NHWC) {
-        m_in_height = input_attrs[0].dims[1];
-        m_in_width = input_attrs[0].dims[2];
-        m_in_channel = input_attrs[0].dims[3];
-    } else if (input_attrs[0].fmt == RKNN_TENSOR_NCHW) {
-        m_in_height = input_attrs[0].dims[2];
-        m_in_width = input_attrs[0].dims[3];
-        m_in_channel = input_attrs[0].dims[1];
-    } else {
-        LOGE("Unsupported input format");
-        rknn_destroy(ctx);
-        return -1;
-    }
+    YoloContext *yolo = new YoloContext();
+    yolo->img_height = src->img_height;
+    yolo->img_width = src->img_width;
+    yolo->quantized_outputs = src->quantized_outputs;
 
-    // Calculate scaling factors for post-processing
-    scale_w = static_cast<float>(m_in_width) / img_width;
-    scale_h = static_cast<float>(m_in_height) / img_height;
+    int ret = rknn_dup_context(&src->ctx, &yolo->ctx);
+    if (ret < 0) {
+        LOGE("rknn_dup_context failed: %d", ret);
+        delete yolo;
+        return nullptr;
+    }
 
-    // Query output tensor attributes and store quantization parameters
-    out_scales.clear();
-    out_zps.clear();
-    for (int i = 0; i < n_output; ++i) {
-        output_attrs[i].index = i;
-        if (rknn_query(ctx, RKNN_QUERY_OUTPUT_ATTR, &output_attrs[i], sizeof(rknn_tensor_attr)) < 0) {
-            LOGE("Query output failed");
-            rknn_destroy(ctx);
-            return -1;
-        }
-        out_scales.push_back(output_attrs[i].scale);
-        out_zps.push_back(output_attrs[i].zp);
+    if (!setup_context(yolo)) {
+        rknn_destroy(yolo->ctx);
+        delete yolo;
+        return nullptr;
     }
 
-    // Setup I/O buffers for inference
-    if (!setup_io_buffers()) {
-        cleanup_memory();
-        rknn_destroy(ctx);
-        return -1;
+    if (set_core_mask(yolo, core_mask) < 0) {
+        destroy(yolo);
+        return nullptr;
     }
+    return yolo;
+}
 
-    created = true;
-    return 0;
+int set_core_mask(YoloContext *yolo, int core_mask) {
+    if (!yolo) return -1;
+    int ret = rknn_set_core_mask(yolo->ctx, (rknn_core_mask) core_mask);
+    if (ret < 0) {
+        LOGE("rknn_set_core_mask(%d) failed: %d", core_mask, ret);
+    }
+    return ret;
 }
 
 // Cleanup and destroy RKNN context
-void destroy() {
-    if (!created) return;
+void destroy(YoloContext *yolo) {
+    if (!yolo) return;
     
-    cleanup_memory();
-    if (ctx) {
-        rknn_destroy(ctx);
-        ctx = 0;
-    }
-    created = false;
-    out_scales.clear();
-    out_zps.clear();
+    cleanup_memory(yolo);
+    if (yolo->ctx) {
+        rknn_destroy(yolo->ctx);
+        yolo->ctx = 0;
+    }
+    delete yolo;
+}
+
+int get_batch_size(YoloContext *yolo) {
+    return yolo ? yolo->batch : 0;
+}
+
+// Spreads one multi-batch submission over core_num NPU cores
+int set_batch_core_num(YoloContext *yolo, int core_num) {
+    if (!yolo) return -1;
+    int ret = rknn_set_batch_core_num(yolo->ctx, core_num);
+    if (ret < 0) {
+        LOGE("rknn_set_batch_core_num(%d) failed: %d", core_num, ret);
+    }
+    return ret;
 }
 
 // Run YOLO inference: preprocess image, run model, copy outputs
-bool run_model(char *inDataRaw, char *y0, char *y1, char *y2) {
-    if (!created || !inDataRaw || !y0 || !y1 || !y2) {
+bool run_model(YoloContext *yolo, char *inDataRaw, int in_size, char *y0, char *y1, char *y2) {
+    return run_model_batch(yolo, &inDataRaw, in_size, 1, &y0, &y1, &y2);
+}
+
+// Run up to batch images in one submission; outputs are split back per image
+bool run_model_batch(YoloContext *yolo, char **inDataRaw, int in_size, int count,
+                     char **y0, char **y1, char **y2) {
+    if (!yolo || !inDataRaw || !y0 || !y1 || !y2 || count <= 0 || count > yolo->batch) {
         LOGE("Invalid parameters");
         return false;
     }
 
-    // Setup source image buffer (RGBA format)
-    g_rga_src = wrapbuffer_virtualaddr(inDataRaw, img_width, img_height, RK_FORMAT_RGBA_8888);
-    
-    // Resize and convert image: RGBA -> RGB at model input size
-    if (imresize(g_rga_src, g_rga_dst) != IM_STATUS_SUCCESS) {
-        LOGE("Image resize failed");
-        return false;
+    // Outputs the model does not have may be null
+    char **y[max_output] = {y0, y1, y2};
+    size_t slot_size = (size_t) yolo->m_in_width * yolo->m_in_height * yolo->m_in_channel;
+    // Already letterboxed to the model input by the caller; RGA has nothing left to do
+    bool rgb_input = in_size == (int) slot_size;
+    for (int i = 0; i < count; ++i) {
+        if (!inDataRaw[i]) {
+            LOGE("Invalid parameters");
+            return false;
+        }
+        for (int k = 0; k < yolo->n_output; ++k) {
+            if (!y[k][i]) {
+                LOGE("Invalid parameters");
+                return false;
+            }
+        }
+
+        if (rgb_input) {
+            char *slot = (char *) yolo->in_base + i * slot_size;
+            if (inDataRaw[i] != slot) memcpy(slot, inDataRaw[i], slot_size);
+            continue;
+        }
+
+        // Setup source image buffer (RGBA format)
+        rga_buffer_t rga_src = wrapbuffer_virtualaddr(inDataRaw[i], yolo->img_width, yolo->img_height, RK_FORMAT_RGBA_8888);
+        rga_buffer_t rga_dst = wrapbuffer_virtualaddr((char *) yolo->in_base + i * slot_size,
+                                                      yolo->m_in_width, yolo->m_in_height, RK_FORMAT_RGB_888);
+
+        // Resize and convert image: RGBA -> RGB at model input size
+        if (imresize(rga_src, rga_dst) != IM_STATUS_SUCCESS) {
+            LOGE("Image resize failed");
+            return false;
+        }
     }
 
 #if !ZERO_COPY
     // For non-zero-copy mode: set input data
-    rknn_input inputs[1] = {{0, RKNN_TENSOR_UINT8, m_in_width * m_in_height * m_in_channel, 
-                            RKNN_TENSOR_NHWC, 0, g_rga_dst.vir_addr}};
-    if (rknn_inputs_set(ctx, 1, inputs) < 0) {
+    rknn_input inputs[1] = {{0, RKNN_TENSOR_UINT8, (uint32_t) (yolo->batch * slot_size),
+                            RKNN_TENSOR_NHWC, 0, yolo->in_base}};
+    if (rknn_inputs_set(yolo->ctx, 1, inputs) < 0) {
         LOGE("Set inputs failed");
         return false;
     }
 #endif
 
     // Run inference
-    if (rknn_run(ctx, nullptr) < 0) {
+    if (rknn_run(yolo->ctx, nullptr) < 0) {
         LOGE("Inference failed");
         return false;
     }
 
-    // Copy output tensors to provided buffers
+    // Copy output tensors to provided buffers, one batch slice per image
+    size_t out_size[max_output];
+    for (int k = 0; k < yolo->n_output; ++k) {
+        out_size[k] = yolo->output_attrs[k].n_elems / yolo->batch * out_elem_size(yolo, k);
+    }
 #if ZERO_COPY
     // Direct memory copy from output buffers
-    memcpy(y0, output_mems[0]->virt_addr, output_attrs[0].n_elems * sizeof(float));
-    memcpy(y1, output_mems[1]->virt_addr, output_attrs[1].n_elems * sizeof(float));
-    memcpy(y2, output_mems[2]->virt_addr, output_attrs[2].n_elems * sizeof(float));
+    for (int i = 0; i < count; ++i) {
+        for (int k = 0; k < yolo->n_output; ++k) {
+            char *slice = (char *) yolo->output_mems[k]->virt_addr + i * out_size[k];
+            if (y[k][i] != slice) memcpy(y[k][i], slice, out_size[k]);
+        }
+    }
 #else
     // Get outputs and copy for non-zero-copy mode
-    rknn_output outputs[3] = {{0, 1}, {0, 1}, {0, 1}};
-    if (rknn_outputs_get(ctx, 3, outputs, nullptr) < 0) {
+    rknn_output outputs[max_output];
+    memset(outputs, 0, sizeof(outputs));
+    for (int k = 0; k < yolo->n_output; ++k) {
+        outputs[k].index = k;
+        outputs[k].want_float = !yolo->out_quantized[k];
+    }
+    if (rknn_outputs_get(yolo->ctx, yolo->n_output, outputs, nullptr) < 0) {
         LOGE("Get outputs failed");
         return false;
     }
     
-    memcpy(y0, outputs[0].buf, output_attrs[0].n_elems * sizeof(float));
-    memcpy(y1, outputs[1].buf, output_attrs[1].n_elems * sizeof(float));
-    memcpy(y2, outputs[2].buf, output_attrs[2].n_elems * sizeof(float));
+    for (int i = 0; i < count; ++i) {
+        for (int k = 0; k < yolo->n_output; ++k) {
+            memcpy(y[k][i], (char *) outputs[k].buf + i * out_size[k], out_size[k]);
+        }
+    }
     
-    rknn_outputs_release(ctx, 3, outputs);
+    rknn_outputs_release(yolo->ctx, yolo->n_output, outputs);
 #endif
 
     return true;
 }
 
+char *get_input_buffer(YoloContext *yolo, int index, int *size) {
+    if (!yolo || !yolo->in_base || index < 0 || index >= yolo->batch || !size) return nullptr;
+    size_t slot_size = (size_t) yolo->m_in_width * yolo->m_in_height * yolo->m_in_channel;
+    *size = (int) slot_size;
+    return (char *) yolo->in_base + index * slot_size;
+}
+
+char *get_output_buffer(YoloContext *yolo, int output, int index, int *size) {
+#if ZERO_COPY
+    if (!yolo || output < 0 || output >= (int) yolo->n_output || !yolo->output_mems[output]
+        || index < 0 || index >= yolo->batch || !size) return nullptr;
+    size_t out_size = yolo->output_attrs[output].n_elems / yolo->batch * out_elem_size(yolo, output);
+    *size = (int) out_size;
+    return (char *) yolo->output_mems[output]->virt_addr + index * out_size;
+#else
+    return nullptr;
+#endif
+}
+
+int get_output_count(YoloContext *yolo) {
+    return yolo ? (int) yolo->n_output : 0;
+}
+
+// Per-image shape of an output as the runtime reports it; the batch dimension is left as queried
+int get_output_attr(YoloContext *yolo, int index, int *fmt, int *type, int *zp, float *scale,
+                    int *dims, int max_dims) {
+    if (!yolo || index < 0 || index >= (int) yolo->n_output || !fmt || !type || !zp || !scale || !dims) return -1;
+    const rknn_tensor_attr &attr = yolo->output_attrs[index];
+    *fmt = attr.fmt;
+    *type = yolo->out_quantized[index] ? RKNN_TENSOR_INT8 : RKNN_TENSOR_FLOAT32;
+    *zp = attr.zp;
+    *scale = attr.scale;
+    int n_dims = std::min((int) attr.n_dims, max_dims);
+    for (int i = 0; i < n_dims; ++i) {
+        dims[i] = (int) attr.dims[i];
+    }
+    return n_dims;
+}
+
 // Post-process YOLO outputs: NMS, coordinate scaling, result formatting
-int post_process(float *grid0_buf, float *grid1_buf, float *grid2_buf,
+int post_process(YoloContext *yolo, void *grid0_buf, void *grid1_buf, void *grid2_buf,
                  int *ids, float *scores, float *boxes) {
-    if (!created || !grid0_buf || !grid1_buf || !grid2_buf || !ids || !scores || !boxes) {
+    if (!yolo || !grid0_buf || !grid1_buf || !grid2_buf || !ids || !scores || !boxes) {
         LOGE("Invalid parameters");
         return -1;
     }
+    // Fixed to the bundled three-output YOLOv5; other models are decoded in Java
+    if (yolo->n_output != 3) return -1;
+    bool quantized = yolo->out_quantized[0];
+    if (yolo->out_quantized[1] != quantized || yolo->out_quantized[2] != quantized) return -1;
 
     // Run post-processing: decode predictions, apply NMS, scale coordinates
     detect_result_group_t detect_result_group;
     int ret = post_process(grid0_buf, grid1_buf, grid2_buf,
-                          m_in_height, m_in_width, BOX_THRESH, NMS_THRESH, 
-                          scale_w, scale_h, out_zps, out_scales, &detect_result_group);
+                          yolo->m_in_height, yolo->m_in_width, BOX_THRESH, NMS_THRESH, quantized, yolo->out_zps, yolo->out_scales,
+                          &detect_result_group);
     
     if (ret < 0) return -1;
 
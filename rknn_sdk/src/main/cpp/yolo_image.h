@@ -6,10 +6,37 @@
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, "rkyolo4j", ##__VA_ARGS__);
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, "rkyolo4j", ##__VA_ARGS__);
 
-int create(int im_height, int im_width, int im_channel, char *model_path);
-void destroy();
-bool run_model(char *inDataRaw, char *y0, char *y1, char *y2);
-int post_process(float *grid0_buf, float *grid1_buf, float *grid2_buf,
+// One RKNN context with its own I/O buffers; contexts may run concurrently on different NPU cores
+struct YoloContext;
+
+// quantized_outputs keeps int8 outputs in their affine int8 form instead of dequantizing them to float
+YoloContext *create(int im_height, int im_width, int im_channel, char *model_path, bool quantized_outputs);
+// Shares the model weights of src; pinned to core_mask (RKNN_NPU_CORE_*)
+YoloContext *dup_context(YoloContext *src, int core_mask);
+int set_core_mask(YoloContext *yolo, int core_mask);
+void destroy(YoloContext *yolo);
+// in_size bytes per input: packed RGB888 at the model input size goes in as is, anything else is
+// taken as RGBA_8888 at the create() size and resized by RGA. y1 and y2 may be null for models
+// with fewer outputs
+bool run_model(YoloContext *yolo, char *inDataRaw, int in_size, char *y0, char *y1, char *y2);
+// Multi-batch models: count <= get_batch_size() images in one submission, one output set per image
+bool run_model_batch(YoloContext *yolo, char **inDataRaw, int in_size, int count,
+                     char **y0, char **y1, char **y2);
+// NPU-visible input of batch image index, packed RGB888 at the model input size; *size gets its
+// length. Inputs that already point here are run in place
+char *get_input_buffer(YoloContext *yolo, int index, int *size);
+// Runtime-owned memory of one output for batch image index, in the form handed out (float or
+// int8); *size gets its length. Outputs that already point here are not copied. Null without
+// zero-copy buffers
+char *get_output_buffer(YoloContext *yolo, int output, int index, int *size);
+int get_batch_size(YoloContext *yolo);
+int get_output_count(YoloContext *yolo);
+// Fills fmt (rknn_tensor_format), the element type handed out (rknn_tensor_type), the affine
+// quantization and up to max_dims dims of output index; returns the number of dims or -1
+int get_output_attr(YoloContext *yolo, int index, int *fmt, int *type, int *zp, float *scale,
+                    int *dims, int max_dims);
+int set_batch_core_num(YoloContext *yolo, int core_num);
+int post_process(YoloContext *yolo, void *grid0_buf, void *grid1_buf, void *grid2_buf,
                  int *ids, float *scores, float *boxes);
 int colorConvertAndFlip(void *src, int srcFmt, void *dst, int dstFmt, 
                         int width, int height, int flip);
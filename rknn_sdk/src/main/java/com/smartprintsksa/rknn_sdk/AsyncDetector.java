@@ -0,0 +1,179 @@
+package com.smartprintsksa.rknn_sdk;
+
+import android.graphics.Bitmap;
+
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.npu.ReorderBuffer;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backs {@link YoloDetector#detectAsync}: the caller only preprocesses, the frame then runs on one
+ * of the backend's workers (a free NPU context on the RK3588) and is post-processed on a dedicated
+ * thread. Futures complete in submission order. At most maxInFlight frames are between submission
+ * and completion; further callers wait, which keeps every worker fed without building an unbounded
+ * backlog.
+ */
+class AsyncDetector {
+    private static final String TAG = "ASYNC DETECTOR";
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final LatencyHistogram asyncLatency = MetricsRegistry.global().histogram("detector.detect_async");
+    private static final AtomicLong threadIds = new AtomicLong();
+
+    private final InferenceBackend backend;
+    private final ExecutorService inferExecutor;
+    private final ExecutorService postProcessor = Executors.newSingleThreadExecutor(daemon("detect-postprocess-"));
+    // Workers may finish out of order; one post-processing thread fed in sequence order keeps that order
+    private final ReorderBuffer<Request> reorder = new ReorderBuffer<>(
+            (sequence, request) -> postProcessor.execute(() -> finish(request)));
+    private final ConcurrentLinkedQueue<YoloRawOutput> spareOutputs = new ConcurrentLinkedQueue<>();
+    private volatile Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+    // Frames submitted but not finished; the post-processor outlives close() until they are
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+    private long nextSequence;  // guarded by this
+
+    AsyncDetector(InferenceBackend backend) {
+        this.backend = backend;
+        this.inferExecutor = Executors.newFixedThreadPool(Math.max(1, backend.getParallelism()), daemon("detect-infer-"));
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        return r -> {
+            Thread thread = new Thread(r, prefix + threadIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Applies to frames submitted from now on; frames already in flight keep their old permit
+    void setMaxInFlight(int depth) {
+        inFlight = new Semaphore(Math.max(1, depth));
+    }
+
+    CompletableFuture<ArrayList<DetectedObject>> detect(Bitmap bitmap) {
+        Request request = new Request(YoloDetectorHelper.inputTransform(bitmap.getWidth(), bitmap.getHeight()));
+        try {
+            // Preprocess before waiting, so this frame's resize overlaps earlier frames on the workers
+            request.input = YoloDetectorHelper.preprocess(bitmap);
+        } catch (RuntimeException e) {
+            request.future.completeExceptionally(e);
+            return request.future;
+        }
+        return submit(request);
+    }
+
+    // Runs an already preprocessed input; the transform maps the boxes back to its source
+    CompletableFuture<ArrayList<DetectedObject>> detect(byte[] input, ImageTransform transform) {
+        Request request = new Request(transform);
+        request.input = input;
+        return submit(request);
+    }
+
+    private CompletableFuture<ArrayList<DetectedObject>> submit(Request request) {
+        try {
+            request.permits = inFlight;
+            request.permits.acquire();
+            YoloRawOutput outputs = spareOutputs.poll();
+            request.outputs = outputs != null ? outputs : backend.newRawOutput();
+            synchronized (this) {
+                long sequence = nextSequence++;
+                reorder.register(sequence);
+                pending.incrementAndGet();
+                try {
+                    inferExecutor.execute(() -> run(sequence, request));
+                } catch (RuntimeException e) {
+                    reorder.cancel(sequence);
+                    finished();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (request.permits != null) request.permits.release();
+            request.future.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            if (request.permits != null) request.permits.release();
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    // Frames already submitted still complete; later calls fail
+    void close() {
+        closed = true;
+        inferExecutor.shutdown();
+        if (pending.get() == 0) postProcessor.shutdown();
+    }
+
+    private void run(long sequence, Request request) {
+        try {
+            request.success = backend.infer(request.input, request.outputs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Logger.error(TAG, "Inference failed: " + e.getMessage());
+        } finally {
+            // Even after an Error, so later frames are not held back and the permit comes back
+            reorder.complete(sequence, request);
+        }
+    }
+
+    private void finish(Request request) {
+        ArrayList<DetectedObject> detections = null;
+        Throwable failure = null;
+        try {
+            if (request.success) {
+                detections = YoloDetectorHelper.postProcess(request.outputs, request.transform);
+            } else {
+                failure = new IOException(backend.getName() + " inference failed");
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // Free the slot before completing, so a dependent callback may submit the next frame
+        spareOutputs.offer(request.outputs);
+        request.permits.release();
+        asyncLatency.recordSince(request.startNanos);
+        if (failure != null) {
+            request.future.completeExceptionally(failure);
+        } else {
+            request.future.complete(detections);
+        }
+        finished();
+    }
+
+    // Stops the post-processor once the last frame submitted before close() is done
+    private void finished() {
+        if (pending.decrementAndGet() == 0 && closed) postProcessor.shutdown();
+    }
+
+    private static final class Request {
+        final ImageTransform transform;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<ArrayList<DetectedObject>> future = new CompletableFuture<>();
+        Semaphore permits;
+        byte[] input;
+        YoloRawOutput outputs;
+        // Written by the inference worker before complete(), read after the reorder buffer hands it on
+        volatile boolean success;
+
+        Request(ImageTransform transform) {
+            this.transform = transform;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.smartprintsksa.rknn_sdk;
+
+/**
+ * How a source image became a model input: a crop of the source, rotated clockwise by a multiple
+ * of 90 degrees, optionally mirrored left to right, scaled and offset by padding. Preprocessing
+ * produces one per image and every box mapping goes through it, so the scale math lives in one
+ * place. Boxes are four floats (left, top, right, bottom) per entry.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class ImageTransform {
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final float cropLeft;
+    private final float cropTop;
+    private final float cropWidth;
+    private final float cropHeight;
+    private final int rotationDegrees;
+    private final boolean mirrored;
+    private final float scaleX;
+    private final float scaleY;
+    private final float padX;
+    private final float padY;
+    private final int targetWidth;
+    private final int targetHeight;
+
+    private ImageTransform(int sourceWidth, int sourceHeight, float cropLeft, float cropTop, float cropWidth,
+                           float cropHeight, int rotationDegrees, boolean mirrored, float scaleX, float scaleY,
+                           float padX, float padY, int targetWidth, int targetHeight) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.cropLeft = cropLeft;
+        this.cropTop = cropTop;
+        this.cropWidth = cropWidth;
+        this.cropHeight = cropHeight;
+        this.rotationDegrees = rotationDegrees;
+        this.mirrored = mirrored;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.padX = padX;
+        this.padY = padY;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    // The whole source stretched to the target, as a plain bitmap resize does
+    public static ImageTransform stretch(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        return builder(sourceWidth, sourceHeight, targetWidth, targetHeight).build();
+    }
+
+    // The whole source rotated, scaled to fit and centered in the target
+    public static ImageTransform letterbox(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight,
+                                           int rotationDegrees, boolean mirrored) {
+        return builder(sourceWidth, sourceHeight, targetWidth, targetHeight)
+                .rotation(rotationDegrees).mirrored(mirrored).letterbox(true).build();
+    }
+
+    public static Builder builder(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        return new Builder(sourceWidth, sourceHeight, targetWidth, targetHeight);
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    // Clockwise, one of 0, 90, 180 and 270
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    // Target pixels per source pixel along the target's x axis
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    public float getPadX() {
+        return padX;
+    }
+
+    public float getPadY() {
+        return padY;
+    }
+
+    public boolean isSideways() {
+        return rotationDegrees == 90 || rotationDegrees == 270;
+    }
+
+    /**
+     * Maps {@code n} boxes from target pixels, e.g. model input, back to the source, clipped to it.
+     * {@code in} and {@code out} may be the same array.
+     */
+    public void mapBoxes(float[] in, float[] out, int n) {
+        float rotatedWidth = isSideways() ? cropHeight : cropWidth;
+        for (int i = 0, at = 0; i < n; i++, at += 4) {
+            // Undo padding and scale, then the mirror, into the rotated crop
+            float x1 = (in[at] - padX) / scaleX;
+            float y1 = (in[at + 1] - padY) / scaleY;
+            float x2 = (in[at + 2] - padX) / scaleX;
+            float y2 = (in[at + 3] - padY) / scaleY;
+            if (mirrored) {
+                x1 = rotatedWidth - x1;
+                x2 = rotatedWidth - x2;
+            }
+            // Undo the rotation into the crop; (x, y) rotated clockwise by 90 is (cropHeight - y, x)
+            float sx1, sy1, sx2, sy2;
+            switch (rotationDegrees) {
+                case 90:
+                    sx1 = y1;
+                    sy1 = cropHeight - x1;
+                    sx2 = y2;
+                    sy2 = cropHeight - x2;
+                    break;
+                case 180:
+                    sx1 = cropWidth - x1;
+                    sy1 = cropHeight - y1;
+                    sx2 = cropWidth - x2;
+                    sy2 = cropHeight - y2;
+                    break;
+                case 270:
+                    sx1 = cropWidth - y1;
+                    sy1 = x1;
+                    sx2 = cropWidth - y2;
+                    sy2 = x2;
+                    break;
+                default:
+                    sx1 = x1;
+                    sy1 = y1;
+                    sx2 = x2;
+                    sy2 = y2;
+            }
+            out[at] = clip(cropLeft + Math.min(sx1, sx2), sourceWidth);
+            out[at + 1] = clip(cropTop + Math.min(sy1, sy2), sourceHeight);
+            out[at + 2] = clip(cropLeft + Math.max(sx1, sx2), sourceWidth);
+            out[at + 3] = clip(cropTop + Math.max(sy1, sy2), sourceHeight);
+        }
+    }
+
+    /**
+     * Maps {@code n} boxes from the source to target pixels, e.g. image to view coordinates.
+     * {@code in} and {@code out} may be the same array.
+     */
+    public void mapBoxesToTarget(float[] in, float[] out, int n) {
+        float rotatedWidth = isSideways() ? cropHeight : cropWidth;
+        for (int i = 0, at = 0; i < n; i++, at += 4) {
+            float x1 = in[at] - cropLeft;
+            float y1 = in[at + 1] - cropTop;
+            float x2 = in[at + 2] - cropLeft;
+            float y2 = in[at + 3] - cropTop;
+            float rx1, ry1, rx2, ry2;
+            switch (rotationDegrees) {
+                case 90:
+                    rx1 = cropHeight - y1;
+                    ry1 = x1;
+                    rx2 = cropHeight - y2;
+                    ry2 = x2;
+                    break;
+                case 180:
+                    rx1 = cropWidth - x1;
+                    ry1 = cropHeight - y1;
+                    rx2 = cropWidth - x2;
+                    ry2 = cropHeight - y2;
+                    break;
+                case 270:
+                    rx1 = y1;
+                    ry1 = cropWidth - x1;
+                    rx2 = y2;
+                    ry2 = cropWidth - x2;
+                    break;
+                default:
+                    rx1 = x1;
+                    ry1 = y1;
+                    rx2 = x2;
+                    ry2 = y2;
+            }
+            if (mirrored) {
+                rx1 = rotatedWidth - rx1;
+                rx2 = rotatedWidth - rx2;
+            }
+            out[at] = Math.min(rx1, rx2) * scaleX + padX;
+            out[at + 1] = Math.min(ry1, ry2) * scaleY + padY;
+            out[at + 2] = Math.max(rx1, rx2) * scaleX + padX;
+            out[at + 3] = Math.max(ry1, ry2) * scaleY + padY;
+        }
+    }
+
+    /**
+     * The same target seen from a copy of the source that was already rotated like the target and
+     * resized to {@code width} x {@code height}, e.g. the upright frame a camera source hands out
+     * next to the model input it letterboxed from the sensor planes. The mirror stays.
+     */
+    public ImageTransform withRotatedSource(int width, int height) {
+        float rotatedWidth = isSideways() ? sourceHeight : sourceWidth;
+        float rotatedHeight = isSideways() ? sourceWidth : sourceHeight;
+        float left, top;
+        switch (rotationDegrees) {
+            case 90:
+                left = sourceHeight - (cropTop + cropHeight);
+                top = cropLeft;
+                break;
+            case 180:
+                left = sourceWidth - (cropLeft + cropWidth);
+                top = sourceHeight - (cropTop + cropHeight);
+                break;
+            case 270:
+                left = cropTop;
+                top = sourceWidth - (cropLeft + cropWidth);
+                break;
+            default:
+                left = cropLeft;
+                top = cropTop;
+        }
+        float fx = width / rotatedWidth;
+        float fy = height / rotatedHeight;
+        float croppedWidth = isSideways() ? cropHeight : cropWidth;
+        float croppedHeight = isSideways() ? cropWidth : cropHeight;
+        return new ImageTransform(width, height, left * fx, top * fy, croppedWidth * fx, croppedHeight * fy,
+                0, mirrored, scaleX / fx, scaleY / fy, padX, padY, targetWidth, targetHeight);
+    }
+
+    @Override
+    public String toString() {
+        return "ImageTransform{" + sourceWidth + "x" + sourceHeight
+                + " crop " + cropLeft + "," + cropTop + " " + cropWidth + "x" + cropHeight
+                + " rotation " + rotationDegrees + (mirrored ? " mirrored" : "")
+                + " scale " + scaleX + "," + scaleY + " pad " + padX + "," + padY
+                + " -> " + targetWidth + "x" + targetHeight + "}";
+    }
+
+    private static float clip(float value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    public static final class Builder {
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final int targetWidth;
+        private final int targetHeight;
+        private float cropLeft;
+        private float cropTop;
+        private float cropWidth;
+        private float cropHeight;
+        private int rotationDegrees;
+        private boolean mirrored;
+        private boolean letterbox;
+        private float scaleX = Float.NaN;
+        private float scaleY = Float.NaN;
+        private float padX;
+        private float padY;
+
+        private Builder(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                throw new IllegalArgumentException("Invalid source size " + sourceWidth + "x" + sourceHeight);
+            }
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.cropWidth = sourceWidth;
+            this.cropHeight = sourceHeight;
+        }
+
+        // Region of the source that was used; the whole source by default
+        public Builder crop(float left, float top, float width, float height) {
+            if (left < 0 || top < 0 || width <= 0 || height <= 0
+                    || left + width > sourceWidth || top + height > sourceHeight) {
+                throw new IllegalArgumentException("Crop " + left + "," + top + " " + width + "x" + height
+                        + " outside the " + sourceWidth + "x" + sourceHeight + " source");
+            }
+            this.cropLeft = left;
+            this.cropTop = top;
+            this.cropWidth = width;
+            this.cropHeight = height;
+            return this;
+        }
+
+        public Builder rotation(int rotationDegrees) {
+            if (rotationDegrees % 90 != 0) {
+                throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotationDegrees);
+            }
+            this.rotationDegrees = (rotationDegrees % 360 + 360) % 360;
+            return this;
+        }
+
+        public Builder mirrored(boolean mirrored) {
+            this.mirrored = mirrored;
+            return this;
+        }
+
+        // Keep the aspect ratio and center with padding instead of stretching to the target
+        public Builder letterbox(boolean letterbox) {
+            this.letterbox = letterbox;
+            return this;
+        }
+
+        // Explicit scale and padding instead of fitting the target, e.g. an image drawn into a view
+        public Builder scale(float scaleX, float scaleY, float padX, float padY) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.padX = padX;
+            this.padY = padY;
+            return this;
+        }
+
+        public ImageTransform build() {
+            boolean sideways = rotationDegrees == 90 || rotationDegrees == 270;
+            float rotatedWidth = sideways ? cropHeight : cropWidth;
+            float rotatedHeight = sideways ? cropWidth : cropHeight;
+            float sx = scaleX;
+            float sy = scaleY;
+            float px = padX;
+            float py = padY;
+            if (Float.isNaN(sx)) {
+                if (letterbox) {
+                    // Whole pixels of content and padding, as an image resize produces them
+                    float fit = Math.min(targetWidth / rotatedWidth, targetHeight / rotatedHeight);
+                    int contentWidth = Math.max(1, Math.min(targetWidth, Math.round(rotatedWidth * fit)));
+                    int contentHeight = Math.max(1, Math.min(targetHeight, Math.round(rotatedHeight * fit)));
+                    sx = contentWidth / rotatedWidth;
+                    sy = contentHeight / rotatedHeight;
+                    px = (targetWidth - contentWidth) / 2;
+                    py = (targetHeight - contentHeight) / 2;
+                } else {
+                    sx = targetWidth / rotatedWidth;
+                    sy = targetHeight / rotatedHeight;
+                    px = 0;
+                    py = 0;
+                }
+            }
+            return new ImageTransform(sourceWidth, sourceHeight, cropLeft, cropTop, cropWidth, cropHeight,
+                    rotationDegrees, mirrored, sx, sy, px, py, targetWidth, targetHeight);
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.smartprintsksa.rknn_sdk;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import static java.lang.System.arraycopy;
 
 import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
 import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
@@ -23,22 +23,23 @@ public class InferenceResult {
             mIsVaild = true;
         }
     }
+    // Keeps a copy, since the outputs' arrays or zero-copy views are reused for the next frame
     public synchronized void setResult(YoloRawOutput outputs) {
-        if (mYoloRawOutput.mGrid0Out == null) {
-            mYoloRawOutput.mGrid0Out = outputs.mGrid0Out.clone();
-            mYoloRawOutput.mGrid1Out = outputs.mGrid1Out.clone();
-            mYoloRawOutput.mGrid2Out = outputs.mGrid2Out.clone();
-        } else {
-            arraycopy(outputs.mGrid0Out, 0, mYoloRawOutput.mGrid0Out, 0,
-                    outputs.mGrid0Out.length);
-            arraycopy(outputs.mGrid1Out, 0, mYoloRawOutput.mGrid1Out, 0,
-                    outputs.mGrid1Out.length);
-            arraycopy(outputs.mGrid2Out, 0, mYoloRawOutput.mGrid2Out, 0,
-                    outputs.mGrid2Out.length);
-        }
+        mYoloRawOutput.mGrid0Out = copy(outputs.buffer(0), mYoloRawOutput.mGrid0Out);
+        mYoloRawOutput.mGrid1Out = copy(outputs.buffer(1), mYoloRawOutput.mGrid1Out);
+        mYoloRawOutput.mGrid2Out = copy(outputs.buffer(2), mYoloRawOutput.mGrid2Out);
         mIsVaild = false;
     }
 
+    private static byte[] copy(ByteBuffer source, byte[] target) {
+        if (source == null) return null;
+        if (target == null || target.length != source.capacity()) target = new byte[source.capacity()];
+        ByteBuffer from = source.duplicate();
+        from.clear();
+        from.get(target);
+        return target;
+    }
+
     public synchronized ArrayList<DetectedObject> getResult(InferenceWrapper mInferenceWrapper) {
         if (!mIsVaild) {
             mIsVaild = true;
@@ -4,63 +4,299 @@ import static com.smartprintsksa.rknn_sdk.Processor.OBJ_NUMB_MAX_SIZE;
 
 import android.graphics.Rect;
 
+import com.smartprintsksa.rknn_sdk.backend.TensorSpec;
+import com.smartprintsksa.rknn_sdk.npu.NpuBackend;
+import com.smartprintsksa.rknn_sdk.npu.NpuCore;
 import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
 import com.smartprintsksa.rknn_sdk.structs.YoloDetections;
 import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 
-public class InferenceWrapper {
+/**
+ * One native RKNN context. Each instance owns its context and may run concurrently with other
+ * instances; {@link #duplicate(int)} adds contexts that share the model weights.
+ */
+public class InferenceWrapper implements NpuBackend {
     private final String TAG = "INFERENCE WRAPPER";
+    // rknn_tensor_format values
+    private static final int RKNN_TENSOR_NCHW = 0;
+    private static final int RKNN_TENSOR_NHWC = 1;
+    // rknn_tensor_type values
+    private static final int RKNN_TENSOR_INT8 = 2;
+    private static final int RKNN_TENSOR_UINT8 = 3;
 
     static {
         System.loadLibrary("rknn4j");
     }
 
     private YoloRawOutput mOutputs;
-    private YoloDetections mDetections;
+    // Native YoloContext pointer, 0 when not initialized
+    private long mNativeHandle;
+    private int mCoreMask = NpuCore.AUTO;
+    private int mBatchSize = 1;
+    // Per-image output shapes as the runtime reports them; the native side hands them over as float,
+    // or as raw int8 in quantized output mode
+    private List<TensorSpec> mOutputSpecs = Collections.emptyList();
+    // Direct buffer over the context's NPU input memory, fetched on first use
+    private ByteBuffer mInputBuffer;
+    // Read-only views over the context's output memory, fetched on first use
+    private ByteBuffer[] mOutputBuffers;
 
     public void initYolo(int imageHeight, int imageWidth, int numChannels, String modelPath) throws Exception {
-        mOutputs = new YoloRawOutput();
-        mOutputs.mGrid0Out = new byte[255 * 80 * 80 * 4];
-        mOutputs.mGrid1Out = new byte[255 * 40 * 40 * 4];
-        mOutputs.mGrid2Out = new byte[255 * 20 * 20 * 4];
-        if (native_init_yolo(imageHeight, imageWidth, numChannels, modelPath) != 0) {
+        initYolo(imageHeight, imageWidth, numChannels, modelPath, false);
+    }
+
+    /**
+     * @param quantizedOutputs hand out int8 outputs as they leave the NPU instead of dequantized to
+     *                         float; see {@link #getOutputSpecs()} for the scale and zero point
+     */
+    public void initYolo(int imageHeight, int imageWidth, int numChannels, String modelPath,
+                         boolean quantizedOutputs) throws Exception {
+        mNativeHandle = native_init_yolo(imageHeight, imageWidth, numChannels, modelPath, quantizedOutputs);
+        if (mNativeHandle == 0) {
             Logger.error(TAG, "rknn init fail!");
             throw new IOException("rknn init fail!");
         }
+        mBatchSize = Math.max(1, native_get_batch_size(mNativeHandle));
+        mOutputSpecs = queryOutputSpecs();
+        mOutputs = newRawOutput();
+    }
+
+    private List<TensorSpec> queryOutputSpecs() throws IOException {
+        int count = native_get_output_count(mNativeHandle);
+        List<TensorSpec> specs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int[] attr = native_get_output_attr(mNativeHandle, i);
+            if (attr == null || attr.length < 4) throw new IOException("rknn query output " + i + " fail!");
+            int[] dims = Arrays.copyOfRange(attr, 3, attr.length);
+            // Outputs are split per image
+            dims[0] = 1;
+            TensorSpec.Layout layout;
+            switch (attr[0]) {
+                case RKNN_TENSOR_NCHW:
+                    layout = TensorSpec.Layout.NCHW;
+                    break;
+                case RKNN_TENSOR_NHWC:
+                    layout = TensorSpec.Layout.NHWC;
+                    break;
+                default:
+                    layout = TensorSpec.Layout.FLAT;
+                    break;
+            }
+            TensorSpec.DataType type;
+            switch (attr[1]) {
+                case RKNN_TENSOR_INT8:
+                    type = TensorSpec.DataType.INT8;
+                    break;
+                case RKNN_TENSOR_UINT8:
+                    type = TensorSpec.DataType.UINT8;
+                    break;
+                default:
+                    type = TensorSpec.DataType.FLOAT32;
+                    break;
+            }
+            if (type == TensorSpec.DataType.FLOAT32) {
+                specs.add(new TensorSpec("output" + i, dims, layout, type));
+            } else {
+                specs.add(new TensorSpec("output" + i, dims, layout, type,
+                        native_get_output_scale(mNativeHandle, i), attr[2]));
+            }
+        }
+        return Collections.unmodifiableList(specs);
     }
 
+    public List<TensorSpec> getOutputSpecs() {
+        return mOutputSpecs;
+    }
+
+    @Override
+    public InferenceWrapper duplicate(int coreMask) throws IOException {
+        InferenceWrapper copy = new InferenceWrapper();
+        copy.mNativeHandle = native_dup_context(mNativeHandle, coreMask);
+        if (copy.mNativeHandle == 0) {
+            Logger.error(TAG, "rknn dup context fail on " + NpuCore.toString(coreMask));
+            throw new IOException("rknn dup context fail!");
+        }
+        copy.mOutputSpecs = mOutputSpecs;
+        copy.mOutputs = copy.newRawOutput();
+        copy.mCoreMask = coreMask;
+        copy.mBatchSize = mBatchSize;
+        return copy;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    @Override
+    public boolean setBatchCoreNum(int coreNum) {
+        if (native_set_batch_core_num(mNativeHandle, coreNum) != 0) {
+            Logger.error(TAG, "rknn set batch core num fail: " + coreNum);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean setCoreMask(int coreMask) {
+        if (native_set_core_mask(mNativeHandle, coreMask) != 0) {
+            Logger.error(TAG, "rknn set core mask fail: " + NpuCore.toString(coreMask));
+            return false;
+        }
+        mCoreMask = coreMask;
+        return true;
+    }
+
+    @Override
+    public int getCoreMask() {
+        return mCoreMask;
+    }
+
+    @Override
     public void deinit() {
-        native_de_init_yolo();
-        mOutputs.mGrid0Out = null;
-        mOutputs.mGrid1Out = null;
-        mOutputs.mGrid2Out = null;
-        mOutputs = null;
+        // The buffers point into memory the context frees
+        mInputBuffer = null;
+        mOutputBuffers = null;
+        if (mNativeHandle != 0) {
+            native_de_init_yolo(mNativeHandle);
+            mNativeHandle = 0;
+        }
+        if (mOutputs != null) {
+            mOutputs.mGrid0Out = null;
+            mOutputs.mGrid1Out = null;
+            mOutputs.mGrid2Out = null;
+            mOutputs = null;
+        }
+    }
+
+    /**
+     * Allocates output buffers sized for one inference of the loaded model, for callers that keep
+     * several frames in flight. Buffers of outputs the model does not have stay null.
+     */
+    public YoloRawOutput newRawOutput() {
+        YoloRawOutput outputs = new YoloRawOutput();
+        for (int i = 0; i < mOutputSpecs.size(); i++) {
+            byte[] buffer = new byte[(int) mOutputSpecs.get(i).getByteSize()];
+            if (i == 0) outputs.mGrid0Out = buffer;
+            else if (i == 1) outputs.mGrid1Out = buffer;
+            else outputs.mGrid2Out = buffer;
+        }
+        return outputs;
     }
 
     public YoloRawOutput run(byte[] inData) {
-        native_run_yolo(inData, mOutputs.mGrid0Out, mOutputs.mGrid1Out, mOutputs.mGrid2Out);
-        return  mOutputs;
+        return run(inData, mOutputs);
+    }
+
+    /**
+     * Runs the model and writes the raw outputs into the caller's buffers.
+     */
+    public YoloRawOutput run(byte[] inData, YoloRawOutput outputs) {
+        infer(inData, outputs);
+        return outputs;
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) {
+        return native_run_yolo(mNativeHandle, input, outputs.mGrid0Out, outputs.mGrid1Out, outputs.mGrid2Out) == 0;
+    }
+
+    /**
+     * Runs the model on a direct buffer without copying it to a Java array; a buffer from
+     * {@link #getInputBuffer()} is run in place. Heap buffers take the array path.
+     */
+    @Override
+    public boolean infer(ByteBuffer input, YoloRawOutput outputs) {
+        if (!input.isDirect()) return NpuBackend.super.infer(input, outputs);
+        return native_run_yolo_direct(mNativeHandle, input, input.position(), input.remaining(),
+                outputs.mGrid0Out, outputs.mGrid1Out, outputs.mGrid2Out) == 0;
+    }
+
+    /**
+     * The NPU input memory of this context as a direct buffer, packed RGB888 at the model input
+     * size. Writing the input here and passing it to {@link #infer(ByteBuffer, YoloRawOutput)}
+     * skips every copy; only valid until {@link #deinit()} and while nothing else runs on this
+     * context.
+     */
+    @Override
+    public ByteBuffer getInputBuffer() {
+        if (mInputBuffer == null && mNativeHandle != 0) mInputBuffer = native_get_input_buffer(mNativeHandle, 0);
+        return mInputBuffer;
+    }
+
+    /**
+     * The NPU output memory of this context, one read-only view per output sized from
+     * {@link #getOutputSpecs()}, or null if the runtime did not give the context its own buffers.
+     * Only valid until {@link #deinit()}; a run on this context overwrites them.
+     */
+    @Override
+    public ByteBuffer[] getOutputBuffers() {
+        if (mOutputBuffers == null && mNativeHandle != 0) {
+            ByteBuffer[] views = new ByteBuffer[mOutputSpecs.size()];
+            for (int i = 0; i < views.length; i++) {
+                ByteBuffer buffer = native_get_output_buffer(mNativeHandle, i);
+                if (buffer == null || buffer.capacity() != mOutputSpecs.get(i).getByteSize()) return null;
+                // Read-only views start out big-endian
+                views[i] = buffer.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+            }
+            mOutputBuffers = views;
+        }
+        return mOutputBuffers;
+    }
+
+    @Override
+    public boolean inferInPlace(ByteBuffer input, YoloRawOutput outputs) {
+        if (!input.isDirect() || getOutputBuffers() == null) return infer(input, outputs);
+        return native_run_yolo_in_place(mNativeHandle, input, input.position(), input.remaining()) == 0;
+    }
+
+    @Override
+    public boolean inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int offset, int count) {
+        if (count <= 0 || count > mBatchSize) return false;
+        byte[][] grid0 = new byte[count][];
+        byte[][] grid1 = new byte[count][];
+        byte[][] grid2 = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            grid0[i] = outputs[offset + i].mGrid0Out;
+            grid1[i] = outputs[offset + i].mGrid1Out;
+            grid2[i] = outputs[offset + i].mGrid2Out;
+        }
+        byte[][] batchInputs = offset == 0 ? inputs : Arrays.copyOfRange(inputs, offset, offset + count);
+        return native_run_yolo_batch(mNativeHandle, batchInputs, count, grid0, grid1, grid2) == 0;
     }
 
+    /**
+     * Decodes raw outputs; boxes are in model input pixels, for an {@link ImageTransform} to map.
+     */
     public ArrayList<DetectedObject> postProcess(YoloRawOutput outputs) {
         ArrayList<DetectedObject> recognitions = new ArrayList<DetectedObject>();
 
-        mDetections = new YoloDetections();
+        // Local so post-processing can run on a different thread than inference
+        YoloDetections mDetections = new YoloDetections();
         mDetections.count = 0;
         mDetections.ids = new int[OBJ_NUMB_MAX_SIZE];
         mDetections.scores = new float[OBJ_NUMB_MAX_SIZE];
         mDetections.boxes = new float[4 * OBJ_NUMB_MAX_SIZE];
 
-        if (outputs == null || outputs.mGrid0Out == null || outputs.mGrid1Out == null || outputs.mGrid2Out == null) {
+        if (outputs == null || outputs.buffer(0) == null || outputs.buffer(1) == null || outputs.buffer(2) == null) {
             return recognitions;
         }
 
-        int count = native_post_process_yolo(outputs.mGrid0Out, outputs.mGrid1Out, outputs.mGrid2Out,
-                mDetections.ids, mDetections.scores, mDetections.boxes);
+        // Zero-copy outputs are read where the NPU wrote them
+        int count = outputs.isZeroCopy()
+                ? native_post_process_yolo_direct(mNativeHandle, outputs.buffer(0), outputs.buffer(1), outputs.buffer(2),
+                        mDetections.ids, mDetections.scores, mDetections.boxes)
+                : native_post_process_yolo(mNativeHandle, outputs.mGrid0Out, outputs.mGrid1Out, outputs.mGrid2Out,
+                        mDetections.ids, mDetections.scores, mDetections.boxes);
         if (count < 0) {
             Logger.info(TAG, "post_process may fail.");
             mDetections.count = 0;
@@ -82,9 +318,26 @@ public class InferenceWrapper {
         return recognitions;
     }
 
-    private native int native_init_yolo(int im_height, int im_width, int im_channel, String modelPath);
-    private native void native_de_init_yolo();
-    private native int native_run_yolo(byte[] inData, byte[] grid0Out, byte[] grid1Out, byte[] grid2Out);
-    private native int native_post_process_yolo(byte[] grid0Out, byte[] grid1Out, byte[] grid2Out,
+    private native long native_init_yolo(int im_height, int im_width, int im_channel, String modelPath,
+                                         boolean quantizedOutputs);
+    private native long native_dup_context(long handle, int coreMask);
+    private native int native_set_core_mask(long handle, int coreMask);
+    private native void native_de_init_yolo(long handle);
+    private native int native_get_batch_size(long handle);
+    private native int native_get_output_count(long handle);
+    private native int[] native_get_output_attr(long handle, int index);
+    private native float native_get_output_scale(long handle, int index);
+    private native int native_set_batch_core_num(long handle, int coreNum);
+    private native int native_run_yolo_batch(long handle, byte[][] inData, int count,
+                                             byte[][] grid0Out, byte[][] grid1Out, byte[][] grid2Out);
+    private native int native_run_yolo(long handle, byte[] inData, byte[] grid0Out, byte[] grid1Out, byte[] grid2Out);
+    private native int native_run_yolo_direct(long handle, ByteBuffer inData, int offset, int length,
+                                              byte[] grid0Out, byte[] grid1Out, byte[] grid2Out);
+    private native ByteBuffer native_get_input_buffer(long handle, int index);
+    private native int native_run_yolo_in_place(long handle, ByteBuffer inData, int offset, int length);
+    private native ByteBuffer native_get_output_buffer(long handle, int output);
+    private native int native_post_process_yolo(long handle, byte[] grid0Out, byte[] grid1Out, byte[] grid2Out,
                                                 int[] ids, float[] scores, float[] boxes);
+    private native int native_post_process_yolo_direct(long handle, ByteBuffer grid0Out, ByteBuffer grid1Out,
+                                                       ByteBuffer grid2Out, int[] ids, float[] scores, float[] boxes);
 }
\ No newline at end of file
@@ -18,17 +18,54 @@ public class Processor {
 
     public final static int CLASSIFIER_INPUT = 224;
 
+    // Row scratch for writeRgb, reused by each calling thread
+    private static final ThreadLocal<RgbRow> rgbRows = new ThreadLocal<RgbRow>() {
+        @Override
+        protected RgbRow initialValue() {
+            return new RgbRow();
+        }
+    };
+
     /**
-     * Converts a Bitmap to a byte array.
+     * Converts a Bitmap to packed RGB888 bytes, the layout the model input takes as is.
      *
      * @param bitmap The Bitmap to convert.
-     * @return A byte array representing the Bitmap.
+     * @return A byte array of width * height * 3 bytes.
      */
     public static byte[] convertBitmapToByteArray(Bitmap bitmap) {
-        int byteCount = bitmap.getByteCount();
-        ByteBuffer buffer = ByteBuffer.allocate(byteCount);
-        bitmap.copyPixelsToBuffer(buffer);
-        return buffer.array();
+        byte[] rgb = new byte[bitmap.getWidth() * bitmap.getHeight() * CHANNELS];
+        writeRgb(bitmap, ByteBuffer.wrap(rgb));
+        return rgb;
+    }
+
+    /**
+     * Writes a Bitmap as packed RGB888 at {@code dst}'s position, one bulk put per row, e.g. into
+     * NPU input memory; allocates nothing once a thread has seen the width.
+     */
+    public static void writeRgb(Bitmap bitmap, ByteBuffer dst) {
+        int width = bitmap.getWidth();
+        RgbRow row = rgbRows.get();
+        if (row.pixels.length < width) {
+            row.pixels = new int[width];
+            row.bytes = new byte[width * CHANNELS];
+        }
+        int[] pixels = row.pixels;
+        byte[] bytes = row.bytes;
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(pixels, 0, width, 0, y, width, 1);
+            for (int x = 0, at = 0; x < width; x++, at += CHANNELS) {
+                int pixel = pixels[x];
+                bytes[at] = (byte) (pixel >> 16);
+                bytes[at + 1] = (byte) (pixel >> 8);
+                bytes[at + 2] = (byte) pixel;
+            }
+            dst.put(bytes, 0, width * CHANNELS);
+        }
+    }
+
+    private static final class RgbRow {
+        int[] pixels = new int[0];
+        byte[] bytes = new byte[0];
     }
 
     private static ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap, Boolean quant, int inputSize) {
@@ -82,18 +119,4 @@ public class Processor {
         }
         return Bitmap.createScaledBitmap(bitmap, targetSize, targetSize, true);
     }
-
-    public static void scaleBoundingBox(Rect rect, float scaleX, float scaleY) {
-        rect.top = (int) (scaleY * rect.top);
-        rect.left = (int) (scaleX * rect.left);
-        rect.bottom = (int) (scaleY * rect.bottom);
-        rect.right = (int) (scaleX * rect.right);
-    }
-
-    public static void scaleBoundingBoxToUI(Rect rect, float startX, float startY, float scaleX, float scaleY) {
-        rect.top = (int) (startY + scaleY * rect.top);
-        rect.left = (int) (startX + scaleX * rect.left);
-        rect.bottom = (int) (startY + scaleY * rect.bottom);
-        rect.right = (int) (startX + scaleX * rect.right);
-    }
 }
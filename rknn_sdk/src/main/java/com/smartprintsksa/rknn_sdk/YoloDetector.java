@@ -3,9 +3,13 @@ package com.smartprintsksa.rknn_sdk;
 import android.content.Context;
 import android.graphics.Bitmap;
 
+import com.smartprintsksa.rknn_sdk.backend.BackendType;
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
 import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that performs object detection to find batteries and non-batteries
@@ -25,6 +29,55 @@ public class YoloDetector {
         return YoloDetectorHelper.setup(context);
     }
 
+    /**
+     * Initializes the detector on a chosen backend. {@link BackendType#RKNN} needs an RK3588 and the
+     * bundled model.rknn; {@link BackendType#TFLITE} and {@link BackendType#OPENCV_DNN} run on any CPU
+     * and need a model.tflite or model.onnx asset exported with the same input size. Models other
+     * than the bundled YOLOv5, e.g. YOLOv8 or another class count, need a model.properties asset
+     * describing them; see {@link com.smartprintsksa.rknn_sdk.backend.ModelDescriptor}.
+     * {@link BackendType#AUTO}, used by {@link #setup(Context)}, takes the NPU when there is one and
+     * otherwise the first CPU model found, TFLite before ONNX. {@link BackendType#HYBRID} runs on the
+     * NPU and sends frames it cannot take in time to that CPU model. An optional classifier.tflite asset
+     * scores the crops of {@link #detect}.
+     *
+     * @param context The Context object used to access system resources and services
+     * @param type    The backend to run on
+     * @return true if the backend's model was loaded
+     */
+    public static boolean setup(Context context, BackendType type){
+        return YoloDetectorHelper.setup(context, type);
+    }
+
+    /**
+     * Initializes the detector on a backend built by the caller, e.g. an
+     * {@link com.smartprintsksa.rknn_sdk.backend.OpenCvDnnBackend} in a desktop benchmark.
+     * The previous backend, if any, is closed.
+     *
+     * @param backend The backend to run on
+     * @return true once the backend is in use
+     */
+    public static boolean setup(InferenceBackend backend){
+        return YoloDetectorHelper.setup(backend);
+    }
+
+    /**
+     * Scores one crop with the classifier.tflite model, or returns null if there is none.
+     *
+     * @param crop A detection crop, e.g. {@link DetectedObject#getBitmap()}
+     * @return The class scores
+     */
+    public static float[] classify(Bitmap crop){
+        return YoloDetectorHelper.classify(crop);
+    }
+
+    /**
+     * Returns the backend in use, or null before {@link #setup}. Its model spec gives the input size
+     * and the layout of the raw outputs.
+     */
+    public static InferenceBackend getBackend(){
+        return YoloDetectorHelper.getBackend();
+    }
+
     /**
      * Performs object detection on a Bitmap image and returns a list of predictions.
      *
@@ -38,10 +91,145 @@ public class YoloDetector {
     }
 
     /**
-     * Returns the total time taken to do the whole process of prediction, from reading the bitmap
-     * until te predictions are returned.
+     * Non-blocking form of {@link #detect}. The calling thread only resizes the image; inference runs
+     * on a free NPU context or CPU worker and decoding on a background thread, so the next frame can
+     * be submitted while this one is still running. Futures complete in the order of the calls. When
+     * {@link #setMaxInFlight} frames are already pending, the call waits for one to finish.
+     *
+     * @param mBitmap The Bitmap image; it may be reused as soon as this method returns
+     * @return Detections with boxes in the coordinates of {@code mBitmap}
+     */
+    public static CompletableFuture<ArrayList<DetectedObject>> detectAsync(Bitmap mBitmap){
+        return YoloDetectorHelper.detectAsync(mBitmap);
+    }
+
+    /**
+     * Sets how many {@link #detectAsync} frames may be pending at once. More frames in flight keep the
+     * NPU cores busier at the cost of latency; the default is 4.
+     *
+     * @param depth The maximum number of pending frames, at least 1
+     */
+    public static void setMaxInFlight(int depth){
+        YoloDetectorHelper.setMaxInFlight(depth);
+    }
+
+    /**
+     * Staged form of {@link #detect}, so callers can overlap preprocessing, NPU inference and
+     * post-processing of consecutive frames on different threads.
+     *
+     * @param mBitmap The Bitmap image to prepare
+     * @return The model input bytes
+     */
+    public static byte[] preprocess(Bitmap mBitmap){
+        return YoloDetectorHelper.preprocess(mBitmap);
+    }
+
+    /**
+     * Runs the model on input from {@link #preprocess}. On the NPU each call takes a free context, so up
+     * to {@link #getNpuContextCount()} threads can infer at once; further callers wait for a context.
+     *
+     * @param input   The model input bytes
+     * @param outputs Caller-owned buffers from {@link #newRawOutput()} that receive the raw outputs
+     * @return {@code outputs}
+     */
+    public static YoloRawOutput infer(byte[] input, YoloRawOutput outputs){
+        return YoloDetectorHelper.infer(input, outputs);
+    }
+
+    /**
+     * Form of {@link #infer(byte[], YoloRawOutput)} for frames of low-priority streams. After
+     * {@code setup(context, BackendType.HYBRID)} these run on the CPU whenever a CPU worker is free,
+     * leaving the NPU to the other streams; on other backends the flag is ignored.
+     *
+     * @param input       The model input bytes
+     * @param outputs     Caller-owned buffers from {@link #newRawOutput()} that receive the raw outputs
+     * @param lowPriority Whether the frame may be moved off the NPU regardless of its load
+     * @return {@code outputs}
+     */
+    public static YoloRawOutput infer(byte[] input, YoloRawOutput outputs, boolean lowPriority){
+        return YoloDetectorHelper.infer(input, outputs, lowPriority);
+    }
+
+    /**
+     * Returns the name of the backend that filled {@code outputs}, e.g. "rknn" or "tflite". With
+     * {@link BackendType#HYBRID} this differs from frame to frame.
+     */
+    public static String getServedBy(YoloRawOutput outputs){
+        return YoloDetectorHelper.getServedBy(outputs);
+    }
+
+    /**
+     * Runs several inputs from {@link #preprocess}, e.g. one frame from each camera, and waits for all
+     * of them. A model converted with a batch size above 1 takes up to {@link #getBatchSize()} inputs per
+     * NPU submission; otherwise the inputs run in parallel on the NPU cores.
+     *
+     * @param inputs  The model input bytes, one per frame
+     * @param outputs Raw output buffers from {@link #newRawOutput()}, one per frame
+     * @param count   The number of frames to run from the start of both arrays
+     */
+    public static void inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int count){
+        YoloDetectorHelper.inferBatch(inputs, outputs, count);
+    }
+
+    /**
+     * Returns the number of images the loaded model takes per NPU submission, 1 for most models.
+     */
+    public static int getBatchSize(){
+        return YoloDetectorHelper.getBatchSize();
+    }
+
+    /**
+     * Decodes raw outputs into detections with boxes in the coordinates of the original image.
+     *
+     * @param outputs     Raw outputs filled by {@link #infer}
+     * @param imageWidth  Width of the image passed to {@link #preprocess}
+     * @param imageHeight Height of the image passed to {@link #preprocess}
+     * @return A list of detected objects
+     */
+    public static ArrayList<DetectedObject> postProcess(YoloRawOutput outputs, int imageWidth, int imageHeight){
+        return YoloDetectorHelper.postProcess(outputs, imageWidth, imageHeight);
+    }
+
+    /**
+     * Decodes raw outputs into detections with boxes mapped through the transform that produced
+     * the model input, e.g. one built by a source that letterboxed its frames itself.
+     *
+     * @param outputs   Raw outputs filled by {@link #infer}
+     * @param transform Maps the source image onto the model input
+     * @return A list of detected objects, boxes in the transform's source coordinates
+     */
+    public static ArrayList<DetectedObject> postProcess(YoloRawOutput outputs, ImageTransform transform){
+        return YoloDetectorHelper.postProcess(outputs, transform);
+    }
+
+    /**
+     * Returns how {@link #preprocess} maps an image of the given size onto the model input.
+     */
+    public static ImageTransform inputTransform(int imageWidth, int imageHeight){
+        return YoloDetectorHelper.inputTransform(imageWidth, imageHeight);
+    }
+
+    /**
+     * Allocates a set of raw output buffers, one per frame in flight.
+     */
+    public static YoloRawOutput newRawOutput(){
+        return YoloDetectorHelper.newRawOutput();
+    }
+
+    /**
+     * Returns the number of NPU contexts, one per NPU core on the RK3588, or 0 before {@link #setup}
+     * and on CPU backends.
+     */
+    public static int getNpuContextCount(){
+        return YoloDetectorHelper.getNpuContextCount();
+    }
+
+    /**
+     * Returns the mean time of {@link #detect}, from reading the bitmap until the predictions are
+     * returned, over the current metrics period. Percentiles per step are in
+     * {@link com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry#global()} under "detector.*".
      *
-     * @return The total time taken for the prediction, in milliseconds
+     * @return The mean time taken for the prediction, in seconds
      */
     public static float getPipelineExecutionTime(){
         return YoloDetectorHelper.getPipelineExecutionTime();
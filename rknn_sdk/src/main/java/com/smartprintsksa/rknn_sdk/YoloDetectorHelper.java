@@ -10,107 +10,424 @@ import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.util.Log;
 
+import com.smartprintsksa.rknn_sdk.backend.BackendType;
+import com.smartprintsksa.rknn_sdk.backend.HybridBackend;
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
+import com.smartprintsksa.rknn_sdk.backend.ModelDescriptor;
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprintsksa.rknn_sdk.backend.OpenCvDnnBackend;
+import com.smartprintsksa.rknn_sdk.backend.RknnBackend;
+import com.smartprintsksa.rknn_sdk.backend.TfLiteBackend;
+import com.smartprintsksa.rknn_sdk.backend.TfLiteClassifier;
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.npu.InputWriter;
 import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
 import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
 
+import org.opencv.android.OpenCVLoader;
+import org.tensorflow.lite.support.common.FileUtil;
+
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class YoloDetectorHelper {
     private static final String TAG = "YOLO DETECTOR HELPER";
 
     private static String fileDirPath;
     private static String mYoloModelName = "model.rknn";
+    // YOLOv5 ONNX export with the same input size, for devices without the NPU
+    private static String mOnnxModelName = "model.onnx";
+    private static String mTfLiteModelName = "model.tflite";
+    // Optional; scores the detection crops in detect()
+    private static String mClassifierModelName = "classifier.tflite";
+    // Optional; head family, anchors and thresholds of the detection models, see ModelDescriptor
+    private static String mModelDescriptorName = "model.properties";
+    private static final int CPU_WORKERS = 2;
+    // Overflow to the CPU once more than one frame would wait for an NPU context, or the wait looks long
+    private static final int HYBRID_MAX_QUEUE_DEPTH = 1;
+    private static final long HYBRID_MAX_WAIT_MS = 40;
     private static final boolean ENCRYPTED = false;
     private static String tmFormat = "yyyyMMddHHmmss";
     protected static float confidenceThreshold = 0.1f;
     protected static float classThreshold = 0.5f;
     protected static float nmsThreshold = 0.5f;
-    private static long durationInference = 0;
 
-    private static long preprocessingTime = 0;
-    private static long detectionTime = 0;
-    private static long proprocessingTime = 0;
+    // Shared with the app's metrics; summaries are dumped periodically instead of logged per frame
+    private static final LatencyHistogram preprocessLatency = MetricsRegistry.global().histogram("detector.preprocess");
+    private static final LatencyHistogram inferenceLatency = MetricsRegistry.global().histogram("detector.inference");
+    private static final LatencyHistogram postprocessLatency = MetricsRegistry.global().histogram("detector.postprocess");
+    private static final LatencyHistogram detectLatency = MetricsRegistry.global().histogram("detector.detect");
+    private static final LatencyHistogram batchInferenceLatency = MetricsRegistry.global().histogram("detector.inference_batch");
 
-    private static InferenceWrapper mInferenceWrapper;
-    private static InferenceResult mInferenceResult;  // detection result
+    private static volatile InferenceBackend mBackend;
+    private static volatile TfLiteClassifier mClassifier;
+    private static ModelDescriptor mDescriptor = ModelDescriptor.DEFAULT;
+    private static AsyncDetector mAsyncDetector;
+    private static int mMaxInFlight = AsyncDetector.DEFAULT_MAX_IN_FLIGHT;
+    private static YoloRawOutput mDetectOutputs;  // raw outputs reused by detect()
 
     public static boolean setup(Context context) {
+        return setup(context, BackendType.AUTO);
+    }
+
+    public static boolean setup(Context context, BackendType type) {
         String platform = RKNNHelper.getPlatform();
         Logger.debug(TAG, "SOC platform: " + platform);
-        if (!"rk3588".equals(platform)) {
+        boolean npu = "rk3588".equals(platform);
+        if ((type == BackendType.RKNN || type == BackendType.HYBRID) && !npu) {
             return false;
         }
 
         fileDirPath = context.getCacheDir().getAbsolutePath();
+        mDescriptor = loadDescriptor(context);
 
-        mInferenceWrapper = new InferenceWrapper();
-        initializeObjectDetectionModel(context, mYoloModelName, ENCRYPTED);
-
-        mInferenceResult = new InferenceResult();
+        InferenceBackend backend;
         try {
-            mInferenceResult.init();
+            if (type == BackendType.RKNN || type == BackendType.HYBRID || (type == BackendType.AUTO && npu)) {
+                createTempFile(context, mYoloModelName, ENCRYPTED);
+                backend = RknnBackend.open(fileDirPath + "/" + mYoloModelName, Processor.YOLO_INPUT, mDescriptor);
+                if (type == BackendType.HYBRID) backend = withCpuOverflow(context, backend);
+            } else if (type == BackendType.TFLITE) {
+                backend = openTfLite(context);
+            } else if (type == BackendType.OPENCV_DNN) {
+                backend = openOpenCvDnn(context);
+            } else {
+                backend = openCpuFallback(context);
+            }
         } catch (IOException e) {
             Logger.error(TAG, "Failure: " + Objects.requireNonNull(e.getMessage()));
             return false;
         }
+        loadClassifier(context);
+        return setup(backend);
+    }
 
-        return true;
+    // The bundled YOLOv5 unless the app ships a descriptor for another model
+    private static ModelDescriptor loadDescriptor(Context context) {
+        try (InputStream in = context.getAssets().open(mModelDescriptorName)) {
+            ModelDescriptor descriptor = ModelDescriptor.load(in);
+            Logger.debug(TAG, "Model descriptor: " + descriptor);
+            return descriptor;
+        } catch (FileNotFoundException e) {
+            return ModelDescriptor.DEFAULT;
+        } catch (IOException e) {
+            Logger.error(TAG, "Ignoring " + mModelDescriptorName + ": " + e.getMessage());
+            return ModelDescriptor.DEFAULT;
+        }
     }
 
-    public static ArrayList<DetectedObject> detect(Bitmap bitmap, float startX, float startY, float ivScaleX, float ivScaleY) {
-        long startTime = System.currentTimeMillis();
-        float imgScaleX = (float) bitmap.getWidth() / Processor.YOLO_INPUT;
-        float imgScaleY = (float) bitmap.getHeight() / Processor.YOLO_INPUT;
+    // No NPU: the first CPU model bundled with the app
+    private static InferenceBackend openCpuFallback(Context context) throws IOException {
+        try {
+            return openTfLite(context);
+        } catch (IOException e) {
+            Logger.debug(TAG, "TFLite backend unavailable: " + e.getMessage());
+            return openOpenCvDnn(context);
+        }
+    }
 
-        // Resize and prepare the input
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, Processor.YOLO_INPUT, Processor.YOLO_INPUT, true);
-        byte[] input = Processor.convertBitmapToByteArray(resizedBitmap);
+    // Keeps the NPU alone if no CPU model is bundled or it takes another input size
+    private static InferenceBackend withCpuOverflow(Context context, InferenceBackend npu) {
+        InferenceBackend cpu;
+        try {
+            cpu = openCpuFallback(context);
+        } catch (IOException e) {
+            Logger.error(TAG, "No CPU backend for overflow: " + e.getMessage());
+            return npu;
+        }
+        try {
+            return new HybridBackend(npu, cpu, HYBRID_MAX_QUEUE_DEPTH, HYBRID_MAX_WAIT_MS);
+        } catch (IllegalArgumentException e) {
+            Logger.error(TAG, "No CPU backend for overflow: " + e.getMessage());
+            cpu.close();
+            return npu;
+        }
+    }
+
+    private static InferenceBackend openTfLite(Context context) throws IOException {
+        // Mapped straight from the APK; the app keeps .tflite assets uncompressed
+        ByteBuffer model = FileUtil.loadMappedFile(context, mTfLiteModelName);
+        return new TfLiteBackend(model, CPU_WORKERS, cpuThreadsPerWorker(), mDescriptor);
+    }
 
-        // Run inference
-        YoloRawOutput outputs = mInferenceWrapper.run(input);
-        mInferenceResult.setResult(outputs);
+    private static InferenceBackend openOpenCvDnn(Context context) throws IOException {
+        if (!OpenCVLoader.initDebug()) {
+            throw new IOException("OpenCV native library not available");
+        }
+        createTempFile(context, mOnnxModelName, false);
+        return new OpenCvDnnBackend(fileDirPath + "/" + mOnnxModelName, Processor.YOLO_INPUT, CPU_WORKERS, mDescriptor);
+    }
 
-        detectionTime = System.currentTimeMillis() - startTime;
-        Logger.debug(TAG, "Detection time: " + detectionTime / 1_000.0f + " seconds");
-        startTime = System.currentTimeMillis();
+    private static void loadClassifier(Context context) {
+        TfLiteClassifier previous = mClassifier;
+        try {
+            mClassifier = new TfLiteClassifier(FileUtil.loadMappedFile(context, mClassifierModelName), 1);
+        } catch (IOException e) {
+            Logger.debug(TAG, "No classifier: " + e.getMessage());
+            mClassifier = null;
+        }
+        if (previous != null) previous.close();
+    }
 
-        // Process results
-        ArrayList<DetectedObject> recognitions = mInferenceResult.getResult(mInferenceWrapper);
-        for (DetectedObject recognition : recognitions) {
-            Rect detection = recognition.getBoundingBox();
+    // Splits the CPU cores between the workers, at least one XNNPACK thread each
+    private static int cpuThreadsPerWorker() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / CPU_WORKERS);
+    }
+
+    // Installs a backend built by the caller, e.g. on a desktop JVM without a Context
+    public static boolean setup(InferenceBackend backend) {
+        InferenceBackend previous = mBackend;
+        AsyncDetector previousAsync = mAsyncDetector;
+
+        mDetectOutputs = backend.newRawOutput();
+        mAsyncDetector = new AsyncDetector(backend);
+        mAsyncDetector.setMaxInFlight(mMaxInFlight);
+        mBackend = backend;
+        Logger.debug(TAG, "Inference backend " + backend.getName() + ": " + backend.getModelSpec());
 
-            // Scale detection box back to original bitmap size
-            Processor.scaleBoundingBox(detection, imgScaleX, imgScaleY);
+        if (previousAsync != null) previousAsync.close();
+        if (previous != null && previous != backend) previous.close();
+        return true;
+    }
+
+    public static float[] classify(Bitmap crop) {
+        TfLiteClassifier classifier = mClassifier;
+        return classifier != null ? classifier.classify(crop) : null;
+    }
+
+    public static InferenceBackend getBackend() {
+        return mBackend;
+    }
+
+    public static ArrayList<DetectedObject> detect(Bitmap bitmap, float startX, float startY, float ivScaleX, float ivScaleY) {
+        long startTime = System.nanoTime();
+        InferenceBackend backend = mBackend;
+        ModelSpec spec = backend.getModelSpec();
+        ImageTransform toBitmap = inputTransform(bitmap.getWidth(), bitmap.getHeight());
+        ImageTransform toView = ImageTransform.builder(bitmap.getWidth(), bitmap.getHeight(),
+                        Math.round(bitmap.getWidth() * ivScaleX), Math.round(bitmap.getHeight() * ivScaleY))
+                .scale(ivScaleX, ivScaleY, startX, startY)
+                .build();
+
+        // Resize, then write the input straight into the memory the backend runs it from
+        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, spec.getInputWidth(), spec.getInputHeight(), true);
+        long resized = System.nanoTime();
+        // Start and end of the write, which happens once a context is free
+        long[] written = new long[2];
+        InputWriter writer = input -> {
+            written[0] = System.nanoTime();
+            Processor.writeRgb(resizedBitmap, input);
+            written[1] = System.nanoTime();
+            return true;
+        };
+
+        // Run inference; on the NPU the outputs stay in its memory until decoded
+        YoloRawOutput outputs = mDetectOutputs;
+        boolean success = false;
+        try {
+            success = backend.inferInPlace(writer, outputs);
+            if (!success) Logger.error(TAG, backend.getName() + " inference failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long now = System.nanoTime();
+        long stageStart = written[1] != 0 ? written[1] : now;
+        preprocessLatency.record(resized - startTime + written[1] - written[0]);
+        inferenceLatency.record(now - stageStart);
+        stageStart = now;
+        // The outputs still hold an earlier frame's results, or nothing; nothing is held either way
+        if (!success) return new ArrayList<>();
+
+        // Process results, handing the NPU context back before the per-box work
+        ArrayList<DetectedObject> recognitions;
+        try {
+            recognitions = backend.decode(outputs);
+        } finally {
+            outputs.release();
+        }
+        int count = recognitions.size();
+        float[] boxes = gatherBoxes(recognitions);
 
-            // Extract the bounding box bitmap
+        // Map the boxes back to the original bitmap and extract each one
+        toBitmap.mapBoxes(boxes, boxes, count);
+        for (int i = 0; i < count; i++) {
+            DetectedObject recognition = recognitions.get(i);
+            Rect detection = recognition.getBoundingBox();
+            setBox(detection, boxes, i);
             Bitmap bboxBitmap = Processor.boundingBoxExtractor(bitmap, detection, Processor.CLASSIFIER_INPUT);
             recognition.setBitmap(bboxBitmap);
+            TfLiteClassifier classifier = mClassifier;
+            if (classifier != null) recognition.setClassConfidence(classifier.classify(bboxBitmap));
+        }
 
-            // Scale detection box to UI coordinates
-            Processor.scaleBoundingBoxToUI(detection, startX, startY, ivScaleX, ivScaleY);
-            recognition.setBoundingBox(detection);
+        // Then on to UI coordinates
+        toView.mapBoxesToTarget(boxes, boxes, count);
+        for (int i = 0; i < count; i++) {
+            setBox(recognitions.get(i).getBoundingBox(), boxes, i);
         }
 
-        proprocessingTime = System.currentTimeMillis() - startTime;
-        Logger.debug(TAG, "Post-processing time: " + proprocessingTime / 1_000.0f + " seconds");
+        now = System.nanoTime();
+        postprocessLatency.record(now - stageStart);
+        detectLatency.record(now - startTime);
 
         return recognitions;
     }
 
-    private static void initializeObjectDetectionModel(Context context, String mYoloModelName, boolean encrypted){
-        createTempFile(context, mYoloModelName, encrypted);
+    /**
+     * Resizes the bitmap to the model input and returns the input bytes, packed RGB888.
+     */
+    public static byte[] preprocess(Bitmap bitmap) {
+        long startTime = System.nanoTime();
+        ModelSpec spec = mBackend.getModelSpec();
+        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, spec.getInputWidth(), spec.getInputHeight(), true);
+        byte[] input = Processor.convertBitmapToByteArray(resizedBitmap);
+        preprocessLatency.recordSince(startTime);
+        return input;
+    }
+
+    /**
+     * Runs the backend on a preprocessed input and writes the raw outputs into {@code outputs}.
+     */
+    public static YoloRawOutput infer(byte[] input, YoloRawOutput outputs) {
+        return infer(input, outputs, false);
+    }
+
+    /**
+     * Same as {@link #infer(byte[], YoloRawOutput)}; on a hybrid backend low-priority frames go to
+     * the CPU whenever it has a free worker.
+     */
+    public static YoloRawOutput infer(byte[] input, YoloRawOutput outputs, boolean lowPriority) {
+        long startTime = System.nanoTime();
+        InferenceBackend backend = mBackend;
+        if (backend instanceof HybridBackend) {
+            try {
+                if (!((HybridBackend) backend).infer(input, outputs, lowPriority)) {
+                    Logger.error(TAG, backend.getName() + " inference failed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            runOnBackend(backend, input, outputs);
+        }
+        inferenceLatency.recordSince(startTime);
+        return outputs;
+    }
+
+    // Name of the backend that produced the outputs; differs per frame on a hybrid backend
+    public static String getServedBy(YoloRawOutput outputs) {
+        InferenceBackend backend = mBackend;
+        if (backend instanceof HybridBackend) return ((HybridBackend) backend).getServedBy(outputs);
+        return backend != null ? backend.getName() : null;
+    }
+
+    public static CompletableFuture<ArrayList<DetectedObject>> detectAsync(Bitmap bitmap) {
+        if (mAsyncDetector == null) {
+            CompletableFuture<ArrayList<DetectedObject>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Detector is not set up"));
+            return failed;
+        }
+        return mAsyncDetector.detect(bitmap);
+    }
+
+    public static void setMaxInFlight(int depth) {
+        mMaxInFlight = Math.max(1, depth);
+        if (mAsyncDetector != null) mAsyncDetector.setMaxInFlight(mMaxInFlight);
+    }
+
+    /**
+     * Runs several preprocessed inputs at once and waits for all of them.
+     */
+    public static void inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int count) {
+        long startTime = System.nanoTime();
         try {
-            mInferenceWrapper.initYolo(Processor.YOLO_INPUT, Processor.YOLO_INPUT,
-                    Processor.CHANNELS, fileDirPath + "/" + mYoloModelName);
-        } catch (Exception e) {
-            Log.e("Model Init", Objects.requireNonNull(e.getMessage()));
+            InferenceBackend backend = mBackend;
+            if (!backend.inferBatch(inputs, outputs, count)) Logger.error(TAG, backend.getName() + " batch inference failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batchInferenceLatency.recordSince(startTime);
+    }
+
+    public static int getBatchSize() {
+        InferenceBackend backend = mBackend;
+        return backend != null ? backend.getBatchSize() : 1;
+    }
+
+    public static int getNpuContextCount() {
+        InferenceBackend backend = mBackend;
+        return backend instanceof RknnBackend ? ((RknnBackend) backend).getContextCount() : 0;
+    }
+
+    private static void runOnBackend(InferenceBackend backend, byte[] input, YoloRawOutput outputs) {
+        try {
+            if (!backend.infer(input, outputs)) Logger.error(TAG, backend.getName() + " inference failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * How {@link #preprocess} maps an image of the given size onto the model input.
+     */
+    public static ImageTransform inputTransform(int imageWidth, int imageHeight) {
+        ModelSpec spec = mBackend.getModelSpec();
+        return ImageTransform.stretch(imageWidth, imageHeight, spec.getInputWidth(), spec.getInputHeight());
+    }
+
+    /**
+     * Decodes raw outputs and scales the boxes to an image of the given size.
+     */
+    public static ArrayList<DetectedObject> postProcess(YoloRawOutput outputs, int imageWidth, int imageHeight) {
+        return postProcess(outputs, inputTransform(imageWidth, imageHeight));
+    }
+
+    /**
+     * Decodes raw outputs and maps the boxes from model input pixels to the transform's source.
+     */
+    public static ArrayList<DetectedObject> postProcess(YoloRawOutput outputs, ImageTransform transform) {
+        long startTime = System.nanoTime();
+        ArrayList<DetectedObject> recognitions = mBackend.decode(outputs);
+        int count = recognitions.size();
+        float[] boxes = gatherBoxes(recognitions);
+        transform.mapBoxes(boxes, boxes, count);
+        for (int i = 0; i < count; i++) {
+            setBox(recognitions.get(i).getBoundingBox(), boxes, i);
         }
+        postprocessLatency.recordSince(startTime);
+        return recognitions;
+    }
+
+    // Boxes as (left, top, right, bottom) runs, so a transform maps them in one pass
+    private static float[] gatherBoxes(List<DetectedObject> recognitions) {
+        float[] boxes = new float[recognitions.size() * 4];
+        for (int i = 0, at = 0; i < recognitions.size(); i++, at += 4) {
+            Rect box = recognitions.get(i).getBoundingBox();
+            boxes[at] = box.left;
+            boxes[at + 1] = box.top;
+            boxes[at + 2] = box.right;
+            boxes[at + 3] = box.bottom;
+        }
+        return boxes;
+    }
+
+    private static void setBox(Rect box, float[] boxes, int index) {
+        int at = index * 4;
+        box.set((int) boxes[at], (int) boxes[at + 1], (int) boxes[at + 2], (int) boxes[at + 3]);
+    }
+
+    public static YoloRawOutput newRawOutput() {
+        return mBackend.newRawOutput();
     }
 
     private static void createTempFile(Context context, String fileName, boolean encrypted) {
@@ -166,7 +483,7 @@ public class YoloDetectorHelper {
     }
 
     public static float getPipelineExecutionTime(){
-        return (preprocessingTime + detectionTime + proprocessingTime) / 1_000.0f;
+        return (float) (detectLatency.snapshot().getMeanNanos() / 1_000_000_000.0);
     }
 
 }
@@ -0,0 +1,14 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+/**
+ * Which {@link InferenceBackend} the detector runs on.
+ */
+public enum BackendType {
+    // RKNN on an RK3588, otherwise the first CPU backend whose model is bundled
+    AUTO,
+    RKNN,
+    TFLITE,
+    OPENCV_DNN,
+    // RKNN with frames the NPU cannot take in time sent to the CPU backend AUTO would pick
+    HYBRID
+}
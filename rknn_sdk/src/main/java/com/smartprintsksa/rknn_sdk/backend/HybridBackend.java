@@ -0,0 +1,199 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.metrics.LatencyHistogram;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The NPU backend with a CPU backend taking its overflow. A frame goes to the primary unless the
+ * frames that would wait for it, this one included, exceed {@code maxQueueDepth}, or the wait
+ * predicted from its recent latency exceeds {@code maxWaitMs}; it then runs on the secondary if one
+ * of its workers is free.
+ * Low-priority frames prefer the secondary. Both backends must take the same input size.
+ * <p>
+ * Frames served by the two backends finish out of order; callers that need ordered results run
+ * them through a reorder stage, as {@code detectAsync} does. Counts per backend are registered as
+ * {@code detector.hybrid.<backend>.frames}, with latencies under {@code detector.hybrid.<backend>.inference}.
+ */
+public class HybridBackend implements InferenceBackend {
+    private static final int PRIMARY = 0;
+    private static final int SECONDARY = 1;
+
+    private final InferenceBackend[] backends;
+    private final int maxQueueDepth;
+    private final long maxWaitNanos;
+    private final AtomicInteger[] inFlight = {new AtomicInteger(), new AtomicInteger()};
+    private final AtomicLong[] served = new AtomicLong[2];
+    private final LatencyHistogram[] latency = new LatencyHistogram[2];
+    private final AtomicLong overflowed;
+    // Smoothed primary latency; racy updates only blur an estimate
+    private volatile long primaryLatencyNanos;
+
+    /**
+     * @param maxQueueDepth frames allowed to wait for the primary; 0 overflows as soon as it is fully busy
+     * @param maxWaitMs     predicted primary wait above which frames overflow; 0 disables the check
+     */
+    public HybridBackend(InferenceBackend primary, InferenceBackend secondary, int maxQueueDepth, long maxWaitMs) {
+        ModelSpec a = primary.getModelSpec();
+        ModelSpec b = secondary.getModelSpec();
+        if (a.getInputWidth() != b.getInputWidth() || a.getInputHeight() != b.getInputHeight()) {
+            throw new IllegalArgumentException("Input sizes differ: " + a.getInput() + " and " + b.getInput());
+        }
+        this.backends = new InferenceBackend[]{primary, secondary};
+        this.maxQueueDepth = Math.max(0, maxQueueDepth);
+        this.maxWaitNanos = maxWaitMs * 1_000_000L;
+        MetricsRegistry registry = MetricsRegistry.global();
+        for (int i = 0; i < backends.length; i++) {
+            String prefix = "detector.hybrid." + backends[i].getName() + ".";
+            served[i] = registry.counter(prefix + "frames");
+            latency[i] = registry.histogram(prefix + "inference");
+        }
+        overflowed = registry.counter("detector.hybrid.overflow");
+        registry.gauge("detector.hybrid.queue_depth", () -> Math.max(0, inFlight[PRIMARY].get() - primary.getParallelism()));
+    }
+
+    @Override
+    public String getName() {
+        return "hybrid";
+    }
+
+    public InferenceBackend getPrimary() {
+        return backends[PRIMARY];
+    }
+
+    public InferenceBackend getSecondary() {
+        return backends[SECONDARY];
+    }
+
+    // The primary's input and outputs; the secondary's outputs are described by its own spec
+    @Override
+    public ModelSpec getModelSpec() {
+        return backends[PRIMARY].getModelSpec();
+    }
+
+    @Override
+    public int getParallelism() {
+        return backends[PRIMARY].getParallelism() + backends[SECONDARY].getParallelism();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return backends[PRIMARY].getBatchSize();
+    }
+
+    @Override
+    public YoloRawOutput newRawOutput() {
+        return new HybridRawOutput(new YoloRawOutput[]{
+                backends[PRIMARY].newRawOutput(), backends[SECONDARY].newRawOutput()});
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) throws InterruptedException {
+        return infer(input, outputs, false);
+    }
+
+    /**
+     * @param lowPriority run on the secondary whenever it has a free worker
+     */
+    public boolean infer(byte[] input, YoloRawOutput outputs, boolean lowPriority) throws InterruptedException {
+        HybridRawOutput hybrid = (HybridRawOutput) outputs;
+        int target = route(lowPriority);
+        long startTime = System.nanoTime();
+        boolean success;
+        try {
+            success = backends[target].infer(input, hybrid.perBackend[target]);
+        } finally {
+            inFlight[target].decrementAndGet();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        latency[target].record(elapsed);
+        served[target].incrementAndGet();
+        if (target == PRIMARY) {
+            long previous = primaryLatencyNanos;
+            primaryLatencyNanos = previous == 0 ? elapsed : previous + (elapsed - previous) / 8;
+        }
+        hybrid.select(target);
+        return success;
+    }
+
+    // Reserves a slot on the chosen backend
+    private int route(boolean lowPriority) {
+        InferenceBackend primary = backends[PRIMARY];
+        int waiting = inFlight[PRIMARY].get() - primary.getParallelism() + 1;
+        boolean saturated = waiting > maxQueueDepth || (maxWaitNanos > 0 && predictedWaitNanos(waiting) > maxWaitNanos);
+        if (lowPriority || saturated) {
+            AtomicInteger secondary = inFlight[SECONDARY];
+            int busy;
+            while ((busy = secondary.get()) < backends[SECONDARY].getParallelism()) {
+                if (secondary.compareAndSet(busy, busy + 1)) {
+                    if (!lowPriority) overflowed.incrementAndGet();
+                    return SECONDARY;
+                }
+            }
+        }
+        inFlight[PRIMARY].incrementAndGet();
+        return PRIMARY;
+    }
+
+    // Waiting frames drain at parallelism frames per primary latency
+    private long predictedWaitNanos(int waiting) {
+        if (waiting <= 0) return 0;
+        return waiting * primaryLatencyNanos / Math.max(1, backends[PRIMARY].getParallelism());
+    }
+
+    // A batch stays on the primary, which is what batching is for
+    @Override
+    public boolean inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int count) throws InterruptedException {
+        YoloRawOutput[] primaryOutputs = new YoloRawOutput[count];
+        for (int i = 0; i < count; i++) {
+            primaryOutputs[i] = ((HybridRawOutput) outputs[i]).perBackend[PRIMARY];
+        }
+        inFlight[PRIMARY].addAndGet(count);
+        long startTime = System.nanoTime();
+        boolean success;
+        try {
+            success = backends[PRIMARY].inferBatch(inputs, primaryOutputs, count);
+        } finally {
+            inFlight[PRIMARY].addAndGet(-count);
+        }
+        latency[PRIMARY].recordSince(startTime);
+        served[PRIMARY].addAndGet(count);
+        for (int i = 0; i < count; i++) {
+            ((HybridRawOutput) outputs[i]).select(PRIMARY);
+        }
+        return success;
+    }
+
+    @Override
+    public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        HybridRawOutput hybrid = (HybridRawOutput) outputs;
+        int backend = hybrid.getServedBy();
+        if (backend < 0) return new ArrayList<>();
+        return backends[backend].decode(hybrid.perBackend[backend]);
+    }
+
+    // Name of the backend that filled the outputs, null before their first inference
+    public String getServedBy(YoloRawOutput outputs) {
+        int backend = outputs instanceof HybridRawOutput ? ((HybridRawOutput) outputs).getServedBy() : -1;
+        return backend >= 0 ? backends[backend].getName() : null;
+    }
+
+    public long getServedCount(boolean secondary) {
+        return served[secondary ? SECONDARY : PRIMARY].get();
+    }
+
+    public long getOverflowCount() {
+        return overflowed.get();
+    }
+
+    @Override
+    public void close() {
+        backends[PRIMARY].close();
+        backends[SECONDARY].close();
+    }
+}
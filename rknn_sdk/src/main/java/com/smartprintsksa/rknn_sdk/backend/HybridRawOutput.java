@@ -0,0 +1,30 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+/**
+ * Raw outputs of a {@link HybridBackend}: one buffer set per backend, since their models may produce
+ * different tensors. After an inference the grid fields point at the buffers of the backend that
+ * served it.
+ */
+public class HybridRawOutput extends YoloRawOutput {
+    final YoloRawOutput[] perBackend;
+    volatile int servedBy = -1;
+
+    HybridRawOutput(YoloRawOutput[] perBackend) {
+        this.perBackend = perBackend;
+    }
+
+    void select(int backend) {
+        YoloRawOutput served = perBackend[backend];
+        mGrid0Out = served.mGrid0Out;
+        mGrid1Out = served.mGrid1Out;
+        mGrid2Out = served.mGrid2Out;
+        servedBy = backend;
+    }
+
+    // Index of the backend that filled these outputs, -1 before the first inference
+    public int getServedBy() {
+        return servedBy;
+    }
+}
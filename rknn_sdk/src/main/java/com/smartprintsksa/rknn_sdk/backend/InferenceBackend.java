@@ -0,0 +1,84 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.npu.InputWriter;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A detection model on some runtime: the RKNN NPU on the device, a CPU runtime anywhere else.
+ * {@link com.smartprintsksa.rknn_sdk.YoloDetectorHelper} only talks to this interface, so the same
+ * pipeline runs and can be benchmarked on any backend.
+ * <p>
+ * {@link #infer} and {@link #decode} may be called from several threads at once; implementations
+ * confine their per-run state to a context or thread.
+ */
+public interface InferenceBackend {
+
+    String getName();
+
+    ModelSpec getModelSpec();
+
+    // Threads that can usefully call infer() at the same time, e.g. one per NPU core
+    int getParallelism();
+
+    // Images the model takes per submission; 1 unless it was converted with a larger batch
+    default int getBatchSize() {
+        return 1;
+    }
+
+    default YoloRawOutput newRawOutput() {
+        return getModelSpec().newRawOutput();
+    }
+
+    /**
+     * Runs the model on one RGBA_8888 or packed RGB888 input of the model input size, told apart by
+     * length, and writes the raw outputs into {@code outputs}, which came from {@link #newRawOutput()}.
+     *
+     * @return false if the runtime reported a failure; {@code outputs} is then undefined
+     */
+    boolean infer(byte[] input, YoloRawOutput outputs) throws InterruptedException;
+
+    /**
+     * Same as {@link #infer(byte[], YoloRawOutput)}, with the packed RGB888 input written by
+     * {@code writer} once the backend knows where it wants it. The NPU has it written into the
+     * free context's input memory; this default writes into a fresh array.
+     */
+    default boolean infer(InputWriter writer, YoloRawOutput outputs) throws InterruptedException {
+        ByteBuffer input = ByteBuffer.allocate(getModelSpec().getRgbInputByteSize());
+        return writer.write(input) && infer(input.array(), outputs);
+    }
+
+    /**
+     * Same as {@link #infer(InputWriter, YoloRawOutput)}, but the outputs may be left in the
+     * runtime's memory: on the NPU they become read-only views that hold the context until
+     * {@link YoloRawOutput#release()}, which the caller must call once they are decoded. This
+     * default copies, and release is a no-op.
+     */
+    default boolean inferInPlace(InputWriter writer, YoloRawOutput outputs) throws InterruptedException {
+        return infer(writer, outputs);
+    }
+
+    /**
+     * Runs the first {@code count} inputs and waits for all of them.
+     *
+     * @return false if any of them failed
+     */
+    default boolean inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int count) throws InterruptedException {
+        boolean success = true;
+        for (int i = 0; i < count; i++) {
+            success &= infer(inputs[i], outputs[i]);
+        }
+        return success;
+    }
+
+    /**
+     * Turns raw outputs into detections, with boxes in model input pixels.
+     */
+    ArrayList<DetectedObject> decode(YoloRawOutput outputs);
+
+    // Releases the runtime; the backend cannot be used afterwards
+    void close();
+}
@@ -0,0 +1,301 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.nms.NmsEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * What the output tensors alone do not say about a detection model: the head family, and for
+ * YOLOv5 the anchors of each output. Everything else (grid sizes, strides, class count, layout,
+ * quantization) is read from the tensors, so swapping models only means swapping this descriptor,
+ * usually a model.properties asset next to the model:
+ * <pre>
+ * # yolov5 (default), yolov8 or yolov11
+ * head=yolov8
+ * # optional, checked against the tensors
+ * classes=80
+ * # optional, input size / grid size otherwise
+ * strides=8,16,32
+ * # yolov5 only, (width, height) pairs in input pixels, one group per output
+ * anchors=10,13,16,30,33,23;30,61,62,45,59,119;116,90,156,198,373,326
+ * # yolov8 DFL bins per box side
+ * reg_max=16
+ * # logits, probabilities, or auto: logits for grid outputs, probabilities for flat ones
+ * scores=auto
+ * box_threshold=0.2
+ * nms_threshold=0.6
+ * # greedy, diou, soft_linear or soft_gaussian; soft_nms_sigma is the spread of soft_gaussian
+ * nms=greedy
+ * soft_nms_sigma=0.5
+ * # RKNN only: take int8 outputs as they leave the NPU and threshold them in the int8 domain
+ * quantized_outputs=false
+ * </pre>
+ */
+public final class ModelDescriptor {
+
+    public enum Head {
+        // Anchor-based (x, y, w, h, objectness, classes) rows per anchor
+        YOLOV5,
+        // Anchor-free with distribution focal loss box sides and no objectness; also YOLOv11
+        YOLOV8
+    }
+
+    public enum Scores {
+        AUTO, LOGITS, PROBABILITIES
+    }
+
+    // The COCO anchors of the stock YOLOv5 models, for strides 8, 16 and 32
+    private static final float[][] YOLOV5_ANCHORS = {
+            {10, 13, 16, 30, 33, 23},
+            {30, 61, 62, 45, 59, 119},
+            {116, 90, 156, 198, 373, 326}
+    };
+
+    // The bundled YOLOv5 model, with the thresholds of post_process.h
+    public static final ModelDescriptor DEFAULT = builder().build();
+
+    private final Head head;
+    private final int classes;
+    private final int[] strides;
+    private final float[][] anchors;
+    private final int regMax;
+    private final Scores scores;
+    private final float boxThreshold;
+    private final float nmsThreshold;
+    private final NmsEngine.Method nmsMethod;
+    private final float softNmsSigma;
+    private final boolean quantizedOutputs;
+
+    private ModelDescriptor(Builder builder) {
+        this.head = builder.head;
+        this.classes = builder.classes;
+        this.strides = builder.strides.clone();
+        this.anchors = new float[builder.anchors.length][];
+        for (int i = 0; i < anchors.length; i++) {
+            anchors[i] = builder.anchors[i].clone();
+        }
+        this.regMax = builder.regMax;
+        this.scores = builder.scores;
+        this.boxThreshold = builder.boxThreshold;
+        this.nmsThreshold = builder.nmsThreshold;
+        this.nmsMethod = builder.nmsMethod;
+        this.softNmsSigma = builder.softNmsSigma;
+        this.quantizedOutputs = builder.quantizedOutputs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads the properties format above; missing keys keep their defaults.
+     */
+    public static ModelDescriptor load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        Builder builder = builder();
+        try {
+            String head = properties.getProperty("head");
+            if (head != null) {
+                String name = head.trim().toUpperCase(Locale.US);
+                builder.head("YOLOV11".equals(name) ? Head.YOLOV8 : Head.valueOf(name));
+            }
+            String classes = properties.getProperty("classes");
+            if (classes != null) builder.classes(Integer.parseInt(classes.trim()));
+            String strides = properties.getProperty("strides");
+            if (strides != null) {
+                float[] values = parseList(strides);
+                int[] ints = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    ints[i] = (int) values[i];
+                }
+                builder.strides(ints);
+            }
+            String anchors = properties.getProperty("anchors");
+            if (anchors != null) {
+                String[] groups = anchors.split(";");
+                float[][] parsed = new float[groups.length][];
+                for (int i = 0; i < groups.length; i++) {
+                    parsed[i] = parseList(groups[i]);
+                }
+                builder.anchors(parsed);
+            }
+            String regMax = properties.getProperty("reg_max");
+            if (regMax != null) builder.regMax(Integer.parseInt(regMax.trim()));
+            String scores = properties.getProperty("scores");
+            if (scores != null) builder.scores(Scores.valueOf(scores.trim().toUpperCase(Locale.US)));
+            String boxThreshold = properties.getProperty("box_threshold");
+            if (boxThreshold != null) builder.boxThreshold(Float.parseFloat(boxThreshold.trim()));
+            String nmsThreshold = properties.getProperty("nms_threshold");
+            if (nmsThreshold != null) builder.nmsThreshold(Float.parseFloat(nmsThreshold.trim()));
+            String nms = properties.getProperty("nms");
+            if (nms != null) builder.nmsMethod(NmsEngine.Method.valueOf(nms.trim().toUpperCase(Locale.US)));
+            String softNmsSigma = properties.getProperty("soft_nms_sigma");
+            if (softNmsSigma != null) builder.softNmsSigma(Float.parseFloat(softNmsSigma.trim()));
+            String quantizedOutputs = properties.getProperty("quantized_outputs");
+            if (quantizedOutputs != null) builder.quantizedOutputs(Boolean.parseBoolean(quantizedOutputs.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid model descriptor: " + e.getMessage(), e);
+        }
+        return builder.build();
+    }
+
+    private static float[] parseList(String list) {
+        String[] parts = list.split(",");
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Float.parseFloat(parts[i].trim());
+        }
+        return values;
+    }
+
+    public Head getHead() {
+        return head;
+    }
+
+    // 0 when the class count comes from the tensors
+    public int getClasses() {
+        return classes;
+    }
+
+    // Empty when strides come from the input and grid sizes
+    public int[] getStrides() {
+        return strides.clone();
+    }
+
+    // (width, height) pairs in input pixels, one group per output; YOLOv5 only
+    public float[] getAnchors(int output) {
+        return anchors[output].clone();
+    }
+
+    public int getAnchorGroups() {
+        return anchors.length;
+    }
+
+    public int getRegMax() {
+        return regMax;
+    }
+
+    public Scores getScores() {
+        return scores;
+    }
+
+    public float getBoxThreshold() {
+        return boxThreshold;
+    }
+
+    public float getNmsThreshold() {
+        return nmsThreshold;
+    }
+
+    public NmsEngine.Method getNmsMethod() {
+        return nmsMethod;
+    }
+
+    public float getSoftNmsSigma() {
+        return softNmsSigma;
+    }
+
+    // Output buffers stay int8 where the model's outputs are, a quarter of the float size to copy and scan
+    public boolean isQuantizedOutputs() {
+        return quantizedOutputs;
+    }
+
+    @Override
+    public String toString() {
+        return head + (classes > 0 ? " classes=" + classes : "")
+                + (strides.length > 0 ? " strides=" + Arrays.toString(strides) : "")
+                + (head == Head.YOLOV8 ? " reg_max=" + regMax : " anchors=" + Arrays.deepToString(anchors))
+                + " scores=" + scores + " box_threshold=" + boxThreshold + " nms_threshold=" + nmsThreshold
+                + " nms=" + nmsMethod + (nmsMethod == NmsEngine.Method.SOFT_GAUSSIAN ? " soft_nms_sigma=" + softNmsSigma : "")
+                + (quantizedOutputs ? " quantized_outputs" : "");
+    }
+
+    public static final class Builder {
+        private Head head = Head.YOLOV5;
+        private int classes;
+        private int[] strides = new int[0];
+        private float[][] anchors = YOLOV5_ANCHORS;
+        private int regMax = 16;
+        private Scores scores = Scores.AUTO;
+        // Same as BOX_THRESH and NMS_THRESH in post_process.h
+        private float boxThreshold = 0.2f;
+        private float nmsThreshold = 0.6f;
+        private NmsEngine.Method nmsMethod = NmsEngine.Method.GREEDY;
+        private float softNmsSigma = 0.5f;
+        private boolean quantizedOutputs;
+
+        private Builder() {
+        }
+
+        public Builder head(Head head) {
+            this.head = head;
+            return this;
+        }
+
+        public Builder classes(int classes) {
+            this.classes = classes;
+            return this;
+        }
+
+        public Builder strides(int... strides) {
+            this.strides = strides;
+            return this;
+        }
+
+        public Builder anchors(float[][] anchors) {
+            for (float[] group : anchors) {
+                if (group.length == 0 || group.length % 2 != 0) {
+                    throw new IllegalArgumentException("Anchors must be (width, height) pairs: " + Arrays.toString(group));
+                }
+            }
+            this.anchors = anchors;
+            return this;
+        }
+
+        public Builder regMax(int regMax) {
+            if (regMax < 1) throw new IllegalArgumentException("reg_max must be positive: " + regMax);
+            this.regMax = regMax;
+            return this;
+        }
+
+        public Builder scores(Scores scores) {
+            this.scores = scores;
+            return this;
+        }
+
+        public Builder boxThreshold(float boxThreshold) {
+            this.boxThreshold = boxThreshold;
+            return this;
+        }
+
+        public Builder nmsThreshold(float nmsThreshold) {
+            this.nmsThreshold = nmsThreshold;
+            return this;
+        }
+
+        public Builder nmsMethod(NmsEngine.Method nmsMethod) {
+            this.nmsMethod = nmsMethod;
+            return this;
+        }
+
+        public Builder softNmsSigma(float softNmsSigma) {
+            if (softNmsSigma <= 0) throw new IllegalArgumentException("soft_nms_sigma must be positive: " + softNmsSigma);
+            this.softNmsSigma = softNmsSigma;
+            return this;
+        }
+
+        public Builder quantizedOutputs(boolean quantizedOutputs) {
+            this.quantizedOutputs = quantizedOutputs;
+            return this;
+        }
+
+        public ModelDescriptor build() {
+            return new ModelDescriptor(this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a backend's model takes and produces. Whatever the model tensor looks like, callers always
+ * pass {@link InferenceBackend#infer} RGBA_8888 or packed RGB888 pixels of {@link #getInputWidth()}
+ * x {@link #getInputHeight()}; the backend converts them to {@link #getInput()}. The raw outputs are
+ * described in order and land in {@link YoloRawOutput#mGrid0Out}, {@code mGrid1Out} and
+ * {@code mGrid2Out}, in native byte order.
+ */
+public final class ModelSpec {
+    public static final int MAX_OUTPUTS = 3;
+
+    private final TensorSpec input;
+    private final List<TensorSpec> outputs;
+
+    public ModelSpec(TensorSpec input, List<TensorSpec> outputs) {
+        if (outputs.isEmpty() || outputs.size() > MAX_OUTPUTS) {
+            throw new IllegalArgumentException("Unsupported number of outputs: " + outputs.size());
+        }
+        this.input = input;
+        this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+    }
+
+    public TensorSpec getInput() {
+        return input;
+    }
+
+    public List<TensorSpec> getOutputs() {
+        return outputs;
+    }
+
+    public int getInputWidth() {
+        return input.getWidth();
+    }
+
+    public int getInputHeight() {
+        return input.getHeight();
+    }
+
+    // Bytes of the RGBA_8888 image infer() takes
+    public int getInputByteSize() {
+        return getInputWidth() * getInputHeight() * 4;
+    }
+
+    // Bytes of the packed RGB888 image infer() also takes, e.g. letterboxed straight from camera planes
+    public int getRgbInputByteSize() {
+        return getInputWidth() * getInputHeight() * 3;
+    }
+
+    // Buffers sized for one inference, one per declared output
+    public YoloRawOutput newRawOutput() {
+        YoloRawOutput outputs = new YoloRawOutput();
+        outputs.mGrid0Out = new byte[(int) this.outputs.get(0).getByteSize()];
+        if (this.outputs.size() > 1) outputs.mGrid1Out = new byte[(int) this.outputs.get(1).getByteSize()];
+        if (this.outputs.size() > 2) outputs.mGrid2Out = new byte[(int) this.outputs.get(2).getByteSize()];
+        return outputs;
+    }
+
+    @Override
+    public String toString() {
+        return "input " + input + ", outputs " + outputs;
+    }
+}
@@ -0,0 +1,201 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.Logger;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.opencv.core.CvException;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A YOLO ONNX export on the CPU through OpenCV's DNN module, for devices without the NPU, CI and
+ * desktop benchmarks. A {@link Net} is not thread-safe, so every worker thread loads its own copy on
+ * first use and keeps it. The model's single flat output, [1, boxes, 5 + classes] for YOLOv5 or
+ * [1, 4 + classes, boxes] for YOLOv8, is decoded by the same Java decoder as the NPU outputs.
+ * <p>
+ * The OpenCV native library must be loaded before this class is used.
+ */
+public class OpenCvDnnBackend implements InferenceBackend {
+    private static final String TAG = "OPENCV DNN BACKEND";
+
+    private final String modelPath;
+    private final int workers;
+    private final ModelSpec spec;
+    private final YoloDecoder decoder;
+    private final ThreadLocal<Worker> worker = new ThreadLocal<>();
+    private final Set<Worker> openWorkers = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
+    // Nets loaded but not yet claimed by a thread, starting with the one used to read the output shape
+    private final ConcurrentLinkedQueue<Net> spareNets = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * @param modelPath path of the .onnx file
+     * @param inputSize width and height the model was exported with
+     * @param workers   number of threads expected to call {@link #infer} at once
+     */
+    public OpenCvDnnBackend(String modelPath, int inputSize, int workers) throws IOException {
+        this(modelPath, inputSize, workers, ModelDescriptor.DEFAULT);
+    }
+
+    /**
+     * @param descriptor head family and thresholds of the model
+     */
+    public OpenCvDnnBackend(String modelPath, int inputSize, int workers, ModelDescriptor descriptor) throws IOException {
+        this.modelPath = modelPath;
+        this.workers = Math.max(1, workers);
+        Net net = load(modelPath);
+
+        int[] outputDims;
+        try {
+            Mat black = new Mat(inputSize, inputSize, CvType.CV_8UC3, Scalar.all(0));
+            Mat blob = Dnn.blobFromImage(black, 1.0 / 255, new Size(inputSize, inputSize), Scalar.all(0), false, false);
+            net.setInput(blob);
+            Mat probe = net.forward();
+            outputDims = new int[probe.dims()];
+            for (int i = 0; i < outputDims.length; i++) {
+                outputDims[i] = probe.size(i);
+            }
+            probe.release();
+            blob.release();
+            black.release();
+        } catch (CvException e) {
+            throw new IOException("Cannot run " + modelPath + ": " + e.getMessage(), e);
+        }
+        if (outputDims.length != 3) {
+            throw new IOException("Expected a [1, boxes, fields] output, got " + Arrays.toString(outputDims));
+        }
+
+        TensorSpec input = new TensorSpec("images", new int[]{1, 3, inputSize, inputSize},
+                TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32);
+        TensorSpec output = new TensorSpec("output", outputDims, TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32);
+        spec = new ModelSpec(input, Collections.singletonList(output));
+        try {
+            decoder = new YoloDecoder(spec, descriptor, false);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        spareNets.add(net);
+        Logger.debug(TAG, "Loaded " + modelPath + ": " + spec);
+    }
+
+    private static Net load(String modelPath) throws IOException {
+        try {
+            Net net = Dnn.readNetFromONNX(modelPath);
+            if (net.empty()) throw new IOException("Empty network in " + modelPath);
+            net.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+            net.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+            return net;
+        } catch (CvException e) {
+            throw new IOException("Cannot load " + modelPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "opencv_dnn";
+    }
+
+    @Override
+    public ModelSpec getModelSpec() {
+        return spec;
+    }
+
+    @Override
+    public int getParallelism() {
+        return workers;
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) {
+        if (closed) return false;
+        Mat blob = null;
+        Mat result = null;
+        try {
+            Worker w = currentWorker();
+            if (input.length == spec.getRgbInputByteSize()) {
+                w.rgb.create(spec.getInputHeight(), spec.getInputWidth(), CvType.CV_8UC3);
+                w.rgb.put(0, 0, input);
+            } else {
+                w.rgba.put(0, 0, input);
+                Imgproc.cvtColor(w.rgba, w.rgb, Imgproc.COLOR_RGBA2RGB);
+            }
+            blob = Dnn.blobFromImage(w.rgb, 1.0 / 255, w.size, Scalar.all(0), false, false);
+            w.net.setInput(blob);
+            result = w.net.forward();
+            result.reshape(1, 1).get(0, 0, w.output);
+            ByteBuffer.wrap(outputs.mGrid0Out).order(ByteOrder.nativeOrder()).asFloatBuffer().put(w.output);
+            return true;
+        } catch (CvException | IOException e) {
+            Logger.error(TAG, "Inference failed: " + e.getMessage());
+            return false;
+        } finally {
+            if (blob != null) blob.release();
+            if (result != null) result.release();
+        }
+    }
+
+    @Override
+    public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        return decoder.decode(outputs);
+    }
+
+    private Worker currentWorker() throws IOException {
+        Worker w = worker.get();
+        if (w == null) {
+            Net net = spareNets.poll();
+            w = new Worker(net != null ? net : load(modelPath), spec.getInputWidth(), spec.getInputHeight(),
+                    (int) spec.getOutputs().get(0).getElementCount());
+            worker.set(w);
+            openWorkers.add(w);
+        }
+        return w;
+    }
+
+    // Call once in-flight infer() calls have returned
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker w : openWorkers) {
+            w.release();
+        }
+        openWorkers.clear();
+        spareNets.clear();
+    }
+
+    // Per-thread network and scratch images
+    private static final class Worker {
+        final Net net;
+        final Size size;
+        final Mat rgba;
+        final Mat rgb = new Mat();
+        final float[] output;
+
+        Worker(Net net, int width, int height, int outputLength) {
+            this.net = net;
+            this.size = new Size(width, height);
+            this.rgba = new Mat(height, width, CvType.CV_8UC4);
+            this.output = new float[outputLength];
+        }
+
+        void release() {
+            rgba.release();
+            rgb.release();
+        }
+    }
+}
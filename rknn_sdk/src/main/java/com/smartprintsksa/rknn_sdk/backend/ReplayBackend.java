@@ -0,0 +1,123 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.Logger;
+import com.smartprintsksa.rknn_sdk.record.RawOutputReader;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecord;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays back a {@link RawOutputReader} recording instead of running a model: {@link #infer} ignores
+ * its input and hands out the recorded outputs in file order, as fast as they are asked for. Decoding
+ * runs the Java decoder on the recorded tensor specs, or a real backend for the same model, so
+ * everything after inference can be profiled and regression-tested off the device against real scenes.
+ */
+public class ReplayBackend implements InferenceBackend {
+    private static final String TAG = "REPLAY BACKEND";
+
+    private final RawOutputReader reader;
+    private final YoloDecoder javaDecoder;
+    private final InferenceBackend decoder;
+    private final boolean loop;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Decodes in Java, needing nothing but the recording; flat outputs must hold pixel boxes.
+     *
+     * @param descriptor the recorded model's head family, anchors and thresholds
+     * @param loop       start over at the end instead of failing every further {@link #infer}
+     */
+    public ReplayBackend(RawOutputReader reader, ModelDescriptor descriptor, boolean loop) {
+        this.reader = reader;
+        this.javaDecoder = new YoloDecoder(reader.getModelSpec(), descriptor, false);
+        this.decoder = null;
+        this.loop = loop;
+    }
+
+    /**
+     * @param decoder backend whose {@link #decode} matches the recorded outputs; closed with this one
+     * @param loop    start over at the end instead of failing every further {@link #infer}
+     */
+    public ReplayBackend(RawOutputReader reader, InferenceBackend decoder, boolean loop) {
+        ModelSpec recorded = reader.getModelSpec();
+        ModelSpec decoded = decoder.getModelSpec();
+        if (recorded.getOutputs().size() != decoded.getOutputs().size()) {
+            throw new IllegalArgumentException("Recorded " + recorded + " cannot be decoded by " + decoder.getName());
+        }
+        for (int i = 0; i < recorded.getOutputs().size(); i++) {
+            if (recorded.getOutputs().get(i).getByteSize() != decoded.getOutputs().get(i).getByteSize()) {
+                throw new IllegalArgumentException("Recorded " + recorded + " cannot be decoded by " + decoder.getName());
+            }
+        }
+        this.reader = reader;
+        this.javaDecoder = null;
+        this.decoder = decoder;
+        this.loop = loop;
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public ModelSpec getModelSpec() {
+        return reader.getModelSpec();
+    }
+
+    // Reading is a memory copy, so every core can take part
+    @Override
+    public int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getRecordCount() {
+        return reader.getRecordCount();
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) {
+        return nextRecord(outputs) != null;
+    }
+
+    /**
+     * Copies the next recording into {@code outputs}.
+     *
+     * @return its metadata, or null past the end of a recording that does not loop
+     */
+    public RawOutputRecord nextRecord(YoloRawOutput outputs) {
+        int count = reader.getRecordCount();
+        long index = next.getAndIncrement();
+        if (count == 0 || (!loop && index >= count)) return null;
+        try {
+            return reader.read((int) (index % count), outputs);
+        } catch (IOException e) {
+            Logger.error(TAG, "Replay failed at record " + index + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Starts over from the first record
+    public void rewind() {
+        next.set(0);
+    }
+
+    @Override
+    public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        return javaDecoder != null ? javaDecoder.decode(outputs) : decoder.decode(outputs);
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            Logger.warn(TAG, "Closing recording failed: " + e.getMessage());
+        }
+        if (decoder != null) decoder.close();
+    }
+}
@@ -0,0 +1,161 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.InferenceWrapper;
+import com.smartprintsksa.rknn_sdk.Logger;
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.npu.InputWriter;
+import com.smartprintsksa.rknn_sdk.npu.NpuContextPool;
+import com.smartprintsksa.rknn_sdk.npu.NpuCore;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The RKNN model on the RK3588 NPU, with one context per NPU core. Inference calls go to whichever
+ * context is free. Output shapes are queried from the runtime and decoded in Java as the
+ * {@link ModelDescriptor} says, so a new model needs no native changes.
+ */
+public class RknnBackend implements InferenceBackend {
+    private static final String TAG = "RKNN BACKEND";
+
+    private final InferenceWrapper primary;
+    private final NpuContextPool<Object> pool;
+    private final ModelSpec spec;
+    private final YoloDecoder decoder;
+
+    private RknnBackend(InferenceWrapper primary, NpuContextPool<Object> pool, ModelSpec spec, YoloDecoder decoder) {
+        this.primary = primary;
+        this.pool = pool;
+        this.spec = spec;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Loads the bundled YOLOv5 .rknn model whose input is {@code inputSize} x {@code inputSize} RGB.
+     */
+    public static RknnBackend open(String modelPath, int inputSize) throws IOException {
+        return open(modelPath, inputSize, ModelDescriptor.DEFAULT);
+    }
+
+    /**
+     * Loads an .rknn model whose input is {@code inputSize} x {@code inputSize} RGB.
+     *
+     * @param descriptor head family, anchors and thresholds of the model
+     */
+    public static RknnBackend open(String modelPath, int inputSize, ModelDescriptor descriptor) throws IOException {
+        InferenceWrapper primary = new InferenceWrapper();
+        try {
+            primary.initYolo(inputSize, inputSize, 3, modelPath, descriptor.isQuantizedOutputs());
+        } catch (Exception e) {
+            throw new IOException("Cannot load " + modelPath + ": " + e.getMessage(), e);
+        }
+        TensorSpec input = new TensorSpec("input", new int[]{primary.getBatchSize(), inputSize, inputSize, 3},
+                TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8);
+        ModelSpec spec;
+        YoloDecoder decoder;
+        try {
+            spec = new ModelSpec(input, primary.getOutputSpecs());
+            decoder = new YoloDecoder(spec, descriptor, false);
+        } catch (IllegalArgumentException e) {
+            primary.deinit();
+            throw new IOException(modelPath + " does not match " + descriptor + ": " + e.getMessage(), e);
+        }
+        NpuContextPool<Object> pool;
+        try {
+            pool = createPool(primary);
+        } catch (IOException e) {
+            primary.deinit();
+            throw e;
+        }
+        Logger.debug(TAG, "Decoding " + decoder.getClasses() + " classes as " + descriptor);
+        return new RknnBackend(primary, pool, spec, decoder);
+    }
+
+    // Falls back to a single context on any core if the runtime cannot duplicate or pin contexts
+    private static NpuContextPool<Object> createPool(InferenceWrapper primary) throws IOException {
+        NpuContextPool<Object> pool;
+        int batch = primary.getBatchSize();
+        if (batch > 1) {
+            // A multi-batch model spreads each submission over the cores itself; one context is enough
+            pool = new NpuContextPool<>(primary, new int[]{NpuCore.CORE_0_1_2}, null);
+            primary.setBatchCoreNum(Math.min(batch, NpuCore.RK3588_CORES.length));
+        } else {
+            try {
+                pool = new NpuContextPool<>(primary, NpuCore.RK3588_CORES, null);
+            } catch (IOException e) {
+                Logger.error(TAG, "Multi-core NPU pool unavailable, using one context: " + e.getMessage());
+                pool = new NpuContextPool<>(primary, new int[]{NpuCore.AUTO}, null);
+            }
+        }
+        for (int i = 0; i < pool.size(); i++) {
+            final int index = i;
+            final NpuContextPool<Object> registered = pool;
+            String name = "detector.npu." + NpuCore.toString(pool.getCoreMask(i));
+            MetricsRegistry.global().gauge(name + ".runs", () -> registered.getRunCount(index));
+            MetricsRegistry.global().gauge(name + ".failures", () -> registered.getFailureCount(index));
+        }
+        return pool;
+    }
+
+    @Override
+    public String getName() {
+        return "rknn";
+    }
+
+    @Override
+    public ModelSpec getModelSpec() {
+        return spec;
+    }
+
+    @Override
+    public int getParallelism() {
+        return pool.size();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return pool.getBatchSize();
+    }
+
+    @Override
+    public YoloRawOutput newRawOutput() {
+        return primary.newRawOutput();
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) throws InterruptedException {
+        return pool.run(input, outputs);
+    }
+
+    @Override
+    public boolean infer(InputWriter writer, YoloRawOutput outputs) throws InterruptedException {
+        return pool.run(writer, spec.getRgbInputByteSize(), outputs);
+    }
+
+    @Override
+    public boolean inferInPlace(InputWriter writer, YoloRawOutput outputs) throws InterruptedException {
+        return pool.runInPlace(writer, spec.getRgbInputByteSize(), outputs);
+    }
+
+    @Override
+    public boolean inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int count) throws InterruptedException {
+        return pool.runBatch(inputs, outputs, count);
+    }
+
+    @Override
+    public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        return decoder.decode(outputs);
+    }
+
+    // Number of NPU contexts, one per core unless the runtime could not pin them
+    public int getContextCount() {
+        return pool.size();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
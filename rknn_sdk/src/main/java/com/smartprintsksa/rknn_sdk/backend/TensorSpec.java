@@ -0,0 +1,118 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Shape, memory layout, element type and quantization of one model tensor. Quantized tensors map
+ * to real values as {@code (q - zeroPoint) * scale}.
+ */
+public final class TensorSpec {
+
+    public enum Layout {
+        NHWC, NCHW,
+        // Anything that is not an image, e.g. a [1, boxes, 5 + classes] detection tensor
+        FLAT
+    }
+
+    public enum DataType {
+        UINT8(1), INT8(1), FLOAT32(4);
+
+        private final int bytes;
+
+        DataType(int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private final String name;
+    private final int[] dims;
+    private final Layout layout;
+    private final DataType type;
+    private final float scale;
+    private final int zeroPoint;
+
+    public TensorSpec(String name, int[] dims, Layout layout, DataType type) {
+        this(name, dims, layout, type, 1.0f, 0);
+    }
+
+    public TensorSpec(String name, int[] dims, Layout layout, DataType type, float scale, int zeroPoint) {
+        this.name = name;
+        this.dims = dims.clone();
+        this.layout = layout;
+        this.type = type;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int[] getDims() {
+        return dims.clone();
+    }
+
+    public int getDim(int index) {
+        return dims[index];
+    }
+
+    public int getRank() {
+        return dims.length;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public DataType getType() {
+        return type;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public boolean isQuantized() {
+        return type != DataType.FLOAT32;
+    }
+
+    // Image dimensions of a 4-d NHWC or NCHW tensor
+    public int getWidth() {
+        return layout == Layout.NCHW ? dims[3] : dims[2];
+    }
+
+    public int getHeight() {
+        return layout == Layout.NCHW ? dims[2] : dims[1];
+    }
+
+    public int getChannels() {
+        return layout == Layout.NCHW ? dims[1] : dims[3];
+    }
+
+    public long getElementCount() {
+        long count = 1;
+        for (int dim : dims) {
+            count *= dim;
+        }
+        return count;
+    }
+
+    public long getByteSize() {
+        return getElementCount() * type.getBytes();
+    }
+
+    @Override
+    public String toString() {
+        String quantization = isQuantized() ? String.format(Locale.US, " scale=%g zp=%d", scale, zeroPoint) : "";
+        return name + " " + Arrays.toString(dims) + " " + layout + " " + type + quantization;
+    }
+}
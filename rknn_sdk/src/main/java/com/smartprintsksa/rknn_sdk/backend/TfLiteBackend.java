@@ -0,0 +1,106 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.Logger;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A YOLO TFLite export on the CPU with XNNPACK, one interpreter per inference in flight. Float, uint8
+ * and int8 models are supported; the single flat output has boxes normalized to the input size, as
+ * the YOLOv5 and YOLOv8 exporters write them, and is decoded by the shared Java decoder.
+ */
+public class TfLiteBackend implements InferenceBackend {
+    private static final String TAG = "TFLITE BACKEND";
+
+    private final TfLiteInterpreterPool pool;
+    private final int workers;
+    private final ModelSpec spec;
+    private final YoloDecoder decoder;
+
+    /**
+     * @param model            the .tflite model, e.g. from {@code FileUtil.loadMappedFile}
+     * @param workers          number of threads expected to call {@link #infer} at once
+     * @param threadsPerWorker XNNPACK threads of each worker's interpreter
+     */
+    public TfLiteBackend(ByteBuffer model, int workers, int threadsPerWorker) throws IOException {
+        this(model, workers, threadsPerWorker, ModelDescriptor.DEFAULT);
+    }
+
+    /**
+     * @param descriptor head family and thresholds of the model
+     */
+    public TfLiteBackend(ByteBuffer model, int workers, int threadsPerWorker, ModelDescriptor descriptor)
+            throws IOException {
+        this.pool = new TfLiteInterpreterPool(model, threadsPerWorker);
+        this.workers = Math.max(1, workers);
+        TensorSpec input = pool.getInput();
+        if (input.getRank() != 4 || input.getChannels() != 3 || pool.getOutputs().size() != 1) {
+            pool.close();
+            throw new IOException("Expected an RGB image input and one detection output, got "
+                    + input + " -> " + pool.getOutputs());
+        }
+        spec = new ModelSpec(input, pool.getOutputs());
+        try {
+            decoder = new YoloDecoder(spec, descriptor, true);
+        } catch (IllegalArgumentException e) {
+            pool.close();
+            throw new IOException(e.getMessage(), e);
+        }
+        Logger.debug(TAG, "Loaded " + spec + ", " + this.workers + " workers x " + threadsPerWorker + " threads");
+    }
+
+    @Override
+    public String getName() {
+        return "tflite";
+    }
+
+    @Override
+    public ModelSpec getModelSpec() {
+        return spec;
+    }
+
+    @Override
+    public int getParallelism() {
+        return workers;
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) {
+        TfLiteInterpreterPool.Worker w = null;
+        try {
+            w = pool.acquire();
+            TensorSpec tensor = spec.getInput();
+            ByteBuffer dst = w.input;
+            dst.rewind();
+            int step = input.length == spec.getRgbInputByteSize() ? 3 : 4;
+            for (int i = 0; i < input.length; i += step) {
+                TfLiteInterpreterPool.putChannel(dst, tensor, input[i] & 0xFF, 1 / 255f);
+                TfLiteInterpreterPool.putChannel(dst, tensor, input[i + 1] & 0xFF, 1 / 255f);
+                TfLiteInterpreterPool.putChannel(dst, tensor, input[i + 2] & 0xFF, 1 / 255f);
+            }
+            w.run();
+            w.outputs[0].get(outputs.mGrid0Out, 0, w.outputs[0].remaining());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Logger.error(TAG, "Inference failed: " + e.getMessage());
+            return false;
+        } finally {
+            if (w != null) pool.release(w);
+        }
+    }
+
+    @Override
+    public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        return decoder.decode(outputs);
+    }
+
+    // Call once in-flight infer() calls have returned
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,99 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import android.graphics.Bitmap;
+
+import com.smartprintsksa.rknn_sdk.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An image classifier on TFLite for the crops the detector cuts out, one interpreter per crop in
+ * flight like {@link TfLiteBackend}. Pixels are fed as raw 0-255 RGB values, or quantized with the
+ * input tensor's parameters.
+ */
+public class TfLiteClassifier {
+    private static final String TAG = "TFLITE CLASSIFIER";
+
+    private final TfLiteInterpreterPool pool;
+    private final TensorSpec input;
+    private final TensorSpec output;
+
+    /**
+     * @param model            the .tflite model, e.g. from {@code FileUtil.loadMappedFile}
+     * @param threadsPerWorker XNNPACK threads of each interpreter
+     */
+    public TfLiteClassifier(ByteBuffer model, int threadsPerWorker) throws IOException {
+        this.pool = new TfLiteInterpreterPool(model, threadsPerWorker);
+        this.input = pool.getInput();
+        this.output = pool.getOutputs().get(0);
+        if (input.getRank() != 4 || input.getChannels() != 3) {
+            pool.close();
+            throw new IOException("Expected an RGB image input, got " + input);
+        }
+        Logger.debug(TAG, "Loaded " + input + " -> " + output);
+    }
+
+    public int getInputWidth() {
+        return input.getWidth();
+    }
+
+    public int getInputHeight() {
+        return input.getHeight();
+    }
+
+    /**
+     * Returns the class scores of one crop, or null if the interpreter failed. The crop is resized
+     * to the model input if needed.
+     */
+    public float[] classify(Bitmap crop) {
+        TfLiteInterpreterPool.Worker w = null;
+        try {
+            w = pool.acquire();
+            int width = input.getWidth();
+            int height = input.getHeight();
+            Bitmap scaled = crop.getWidth() == width && crop.getHeight() == height
+                    ? crop : Bitmap.createScaledBitmap(crop, width, height, true);
+            if (w.pixels == null) w.pixels = new int[width * height];
+            scaled.getPixels(w.pixels, 0, width, 0, 0, width, height);
+
+            ByteBuffer dst = w.input;
+            dst.rewind();
+            for (int pixel : w.pixels) {
+                TfLiteInterpreterPool.putChannel(dst, input, (pixel >> 16) & 0xFF, 1f);
+                TfLiteInterpreterPool.putChannel(dst, input, (pixel >> 8) & 0xFF, 1f);
+                TfLiteInterpreterPool.putChannel(dst, input, pixel & 0xFF, 1f);
+            }
+            w.run();
+            return readScores(w.outputs[0]);
+        } catch (IOException | RuntimeException e) {
+            Logger.error(TAG, "Classification failed: " + e.getMessage());
+            return null;
+        } finally {
+            if (w != null) pool.release(w);
+        }
+    }
+
+    private float[] readScores(ByteBuffer buffer) {
+        float[] scores = new float[(int) output.getElementCount()];
+        for (int i = 0; i < scores.length; i++) {
+            switch (output.getType()) {
+                case FLOAT32:
+                    scores[i] = buffer.getFloat();
+                    break;
+                case UINT8:
+                    scores[i] = ((buffer.get() & 0xFF) - output.getZeroPoint()) * output.getScale();
+                    break;
+                default:
+                    scores[i] = (buffer.get() - output.getZeroPoint()) * output.getScale();
+                    break;
+            }
+        }
+        return scores;
+    }
+
+    // Call once in-flight classify() calls have returned
+    public void close() {
+        pool.close();
+    }
+}
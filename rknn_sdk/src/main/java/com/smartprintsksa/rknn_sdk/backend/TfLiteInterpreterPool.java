@@ -0,0 +1,173 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * TFLite interpreters over one model, each with preallocated direct input and output buffers. An
+ * interpreter is not thread-safe, so a caller leases one for a run and hands it back; the pool grows
+ * to the most runs in flight at once and no further, however often the calling threads change.
+ * Every interpreter runs on XNNPACK with a fixed number of threads.
+ */
+final class TfLiteInterpreterPool {
+    private final ByteBuffer model;
+    private final int threadsPerInterpreter;
+    private final TensorSpec input;
+    private final List<TensorSpec> outputs;
+    private final Set<Worker> openWorkers = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
+    // Interpreters not leased right now, starting with the one used to read the tensors
+    private final ConcurrentLinkedQueue<Worker> spareWorkers = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * @param model the .tflite flatbuffer; it must stay unchanged while any interpreter is open
+     */
+    TfLiteInterpreterPool(ByteBuffer model, int threadsPerInterpreter) throws IOException {
+        this.model = model;
+        this.threadsPerInterpreter = Math.max(1, threadsPerInterpreter);
+        Worker first = newWorker();
+        input = toSpec(first.interpreter.getInputTensor(0));
+        List<TensorSpec> specs = new ArrayList<>();
+        for (int i = 0; i < first.outputs.length; i++) {
+            specs.add(toSpec(first.interpreter.getOutputTensor(i)));
+        }
+        outputs = Collections.unmodifiableList(specs);
+        openWorkers.add(first);
+        spareWorkers.add(first);
+    }
+
+    TensorSpec getInput() {
+        return input;
+    }
+
+    List<TensorSpec> getOutputs() {
+        return outputs;
+    }
+
+    // An interpreter for one run; hand it back with release()
+    Worker acquire() throws IOException {
+        if (closed) throw new IOException("Interpreter pool is closed");
+        Worker w = spareWorkers.poll();
+        if (w == null) {
+            w = newWorker();
+            openWorkers.add(w);
+        }
+        return w;
+    }
+
+    void release(Worker w) {
+        if (!closed) spareWorkers.add(w);
+    }
+
+    // Call once in-flight runs have returned
+    void close() {
+        closed = true;
+        for (Worker w : openWorkers) {
+            w.interpreter.close();
+        }
+        openWorkers.clear();
+        spareWorkers.clear();
+    }
+
+    private Worker newWorker() throws IOException {
+        Interpreter.Options options = new Interpreter.Options()
+                .setNumThreads(threadsPerInterpreter)
+                .setUseXNNPACK(true);
+        try {
+            return new Worker(new Interpreter(model, options));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cannot load TFLite model: " + e.getMessage(), e);
+        }
+    }
+
+    private static TensorSpec toSpec(Tensor tensor) throws IOException {
+        TensorSpec.DataType type;
+        switch (tensor.dataType()) {
+            case FLOAT32:
+                type = TensorSpec.DataType.FLOAT32;
+                break;
+            case UINT8:
+                type = TensorSpec.DataType.UINT8;
+                break;
+            case INT8:
+                type = TensorSpec.DataType.INT8;
+                break;
+            default:
+                throw new IOException("Unsupported tensor type " + tensor.dataType() + " of " + tensor.name());
+        }
+        int[] shape = tensor.shape();
+        TensorSpec.Layout layout = shape.length == 4 ? TensorSpec.Layout.NHWC : TensorSpec.Layout.FLAT;
+        Tensor.QuantizationParams quantization = tensor.quantizationParams();
+        return new TensorSpec(tensor.name(), shape, layout, type,
+                quantization.getScale(), quantization.getZeroPoint());
+    }
+
+    /**
+     * Writes one pixel channel value {@code v} (0-255) into a model input, as {@code v * valueScale}
+     * for float tensors and quantized with the tensor's scale and zero point otherwise. Quantized
+     * tensors without quantization parameters take the raw byte.
+     */
+    static void putChannel(ByteBuffer dst, TensorSpec spec, int v, float valueScale) {
+        if (spec.getType() == TensorSpec.DataType.FLOAT32) {
+            dst.putFloat(v * valueScale);
+            return;
+        }
+        int q = spec.getScale() > 0 ? Math.round(v * valueScale / spec.getScale()) + spec.getZeroPoint() : v;
+        if (spec.getType() == TensorSpec.DataType.UINT8) {
+            q = Math.max(0, Math.min(255, q));
+        } else {
+            q = Math.max(-128, Math.min(127, q));
+        }
+        dst.put((byte) q);
+    }
+
+    static final class Worker {
+        final Interpreter interpreter;
+        final ByteBuffer input;
+        final ByteBuffer[] outputs;
+        private final Object[] inputs;
+        private final Map<Integer, Object> outputMap = new HashMap<>();
+        // Scratch space for the caller holding the lease, e.g. a crop's pixels
+        int[] pixels;
+
+        Worker(Interpreter interpreter) {
+            this.interpreter = interpreter;
+            this.input = allocate(interpreter.getInputTensor(0).numBytes());
+            this.inputs = new Object[]{input};
+            this.outputs = new ByteBuffer[interpreter.getOutputTensorCount()];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = allocate(interpreter.getOutputTensor(i).numBytes());
+                outputMap.put(i, outputs[i]);
+            }
+        }
+
+        private static ByteBuffer allocate(int bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+
+        // Runs on the filled input; outputs are rewound for reading
+        void run() {
+            input.rewind();
+            for (ByteBuffer output : outputs) {
+                output.rewind();
+            }
+            interpreter.runForMultipleInputsOutputs(inputs, outputMap);
+            input.rewind();
+            for (ByteBuffer output : outputs) {
+                output.rewind();
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.Processor;
+import com.smartprintsksa.rknn_sdk.nms.NmsEngine;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decodes the raw outputs of a YOLO detection model into boxes in model input pixels. The layout is
+ * worked out from the output {@link TensorSpec}s and a {@link ModelDescriptor}, so any class count
+ * and input size works without touching native code:
+ * <ul>
+ * <li>YOLOv5 grids: one [1, anchors * (5 + classes), h, w] output per stride</li>
+ * <li>YOLOv8/11 grids: one [1, 4 * regMax + classes, h, w] output per stride, box sides as DFL bins</li>
+ * <li>flat YOLOv5 [1, boxes, 5 + classes] and YOLOv8 [1, 4 + classes, boxes] outputs with (cx, cy, w, h) boxes</li>
+ * </ul>
+ * Grids may be NCHW or NHWC, float or quantized. Cells are rejected on the raw objectness or class
+ * value before any sigmoid, and quantized outputs are compared as integers against the threshold
+ * quantized once, so only the survivors are dequantized; the rest go through the descriptor's {@link NmsEngine}.
+ */
+final class YoloDecoder {
+    private static final int FIELDS = NmsEngine.FIELDS;
+
+    private final ModelDescriptor descriptor;
+    private final Branch[] branches;
+    private final int classes;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final float threshold;
+    private final NmsEngine nms;
+
+    /**
+     * @param normalizedBoxes flat outputs hold boxes relative to the input size, as TFLite exports do
+     */
+    YoloDecoder(ModelSpec spec, ModelDescriptor descriptor, boolean normalizedBoxes) {
+        this.descriptor = descriptor;
+        this.inputWidth = spec.getInputWidth();
+        this.inputHeight = spec.getInputHeight();
+        this.threshold = descriptor.getBoxThreshold();
+        this.nms = new NmsEngine(descriptor.getNmsMethod(), descriptor.getNmsThreshold(), threshold,
+                descriptor.getSoftNmsSigma(), Processor.OBJ_NUMB_MAX_SIZE);
+        List<TensorSpec> outputs = spec.getOutputs();
+        boolean grid = outputs.get(0).getRank() == 4;
+        boolean logits = descriptor.getScores() == ModelDescriptor.Scores.AUTO
+                ? grid : descriptor.getScores() == ModelDescriptor.Scores.LOGITS;
+
+        branches = new Branch[outputs.size()];
+        int[] anchorGroups = grid ? anchorGroups(outputs) : null;
+        for (int i = 0; i < branches.length; i++) {
+            TensorSpec output = outputs.get(i);
+            if ((output.getRank() == 4) != grid) {
+                throw new IllegalArgumentException("Cannot mix grid and flat outputs: " + outputs);
+            }
+            Branch branch = grid ? gridBranch(output, i, anchorGroups[i]) : flatBranch(output, normalizedBoxes);
+            branch.logits = logits;
+            branch.setThreshold(logits ? unsigmoid(threshold) : threshold);
+            branches[i] = branch;
+        }
+        int count = branches[0].classes;
+        for (Branch branch : branches) {
+            if (branch.classes != count) {
+                throw new IllegalArgumentException("Outputs disagree on the class count: " + outputs);
+            }
+        }
+        if (descriptor.getClasses() > 0 && descriptor.getClasses() != count) {
+            throw new IllegalArgumentException("Descriptor has " + descriptor.getClasses()
+                    + " classes, the outputs " + count + ": " + outputs);
+        }
+        this.classes = count;
+    }
+
+    int getClasses() {
+        return classes;
+    }
+
+    ModelDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+        float[] candidates = candidates(outputs);
+        return nms.run(candidates, candidates.length / FIELDS);
+    }
+
+    // Cells over the threshold as (x1, y1, x2, y2, score, class) in input pixels, before NMS
+    float[] candidates(YoloRawOutput outputs) {
+        float[] candidates = new float[16 * FIELDS];
+        int count = 0;
+        for (int i = 0; i < branches.length; i++) {
+            Branch branch = branches[i];
+            // Views over NPU memory after a zero-copy run, the arrays otherwise
+            ByteBuffer buffer = outputs.buffer(i);
+            int first = branch.objectness ? 5 : branch.classChannel;
+            for (int a = 0; a < branch.anchors; a++) {
+                int base = a * branch.anchorChannels;
+                for (int p = 0; p < branch.positions; p++) {
+                    int offset = p * branch.positionStride + base * branch.channelStride;
+                    float score;
+                    int bestClass;
+                    if (branch.quantized) {
+                        if (branch.objectness) {
+                            int objectness = branch.readQuantized(buffer, offset, 4);
+                            if (objectness < branch.quantizedThreshold) continue;
+                            bestClass = branch.argMaxQuantized(buffer, offset, first, classes);
+                            score = branch.activate(branch.dequantize(objectness))
+                                    * branch.activate(branch.dequantize(branch.readQuantized(buffer, offset, first + bestClass)));
+                        } else {
+                            bestClass = branch.argMaxQuantized(buffer, offset, first, classes);
+                            int best = branch.readQuantized(buffer, offset, first + bestClass);
+                            if (best < branch.quantizedThreshold) continue;
+                            score = branch.activate(branch.dequantize(best));
+                        }
+                    } else if (branch.objectness) {
+                        float objectness = branch.read(buffer, offset, 4);
+                        if (objectness < branch.rawThreshold) continue;
+                        bestClass = branch.argMax(buffer, offset, first, classes);
+                        score = branch.activate(objectness) * branch.activate(branch.read(buffer, offset, first + bestClass));
+                    } else {
+                        bestClass = branch.argMax(buffer, offset, first, classes);
+                        float best = branch.read(buffer, offset, first + bestClass);
+                        if (best < branch.rawThreshold) continue;
+                        score = branch.activate(best);
+                    }
+                    if (score < threshold) continue;
+
+                    if ((count + 1) * FIELDS > candidates.length) candidates = Arrays.copyOf(candidates, candidates.length * 2);
+                    int at = count++ * FIELDS;
+                    branch.box(buffer, offset, p, a, candidates, at);
+                    candidates[at] = clamp(candidates[at], inputWidth);
+                    candidates[at + 1] = clamp(candidates[at + 1], inputHeight);
+                    candidates[at + 2] = clamp(candidates[at + 2], inputWidth);
+                    candidates[at + 3] = clamp(candidates[at + 3], inputHeight);
+                    candidates[at + 4] = score;
+                    candidates[at + 5] = bestClass;
+                }
+            }
+        }
+        return Arrays.copyOf(candidates, count * FIELDS);
+    }
+
+    // Anchor group of each grid output: the finest grid takes the first group, as strides grow with the groups
+    private static int[] anchorGroups(List<TensorSpec> outputs) {
+        Integer[] order = new Integer[outputs.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> -outputs.get(i).getHeight() * outputs.get(i).getWidth()));
+        int[] groups = new int[order.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            groups[order[rank]] = rank;
+        }
+        return groups;
+    }
+
+    private Branch gridBranch(TensorSpec output, int index, int anchorGroup) {
+        if (output.getLayout() != TensorSpec.Layout.NCHW && output.getLayout() != TensorSpec.Layout.NHWC) {
+            throw new IllegalArgumentException("Grid output must be NCHW or NHWC: " + output);
+        }
+        Branch branch = new Branch(output);
+        int channels = output.getChannels();
+        int height = output.getHeight();
+        int width = output.getWidth();
+        branch.width = width;
+        branch.positions = width * height;
+        boolean nchw = output.getLayout() == TensorSpec.Layout.NCHW;
+        branch.channelStride = nchw ? branch.positions : 1;
+        branch.positionStride = nchw ? 1 : channels;
+        int[] strides = descriptor.getStrides();
+        if (strides.length > 0) {
+            if (index >= strides.length) throw new IllegalArgumentException("No stride for output " + output);
+            branch.strideX = branch.strideY = strides[index];
+        } else {
+            branch.strideX = (float) inputWidth / width;
+            branch.strideY = (float) inputHeight / height;
+        }
+
+        if (descriptor.getHead() == ModelDescriptor.Head.YOLOV5) {
+            if (anchorGroup >= descriptor.getAnchorGroups()) {
+                throw new IllegalArgumentException("No anchors for output " + output);
+            }
+            branch.kind = Branch.GRID_ANCHORS;
+            branch.anchorSizes = descriptor.getAnchors(anchorGroup);
+            branch.anchors = branch.anchorSizes.length / 2;
+            if (channels % branch.anchors != 0 || channels / branch.anchors <= 5) {
+                throw new IllegalArgumentException(branch.anchors + " anchors do not fit output " + output);
+            }
+            branch.anchorChannels = channels / branch.anchors;
+            branch.objectness = true;
+            branch.classes = branch.anchorChannels - 5;
+        } else {
+            int regMax = descriptor.getRegMax();
+            if (channels <= 4 * regMax) {
+                throw new IllegalArgumentException("reg_max " + regMax + " does not fit output " + output);
+            }
+            branch.kind = Branch.GRID_DFL;
+            branch.regMax = regMax;
+            branch.classChannel = 4 * regMax;
+            branch.classes = channels - 4 * regMax;
+        }
+        return branch;
+    }
+
+    private Branch flatBranch(TensorSpec output, boolean normalizedBoxes) {
+        if (output.getRank() != 3) {
+            throw new IllegalArgumentException("Expected a grid or [1, boxes, fields] output, got " + output);
+        }
+        Branch branch = new Branch(output);
+        branch.kind = Branch.FLAT;
+        boolean v5 = descriptor.getHead() == ModelDescriptor.Head.YOLOV5;
+        int first = output.getDim(1);
+        int second = output.getDim(2);
+        // YOLOv5 exports rows of fields; YOLOv8 exports fields first, e.g. [1, 84, 8400]
+        boolean fieldsFirst = !v5 && first < second;
+        int fields = fieldsFirst ? first : second;
+        branch.positions = fieldsFirst ? second : first;
+        branch.channelStride = fieldsFirst ? branch.positions : 1;
+        branch.positionStride = fieldsFirst ? 1 : fields;
+        branch.objectness = v5;
+        branch.classChannel = v5 ? 5 : 4;
+        branch.classes = fields - branch.classChannel;
+        if (branch.classes < 1) {
+            throw new IllegalArgumentException("Too few fields for a " + descriptor.getHead() + " output: " + output);
+        }
+        branch.strideX = normalizedBoxes ? inputWidth : 1;
+        branch.strideY = normalizedBoxes ? inputHeight : 1;
+        return branch;
+    }
+
+    private static float clamp(float value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    static float sigmoid(float x) {
+        return (float) (1 / (1 + Math.exp(-x)));
+    }
+
+    static float unsigmoid(float y) {
+        return (float) -Math.log(1 / y - 1);
+    }
+
+    // One output tensor and where its fields live
+    private static final class Branch {
+        static final int GRID_ANCHORS = 0;
+        static final int GRID_DFL = 1;
+        static final int FLAT = 2;
+
+        final TensorSpec.DataType type;
+        final boolean quantized;
+        final float scale;
+        final int zeroPoint;
+        int kind;
+        // Element distance between cells or boxes, and between fields of one cell
+        int positions;
+        int positionStride;
+        int channelStride;
+        int width;
+        int anchors = 1;
+        int anchorChannels;
+        float[] anchorSizes;
+        int regMax;
+        boolean objectness;
+        int classChannel;
+        int classes;
+        // Input pixels per grid cell, or per box unit of a flat output
+        float strideX;
+        float strideY;
+        boolean logits;
+        float rawThreshold;
+        // rawThreshold in the tensor's integer domain, rounded up so integer compare rejects the same cells
+        int quantizedThreshold;
+
+        Branch(TensorSpec tensor) {
+            this.type = tensor.getType();
+            this.quantized = tensor.isQuantized() && tensor.getScale() > 0;
+            this.scale = tensor.getScale();
+            this.zeroPoint = tensor.getZeroPoint();
+        }
+
+        void setThreshold(float raw) {
+            rawThreshold = raw;
+            if (quantized) quantizedThreshold = (int) Math.ceil(raw / scale + zeroPoint);
+        }
+
+        int readQuantized(ByteBuffer buffer, int offset, int channel) {
+            int index = offset + channel * channelStride;
+            return type == TensorSpec.DataType.UINT8 ? buffer.get(index) & 0xFF : buffer.get(index);
+        }
+
+        float dequantize(int value) {
+            return (value - zeroPoint) * scale;
+        }
+
+        // Dequantization is monotonic, so the best class is found on the raw integers
+        int argMaxQuantized(ByteBuffer buffer, int offset, int first, int count) {
+            int bestClass = 0;
+            int best = readQuantized(buffer, offset, first);
+            for (int c = 1; c < count; c++) {
+                int value = readQuantized(buffer, offset, first + c);
+                if (value > best) {
+                    best = value;
+                    bestClass = c;
+                }
+            }
+            return bestClass;
+        }
+
+        int argMax(ByteBuffer buffer, int offset, int first, int count) {
+            int bestClass = 0;
+            float best = read(buffer, offset, first);
+            for (int c = 1; c < count; c++) {
+                float value = read(buffer, offset, first + c);
+                if (value > best) {
+                    best = value;
+                    bestClass = c;
+                }
+            }
+            return bestClass;
+        }
+
+        float read(ByteBuffer buffer, int offset, int channel) {
+            int index = offset + channel * channelStride;
+            switch (type) {
+                case FLOAT32:
+                    return buffer.getFloat(index * 4);
+                case UINT8:
+                    return ((buffer.get(index) & 0xFF) - zeroPoint) * scale;
+                default:
+                    return (buffer.get(index) - zeroPoint) * scale;
+            }
+        }
+
+        float activate(float value) {
+            return logits ? sigmoid(value) : value;
+        }
+
+        // Writes (x1, y1, x2, y2) in input pixels
+        void box(ByteBuffer buffer, int offset, int position, int anchor, float[] out, int at) {
+            switch (kind) {
+                case GRID_ANCHORS: {
+                    int gx = position % width;
+                    int gy = position / width;
+                    float cx = (activate(read(buffer, offset, 0)) * 2 - 0.5f + gx) * strideX;
+                    float cy = (activate(read(buffer, offset, 1)) * 2 - 0.5f + gy) * strideY;
+                    float w = activate(read(buffer, offset, 2)) * 2;
+                    float h = activate(read(buffer, offset, 3)) * 2;
+                    w = w * w * anchorSizes[anchor * 2];
+                    h = h * h * anchorSizes[anchor * 2 + 1];
+                    out[at] = cx - w / 2;
+                    out[at + 1] = cy - h / 2;
+                    out[at + 2] = cx + w / 2;
+                    out[at + 3] = cy + h / 2;
+                    break;
+                }
+                case GRID_DFL: {
+                    float cx = position % width + 0.5f;
+                    float cy = position / width + 0.5f;
+                    out[at] = (cx - distance(buffer, offset, 0)) * strideX;
+                    out[at + 1] = (cy - distance(buffer, offset, 1)) * strideY;
+                    out[at + 2] = (cx + distance(buffer, offset, 2)) * strideX;
+                    out[at + 3] = (cy + distance(buffer, offset, 3)) * strideY;
+                    break;
+                }
+                default: {
+                    float cx = read(buffer, offset, 0) * strideX;
+                    float cy = read(buffer, offset, 1) * strideY;
+                    float w = read(buffer, offset, 2) * strideX;
+                    float h = read(buffer, offset, 3) * strideY;
+                    out[at] = cx - w / 2;
+                    out[at + 1] = cy - h / 2;
+                    out[at + 2] = cx + w / 2;
+                    out[at + 3] = cy + h / 2;
+                    break;
+                }
+            }
+        }
+
+        // Expected value of the softmax over one box side's bins, in grid cells
+        private float distance(ByteBuffer buffer, int offset, int side) {
+            int first = side * regMax;
+            float max = read(buffer, offset, first);
+            for (int k = 1; k < regMax; k++) {
+                max = Math.max(max, read(buffer, offset, first + k));
+            }
+            float sum = 0;
+            float weighted = 0;
+            for (int k = 0; k < regMax; k++) {
+                float e = (float) Math.exp(read(buffer, offset, first + k) - max);
+                sum += e;
+                weighted += e * k;
+            }
+            return weighted / sum;
+        }
+    }
+}
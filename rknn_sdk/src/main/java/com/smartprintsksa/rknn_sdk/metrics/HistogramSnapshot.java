@@ -0,0 +1,74 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}. Percentiles are bucket upper bounds, capped at the exact max.
+ */
+public class HistogramSnapshot {
+    private final String name;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(String name, long[] counts, long count, long sum, long max) {
+        this.name = name;
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile 0-100
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(LatencyHistogram.upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    public long getP50Nanos() {
+        return getPercentileNanos(50);
+    }
+
+    public long getP90Nanos() {
+        return getPercentileNanos(90);
+    }
+
+    public long getP99Nanos() {
+        return getPercentileNanos(99);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s n=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                name, count, getP50Nanos() / 1e6, getP90Nanos() / 1e6, getP99Nanos() / 1e6, max / 1e6);
+    }
+}
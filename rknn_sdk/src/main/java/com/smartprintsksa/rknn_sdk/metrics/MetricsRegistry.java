@@ -0,0 +1,68 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Named latency histograms, throughput counters and gauges. Look metrics up once and keep the
+ * reference on hot paths; recording never allocates or locks.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    // Sampled at snapshot time, e.g. a queue depth
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // Drops every metric whose name starts with the prefix, e.g. when a stream closes
+    public void removeAll(String prefix) {
+        histograms.keySet().removeIf(name -> name.startsWith(prefix));
+        counters.keySet().removeIf(name -> name.startsWith(prefix));
+        gauges.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    public MetricsSnapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * @param resetHistograms zero the histograms after copying, so the next snapshot covers only the new interval
+     */
+    public MetricsSnapshot snapshot(boolean resetHistograms) {
+        Map<String, HistogramSnapshot> h = new TreeMap<>();
+        for (LatencyHistogram histogram : histograms.values()) {
+            h.put(histogram.getName(), resetHistograms ? histogram.snapshotAndReset() : histogram.snapshot());
+        }
+        Map<String, Long> c = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            c.put(entry.getKey(), entry.getValue().get());
+        }
+        Map<String, Long> g = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            g.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), h, c, g);
+    }
+}
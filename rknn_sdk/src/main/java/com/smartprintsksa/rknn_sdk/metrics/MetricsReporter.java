@@ -0,0 +1,46 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Periodically hands a summary of a {@link MetricsRegistry} to a sink (e.g. a logger).
+ * Histograms are reset after each dump, so every summary covers one period.
+ */
+public class MetricsReporter {
+    private final MetricsRegistry registry;
+    private final long periodMillis;
+    private final Consumer<String> sink;
+    private ScheduledExecutorService executor;
+
+    public MetricsReporter(MetricsRegistry registry, long periodMillis, Consumer<String> sink) {
+        this.registry = registry;
+        this.periodMillis = periodMillis;
+        this.sink = sink;
+    }
+
+    public synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor == null) return;
+        executor.shutdownNow();
+        executor = null;
+        // Flush the partial period
+        report();
+    }
+
+    private void report() {
+        String summary = registry.snapshot(true).format();
+        if (!summary.isEmpty()) sink.accept(summary);
+    }
+}
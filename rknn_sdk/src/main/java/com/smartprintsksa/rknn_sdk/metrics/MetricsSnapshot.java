@@ -0,0 +1,67 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a {@link MetricsRegistry}, sorted by metric name.
+ */
+public class MetricsSnapshot {
+    private final long timestampMillis;
+    private final Map<String, HistogramSnapshot> histograms;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+
+    MetricsSnapshot(long timestampMillis, Map<String, HistogramSnapshot> histograms,
+                    Map<String, Long> counters, Map<String, Long> gauges) {
+        this.timestampMillis = timestampMillis;
+        this.histograms = Collections.unmodifiableMap(histograms);
+        this.counters = Collections.unmodifiableMap(counters);
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public HistogramSnapshot getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    // Multi-line summary; counters and gauges share one line each to keep dumps short
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (HistogramSnapshot histogram : histograms.values()) {
+            if (histogram.getCount() > 0) sb.append(histogram).append('\n');
+        }
+        appendValues(sb, "counters", counters);
+        appendValues(sb, "gauges", gauges);
+        return sb.toString();
+    }
+
+    private static void appendValues(StringBuilder sb, String label, Map<String, Long> values) {
+        if (values.isEmpty()) return;
+        sb.append(label).append(':');
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        sb.append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
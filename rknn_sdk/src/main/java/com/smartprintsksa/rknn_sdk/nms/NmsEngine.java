@@ -0,0 +1,300 @@
+package com.smartprintsksa.rknn_sdk.nms;
+
+import android.graphics.Rect;
+
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class-aware non-maximum suppression over decoded candidates, laid out as {@value #FIELDS} floats
+ * per box: (x1, y1, x2, y2, score, class). The hard methods sort once and make a single pass over
+ * all classes, with boxes shifted by class so different classes can never overlap. Each candidate
+ * is checked only against the boxes already kept, and the pass stops once {@code maxDetections}
+ * boxes are kept. Large candidate sets look kept boxes up in a coarse spatial grid instead of
+ * scanning them all. Soft-NMS decays the scores of overlapping boxes instead of dropping them.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class NmsEngine {
+    public static final int FIELDS = 6;
+
+    public enum Method {
+        // Drops boxes whose IoU with a kept box of the same class exceeds the threshold
+        GREEDY,
+        // Like GREEDY on IoU minus the normalized center distance, so neighbours in crowds survive
+        DIOU,
+        // Scales the score of overlapping boxes by (1 - IoU) above the threshold
+        SOFT_LINEAR,
+        // Scales the score of overlapping boxes by exp(-IoU^2 / sigma)
+        SOFT_GAUSSIAN
+    }
+
+    // Below this many candidates a scan of the kept boxes is cheaper than maintaining the grid
+    static final int BINNING_MIN_CANDIDATES = 1024;
+    // Grid cells per side of one class's extent
+    private static final int BINS_PER_SIDE = 8;
+
+    private final Method method;
+    private final float iouThreshold;
+    private final float scoreThreshold;
+    private final float sigma;
+    private final int maxDetections;
+    private final int binningMinCandidates;
+
+    /**
+     * @param scoreThreshold Soft-NMS drops boxes whose decayed score falls below it
+     * @param sigma          spread of {@link Method#SOFT_GAUSSIAN}
+     */
+    public NmsEngine(Method method, float iouThreshold, float scoreThreshold, float sigma, int maxDetections) {
+        this(method, iouThreshold, scoreThreshold, sigma, maxDetections, BINNING_MIN_CANDIDATES);
+    }
+
+    NmsEngine(Method method, float iouThreshold, float scoreThreshold, float sigma, int maxDetections,
+              int binningMinCandidates) {
+        if (iouThreshold < 0 || iouThreshold > 1) {
+            throw new IllegalArgumentException("IoU threshold must be in [0, 1]: " + iouThreshold);
+        }
+        if (sigma <= 0) throw new IllegalArgumentException("sigma must be positive: " + sigma);
+        this.method = method;
+        this.iouThreshold = iouThreshold;
+        this.scoreThreshold = scoreThreshold;
+        this.sigma = sigma;
+        this.maxDetections = maxDetections;
+        this.binningMinCandidates = binningMinCandidates;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Kept boxes as detections, highest score first. Soft-NMS reports the decayed scores.
+     */
+    public ArrayList<DetectedObject> run(float[] candidates, int count) {
+        int[] keep = new int[Math.max(0, Math.min(maxDetections, count))];
+        int kept = select(candidates, count, keep);
+        ArrayList<DetectedObject> detections = new ArrayList<>(kept);
+        for (int k = 0; k < kept; k++) {
+            int at = keep[k] * FIELDS;
+            Rect rect = new Rect((int) candidates[at], (int) candidates[at + 1],
+                    (int) candidates[at + 2], (int) candidates[at + 3]);
+            detections.add(new DetectedObject(rect, candidates[at + 4], (int) candidates[at + 5]));
+        }
+        return detections;
+    }
+
+    /**
+     * Writes the indices of the kept candidates to {@code keep}, highest score first, and returns
+     * how many there are. Soft-NMS rewrites the scores in {@code candidates}.
+     */
+    public int select(float[] candidates, int count, int[] keep) {
+        int limit = Math.min(maxDetections, keep.length);
+        if (count <= 0 || limit <= 0) return 0;
+        switch (method) {
+            case SOFT_LINEAR:
+            case SOFT_GAUSSIAN:
+                return selectSoft(candidates, count, keep, limit);
+            default:
+                return selectHard(candidates, count, keep, limit);
+        }
+    }
+
+    private int selectHard(float[] candidates, int count, int[] keep, int limit) {
+        long[] order = sortByScore(candidates, count);
+
+        // Shift every class into its own band so one pass covers all classes
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        int classes = 1;
+        for (int i = 0; i < count; i++) {
+            int at = i * FIELDS;
+            min = Math.min(min, Math.min(candidates[at], candidates[at + 1]));
+            max = Math.max(max, Math.max(candidates[at + 2], candidates[at + 3]));
+            classes = Math.max(classes, (int) candidates[at + 5] + 1);
+        }
+        float span = max - min + 1;
+
+        float[] kept = new float[limit * 4];
+        float[] box = new float[4];
+        // IoU and DIoU are at most 0 for disjoint boxes, so only boxes sharing a cell can suppress
+        SpatialGrid grid = count >= binningMinCandidates ? new SpatialGrid(min, span, classes, limit) : null;
+        int keptCount = 0;
+        for (int o = order.length - 1; o >= 0 && keptCount < limit; o--) {
+            int i = Integer.MAX_VALUE - (int) order[o];
+            int at = i * FIELDS;
+            float shift = (int) candidates[at + 5] * span;
+            box[0] = candidates[at] + shift;
+            box[1] = candidates[at + 1];
+            box[2] = candidates[at + 2] + shift;
+            box[3] = candidates[at + 3];
+
+            boolean suppressed = false;
+            if (grid != null) {
+                suppressed = grid.overlaps(this, box, kept);
+            } else {
+                for (int k = 0; k < keptCount && !suppressed; k++) {
+                    suppressed = overlap(box, 0, kept, k * 4) > iouThreshold;
+                }
+            }
+            if (suppressed) continue;
+
+            System.arraycopy(box, 0, kept, keptCount * 4, 4);
+            if (grid != null) grid.add(box, keptCount);
+            keep[keptCount++] = i;
+        }
+        return keptCount;
+    }
+
+    // Scores change as boxes are kept, so each round picks the best survivor by a linear scan
+    private int selectSoft(float[] candidates, int count, int[] keep, int limit) {
+        int[] alive = new int[count];
+        int aliveCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (candidates[i * FIELDS + 4] >= scoreThreshold) alive[aliveCount++] = i;
+        }
+        int keptCount = 0;
+        while (keptCount < limit && aliveCount > 0) {
+            int best = 0;
+            for (int a = 1; a < aliveCount; a++) {
+                if (candidates[alive[a] * FIELDS + 4] > candidates[alive[best] * FIELDS + 4]) best = a;
+            }
+            int i = alive[best];
+            alive[best] = alive[--aliveCount];
+            keep[keptCount++] = i;
+
+            int at = i * FIELDS;
+            for (int a = 0; a < aliveCount; a++) {
+                int bt = alive[a] * FIELDS;
+                if (candidates[bt + 5] != candidates[at + 5]) continue;
+                float iou = iou(candidates, at, candidates, bt);
+                float weight;
+                if (method == Method.SOFT_LINEAR) {
+                    weight = iou > iouThreshold ? 1 - iou : 1;
+                } else {
+                    weight = (float) Math.exp(-iou * iou / sigma);
+                }
+                candidates[bt + 4] *= weight;
+                if (candidates[bt + 4] < scoreThreshold) alive[a--] = alive[--aliveCount];
+            }
+        }
+        return keptCount;
+    }
+
+    // Score bits above the inverted candidate index; read from the end, the best score comes first
+    // and ties go to the lower index, like a stable sort
+    private static long[] sortByScore(float[] candidates, int count) {
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            // Non-negative floats sort like their bit patterns
+            int bits = Float.floatToIntBits(Math.max(candidates[i * FIELDS + 4], 0f));
+            order[i] = ((long) bits << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    private float overlap(float[] a, int ai, float[] b, int bi) {
+        return method == Method.DIOU ? diou(a, ai, b, bi) : iou(a, ai, b, bi);
+    }
+
+    static float iou(float[] a, int ai, float[] b, int bi) {
+        float w = Math.min(a[ai + 2], b[bi + 2]) - Math.max(a[ai], b[bi]);
+        float h = Math.min(a[ai + 3], b[bi + 3]) - Math.max(a[ai + 1], b[bi + 1]);
+        if (w <= 0 || h <= 0) return 0;
+        float intersection = w * h;
+        float union = (a[ai + 2] - a[ai]) * (a[ai + 3] - a[ai + 1])
+                + (b[bi + 2] - b[bi]) * (b[bi + 3] - b[bi + 1]) - intersection;
+        return union <= 0 ? 0 : intersection / union;
+    }
+
+    // IoU minus the squared center distance over the squared diagonal of the enclosing box
+    static float diou(float[] a, int ai, float[] b, int bi) {
+        float iou = iou(a, ai, b, bi);
+        float dx = (a[ai] + a[ai + 2] - b[bi] - b[bi + 2]) / 2;
+        float dy = (a[ai + 1] + a[ai + 3] - b[bi + 1] - b[bi + 3]) / 2;
+        float cw = Math.max(a[ai + 2], b[bi + 2]) - Math.min(a[ai], b[bi]);
+        float ch = Math.max(a[ai + 3], b[bi + 3]) - Math.min(a[ai + 1], b[bi + 1]);
+        float diagonal = cw * cw + ch * ch;
+        return diagonal <= 0 ? iou : iou - (dx * dx + dy * dy) / diagonal;
+    }
+
+    // Kept boxes listed under every cell they touch; cells are linked lists over flat arrays
+    private static final class SpatialGrid {
+        private final float origin;
+        private final float cellSize;
+        private final int columns;
+        private final int rows;
+        private final int[] heads;
+        private int[] entryBox;
+        private int[] entryNext;
+        private int entries;
+        // Last query that visited each kept box, so boxes spanning several cells are checked once
+        private final int[] visited;
+        private int query;
+
+        SpatialGrid(float origin, float span, int classes, int capacity) {
+            this.origin = origin;
+            this.cellSize = span / BINS_PER_SIDE;
+            this.columns = classes * BINS_PER_SIDE;
+            this.rows = BINS_PER_SIDE;
+            this.heads = new int[columns * rows];
+            Arrays.fill(heads, -1);
+            this.entryBox = new int[capacity * 4];
+            this.entryNext = new int[capacity * 4];
+            this.visited = new int[capacity];
+            Arrays.fill(visited, -1);
+        }
+
+        boolean overlaps(NmsEngine engine, float[] box, float[] kept) {
+            query++;
+            int c0 = column(box[0]);
+            int c1 = column(box[2]);
+            int r0 = row(box[1]);
+            int r1 = row(box[3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    for (int e = heads[r * columns + c]; e >= 0; e = entryNext[e]) {
+                        int k = entryBox[e];
+                        if (visited[k] == query) continue;
+                        visited[k] = query;
+                        if (engine.overlap(box, 0, kept, k * 4) > engine.iouThreshold) return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void add(float[] box, int index) {
+            int c0 = column(box[0]);
+            int c1 = column(box[2]);
+            int r0 = row(box[1]);
+            int r1 = row(box[3]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    if (entries == entryBox.length) {
+                        entryBox = Arrays.copyOf(entryBox, entries * 2);
+                        entryNext = Arrays.copyOf(entryNext, entries * 2);
+                    }
+                    int cell = r * columns + c;
+                    entryBox[entries] = index;
+                    entryNext[entries] = heads[cell];
+                    heads[cell] = entries++;
+                }
+            }
+        }
+
+        private int column(float x) {
+            return clamp((int) ((x - origin) / cellSize), columns);
+        }
+
+        private int row(float y) {
+            return clamp((int) ((y - origin) / cellSize), rows);
+        }
+
+        private static int clamp(int cell, int cells) {
+            return cell < 0 ? 0 : (cell >= cells ? cells - 1 : cell);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the native backend so pool scheduling and result ordering can run on a plain JVM.
+ * Each run sleeps for the configured latency and echoes the start of the input into the start of
+ * {@code mGrid0Out}, so a result can be matched to its frame. A context that is entered by two
+ * threads at once fails loudly, as a real RKNN context would misbehave. It can also have input
+ * and output memory of its own, like a context with {@code rknn_create_mem} buffers; in-place runs
+ * then echo into the output memory instead of the arrays.
+ */
+public class FakeNpuBackend implements NpuBackend {
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final ByteBuffer input;
+    private final ByteBuffer output;
+    private final ByteBuffer[] outputViews;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private volatile int coreMask = NpuCore.AUTO;
+    private volatile boolean released = false;
+
+    public FakeNpuBackend(long latencyMicros) {
+        this(latencyMicros, 0);
+    }
+
+    /**
+     * @param jitterMicros random extra latency per run, so later frames can finish first
+     */
+    public FakeNpuBackend(long latencyMicros, long jitterMicros) {
+        this(latencyMicros, jitterMicros, 0);
+    }
+
+    /**
+     * @param inputBytes size of the input memory {@link #getInputBuffer()} hands out; 0 for none
+     */
+    public FakeNpuBackend(long latencyMicros, long jitterMicros, int inputBytes) {
+        this(latencyMicros, jitterMicros, inputBytes, 0);
+    }
+
+    /**
+     * @param outputBytes size of the single output {@link #getOutputBuffers()} views; 0 for none
+     */
+    public FakeNpuBackend(long latencyMicros, long jitterMicros, int inputBytes, int outputBytes) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.jitterNanos = TimeUnit.MICROSECONDS.toNanos(jitterMicros);
+        this.input = inputBytes > 0 ? ByteBuffer.allocateDirect(inputBytes) : null;
+        this.output = outputBytes > 0 ? ByteBuffer.allocateDirect(outputBytes) : null;
+        this.outputViews = output != null
+                ? new ByteBuffer[]{output.asReadOnlyBuffer().order(ByteOrder.nativeOrder())} : null;
+    }
+
+    @Override
+    public boolean infer(byte[] input, YoloRawOutput outputs) {
+        return run(input, outputs.mGrid0Out != null ? ByteBuffer.wrap(outputs.mGrid0Out) : null);
+    }
+
+    @Override
+    public boolean inferInPlace(ByteBuffer input, YoloRawOutput outputs) {
+        if (output == null) return infer(input, outputs);
+        byte[] copy = new byte[input.remaining()];
+        input.duplicate().get(copy);
+        return run(copy, output.duplicate());
+    }
+
+    // Sleeps for the latency, then echoes the start of the input into the start of target
+    private boolean run(byte[] input, ByteBuffer target) {
+        if (released) throw new IllegalStateException("Context released");
+        if (!busy.compareAndSet(false, true)) throw new IllegalStateException("Context used concurrently");
+        try {
+            long delay = latencyNanos + (jitterNanos > 0 ? (long) (Math.random() * jitterNanos) : 0);
+            if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+            if (target != null && input != null) {
+                target.put(input, 0, Math.min(input.length, target.remaining()));
+            }
+            runs.incrementAndGet();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer() {
+        return input;
+    }
+
+    @Override
+    public ByteBuffer[] getOutputBuffers() {
+        return outputViews;
+    }
+
+    @Override
+    public NpuBackend duplicate(int coreMask) {
+        FakeNpuBackend copy = new FakeNpuBackend(TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+                TimeUnit.NANOSECONDS.toMicros(jitterNanos), input != null ? input.capacity() : 0,
+                output != null ? output.capacity() : 0);
+        copy.coreMask = coreMask;
+        return copy;
+    }
+
+    @Override
+    public boolean setCoreMask(int coreMask) {
+        this.coreMask = coreMask;
+        return true;
+    }
+
+    @Override
+    public int getCoreMask() {
+        return coreMask;
+    }
+
+    @Override
+    public void deinit() {
+        released = true;
+    }
+
+    public long getRunCount() {
+        return runs.get();
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+}
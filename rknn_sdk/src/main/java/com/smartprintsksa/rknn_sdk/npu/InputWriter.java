@@ -0,0 +1,16 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fills a model input in place, so preprocessing writes once into the memory the runtime reads,
+ * e.g. the NPU input of the context a frame was given. Called once the context is known.
+ */
+public interface InputWriter {
+    /**
+     * Writes packed RGB888 at the model input size from {@code input}'s position 0.
+     *
+     * @return false to skip the run, e.g. if the source could not be read
+     */
+    boolean write(ByteBuffer input);
+}
@@ -0,0 +1,92 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One inference context. A context runs one frame at a time; run several contexts to use
+ * several NPU cores. Implemented by {@link com.smartprintsksa.rknn_sdk.InferenceWrapper} on the
+ * device and by {@link FakeNpuBackend} off it.
+ */
+public interface NpuBackend {
+    /**
+     * Runs the model on one input and writes the raw outputs into {@code outputs}.
+     *
+     * @return false if the backend reported a failure; {@code outputs} is then undefined
+     */
+    boolean infer(byte[] input, YoloRawOutput outputs);
+
+    /**
+     * Runs the model on the bytes between {@code input}'s position and limit. Backends with their
+     * own input memory run a buffer from {@link #getInputBuffer()} in place; this default copies.
+     */
+    default boolean infer(ByteBuffer input, YoloRawOutput outputs) {
+        byte[] copy = new byte[input.remaining()];
+        input.duplicate().get(copy);
+        return infer(copy, outputs);
+    }
+
+    /**
+     * Memory the runtime reads the model input from, packed RGB888 at the model input size, or
+     * null if the backend has none. Only valid while this context runs nothing else.
+     */
+    default ByteBuffer getInputBuffer() {
+        return null;
+    }
+
+    /**
+     * Read-only views over the memory the runtime writes one image's outputs to, in native byte
+     * order and sized from the queried output attributes, or null if the backend has none. They
+     * hold what {@link #inferInPlace} left there until the next run on this context.
+     */
+    default ByteBuffer[] getOutputBuffers() {
+        return null;
+    }
+
+    /**
+     * Runs the model like {@link #infer(ByteBuffer, YoloRawOutput)} but leaves the outputs in
+     * {@link #getOutputBuffers()} instead of copying them into {@code outputs}. Backends without
+     * output buffers copy, as this default does.
+     */
+    default boolean inferInPlace(ByteBuffer input, YoloRawOutput outputs) {
+        return infer(input, outputs);
+    }
+
+    // Images the model takes per submission; 1 unless it was converted with a larger batch
+    default int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Runs {@code inputs[offset .. offset + count)} as one submission, writing each image's raw
+     * outputs to the matching entry of {@code outputs}. {@code count} is at most {@link #getBatchSize()}.
+     */
+    default boolean inferBatch(byte[][] inputs, YoloRawOutput[] outputs, int offset, int count) {
+        boolean success = true;
+        for (int i = offset; i < offset + count; i++) {
+            success &= infer(inputs[i], outputs[i]);
+        }
+        return success;
+    }
+
+    // Number of cores one multi-batch submission is spread over; false if not supported
+    default boolean setBatchCoreNum(int coreNum) {
+        return false;
+    }
+
+    /**
+     * Creates another context sharing this one's model weights, pinned to {@code coreMask}.
+     *
+     * @param coreMask one of the {@link NpuCore} masks
+     */
+    NpuBackend duplicate(int coreMask) throws IOException;
+
+    // Pins this context to the given NpuCore mask; false if the runtime rejected it
+    boolean setCoreMask(int coreMask);
+
+    int getCoreMask();
+
+    void deinit();
+}
@@ -0,0 +1,424 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import com.smartprintsksa.rknn_sdk.Logger;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Spreads inference over several NPU contexts, one per core mask, so all three RK3588 cores work
+ * at once. Each frame goes to whichever context is free. Results of {@link #submit} are handed to
+ * the listener in frame sequence order; {@link #run} is a blocking call for callers that keep
+ * their own order. The pool owns its contexts, including the primary one.
+ *
+ * @param <T> caller data carried from {@link #submit} to the listener, e.g. the frame
+ */
+public class NpuContextPool<T> {
+    private static final String TAG = "NPU CONTEXT POOL";
+    // How long close() waits for frames in flight and held output views
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+
+    public interface Listener<T> {
+        // Called in sequence order; success is false when the context failed and outputs are not valid
+        void onResult(long sequence, T tag, YoloRawOutput outputs, boolean success);
+    }
+
+    private final List<Context> contexts;
+    private final BlockingQueue<Context> free;
+    private final AtomicLongArray runs;
+    private final AtomicLongArray failures;
+    private final ExecutorService executor;
+    private final ReorderBuffer<Result<T>> reorder;
+    private volatile boolean closed = false;
+
+    /**
+     * Pins {@code primary} to the first core mask and duplicates it for each of the others.
+     *
+     * @param coreMasks {@link NpuCore} masks, one per context; e.g. {@link NpuCore#RK3588_CORES}
+     * @param listener  receives {@link #submit} results; may be null if only {@link #run} is used
+     * @throws IOException if a context could not be duplicated; contexts created so far are released
+     */
+    public NpuContextPool(NpuBackend primary, int[] coreMasks, Listener<T> listener) throws IOException {
+        if (coreMasks.length == 0) throw new IllegalArgumentException("At least one core mask is required");
+        List<Context> created = new ArrayList<>(coreMasks.length);
+        try {
+            if (!primary.setCoreMask(coreMasks[0])) {
+                throw new IOException("Cannot pin context to " + NpuCore.toString(coreMasks[0]));
+            }
+            created.add(new Context(0, primary));
+            for (int i = 1; i < coreMasks.length; i++) {
+                created.add(new Context(i, primary.duplicate(coreMasks[i])));
+            }
+        } catch (IOException e) {
+            // The primary stays with the caller when the pool could not be built
+            for (int i = 1; i < created.size(); i++) {
+                created.get(i).backend.deinit();
+            }
+            throw e;
+        }
+
+        this.contexts = Collections.unmodifiableList(created);
+        this.free = new ArrayBlockingQueue<>(contexts.size(), false, contexts);
+        this.runs = new AtomicLongArray(contexts.size());
+        this.failures = new AtomicLongArray(contexts.size());
+        this.executor = Executors.newFixedThreadPool(contexts.size(), new WorkerFactory());
+        this.reorder = new ReorderBuffer<>((sequence, result) -> {
+            if (listener != null) listener.onResult(sequence, result.tag, result.outputs, result.success);
+        });
+    }
+
+    /**
+     * Queues one frame on the next free context, waiting while all are busy. Frames must be
+     * submitted in increasing sequence order; the listener sees them in that order.
+     */
+    public void submit(long sequence, T tag, byte[] input, YoloRawOutput outputs) throws InterruptedException {
+        if (closed) throw new IllegalStateException("NpuContextPool is closed");
+        reorder.register(sequence);
+        Context context;
+        try {
+            context = take();
+        } catch (InterruptedException | IllegalStateException e) {
+            reorder.cancel(sequence);
+            throw e;
+        }
+        try {
+            executor.execute(() -> {
+                boolean success = runOn(context, input, outputs);
+                reorder.complete(sequence, new Result<>(tag, outputs, success));
+            });
+        } catch (RejectedExecutionException e) {
+            free.offer(context);
+            reorder.cancel(sequence);
+            throw new IllegalStateException("NpuContextPool is closed", e);
+        }
+    }
+
+    /**
+     * Runs one frame on the calling thread using the next free context, waiting while all are busy.
+     * Safe to call from as many threads as there are contexts.
+     *
+     * @return false if the context reported a failure
+     */
+    public boolean run(byte[] input, YoloRawOutput outputs) throws InterruptedException {
+        if (closed) throw new IllegalStateException("NpuContextPool is closed");
+        return runOn(take(), input, outputs);
+    }
+
+    /**
+     * Runs several frames and waits for all of them. A multi-batch model takes up to
+     * {@link #getBatchSize()} frames per submission; the submissions, or single frames otherwise,
+     * are spread over free contexts and run in parallel.
+     *
+     * @return false if any frame failed
+     */
+    public boolean runBatch(byte[][] inputs, YoloRawOutput[] outputs, int count) throws InterruptedException {
+        if (closed) throw new IllegalStateException("NpuContextPool is closed");
+        int batch = getBatchSize();
+        int units = (count + batch - 1) / batch;
+        CountDownLatch done = new CountDownLatch(units);
+        AtomicBoolean failed = new AtomicBoolean();
+        int submitted = 0;
+        try {
+            for (int start = 0; start < count; start += batch) {
+                int offset = start;
+                int size = Math.min(batch, count - start);
+                Context context = take();
+                try {
+                    executor.execute(() -> {
+                        if (!runBatchOn(context, inputs, outputs, offset, size)) failed.set(true);
+                        done.countDown();
+                    });
+                } catch (RejectedExecutionException e) {
+                    free.offer(context);
+                    throw new IllegalStateException("NpuContextPool is closed", e);
+                }
+                submitted++;
+            }
+        } finally {
+            // The caller's buffers stay in use until every submitted frame has finished
+            for (int i = submitted; i < units; i++) {
+                done.countDown();
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        return !failed.get();
+    }
+
+    /**
+     * Same as {@link #run(byte[], YoloRawOutput)}, but the input is written into the free context's
+     * own input memory, so it is not copied again; contexts without one get a buffer of
+     * {@code inputSize} bytes that is kept for the next run.
+     *
+     * @return false if the writer skipped the run or the context reported a failure; a writer's
+     * exception is rethrown and does not count against the context
+     */
+    public boolean run(InputWriter writer, int inputSize, YoloRawOutput outputs) throws InterruptedException {
+        if (closed) throw new IllegalStateException("NpuContextPool is closed");
+        Context context = take();
+        ByteBuffer input = write(context, writer, inputSize);
+        return input != null && runOn(context, input, outputs);
+    }
+
+    /**
+     * Same as {@link #run(InputWriter, int, YoloRawOutput)}, but the outputs are left where the
+     * NPU wrote them: {@code outputs} become read-only views over the context's output memory and
+     * the context stays taken until {@link YoloRawOutput#release()}. Release them as soon as they
+     * are decoded, and before {@link #close()}. Contexts without their own output memory copy
+     * into the arrays as usual, and release is then a no-op.
+     *
+     * @return false if the writer skipped the run or the context reported a failure; nothing is
+     * held then
+     */
+    public boolean runInPlace(InputWriter writer, int inputSize, YoloRawOutput outputs) throws InterruptedException {
+        if (closed) throw new IllegalStateException("NpuContextPool is closed");
+        Context context = take();
+        ByteBuffer input = write(context, writer, inputSize);
+        if (input == null) return false;
+        ByteBuffer[] views = context.outputViews();
+        if (views == null) return runOn(context, input, outputs);
+        boolean success = false;
+        try {
+            success = context.backend.inferInPlace(input, outputs);
+        } catch (RuntimeException e) {
+            // Reported to the caller as a failed frame; the context stays usable
+            Logger.error(TAG, "Inference failed on context " + context.index + ": " + e.getMessage());
+        } finally {
+            runs.incrementAndGet(context.index);
+            if (!success) {
+                failures.incrementAndGet(context.index);
+                free.offer(context);
+            }
+        }
+        if (success) outputs.setViews(views, () -> free.offer(context));
+        return success;
+    }
+
+    // The next free context; callers that waited through close() get the pool's exception instead
+    private Context take() throws InterruptedException {
+        Context context = free.take();
+        if (closed) {
+            free.offer(context);
+            throw new IllegalStateException("NpuContextPool is closed");
+        }
+        return context;
+    }
+
+    // The context's input with the writer's bytes, or null with the context given back if it skipped
+    private ByteBuffer write(Context context, InputWriter writer, int inputSize) {
+        ByteBuffer input;
+        try {
+            input = context.inputBuffer(inputSize);
+            if (!writer.write(input)) {
+                free.offer(context);
+                return null;
+            }
+        } catch (RuntimeException e) {
+            free.offer(context);
+            throw e;
+        }
+        input.position(0).limit(inputSize);
+        return input;
+    }
+
+    private boolean runBatchOn(Context context, byte[][] inputs, YoloRawOutput[] outputs, int offset, int count) {
+        boolean success = false;
+        try {
+            success = count == 1 ? context.backend.infer(inputs[offset], outputs[offset])
+                    : context.backend.inferBatch(inputs, outputs, offset, count);
+        } catch (RuntimeException e) {
+            // Reported to the caller as failed frames; the context stays usable
+            Logger.error(TAG, "Batch inference failed on context " + context.index + ": " + e.getMessage());
+        } finally {
+            runs.addAndGet(context.index, count);
+            if (!success) failures.addAndGet(context.index, count);
+            free.offer(context);
+        }
+        return success;
+    }
+
+    private boolean runOn(Context context, ByteBuffer input, YoloRawOutput outputs) {
+        boolean success = false;
+        try {
+            success = context.backend.infer(input, outputs);
+        } catch (RuntimeException e) {
+            // Reported to the caller as a failed frame; the context stays usable
+            Logger.error(TAG, "Inference failed on context " + context.index + ": " + e.getMessage());
+        } finally {
+            runs.incrementAndGet(context.index);
+            if (!success) failures.incrementAndGet(context.index);
+            free.offer(context);
+        }
+        return success;
+    }
+
+    private boolean runOn(Context context, byte[] input, YoloRawOutput outputs) {
+        boolean success = false;
+        try {
+            success = context.backend.infer(input, outputs);
+        } catch (RuntimeException e) {
+            // Reported to the caller as a failed frame; the context stays usable
+            Logger.error(TAG, "Inference failed on context " + context.index + ": " + e.getMessage());
+        } finally {
+            runs.incrementAndGet(context.index);
+            if (!success) failures.incrementAndGet(context.index);
+            free.offer(context);
+        }
+        return success;
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+
+    // Frames per submission of the loaded model
+    public int getBatchSize() {
+        return Math.max(1, contexts.get(0).backend.getBatchSize());
+    }
+
+    // Contexts currently running a frame
+    public int getBusyCount() {
+        return contexts.size() - free.size();
+    }
+
+    public int getCoreMask(int contextIndex) {
+        return contexts.get(contextIndex).backend.getCoreMask();
+    }
+
+    public long getRunCount(int contextIndex) {
+        return runs.get(contextIndex);
+    }
+
+    public long getFailureCount(int contextIndex) {
+        return failures.get(contextIndex);
+    }
+
+    // Submitted frames whose result has not reached the listener yet
+    public int getPendingCount() {
+        return reorder.size();
+    }
+
+    // Results that finished before an earlier frame and had to wait for it
+    public long getReorderedCount() {
+        return reorder.getHeldBackCount();
+    }
+
+    /**
+     * Waits for frames in flight and for output views to be released, then releases every context.
+     * A context still taken after a bounded wait is left alone rather than freed under its user.
+     */
+    public void close() {
+        close(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void close(long timeout, TimeUnit unit) {
+        if (closed) return;
+        closed = true;
+        executor.shutdown();
+        // Contexts come back to the free queue as their frames finish; collect them all
+        List<Context> idle = new ArrayList<>(contexts.size());
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (idle.size() < contexts.size()) {
+                Context context = free.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (context == null) break;
+                idle.add(context);
+            }
+            // A frame gives its context back before its result reaches the listener
+            executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            free.drainTo(idle);
+            Thread.currentThread().interrupt();
+        }
+        for (Context context : idle) {
+            context.backend.deinit();
+        }
+        if (idle.size() < contexts.size()) {
+            Logger.warn(TAG, (contexts.size() - idle.size()) + " of " + contexts.size()
+                    + " contexts still busy after " + unit.toMillis(timeout) + " ms; not released");
+        }
+        // Threads still waiting in take() find the pool closed and give them straight back
+        free.addAll(idle);
+    }
+
+    private static final class Context {
+        final int index;
+        final NpuBackend backend;
+        // Only touched by the thread that holds the context
+        private ByteBuffer input;
+        private ByteBuffer[] outputs;
+        private boolean outputsQueried;
+
+        Context(int index, NpuBackend backend) {
+            this.index = index;
+            this.backend = backend;
+        }
+
+        // Positioned at 0 with inputSize bytes to its limit
+        ByteBuffer inputBuffer(int inputSize) {
+            if (input == null) {
+                ByteBuffer own = backend.getInputBuffer();
+                input = own != null && own.capacity() >= inputSize ? own : ByteBuffer.allocateDirect(inputSize);
+            } else if (input.capacity() < inputSize) {
+                input = ByteBuffer.allocateDirect(inputSize);
+            }
+            input.clear().limit(inputSize);
+            return input;
+        }
+
+        // The backend's output memory, or null if it copies outputs out
+        ByteBuffer[] outputViews() {
+            if (!outputsQueried) {
+                outputs = backend.getOutputBuffers();
+                outputsQueried = true;
+            }
+            return outputs;
+        }
+    }
+
+    private static final class Result<T> {
+        final T tag;
+        final YoloRawOutput outputs;
+        final boolean success;
+
+        Result(T tag, YoloRawOutput outputs, boolean success) {
+            this.tag = tag;
+            this.outputs = outputs;
+            this.success = success;
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "npu-context-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
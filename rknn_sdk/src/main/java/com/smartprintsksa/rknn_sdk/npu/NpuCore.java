@@ -0,0 +1,28 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+/**
+ * NPU core masks, same values as {@code rknn_core_mask} in rknn_api.h.
+ */
+public final class NpuCore {
+    public static final int AUTO = 0;
+    public static final int CORE_0 = 1;
+    public static final int CORE_1 = 2;
+    public static final int CORE_2 = 4;
+    public static final int CORE_0_1 = CORE_0 | CORE_1;
+    public static final int CORE_0_1_2 = CORE_0_1 | CORE_2;
+
+    // One context per core of the RK3588's three-core NPU
+    public static final int[] RK3588_CORES = {CORE_0, CORE_1, CORE_2};
+
+    private NpuCore() {
+    }
+
+    public static String toString(int coreMask) {
+        if (coreMask == AUTO) return "auto";
+        StringBuilder sb = new StringBuilder("core");
+        for (int core = 0; core < 3; core++) {
+            if ((coreMask & (1 << core)) != 0) sb.append(sb.length() > 4 ? "_" : "").append(core);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Hands results to a sink in the order their sequence numbers were registered, however they
+ * complete. A result is held back until every earlier sequence has completed or been cancelled,
+ * so gaps in the numbering (frames dropped before registration) never stall the output.
+ * The sink is called by one thread at a time.
+ */
+public class ReorderBuffer<T> {
+
+    public interface Sink<T> {
+        void accept(long sequence, T result);
+    }
+
+    private final Sink<T> sink;
+    private final ArrayDeque<Slot<T>> pending = new ArrayDeque<>();
+    private final Object emitLock = new Object();
+    private long lastRegistered = Long.MIN_VALUE;
+    private long heldBack;
+
+    public ReorderBuffer(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Reserves the next output position, before the work that completes it starts. Sequences must
+     * increase while earlier ones are pending; numbering may restart once everything has drained.
+     */
+    public synchronized void register(long sequence) {
+        if (sequence <= lastRegistered && !pending.isEmpty()) {
+            throw new IllegalArgumentException("Sequence " + sequence + " registered after " + lastRegistered);
+        }
+        lastRegistered = sequence;
+        pending.addLast(new Slot<T>(sequence));
+    }
+
+    public void complete(long sequence, T result) {
+        finish(sequence, result, false);
+    }
+
+    // Gives up the position; later results are no longer held back by it
+    public void cancel(long sequence) {
+        finish(sequence, null, true);
+    }
+
+    // Registered sequences not yet handed to the sink
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    // Results that completed while an earlier sequence was still running
+    public synchronized long getHeldBackCount() {
+        return heldBack;
+    }
+
+    private void finish(long sequence, T result, boolean cancelled) {
+        synchronized (this) {
+            Slot<T> slot = find(sequence);
+            if (slot == null) throw new IllegalStateException("Sequence " + sequence + " is not pending");
+            slot.result = result;
+            slot.cancelled = cancelled;
+            slot.done = true;
+            if (!cancelled && slot != pending.peekFirst()) heldBack++;
+        }
+        drain();
+    }
+
+    private void drain() {
+        synchronized (emitLock) {
+            while (true) {
+                Slot<T> head;
+                synchronized (this) {
+                    head = pending.peekFirst();
+                    if (head == null || !head.done) return;
+                    pending.pollFirst();
+                }
+                if (!head.cancelled) sink.accept(head.sequence, head.result);
+            }
+        }
+    }
+
+    private Slot<T> find(long sequence) {
+        // Only frames in flight are pending, a handful at most
+        Iterator<Slot<T>> it = pending.iterator();
+        while (it.hasNext()) {
+            Slot<T> slot = it.next();
+            if (slot.sequence == sequence && !slot.done) return slot;
+        }
+        return null;
+    }
+
+    private static final class Slot<T> {
+        final long sequence;
+        T result;
+        boolean done;
+        boolean cancelled;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
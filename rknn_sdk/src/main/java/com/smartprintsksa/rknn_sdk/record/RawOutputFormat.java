@@ -0,0 +1,113 @@
+package com.smartprintsksa.rknn_sdk.record;
+
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprintsksa.rknn_sdk.backend.TensorSpec;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of a raw output recording, little-endian:
+ * <pre>
+ * header: magic "RKRO", u16 version, u16 flags, i32 record count,
+ *         backend name, input tensor, u8 output count, output tensors
+ * tensor: name, u8 layout, u8 type, u8 rank, i32 dims[rank], f32 scale, i32 zero point
+ * record: i32 length of the rest, i32 stream, i32 source, i64 sequence, i64 capture ns,
+ *         i32 width, i32 height, then each output's bytes as the backend wrote them
+ * </pre>
+ * Strings are a u16 byte length and UTF-8. Output bytes keep the recording device's native order,
+ * which {@link #FLAG_BIG_ENDIAN} records.
+ */
+final class RawOutputFormat {
+    static final int MAGIC = 0x4F524B52;
+    static final int VERSION = 1;
+    static final int FLAG_BIG_ENDIAN = 1;
+    static final int RECORD_COUNT_OFFSET = 8;
+    // The count is only patched in on close; readers scan the file if it is missing
+    static final int UNKNOWN_COUNT = -1;
+    static final int RECORD_HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + 4 + 4;
+
+    private RawOutputFormat() {
+    }
+
+    static int nativeFlags() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? FLAG_BIG_ENDIAN : 0;
+    }
+
+    static ByteBuffer encodeHeader(String backendName, ModelSpec spec) {
+        ByteBuffer header = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) nativeFlags());
+        header.putInt(UNKNOWN_COUNT);
+        putString(header, backendName);
+        putTensor(header, spec.getInput());
+        header.put((byte) spec.getOutputs().size());
+        for (TensorSpec output : spec.getOutputs()) {
+            putTensor(header, output);
+        }
+        header.flip();
+        return header;
+    }
+
+    static ModelSpec decodeSpec(ByteBuffer header) throws IOException {
+        try {
+            TensorSpec input = getTensor(header);
+            int count = header.get() & 0xFF;
+            List<TensorSpec> outputs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                outputs.add(getTensor(header));
+            }
+            return new ModelSpec(input, outputs);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt recording header", e);
+        }
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putTensor(ByteBuffer buffer, TensorSpec tensor) {
+        putString(buffer, tensor.getName());
+        buffer.put((byte) tensor.getLayout().ordinal());
+        buffer.put((byte) tensor.getType().ordinal());
+        buffer.put((byte) tensor.getRank());
+        for (int dim : tensor.getDims()) {
+            buffer.putInt(dim);
+        }
+        buffer.putFloat(tensor.getScale());
+        buffer.putInt(tensor.getZeroPoint());
+    }
+
+    private static TensorSpec getTensor(ByteBuffer buffer) throws IOException {
+        String name = getString(buffer);
+        int layout = buffer.get();
+        int type = buffer.get();
+        if (layout < 0 || layout >= TensorSpec.Layout.values().length
+                || type < 0 || type >= TensorSpec.DataType.values().length) {
+            throw new IOException("Unknown tensor layout or type in " + name);
+        }
+        int[] dims = new int[buffer.get() & 0xFF];
+        for (int i = 0; i < dims.length; i++) {
+            dims[i] = buffer.getInt();
+        }
+        float scale = buffer.getFloat();
+        int zeroPoint = buffer.getInt();
+        return new TensorSpec(name, dims, TensorSpec.Layout.values()[layout],
+                TensorSpec.DataType.values()[type], scale, zeroPoint);
+    }
+}
@@ -0,0 +1,129 @@
+package com.smartprintsksa.rknn_sdk.record;
+
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a file written by {@link RawOutputRecorder}. The file is memory-mapped read-only
+ * in segments of whole records, so reading a record is a copy out of the page cache. A recording
+ * that was not closed cleanly is read up to its last complete record.
+ * <p>
+ * {@link #read} may be called from several threads at once.
+ */
+public class RawOutputReader implements Closeable {
+    private static final long SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final int MAX_HEADER_BYTES = 4096;
+
+    private final RandomAccessFile file;
+    private final String backendName;
+    private final ModelSpec spec;
+    private final int recordBytes;
+    private final MappedByteBuffer[] segments;
+    private final int recordsPerSegment;
+    private final int recordCount;
+
+    public RawOutputReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(size, MAX_HEADER_BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 12 || header.getInt() != RawOutputFormat.MAGIC) {
+                throw new IOException(path + " is not a raw output recording");
+            }
+            int version = header.getShort();
+            if (version != RawOutputFormat.VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            if ((header.getShort() & RawOutputFormat.FLAG_BIG_ENDIAN) != RawOutputFormat.nativeFlags()) {
+                throw new IOException("Recording was made on a machine with a different byte order");
+            }
+            int storedCount = header.getInt();
+            backendName = RawOutputFormat.getString(header);
+            spec = RawOutputFormat.decodeSpec(header);
+            long headerBytes = header.position();
+
+            long outputBytes = 0;
+            for (int i = 0; i < spec.getOutputs().size(); i++) {
+                outputBytes += spec.getOutputs().get(i).getByteSize();
+            }
+            recordBytes = (int) (RawOutputFormat.RECORD_HEADER_BYTES + outputBytes);
+            // Every record has the same size, so the count follows from the length of the file
+            int available = (int) Math.min(Integer.MAX_VALUE, (size - headerBytes) / recordBytes);
+            if (storedCount != RawOutputFormat.UNKNOWN_COUNT) available = Math.min(storedCount, available);
+
+            recordsPerSegment = (int) Math.max(1, SEGMENT_BYTES / recordBytes);
+            int segmentCount = (int) (((long) available + recordsPerSegment - 1) / recordsPerSegment);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                int records = Math.min(recordsPerSegment, available - i * recordsPerSegment);
+                long start = headerBytes + (long) i * recordsPerSegment * recordBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) records * recordBytes);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (storedCount == RawOutputFormat.UNKNOWN_COUNT) {
+                // Not closed: the file still ends in the recorder's unused, zeroed space
+                int complete = 0;
+                while (complete < available && lengthAt(complete) == recordBytes - 4) {
+                    complete++;
+                }
+                available = complete;
+            }
+            recordCount = available;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public String getBackendName() {
+        return backendName;
+    }
+
+    public ModelSpec getModelSpec() {
+        return spec;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Copies record {@code index} into {@code into}, which needs the buffer sizes of
+     * {@link #getModelSpec()}, e.g. from {@link ModelSpec#newRawOutput()}.
+     */
+    public RawOutputRecord read(int index, YoloRawOutput into) throws IOException {
+        if (index < 0 || index >= recordCount) throw new IndexOutOfBoundsException("Record " + index);
+        // A view per call keeps concurrent reads from sharing a position
+        ByteBuffer record = segments[index / recordsPerSegment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position((index % recordsPerSegment) * recordBytes);
+        if (record.getInt() != recordBytes - 4) throw new IOException("Corrupt record " + index);
+        RawOutputRecord metadata = new RawOutputRecord(record.getInt(), record.getInt(), record.getLong(),
+                record.getLong(), record.getInt(), record.getInt());
+        for (int i = 0; i < spec.getOutputs().size(); i++) {
+            record.get(into.get(i));
+        }
+        return metadata;
+    }
+
+    private int lengthAt(int index) {
+        return segments[index / recordsPerSegment].getInt((index % recordsPerSegment) * recordBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.smartprintsksa.rknn_sdk.record;
+
+import java.util.Locale;
+
+/**
+ * Where one recorded set of raw outputs came from: the stream and source frame, its capture time
+ * and the size of the image the detections are scaled to.
+ */
+public final class RawOutputRecord {
+    private final int streamId;
+    private final int sourceId;
+    private final long sequence;
+    private final long captureNanos;
+    private final int imageWidth;
+    private final int imageHeight;
+
+    public RawOutputRecord(int streamId, int sourceId, long sequence, long captureNanos,
+                           int imageWidth, int imageHeight) {
+        this.streamId = streamId;
+        this.sourceId = sourceId;
+        this.sequence = sequence;
+        this.captureNanos = captureNanos;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // System.nanoTime() on the recording device; only differences between records are meaningful
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "stream=%d source=%d seq=%d %dx%d",
+                streamId, sourceId, sequence, imageWidth, imageHeight);
+    }
+}
@@ -0,0 +1,139 @@
+package com.smartprintsksa.rknn_sdk.record;
+
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends raw model outputs with their frame metadata to a file, for decoding and NMS to be
+ * replayed later with {@link RawOutputReader} on any machine. Records go straight into a
+ * memory-mapped window that grows in {@link #CHUNK_BYTES} steps, so a write is one copy of the
+ * output bytes and no system call; the file is cut to its real length on {@link #close()}.
+ * See {@link RawOutputFormat} for the layout.
+ * <p>
+ * Writes may come from several threads; they are serialized, so records appear in the order the
+ * writes happened.
+ */
+public class RawOutputRecorder implements Closeable {
+    private static final long CHUNK_BYTES = 64L * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final String backendName;
+    private final ModelSpec spec;
+    private final int recordBytes;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private int recordCount;
+    private boolean closed;
+
+    /**
+     * @param backendName backend that produced the outputs; only its raw outputs fit {@code spec}
+     */
+    public RawOutputRecorder(File path, String backendName, ModelSpec spec) throws IOException {
+        this.backendName = backendName;
+        this.spec = spec;
+        long outputBytes = 0;
+        for (int i = 0; i < spec.getOutputs().size(); i++) {
+            outputBytes += spec.getOutputs().get(i).getByteSize();
+        }
+        if (RawOutputFormat.RECORD_HEADER_BYTES + outputBytes > Integer.MAX_VALUE) {
+            throw new IOException("Outputs too large to record: " + spec);
+        }
+        this.recordBytes = (int) (RawOutputFormat.RECORD_HEADER_BYTES + outputBytes);
+
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        try {
+            channel.truncate(0);
+            ByteBuffer header = RawOutputFormat.encodeHeader(backendName, spec);
+            position = header.remaining();
+            map(0);
+            window.put(header);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public String getBackendName() {
+        return backendName;
+    }
+
+    public ModelSpec getModelSpec() {
+        return spec;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    // Bytes written so far, header included
+    public synchronized long getSize() {
+        return position;
+    }
+
+    /**
+     * Appends one set of outputs, which must have the buffer sizes of {@link #getModelSpec()}.
+     */
+    public synchronized void write(RawOutputRecord record, YoloRawOutput outputs) throws IOException {
+        if (closed) throw new IOException("Recorder is closed");
+        if (position + recordBytes > windowStart + window.capacity()) map(position);
+
+        window.position((int) (position - windowStart));
+        window.putInt(recordBytes - 4);
+        window.putInt(record.getStreamId());
+        window.putInt(record.getSourceId());
+        window.putLong(record.getSequence());
+        window.putLong(record.getCaptureNanos());
+        window.putInt(record.getImageWidth());
+        window.putInt(record.getImageHeight());
+        for (int i = 0; i < spec.getOutputs().size(); i++) {
+            ByteBuffer output = outputs.buffer(i);
+            if (output == null || output.capacity() != spec.getOutputs().get(i).getByteSize()) {
+                // Nothing written past position yet, so the file stays consistent
+                throw new IllegalArgumentException("Output " + i + " does not match " + spec.getOutputs().get(i));
+            }
+            // The view may be shared, so read through a duplicate
+            window.put((ByteBuffer) output.duplicate().clear());
+        }
+        position += recordBytes;
+        recordCount++;
+    }
+
+    // Flushes the records and writes the final record count; the file is then complete
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            window.force();
+            window = null;
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, recordCount);
+            channel.write(count, RawOutputFormat.RECORD_COUNT_OFFSET);
+            channel.truncate(position);
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+    }
+
+    // Moves the window to start at the given offset, large enough for at least one record
+    private void map(long start) throws IOException {
+        if (window != null) window.force();
+        long size = Math.max(CHUNK_BYTES, recordBytes);
+        window = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+}
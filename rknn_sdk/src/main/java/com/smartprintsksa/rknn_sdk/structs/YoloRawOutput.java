@@ -1,7 +1,65 @@
 package com.smartprintsksa.rknn_sdk.structs;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public class YoloRawOutput {
     public byte[] mGrid0Out;
     public byte[] mGrid1Out;
     public byte[] mGrid2Out;
-}
\ No newline at end of file
+    // Read-only views over runtime-owned output memory, set by zero-copy runs instead of filling the
+    // arrays; valid until release()
+    private ByteBuffer[] mViews;
+    private Runnable mRelease;
+
+    // Buffer of model output {@code index}, in the order of the backend's ModelSpec
+    public byte[] get(int index) {
+        switch (index) {
+            case 0:
+                return mGrid0Out;
+            case 1:
+                return mGrid1Out;
+            case 2:
+                return mGrid2Out;
+            default:
+                throw new IndexOutOfBoundsException("Output " + index);
+        }
+    }
+
+    /**
+     * Output {@code index} in native byte order, positioned at 0: the runtime's memory after a
+     * zero-copy run, the array otherwise. Use absolute reads or a duplicate; the view is shared.
+     */
+    public ByteBuffer buffer(int index) {
+        if (mViews != null) {
+            if (index < 0 || index > 2) throw new IndexOutOfBoundsException("Output " + index);
+            // Outputs the model does not have are null, as with the arrays
+            return index < mViews.length ? mViews[index] : null;
+        }
+        byte[] array = get(index);
+        return array != null ? ByteBuffer.wrap(array).order(ByteOrder.nativeOrder()) : null;
+    }
+
+    // True while the outputs are views that hold an inference slot
+    public boolean isZeroCopy() {
+        return mViews != null;
+    }
+
+    /**
+     * Points the outputs at runtime-owned memory. {@code release} hands the slot back and runs
+     * once, on {@link #release()}.
+     */
+    public void setViews(ByteBuffer[] views, Runnable release) {
+        release();
+        mViews = views;
+        mRelease = release;
+    }
+
+    // Gives a zero-copy slot back; the views are gone afterwards. No-op for array outputs
+    public void release() {
+        Runnable release = mRelease;
+        mViews = null;
+        mRelease = null;
+        if (release != null) release.run();
+    }
+}
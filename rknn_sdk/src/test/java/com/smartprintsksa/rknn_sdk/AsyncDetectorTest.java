@@ -0,0 +1,188 @@
+package com.smartprintsksa.rknn_sdk;
+
+import android.graphics.Rect;
+
+import com.smartprintsksa.rknn_sdk.backend.InferenceBackend;
+import com.smartprintsksa.rknn_sdk.backend.ModelSpec;
+import com.smartprintsksa.rknn_sdk.backend.TensorSpec;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Failures and shutdown in {@link AsyncDetector}: every submitted frame's future completes, in
+ * submission order, and gives its in-flight permit back.
+ */
+public class AsyncDetectorTest {
+    private static final ImageTransform TRANSFORM = ImageTransform.stretch(8, 8, 8, 8);
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final ScriptedBackend backend = new ScriptedBackend();
+    private AsyncDetector detector;
+
+    @Before
+    public void setUp() {
+        // Post-processing decodes through the installed backend
+        YoloDetectorHelper.setup(backend);
+        detector = new AsyncDetector(backend);
+    }
+
+    @After
+    public void tearDown() {
+        backend.unblock();
+        detector.close();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void framesCompleteInSubmissionOrder() throws Exception {
+        backend.block();
+        CompletableFuture<ArrayList<DetectedObject>> first = detector.detect(new byte[]{1}, TRANSFORM);
+        assertTrue(backend.awaitEntered());
+        CompletableFuture<ArrayList<DetectedObject>> second = detector.detect(new byte[]{2}, TRANSFORM);
+        assertFalse("Held back behind the first frame", second.isDone());
+        backend.unblock();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, second.get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void anErrorInInferenceFailsOnlyItsFrame() throws Exception {
+        detector.setMaxInFlight(1);
+        CompletableFuture<ArrayList<DetectedObject>> failed = detector.detect(new byte[]{ScriptedBackend.ERROR}, TRANSFORM);
+        assertFailsWith(IOException.class, failed);
+        // With the permit lost the next frame would wait forever for it
+        Future<CompletableFuture<ArrayList<DetectedObject>>> next =
+                callers.submit(() -> detector.detect(new byte[]{1}, TRANSFORM));
+        assertEquals(1, next.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void failedInferenceFailsTheFuture() throws Exception {
+        assertFailsWith(IOException.class, detector.detect(new byte[]{ScriptedBackend.FAIL}, TRANSFORM));
+        assertFailsWith(IOException.class, detector.detect(new byte[]{ScriptedBackend.THROW}, TRANSFORM));
+        assertEquals(1, detector.detect(new byte[]{1}, TRANSFORM).get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void closeFinishesFramesInFlight() throws Exception {
+        backend.block();
+        List<CompletableFuture<ArrayList<DetectedObject>>> frames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            frames.add(detector.detect(new byte[]{1}, TRANSFORM));
+        }
+        assertTrue(backend.awaitEntered());
+        detector.close();
+        backend.unblock();
+        for (CompletableFuture<ArrayList<DetectedObject>> frame : frames) {
+            assertEquals(1, frame.get(5, TimeUnit.SECONDS).size());
+        }
+    }
+
+    @Test
+    public void framesAfterCloseFail() throws Exception {
+        detector.close();
+        assertFailsWith(RejectedExecutionException.class, detector.detect(new byte[]{1}, TRANSFORM));
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> type, CompletableFuture<?> future)
+            throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected " + type.getSimpleName());
+        } catch (ExecutionException expected) {
+            assertTrue(String.valueOf(expected.getCause()), type.isInstance(expected.getCause()));
+        }
+    }
+
+    // One worker; the first input byte picks a failure, anything else decodes to one detection
+    private static final class ScriptedBackend implements InferenceBackend {
+        static final byte FAIL = -1;
+        static final byte THROW = -2;
+        static final byte ERROR = -3;
+
+        private final ModelSpec spec = new ModelSpec(
+                new TensorSpec("images", new int[]{1, 8, 8, 3}, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8),
+                Collections.singletonList(new TensorSpec("output", new int[]{1, 6},
+                        TensorSpec.Layout.FLAT, TensorSpec.DataType.INT8)));
+        private final Semaphore entered = new Semaphore(0);
+        private boolean blocked;
+
+        synchronized void block() {
+            blocked = true;
+        }
+
+        synchronized void unblock() {
+            blocked = false;
+            notifyAll();
+        }
+
+        boolean awaitEntered() throws InterruptedException {
+            return entered.tryAcquire(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public String getName() {
+            return "scripted";
+        }
+
+        @Override
+        public ModelSpec getModelSpec() {
+            return spec;
+        }
+
+        @Override
+        public int getParallelism() {
+            return 1;
+        }
+
+        @Override
+        public boolean infer(byte[] input, YoloRawOutput outputs) throws InterruptedException {
+            entered.release();
+            synchronized (this) {
+                while (blocked) {
+                    wait();
+                }
+            }
+            switch (input[0]) {
+                case FAIL:
+                    return false;
+                case THROW:
+                    throw new IllegalStateException("scripted failure");
+                case ERROR:
+                    throw new AssertionError("scripted error");
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+            ArrayList<DetectedObject> detections = new ArrayList<>();
+            detections.add(new DetectedObject(new Rect(), 1, 0));
+            return detections;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
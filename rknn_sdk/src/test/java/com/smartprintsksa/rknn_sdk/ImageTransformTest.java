@@ -0,0 +1,187 @@
+package com.smartprintsksa.rknn_sdk;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImageTransformTest {
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    @Test
+    public void randomTransformsRoundTrip() {
+        Random random = new Random(23);
+        float[] box = new float[4];
+        float[] target = new float[4];
+        float[] back = new float[4];
+        for (int i = 0; i < 20_000; i++) {
+            ImageTransform transform = randomTransform(random);
+            randomBoxInCrop(random, transform, box);
+            transform.mapBoxesToTarget(box, target, 1);
+            transform.mapBoxes(target, back, 1);
+            // Within a thousandth of a pixel on whichever side is larger: a model pixel can cover a hundred source ones
+            float tolerance = 1e-3f * Math.max(1, 1 / Math.min(transform.getScaleX(), transform.getScaleY()));
+            for (int k = 0; k < 4; k++) {
+                assertEquals(transform + " box " + k, box[k], back[k], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void stretchScalesEachAxis() {
+        ImageTransform transform = ImageTransform.stretch(1280, 720, 320, 320);
+        assertEquals(0.25f, transform.getScaleX(), 0f);
+        assertEquals(320f / 720, transform.getScaleY(), 1e-7f);
+        assertMaps(transform, new float[]{0, 0, 320, 320}, new float[]{0, 0, 1280, 720});
+        assertMaps(transform, new float[]{80, 160, 160, 320}, new float[]{320, 360, 640, 720});
+    }
+
+    @Test
+    public void letterboxCentersTheContent() {
+        ImageTransform transform = ImageTransform.letterbox(1280, 720, 640, 640, 0, false);
+        assertEquals(0.5f, transform.getScaleX(), 0f);
+        assertEquals(0.5f, transform.getScaleY(), 0f);
+        assertEquals(0f, transform.getPadX(), 0f);
+        assertEquals(140f, transform.getPadY(), 0f);
+        assertMaps(transform, new float[]{0, 140, 640, 500}, new float[]{0, 0, 1280, 720});
+    }
+
+    @Test
+    public void boxesInThePaddingAreClippedToTheSource() {
+        ImageTransform transform = ImageTransform.letterbox(1280, 720, 640, 640, 0, false);
+        float[] box = {-20, 0, 700, 640};
+        transform.mapBoxes(box, box, 1);
+        assertArrayEquals(new float[]{0, 0, 1280, 720}, box, 1e-4f);
+    }
+
+    @Test
+    public void rotationTurnsBoxesClockwise() {
+        // A 100x50 source turned 90 degrees clockwise is 50 wide and 100 high; its top row becomes the right column
+        ImageTransform quarter = ImageTransform.builder(100, 50, 50, 100).rotation(90).build();
+        assertTrue(quarter.isSideways());
+        assertMaps(quarter, new float[]{45, 10, 50, 20}, new float[]{10, 0, 20, 5});
+
+        ImageTransform half = ImageTransform.builder(100, 50, 100, 50).rotation(180).build();
+        assertMaps(half, new float[]{80, 45, 90, 50}, new float[]{10, 0, 20, 5});
+
+        ImageTransform threeQuarters = ImageTransform.builder(100, 50, 50, 100).rotation(-90).build();
+        assertEquals(270, threeQuarters.getRotationDegrees());
+        assertMaps(threeQuarters, new float[]{0, 80, 5, 90}, new float[]{10, 0, 20, 5});
+    }
+
+    @Test
+    public void mirrorFlipsAfterRotation() {
+        ImageTransform mirror = ImageTransform.builder(100, 50, 100, 50).mirrored(true).build();
+        assertMaps(mirror, new float[]{80, 0, 90, 5}, new float[]{10, 0, 20, 5});
+
+        // Rotated first, then flipped left to right: the top row ends up as the left column
+        ImageTransform both = ImageTransform.builder(100, 50, 50, 100).rotation(90).mirrored(true).build();
+        assertMaps(both, new float[]{0, 10, 5, 20}, new float[]{10, 0, 20, 5});
+    }
+
+    @Test
+    public void cropOffsetsBoxesIntoTheSource() {
+        ImageTransform transform = ImageTransform.builder(1000, 1000, 100, 100)
+                .crop(200, 300, 400, 200).build();
+        assertMaps(transform, new float[]{0, 0, 100, 100}, new float[]{200, 300, 600, 500});
+    }
+
+    @Test
+    public void explicitScaleAndPaddingAreKept() {
+        ImageTransform view = ImageTransform.builder(640, 480, 1000, 1000).scale(1.5f, 1.5f, 20, 30).build();
+        float[] box = {0, 0, 640, 480};
+        view.mapBoxesToTarget(box, box, 1);
+        assertArrayEquals(new float[]{20, 30, 980, 750}, box, 1e-4f);
+    }
+
+    @Test
+    public void rotatedSourceSeesTheSameTarget() {
+        Random random = new Random(5);
+        for (int rotation : ROTATIONS) {
+            for (boolean mirrored : new boolean[]{false, true}) {
+                ImageTransform sensor = ImageTransform.letterbox(1280, 720, 320, 320, rotation, mirrored);
+                int uprightWidth = sensor.isSideways() ? 360 : 640;
+                int uprightHeight = sensor.isSideways() ? 640 : 360;
+                ImageTransform upright = sensor.withRotatedSource(uprightWidth, uprightHeight);
+                // Sensor pixels to the half-size upright frame the source hands out
+                ImageTransform toUpright = ImageTransform.builder(1280, 720, uprightWidth, uprightHeight)
+                        .rotation(rotation).build();
+
+                for (int i = 0; i < 100; i++) {
+                    float[] box = new float[4];
+                    randomBoxInCrop(random, sensor, box);
+                    float[] model = new float[4];
+                    sensor.mapBoxesToTarget(box, model, 1);
+
+                    float[] expected = new float[4];
+                    toUpright.mapBoxesToTarget(box, expected, 1);
+                    float[] actual = new float[4];
+                    upright.mapBoxes(model, actual, 1);
+                    assertArrayEquals(rotation + (mirrored ? " mirrored" : ""), expected, actual, 2e-3f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mapsSeveralBoxesInPlace() {
+        ImageTransform transform = ImageTransform.stretch(200, 100, 100, 100);
+        float[] boxes = {0, 0, 50, 50, 50, 50, 100, 100};
+        transform.mapBoxes(boxes, boxes, 2);
+        assertArrayEquals(new float[]{0, 0, 100, 50, 100, 50, 200, 100}, boxes, 1e-5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRotationsOffTheRightAngles() {
+        ImageTransform.builder(100, 100, 100, 100).rotation(45);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropsOutsideTheSource() {
+        ImageTransform.builder(100, 100, 100, 100).crop(50, 0, 60, 10);
+    }
+
+    // Checks both directions: model box to source box, and back
+    private static void assertMaps(ImageTransform transform, float[] model, float[] source) {
+        float[] out = new float[4];
+        transform.mapBoxes(model, out, 1);
+        assertArrayEquals(transform.toString(), source, out, 1e-3f);
+        transform.mapBoxesToTarget(source, out, 1);
+        assertArrayEquals(transform.toString(), model, out, 1e-3f);
+    }
+
+    private static ImageTransform randomTransform(Random random) {
+        int sourceWidth = 1 + random.nextInt(4096);
+        int sourceHeight = 1 + random.nextInt(4096);
+        int targetWidth = 1 + random.nextInt(1280);
+        int targetHeight = 1 + random.nextInt(1280);
+        ImageTransform.Builder builder = ImageTransform.builder(sourceWidth, sourceHeight, targetWidth, targetHeight)
+                .rotation(ROTATIONS[random.nextInt(4)])
+                .mirrored(random.nextBoolean())
+                .letterbox(random.nextBoolean());
+        if (random.nextBoolean()) {
+            float left = random.nextFloat() * sourceWidth * 0.5f;
+            float top = random.nextFloat() * sourceHeight * 0.5f;
+            float width = Math.max(0.5f, random.nextFloat() * (sourceWidth - left));
+            float height = Math.max(0.5f, random.nextFloat() * (sourceHeight - top));
+            builder.crop(left, top, Math.min(width, sourceWidth - left), Math.min(height, sourceHeight - top));
+        }
+        return builder.build();
+    }
+
+    // A box inside the part of the source the transform used, found by mapping the whole target back
+    private static void randomBoxInCrop(Random random, ImageTransform transform, float[] box) {
+        float[] crop = {transform.getPadX(), transform.getPadY(),
+                transform.getTargetWidth() - transform.getPadX(), transform.getTargetHeight() - transform.getPadY()};
+        transform.mapBoxes(crop, crop, 1);
+        float x1 = crop[0] + random.nextFloat() * (crop[2] - crop[0]);
+        float x2 = crop[0] + random.nextFloat() * (crop[2] - crop[0]);
+        float y1 = crop[1] + random.nextFloat() * (crop[3] - crop[1]);
+        float y2 = crop[1] + random.nextFloat() * (crop[3] - crop[1]);
+        box[0] = Math.min(x1, x2);
+        box[1] = Math.min(y1, y2);
+        box[2] = Math.max(x1, x2);
+        box[3] = Math.max(y1, y2);
+    }
+}
@@ -0,0 +1,281 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.metrics.MetricsRegistry;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Routing decisions of {@link HybridBackend}, with stand-in backends whose frames can be held in
+ * flight to fill the primary or the secondary.
+ */
+public class HybridBackendTest {
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final List<GateBackend> backends = new ArrayList<>();
+    private final List<Future<Boolean>> held = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (GateBackend backend : backends) {
+            backend.unblock();
+        }
+        callers.shutdownNow();
+        MetricsRegistry.global().removeAll("detector.hybrid.");
+    }
+
+    @Test
+    public void framesStayOnAnIdlePrimary() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 2, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        YoloRawOutput outputs = hybrid.newRawOutput();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(hybrid.infer(new byte[]{1}, outputs));
+        }
+        assertEquals(5, hybrid.getServedCount(false));
+        assertEquals(0, hybrid.getServedCount(true));
+        assertEquals(0, hybrid.getOverflowCount());
+        assertEquals("npu", hybrid.getServedBy(outputs));
+        // The grids point at the primary's own buffers
+        assertEquals(8, outputs.mGrid0Out.length);
+    }
+
+    @Test
+    public void framesBeyondTheQueueDepthOverflow() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 2, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 1, 0);
+        npu.block();
+        hold(hybrid, npu);
+        // One frame may wait for the busy primary
+        hold(hybrid, npu);
+
+        YoloRawOutput outputs = hybrid.newRawOutput();
+        assertTrue(hybrid.infer(new byte[]{3}, outputs));
+        assertEquals("cpu", hybrid.getServedBy(outputs));
+        assertEquals(3, outputs.mGrid0Out[0]);
+        assertEquals(4, outputs.mGrid0Out.length);
+        assertEquals(1, hybrid.getOverflowCount());
+
+        finishHeld();
+        assertEquals(2, hybrid.getServedCount(false));
+        assertEquals(1, hybrid.getServedCount(true));
+    }
+
+    @Test
+    public void zeroQueueDepthOverflowsAsSoonAsThePrimaryIsBusy() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 1, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        npu.block();
+        hold(hybrid, npu);
+
+        YoloRawOutput outputs = hybrid.newRawOutput();
+        assertTrue(hybrid.infer(new byte[]{1}, outputs));
+        assertEquals("cpu", hybrid.getServedBy(outputs));
+        assertEquals(1, hybrid.getOverflowCount());
+    }
+
+    @Test
+    public void aFullSecondarySendsFramesBackToThePrimary() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 1, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        npu.block();
+        cpu.block();
+        hold(hybrid, npu);
+        hold(hybrid, cpu);
+
+        // Queued behind the primary
+        hold(hybrid, npu);
+        assertEquals(1, hybrid.getOverflowCount());
+        finishHeld();
+        assertEquals(2, hybrid.getServedCount(false));
+        assertEquals(1, hybrid.getServedCount(true));
+    }
+
+    @Test
+    public void lowPriorityFramesPreferTheSecondary() throws Exception {
+        GateBackend npu = backend("npu", 3, 8);
+        GateBackend cpu = backend("cpu", 1, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        YoloRawOutput outputs = hybrid.newRawOutput();
+
+        assertTrue(hybrid.infer(new byte[]{1}, outputs, true));
+        assertEquals("cpu", hybrid.getServedBy(outputs));
+        assertEquals("Not an overflow", 0, hybrid.getOverflowCount());
+
+        // Unless its workers are all busy
+        cpu.block();
+        hold(hybrid, cpu, true);
+        assertTrue(hybrid.infer(new byte[]{1}, outputs, true));
+        assertEquals("npu", hybrid.getServedBy(outputs));
+    }
+
+    @Test
+    public void longPredictedWaitsOverflowWithinTheQueueDepth() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 1, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 10, 5);
+        // Teaches the hybrid that a primary frame takes about 30 ms
+        npu.latencyMillis = 30;
+        YoloRawOutput outputs = hybrid.newRawOutput();
+        assertTrue(hybrid.infer(new byte[]{1}, outputs));
+        assertEquals("npu", hybrid.getServedBy(outputs));
+
+        npu.latencyMillis = 0;
+        npu.block();
+        hold(hybrid, npu);
+        assertTrue(hybrid.infer(new byte[]{1}, outputs));
+        assertEquals("One frame ahead predicts 30 ms, over the 5 ms limit", "cpu", hybrid.getServedBy(outputs));
+        assertEquals(1, hybrid.getOverflowCount());
+    }
+
+    @Test
+    public void batchesStayOnThePrimary() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 4, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        YoloRawOutput[] outputs = {hybrid.newRawOutput(), hybrid.newRawOutput(), hybrid.newRawOutput()};
+        assertTrue(hybrid.inferBatch(new byte[][]{{1}, {2}, {3}}, outputs, 3));
+        for (int i = 0; i < outputs.length; i++) {
+            assertEquals("npu", hybrid.getServedBy(outputs[i]));
+            assertEquals(i + 1, outputs[i].mGrid0Out[0]);
+        }
+        assertEquals(3, hybrid.getServedCount(false));
+    }
+
+    @Test
+    public void decodeUsesTheBackendThatServedTheFrame() throws Exception {
+        GateBackend npu = backend("npu", 1, 8);
+        GateBackend cpu = backend("cpu", 1, 4);
+        HybridBackend hybrid = new HybridBackend(npu, cpu, 0, 0);
+        YoloRawOutput outputs = hybrid.newRawOutput();
+        assertNull(hybrid.getServedBy(outputs));
+        assertTrue("Nothing to decode before the first inference", hybrid.decode(outputs).isEmpty());
+
+        assertTrue(hybrid.infer(new byte[]{1}, outputs));
+        assertEquals(npu.marker, hybrid.decode(outputs).get(0).getClassIndex());
+        assertTrue(hybrid.infer(new byte[]{1}, outputs, true));
+        assertEquals(cpu.marker, hybrid.decode(outputs).get(0).getClassIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBackendsWithOtherInputSizes() {
+        new HybridBackend(backend("npu", 1, 8), new GateBackend("cpu", 1, 4, 320), 0, 0);
+    }
+
+    private GateBackend backend(String name, int parallelism, int outputBytes) {
+        return new GateBackend(name, parallelism, outputBytes, 640);
+    }
+
+    // Starts a frame that is held in flight on the backend the hybrid routes it to, which must be {@code target}
+    private void hold(HybridBackend hybrid, GateBackend target) throws InterruptedException {
+        hold(hybrid, target, false);
+    }
+
+    private void hold(HybridBackend hybrid, GateBackend target, boolean lowPriority) throws InterruptedException {
+        held.add(callers.submit(() -> hybrid.infer(new byte[]{0}, hybrid.newRawOutput(), lowPriority)));
+        assertTrue(target.name + " took the held frame", target.awaitEntered());
+    }
+
+    private void finishHeld() throws Exception {
+        for (GateBackend backend : backends) {
+            backend.unblock();
+        }
+        for (Future<Boolean> frame : held) {
+            assertTrue(frame.get(5, TimeUnit.SECONDS));
+        }
+        held.clear();
+    }
+
+    // Echoes the first input byte; holds every run while blocked
+    private final class GateBackend implements InferenceBackend {
+        final String name;
+        final int marker;
+        private final int parallelism;
+        private final ModelSpec spec;
+        private final Semaphore entered = new Semaphore(0);
+        private boolean blocked;
+        volatile long latencyMillis;
+
+        GateBackend(String name, int parallelism, int outputBytes, int inputSize) {
+            this.name = name;
+            this.marker = backends.size();
+            this.parallelism = parallelism;
+            this.spec = new ModelSpec(
+                    new TensorSpec("images", new int[]{1, inputSize, inputSize, 3}, TensorSpec.Layout.NHWC,
+                            TensorSpec.DataType.UINT8),
+                    Collections.singletonList(new TensorSpec("output", new int[]{1, outputBytes},
+                            TensorSpec.Layout.FLAT, TensorSpec.DataType.INT8)));
+            backends.add(this);
+        }
+
+        // Holds the runs that start from now on; earlier ones no longer count as entered
+        synchronized void block() {
+            blocked = true;
+            entered.drainPermits();
+        }
+
+        synchronized void unblock() {
+            blocked = false;
+            notifyAll();
+        }
+
+        boolean awaitEntered() throws InterruptedException {
+            return entered.tryAcquire(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ModelSpec getModelSpec() {
+            return spec;
+        }
+
+        @Override
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        @Override
+        public boolean infer(byte[] input, YoloRawOutput outputs) throws InterruptedException {
+            entered.release();
+            synchronized (this) {
+                while (blocked) {
+                    wait();
+                }
+            }
+            if (latencyMillis > 0) Thread.sleep(latencyMillis);
+            outputs.mGrid0Out[0] = input[0];
+            return true;
+        }
+
+        @Override
+        public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+            ArrayList<DetectedObject> detections = new ArrayList<>();
+            detections.add(new DetectedObject(null, 1, marker));
+            return detections;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The default methods a CPU backend inherits from {@link InferenceBackend}.
+ */
+public class InferenceBackendTest {
+
+    @Test
+    public void writersFillAnRgbInputOfTheModelSize() throws Exception {
+        EchoBackend backend = new EchoBackend();
+        YoloRawOutput outputs = backend.newRawOutput();
+        assertTrue(backend.infer(input -> {
+            assertEquals(0, input.position());
+            assertEquals(8 * 4 * 3, input.remaining());
+            input.put((byte) 42);
+            return true;
+        }, outputs));
+        assertEquals(8 * 4 * 3, backend.inputs.get(0).length);
+        assertEquals(42, outputs.mGrid0Out[0]);
+    }
+
+    @Test
+    public void skippedWritersRunNothing() throws Exception {
+        EchoBackend backend = new EchoBackend();
+        assertFalse(backend.infer(input -> false, backend.newRawOutput()));
+        assertFalse(backend.inferInPlace(input -> false, backend.newRawOutput()));
+        assertTrue(backend.inputs.isEmpty());
+    }
+
+    @Test
+    public void inPlaceRunsCopyByDefault() throws Exception {
+        EchoBackend backend = new EchoBackend();
+        YoloRawOutput outputs = backend.newRawOutput();
+        assertTrue(backend.inferInPlace(input -> {
+            input.put((byte) 7);
+            return true;
+        }, outputs));
+        assertFalse(outputs.isZeroCopy());
+        assertEquals(7, outputs.mGrid0Out[0]);
+        // Nothing is held, so releasing is harmless
+        outputs.release();
+        assertEquals(7, outputs.buffer(0).get(0));
+    }
+
+    @Test
+    public void batchesRunEveryInputAndReportAnyFailure() throws Exception {
+        EchoBackend backend = new EchoBackend();
+        byte[][] inputs = {{1}, {EchoBackend.FAIL}, {3}, {4}};
+        YoloRawOutput[] outputs = new YoloRawOutput[inputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = backend.newRawOutput();
+        }
+        assertFalse(backend.inferBatch(inputs, outputs, 3));
+        assertEquals("Inputs after a failure still run", 3, backend.inputs.size());
+        assertEquals(3, outputs[2].mGrid0Out[0]);
+        assertEquals("Only the first count inputs run", 0, outputs[3].mGrid0Out[0]);
+        assertEquals(1, backend.getBatchSize());
+    }
+
+    // Copies the first input byte to the first output byte; fails on FAIL
+    private static final class EchoBackend implements InferenceBackend {
+        static final byte FAIL = -1;
+
+        private final ModelSpec spec = new ModelSpec(
+                new TensorSpec("images", new int[]{1, 4, 8, 3}, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8),
+                Collections.singletonList(new TensorSpec("output", new int[]{1, 2, 6},
+                        TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32)));
+        final List<byte[]> inputs = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "echo";
+        }
+
+        @Override
+        public ModelSpec getModelSpec() {
+            return spec;
+        }
+
+        @Override
+        public int getParallelism() {
+            return 1;
+        }
+
+        @Override
+        public boolean infer(byte[] input, YoloRawOutput outputs) {
+            inputs.add(input);
+            if (input[0] == FAIL) return false;
+            ByteBuffer.wrap(outputs.mGrid0Out).put(input[0]);
+            return true;
+        }
+
+        @Override
+        public ArrayList<DetectedObject> decode(YoloRawOutput outputs) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.nms.NmsEngine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ModelDescriptorTest {
+
+    @Test
+    public void emptyFileKeepsTheBundledModelsDefaults() throws IOException {
+        ModelDescriptor descriptor = load("");
+        assertEquals(ModelDescriptor.Head.YOLOV5, descriptor.getHead());
+        assertEquals(0, descriptor.getClasses());
+        assertEquals(0, descriptor.getStrides().length);
+        assertEquals(3, descriptor.getAnchorGroups());
+        assertArrayEquals(new float[]{10, 13, 16, 30, 33, 23}, descriptor.getAnchors(0), 0f);
+        assertArrayEquals(new float[]{116, 90, 156, 198, 373, 326}, descriptor.getAnchors(2), 0f);
+        assertEquals(16, descriptor.getRegMax());
+        assertEquals(ModelDescriptor.Scores.AUTO, descriptor.getScores());
+        assertEquals(0.2f, descriptor.getBoxThreshold(), 0f);
+        assertEquals(0.6f, descriptor.getNmsThreshold(), 0f);
+        assertEquals(NmsEngine.Method.GREEDY, descriptor.getNmsMethod());
+        assertFalse(descriptor.isQuantizedOutputs());
+        assertEquals(ModelDescriptor.DEFAULT.toString(), descriptor.toString());
+    }
+
+    @Test
+    public void readsEveryKey() throws IOException {
+        ModelDescriptor descriptor = load("# a YOLOv11 export\n"
+                + "head = yolov11\n"
+                + "classes=3\n"
+                + "strides=8, 16,32\n"
+                + "reg_max=8\n"
+                + "scores=Probabilities\n"
+                + "box_threshold=0.35\n"
+                + "nms_threshold=0.45\n"
+                + "nms=soft_gaussian\n"
+                + "soft_nms_sigma=0.3\n"
+                + "quantized_outputs=true\n");
+        assertEquals("yolov11 is decoded as yolov8", ModelDescriptor.Head.YOLOV8, descriptor.getHead());
+        assertEquals(3, descriptor.getClasses());
+        assertArrayEquals(new int[]{8, 16, 32}, descriptor.getStrides());
+        assertEquals(8, descriptor.getRegMax());
+        assertEquals(ModelDescriptor.Scores.PROBABILITIES, descriptor.getScores());
+        assertEquals(0.35f, descriptor.getBoxThreshold(), 0f);
+        assertEquals(0.45f, descriptor.getNmsThreshold(), 0f);
+        assertEquals(NmsEngine.Method.SOFT_GAUSSIAN, descriptor.getNmsMethod());
+        assertEquals(0.3f, descriptor.getSoftNmsSigma(), 0f);
+        assertTrue(descriptor.isQuantizedOutputs());
+    }
+
+    @Test
+    public void readsAnchorGroupsSeparatedBySemicolons() throws IOException {
+        ModelDescriptor descriptor = load("anchors=4,5, 8,10 ; 20,24\n");
+        assertEquals(2, descriptor.getAnchorGroups());
+        assertArrayEquals(new float[]{4, 5, 8, 10}, descriptor.getAnchors(0), 0f);
+        assertArrayEquals(new float[]{20, 24}, descriptor.getAnchors(1), 0f);
+    }
+
+    @Test
+    public void gettersHandOutCopies() throws IOException {
+        ModelDescriptor descriptor = load("strides=8,16\n");
+        descriptor.getStrides()[0] = 99;
+        descriptor.getAnchors(0)[0] = 99;
+        assertEquals(8, descriptor.getStrides()[0]);
+        assertEquals(10, descriptor.getAnchors(0)[0], 0f);
+    }
+
+    @Test
+    public void unknownHeadIsAnIoException() {
+        assertInvalid("head=yolov3\n");
+    }
+
+    @Test
+    public void oddAnchorCountIsAnIoException() {
+        assertInvalid("anchors=10,13,16\n");
+    }
+
+    @Test
+    public void malformedNumbersAreIoExceptions() {
+        assertInvalid("classes=eighty\n");
+        assertInvalid("strides=8,,32\n");
+        assertInvalid("box_threshold=high\n");
+    }
+
+    @Test
+    public void outOfRangeValuesAreIoExceptions() {
+        assertInvalid("reg_max=0\n");
+        assertInvalid("soft_nms_sigma=-1\n");
+        assertInvalid("nms=fast\n");
+        assertInvalid("scores=softmax\n");
+    }
+
+    private static ModelDescriptor load(String properties) throws IOException {
+        return ModelDescriptor.load(new ByteArrayInputStream(properties.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static void assertInvalid(String properties) {
+        try {
+            load(properties);
+            fail("Accepted " + properties.trim());
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Invalid model descriptor"));
+        }
+    }
+}
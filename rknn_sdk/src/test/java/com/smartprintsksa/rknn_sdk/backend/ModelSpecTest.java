@@ -0,0 +1,114 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ModelSpecTest {
+    private static final TensorSpec NHWC_INPUT = new TensorSpec("images", new int[]{1, 384, 640, 3},
+            TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8);
+
+    @Test
+    public void nhwcAndNchwTensorsReadTheirImageDimensions() {
+        TensorSpec nchw = new TensorSpec("p3", new int[]{1, 255, 48, 80}, TensorSpec.Layout.NCHW,
+                TensorSpec.DataType.INT8, 0.0039f, -128);
+        assertEquals(80, nchw.getWidth());
+        assertEquals(48, nchw.getHeight());
+        assertEquals(255, nchw.getChannels());
+        assertEquals(640, NHWC_INPUT.getWidth());
+        assertEquals(384, NHWC_INPUT.getHeight());
+        assertEquals(3, NHWC_INPUT.getChannels());
+        assertEquals(4, nchw.getRank());
+    }
+
+    @Test
+    public void byteSizesFollowTheElementType() {
+        int[] dims = {1, 255, 20, 20};
+        assertEquals(255 * 20 * 20, new TensorSpec("p5", dims, TensorSpec.Layout.NCHW, TensorSpec.DataType.INT8).getByteSize());
+        assertEquals(255 * 20 * 20 * 4L, new TensorSpec("p5", dims, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32).getByteSize());
+        assertEquals(255 * 20 * 20, new TensorSpec("p5", dims, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32).getElementCount());
+    }
+
+    @Test
+    public void onlyIntegerTensorsAreQuantized() {
+        assertTrue(NHWC_INPUT.isQuantized());
+        TensorSpec floats = new TensorSpec("output", new int[]{1, 25200, 85}, TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32);
+        assertFalse(floats.isQuantized());
+        assertEquals(1f, floats.getScale(), 0f);
+        assertEquals(0, floats.getZeroPoint());
+        assertEquals("output [1, 25200, 85] FLAT FLOAT32", floats.toString());
+        assertEquals("p3 [1, 3] FLAT INT8 scale=0.500000 zp=-3",
+                new TensorSpec("p3", new int[]{1, 3}, TensorSpec.Layout.FLAT, TensorSpec.DataType.INT8, 0.5f, -3).toString());
+    }
+
+    @Test
+    public void dimsAreCopied() {
+        int[] dims = {1, 3, 4};
+        TensorSpec spec = new TensorSpec("output", dims, TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32);
+        dims[1] = 99;
+        spec.getDims()[2] = 99;
+        assertArrayEquals(new int[]{1, 3, 4}, spec.getDims());
+    }
+
+    @Test
+    public void inputSizesComeFromTheInputTensor() {
+        ModelSpec spec = new ModelSpec(NHWC_INPUT, grids(3));
+        assertEquals(640, spec.getInputWidth());
+        assertEquals(384, spec.getInputHeight());
+        assertEquals(640 * 384 * 4, spec.getInputByteSize());
+        assertEquals(640 * 384 * 3, spec.getRgbInputByteSize());
+    }
+
+    @Test
+    public void rawOutputsAreSizedPerOutput() {
+        // A one-class model at 320 needs a small fraction of the fixed 80-class 640 buffers
+        TensorSpec input = new TensorSpec("images", new int[]{1, 320, 320, 3}, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8);
+        List<TensorSpec> outputs = Arrays.asList(
+                new TensorSpec("p3", new int[]{1, 18, 40, 40}, TensorSpec.Layout.NCHW, TensorSpec.DataType.INT8),
+                new TensorSpec("p4", new int[]{1, 18, 20, 20}, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32));
+        YoloRawOutput raw = new ModelSpec(input, outputs).newRawOutput();
+        assertEquals(18 * 40 * 40, raw.mGrid0Out.length);
+        assertEquals(18 * 20 * 20 * 4, raw.mGrid1Out.length);
+        assertNull(raw.mGrid2Out);
+    }
+
+    @Test
+    public void outputsCannotBeChanged() {
+        List<TensorSpec> outputs = grids(2);
+        ModelSpec spec = new ModelSpec(NHWC_INPUT, outputs);
+        outputs.set(0, NHWC_INPUT);
+        assertEquals("p0", spec.getOutputs().get(0).getName());
+        try {
+            spec.getOutputs().clear();
+            fail("Outputs are read-only");
+        } catch (UnsupportedOperationException expected) {
+            assertEquals(2, spec.getOutputs().size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsModelsWithoutOutputs() {
+        new ModelSpec(NHWC_INPUT, Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreOutputsThanTheRawBuffersHold() {
+        new ModelSpec(NHWC_INPUT, grids(ModelSpec.MAX_OUTPUTS + 1));
+    }
+
+    private static List<TensorSpec> grids(int count) {
+        TensorSpec[] grids = new TensorSpec[count];
+        for (int i = 0; i < count; i++) {
+            int size = 48 >> i;
+            grids[i] = new TensorSpec("p" + i, new int[]{1, 255, size, size}, TensorSpec.Layout.NCHW,
+                    TensorSpec.DataType.INT8);
+        }
+        return Arrays.asList(grids);
+    }
+}
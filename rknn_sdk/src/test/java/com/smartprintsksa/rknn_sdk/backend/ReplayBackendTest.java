@@ -0,0 +1,167 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.record.RawOutputReader;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecord;
+import com.smartprintsksa.rknn_sdk.record.RawOutputRecorder;
+import com.smartprintsksa.rknn_sdk.structs.DetectedObject;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records raw outputs with {@link RawOutputRecorder} and replays them through {@link ReplayBackend},
+ * which must hand back the same bytes and metadata and decode to the same detections.
+ */
+public class ReplayBackendTest {
+    private static final int RECORDS = 5;
+
+    private final ModelSpec spec = new ModelSpec(
+            new TensorSpec("images", new int[]{1, 64, 64, 3}, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8),
+            Arrays.asList(grid("p3", 8), grid("p4", 4), grid("p5", 2)));
+    private final ModelDescriptor descriptor = ModelDescriptor.builder().build();
+    private File file;
+
+    private static TensorSpec grid(String name, int size) {
+        // Three anchors of (x, y, w, h, objectness, two classes)
+        return new TensorSpec(name, new int[]{1, 21, size, size}, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("replay", ".rkro");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void replayReturnsRecordedOutputsAndDetections() throws Exception {
+        Random random = new Random(17);
+        List<YoloRawOutput> recorded = new ArrayList<>();
+        try (RawOutputRecorder recorder = new RawOutputRecorder(file, "rknn", spec)) {
+            for (int i = 0; i < RECORDS; i++) {
+                YoloRawOutput outputs = randomOutputs(random);
+                recorder.write(new RawOutputRecord(i % 2, 7, 100 + i, 1_000_000L * i, 1280, 720), outputs);
+                recorded.add(outputs);
+            }
+            assertEquals(RECORDS, recorder.getRecordCount());
+        }
+
+        YoloDecoder reference = new YoloDecoder(spec, descriptor, false);
+        RawOutputReader reader = new RawOutputReader(file);
+        assertEquals("rknn", reader.getBackendName());
+        assertEquals(spec.toString(), reader.getModelSpec().toString());
+        assertEquals(RECORDS, reader.getRecordCount());
+
+        ReplayBackend replay = new ReplayBackend(reader, descriptor, false);
+        try {
+            YoloRawOutput outputs = replay.newRawOutput();
+            int detections = 0;
+            for (int i = 0; i < RECORDS; i++) {
+                RawOutputRecord record = replay.nextRecord(outputs);
+                assertNotNull(record);
+                assertEquals(i % 2, record.getStreamId());
+                assertEquals(7, record.getSourceId());
+                assertEquals(100 + i, record.getSequence());
+                assertEquals(1_000_000L * i, record.getCaptureNanos());
+                assertEquals(1280, record.getImageWidth());
+                assertEquals(720, record.getImageHeight());
+                for (int o = 0; o < spec.getOutputs().size(); o++) {
+                    assertArrayEquals("record " + i + " output " + o, recorded.get(i).get(o), outputs.get(o));
+                }
+
+                List<DetectedObject> expected = reference.decode(recorded.get(i));
+                List<DetectedObject> actual = replay.decode(outputs);
+                assertSameDetections(expected, actual);
+                detections += actual.size();
+            }
+            assertTrue("The scenes should produce detections", detections > 0);
+            assertNull(replay.nextRecord(outputs));
+            assertFalse(replay.infer(new byte[0], outputs));
+
+            replay.rewind();
+            assertEquals(100, replay.nextRecord(outputs).getSequence());
+        } finally {
+            replay.close();
+        }
+    }
+
+    @Test
+    public void loopingReplayStartsOver() throws Exception {
+        Random random = new Random(3);
+        try (RawOutputRecorder recorder = new RawOutputRecorder(file, "rknn", spec)) {
+            for (int i = 0; i < 2; i++) {
+                recorder.write(new RawOutputRecord(0, 0, i, 0, 64, 64), randomOutputs(random));
+            }
+        }
+        ReplayBackend replay = new ReplayBackend(new RawOutputReader(file), descriptor, true);
+        try {
+            YoloRawOutput outputs = replay.newRawOutput();
+            long[] sequences = new long[5];
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = replay.nextRecord(outputs).getSequence();
+            }
+            assertArrayEquals(new long[]{0, 1, 0, 1, 0}, sequences);
+        } finally {
+            replay.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recorderRejectsOutputsOfAnotherModel() throws Exception {
+        try (RawOutputRecorder recorder = new RawOutputRecorder(file, "rknn", spec)) {
+            YoloRawOutput outputs = spec.newRawOutput();
+            outputs.mGrid1Out = new byte[4];
+            recorder.write(new RawOutputRecord(0, 0, 0, 0, 64, 64), outputs);
+        }
+    }
+
+    // Mostly background, with a few confident cells so every record has detections to compare
+    private YoloRawOutput randomOutputs(Random random) {
+        YoloRawOutput outputs = spec.newRawOutput();
+        for (int o = 0; o < spec.getOutputs().size(); o++) {
+            TensorSpec tensor = spec.getOutputs().get(o);
+            int positions = tensor.getWidth() * tensor.getHeight();
+            ByteBuffer buffer = ByteBuffer.wrap(outputs.get(o)).order(ByteOrder.nativeOrder());
+            for (int c = 0; c < tensor.getChannels(); c++) {
+                boolean objectness = c % 7 == 4;
+                for (int p = 0; p < positions; p++) {
+                    float value = objectness
+                            ? (random.nextInt(8) == 0 ? 4 : -6)
+                            : (float) random.nextGaussian();
+                    buffer.putFloat((c * positions + p) * 4, value);
+                }
+            }
+        }
+        return outputs;
+    }
+
+    private static void assertSameDetections(List<DetectedObject> expected, List<DetectedObject> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            DetectedObject e = expected.get(i);
+            DetectedObject a = actual.get(i);
+            assertEquals(e.getClassIndex(), a.getClassIndex());
+            assertEquals(e.getBoundingBoxConfidence(), a.getBoundingBoxConfidence(), 0f);
+            assertEquals(e.getBoundingBox().left, a.getBoundingBox().left);
+            assertEquals(e.getBoundingBox().top, a.getBoundingBox().top);
+            assertEquals(e.getBoundingBox().right, a.getBoundingBox().right);
+            assertEquals(e.getBoundingBox().bottom, a.getBoundingBox().bottom);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * How {@link TfLiteInterpreterPool#putChannel} writes a pixel into float, uint8 and int8 model inputs.
+ */
+public class TfLiteInterpreterPoolTest {
+    private static final int[] DIMS = {1, 2, 2, 3};
+
+    @Test
+    public void floatInputsTakeTheScaledValue() {
+        TensorSpec spec = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.FLOAT32);
+        ByteBuffer dst = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        TfLiteInterpreterPool.putChannel(dst, spec, 255, 1 / 255f);
+        TfLiteInterpreterPool.putChannel(dst, spec, 51, 1 / 255f);
+        assertEquals(1f, dst.getFloat(0), 1e-6f);
+        assertEquals(0.2f, dst.getFloat(4), 1e-6f);
+    }
+
+    @Test
+    public void uint8InputsQuantizeWithTheirParameters() {
+        // The common [0, 1] input of an int8 export quantized as uint8: one step per pixel level
+        TensorSpec spec = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8, 1 / 255f, 0);
+        for (int v = 0; v < 256; v++) {
+            assertEquals(v, put(spec, v, 1 / 255f) & 0xFF);
+        }
+    }
+
+    @Test
+    public void int8InputsQuantizeWithTheirZeroPoint() {
+        TensorSpec spec = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.INT8, 1 / 255f, -128);
+        assertEquals(-128, put(spec, 0, 1 / 255f));
+        assertEquals(0, put(spec, 128, 1 / 255f));
+        assertEquals(127, put(spec, 255, 1 / 255f));
+    }
+
+    @Test
+    public void quantizedValuesAreClamped() {
+        // A coarser scale than the pixel range needs, and a zero point pushing values off both ends
+        TensorSpec int8 = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.INT8, 0.5f, 100);
+        assertEquals(127, put(int8, 255, 1f));
+        TensorSpec uint8 = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8, 2f, -50);
+        assertEquals(0, put(uint8, 10, 1f) & 0xFF);
+        assertEquals(78, put(uint8, 255, 1f) & 0xFF);
+    }
+
+    @Test
+    public void quantizedInputsWithoutParametersTakeTheRawByte() {
+        TensorSpec spec = new TensorSpec("images", DIMS, TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8, 0f, 0);
+        assertEquals(200, put(spec, 200, 1 / 255f) & 0xFF);
+    }
+
+    private static byte put(TensorSpec spec, int v, float valueScale) {
+        ByteBuffer dst = ByteBuffer.allocate(1);
+        TfLiteInterpreterPool.putChannel(dst, spec, v, valueScale);
+        assertEquals(1, dst.position());
+        return dst.get(0);
+    }
+}
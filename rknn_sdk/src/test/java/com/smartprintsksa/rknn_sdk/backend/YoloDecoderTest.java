@@ -0,0 +1,410 @@
+package com.smartprintsksa.rknn_sdk.backend;
+
+import com.smartprintsksa.rknn_sdk.nms.NmsEngine;
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes hand-built outputs of each head and layout {@link YoloDecoder} supports and checks the
+ * candidates it finds, before NMS, against boxes worked out by hand.
+ */
+public class YoloDecoderTest {
+    private static final int FIELDS = NmsEngine.FIELDS;
+    private static final float BACKGROUND = -10;
+
+    @Test
+    public void yolov5GridsScaleAnchorsPerCell() {
+        checkYolov5Cell(TensorSpec.Layout.NCHW);
+    }
+
+    @Test
+    public void yolov5GridsReadNhwcLikeNchw() {
+        checkYolov5Cell(TensorSpec.Layout.NHWC);
+    }
+
+    @Test
+    public void finestGridTakesTheFirstAnchorGroup() {
+        // Listed coarse, fine, middle; strides 32, 8 and 16 on a 32x32 input
+        ModelSpec spec = spec(32, 32, v5Grid("p5", 1), v5Grid("p3", 4), v5Grid("p4", 2));
+        ModelDescriptor descriptor = ModelDescriptor.builder()
+                .anchors(new float[][]{{1, 1}, {2, 2}, {3, 3}})
+                .build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        for (int o = 0; o < 3; o++) {
+            fill(outputs, spec, o, BACKGROUND);
+            // Cell 0 of one anchor with one class: x, y, w, h at their midpoint, then objectness and class
+            for (int c = 0; c < 4; c++) {
+                set(outputs, spec, o, c, 0, 0);
+            }
+            set(outputs, spec, o, 4, 0, 5);
+            set(outputs, spec, o, 5, 0, 5);
+        }
+        float[] candidates = new YoloDecoder(spec, descriptor, false).candidates(outputs);
+
+        assertEquals(3, candidates.length / FIELDS);
+        // Centered half a cell in, as wide as the anchor
+        assertBox(candidates, 0, 16 - 1.5f, 16 - 1.5f, 16 + 1.5f, 16 + 1.5f);
+        assertBox(candidates, 1, 4 - 0.5f, 4 - 0.5f, 4 + 0.5f, 4 + 0.5f);
+        assertBox(candidates, 2, 8 - 1, 8 - 1, 8 + 1, 8 + 1);
+    }
+
+    @Test
+    public void yolov8GridsDecodeDflBoxSides() {
+        // 64x64 input, a 4x4 grid (stride 16), four bins per side and three classes
+        ModelSpec spec = spec(64, 64, new TensorSpec("p4", new int[]{1, 4 * 4 + 3, 4, 4},
+                TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32));
+        ModelDescriptor descriptor = ModelDescriptor.builder()
+                .head(ModelDescriptor.Head.YOLOV8)
+                .regMax(4)
+                .build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        fill(outputs, spec, 0, BACKGROUND);
+        int cell = 4 + 1;
+        // Left side one cell from the center, top 1.5 (split between bins 1 and 2), right and bottom two
+        set(outputs, spec, 0, 1, cell, 30);
+        set(outputs, spec, 0, 4 + 1, cell, 30);
+        set(outputs, spec, 0, 4 + 2, cell, 30);
+        set(outputs, spec, 0, 8 + 2, cell, 30);
+        set(outputs, spec, 0, 12 + 2, cell, 30);
+        set(outputs, spec, 0, 16 + 2, cell, 1.5f);
+        float[] candidates = new YoloDecoder(spec, descriptor, false).candidates(outputs);
+
+        assertEquals(1, candidates.length / FIELDS);
+        // Cell (1, 1) is centered at (1.5, 1.5) cells
+        assertBox(candidates, 0, (1.5f - 1) * 16, 0, (1.5f + 2) * 16, (1.5f + 2) * 16);
+        assertEquals(YoloDecoder.sigmoid(1.5f), candidates[4], 1e-6f);
+        assertEquals(2, (int) candidates[5]);
+    }
+
+    @Test
+    public void flatYolov5RowsHoldPixelBoxesAndProbabilities() {
+        ModelSpec spec = spec(64, 64, new TensorSpec("output", new int[]{1, 3, 5 + 2},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        YoloRawOutput outputs = spec.newRawOutput();
+        putFloats(outputs, 0,
+                32, 32, 20, 10, 0.9f, 0.2f, 0.8f,
+                // Objectness under the box threshold
+                32, 32, 20, 10, 0.1f, 0.9f, 0.9f,
+                // Objectness times class score under it
+                32, 32, 20, 10, 0.5f, 0.3f, 0.1f);
+        float[] candidates = new YoloDecoder(spec, ModelDescriptor.DEFAULT, false).candidates(outputs);
+
+        assertEquals(1, candidates.length / FIELDS);
+        assertBox(candidates, 0, 22, 27, 42, 37);
+        assertEquals(0.9f * 0.8f, candidates[4], 1e-6f);
+        assertEquals(1, (int) candidates[5]);
+    }
+
+    @Test
+    public void flatYolov8OutputsHoldFieldsFirst() {
+        // [1, 4 + 2 classes, 8 boxes]
+        ModelSpec spec = spec(64, 64, new TensorSpec("output", new int[]{1, 6, 8},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        ModelDescriptor descriptor = ModelDescriptor.builder().head(ModelDescriptor.Head.YOLOV8).build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        float[] box = {16, 20, 8, 12, 0.1f, 0.7f};
+        for (int field = 0; field < box.length; field++) {
+            putFloats(outputs, field * 8 + 3, box[field]);
+        }
+        float[] candidates = new YoloDecoder(spec, descriptor, false).candidates(outputs);
+
+        assertEquals(1, candidates.length / FIELDS);
+        assertBox(candidates, 0, 12, 14, 20, 26);
+        assertEquals(0.7f, candidates[4], 1e-6f);
+        assertEquals(1, (int) candidates[5]);
+    }
+
+    @Test
+    public void normalizedFlatBoxesScaleToTheInput() {
+        // TFLite exports give (cx, cy, w, h) as fractions of a possibly non-square input
+        ModelSpec spec = spec(64, 32, new TensorSpec("output", new int[]{1, 6, 8},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        ModelDescriptor descriptor = ModelDescriptor.builder().head(ModelDescriptor.Head.YOLOV8).build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        float[] box = {0.5f, 0.5f, 0.25f, 0.5f, 0.6f, 0.1f};
+        for (int field = 0; field < box.length; field++) {
+            putFloats(outputs, field * 8 + 5, box[field]);
+        }
+
+        float[] candidates = new YoloDecoder(spec, descriptor, true).candidates(outputs);
+        assertEquals(1, candidates.length / FIELDS);
+        assertBox(candidates, 0, 24, 8, 40, 24);
+        assertEquals(0.6f, candidates[4], 1e-6f);
+        assertEquals(0, (int) candidates[5]);
+
+        // The same output read as pixels is a box under a pixel wide
+        float[] pixels = new YoloDecoder(spec, descriptor, false).candidates(outputs);
+        assertBox(pixels, 0, 0.5f - 0.125f, 0.25f, 0.5f + 0.125f, 0.75f);
+    }
+
+    @Test
+    public void quantizedNormalizedFlatBoxesMatchTheFloatPath() {
+        // An int8 TFLite YOLOv5 export: rows of (cx, cy, w, h, objectness, classes) in [0, 1]
+        int[] dims = {1, 50, 5 + 3};
+        float scale = 1 / 255f;
+        int zeroPoint = -128;
+        ModelSpec quantized = spec(96, 64, new TensorSpec("output", dims, TensorSpec.Layout.FLAT,
+                TensorSpec.DataType.INT8, scale, zeroPoint));
+        ModelSpec dequantized = spec(96, 64, new TensorSpec("output", dims, TensorSpec.Layout.FLAT,
+                TensorSpec.DataType.FLOAT32));
+        Random random = new Random(15);
+        YoloRawOutput integers = quantized.newRawOutput();
+        YoloRawOutput floats = dequantized.newRawOutput();
+        random.nextBytes(integers.mGrid0Out);
+        for (int i = 0; i < integers.mGrid0Out.length; i++) {
+            putFloats(floats, i, (integers.mGrid0Out[i] - zeroPoint) * scale);
+        }
+
+        float[] expected = new YoloDecoder(dequantized, ModelDescriptor.DEFAULT, true).candidates(floats);
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected, new YoloDecoder(quantized, ModelDescriptor.DEFAULT, true).candidates(integers), 0f);
+    }
+
+    @Test
+    public void boxesAreClippedToTheInput() {
+        ModelSpec spec = spec(64, 64, new TensorSpec("output", new int[]{1, 1, 5 + 1},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        YoloRawOutput outputs = spec.newRawOutput();
+        putFloats(outputs, 0, 4, 60, 20, 20, 0.9f, 0.9f);
+        float[] candidates = new YoloDecoder(spec, ModelDescriptor.DEFAULT, false).candidates(outputs);
+        assertBox(candidates, 0, 0, 50, 14, 64);
+    }
+
+    @Test
+    public void decodeRunsTheDescriptorsNms() {
+        ModelSpec spec = spec(64, 64, new TensorSpec("output", new int[]{1, 3, 5 + 2},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        YoloRawOutput outputs = spec.newRawOutput();
+        putFloats(outputs, 0,
+                32, 32, 20, 20, 0.9f, 0.9f, 0,
+                // Nearly the same box, suppressed
+                33, 32, 20, 20, 0.8f, 0.9f, 0,
+                // The same box in another class, kept
+                32, 32, 20, 20, 0.7f, 0, 0.9f);
+        YoloDecoder decoder = new YoloDecoder(spec, ModelDescriptor.DEFAULT, false);
+
+        assertEquals(3, decoder.candidates(outputs).length / FIELDS);
+        assertEquals(2, decoder.decode(outputs).size());
+        assertEquals(0, decoder.decode(outputs).get(0).getClassIndex());
+        assertEquals(1, decoder.decode(outputs).get(1).getClassIndex());
+        assertEquals(2, decoder.getClasses());
+    }
+
+    @Test
+    public void zeroCopyViewsDecodeLikeArrays() {
+        ModelSpec spec = spec(16, 16, v5Grid("p3", 2));
+        ModelDescriptor descriptor = ModelDescriptor.builder().anchors(new float[][]{{6, 4}}).build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        fill(outputs, spec, 0, BACKGROUND);
+        set(outputs, spec, 0, 4, 3, 5);
+        set(outputs, spec, 0, 5, 3, 5);
+        YoloDecoder decoder = new YoloDecoder(spec, descriptor, false);
+        float[] expected = decoder.candidates(outputs);
+
+        YoloRawOutput views = new YoloRawOutput();
+        ByteBuffer memory = ByteBuffer.allocateDirect(outputs.mGrid0Out.length).order(ByteOrder.nativeOrder());
+        memory.put(outputs.mGrid0Out).clear();
+        views.setViews(new ByteBuffer[]{memory.asReadOnlyBuffer().order(ByteOrder.nativeOrder())}, null);
+        assertArrayEquals(expected, decoder.candidates(views), 0f);
+    }
+
+    @Test
+    public void quantizedYolov5GridsMatchTheFloatPath() {
+        ModelDescriptor descriptor = ModelDescriptor.builder()
+                .anchors(new float[][]{{10, 13, 16, 30, 33, 23}})
+                .build();
+        checkQuantizedAgainstFloat(descriptor, 3 * 7);
+    }
+
+    @Test
+    public void quantizedYolov8GridsMatchTheFloatPath() {
+        ModelDescriptor descriptor = ModelDescriptor.builder()
+                .head(ModelDescriptor.Head.YOLOV8)
+                .regMax(4)
+                .build();
+        checkQuantizedAgainstFloat(descriptor, 4 * 4 + 3);
+    }
+
+    @Test
+    public void quantizedThresholdKeepsTheSameObjectness() {
+        // Every objectness value of a one-cell grid, over scales and zero points on and off the threshold
+        ModelDescriptor descriptor = ModelDescriptor.builder().anchors(new float[][]{{8, 8}}).build();
+        float raw = YoloDecoder.unsigmoid(descriptor.getBoxThreshold());
+        int[] dims = {1, 6, 1, 1};
+        ModelSpec dequantized = spec(8, 8, new TensorSpec("p3", dims, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32));
+        YoloDecoder reference = new YoloDecoder(dequantized, descriptor, false);
+        YoloRawOutput floats = dequantized.newRawOutput();
+        for (float scale : new float[]{0.1f, 0.047f, -raw / 13, -raw / 7.5f}) {
+            for (int zeroPoint = -128; zeroPoint <= 127; zeroPoint += 5) {
+                ModelSpec quantized = spec(8, 8, new TensorSpec("p3", dims, TensorSpec.Layout.NCHW,
+                        TensorSpec.DataType.INT8, scale, zeroPoint));
+                YoloDecoder decoder = new YoloDecoder(quantized, descriptor, false);
+                YoloRawOutput integers = quantized.newRawOutput();
+                // A certain class, so the objectness alone decides
+                integers.mGrid0Out[5] = 127;
+                for (int q = -128; q <= 127; q++) {
+                    integers.mGrid0Out[4] = (byte) q;
+                    for (int c = 0; c < 6; c++) {
+                        putFloats(floats, c, (integers.mGrid0Out[c] - zeroPoint) * scale);
+                    }
+                    assertArrayEquals("q=" + q + " scale " + scale + " zp " + zeroPoint,
+                            reference.candidates(floats), decoder.candidates(integers), 0f);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsADescriptorWithOtherClasses() {
+        ModelSpec spec = spec(16, 16, v5Grid("p3", 2));
+        new YoloDecoder(spec, ModelDescriptor.builder().anchors(new float[][]{{1, 1}}).classes(80).build(), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnchorsThatDoNotFitTheChannels() {
+        // 6 channels are one anchor with one class, not two anchors
+        ModelSpec spec = spec(16, 16, v5Grid("p3", 2));
+        new YoloDecoder(spec, ModelDescriptor.builder().anchors(new float[][]{{1, 1, 2, 2}}).build(), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRegMaxThatDoesNotFitTheChannels() {
+        ModelSpec spec = spec(64, 64, new TensorSpec("p4", new int[]{1, 64, 4, 4},
+                TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32));
+        new YoloDecoder(spec, ModelDescriptor.builder().head(ModelDescriptor.Head.YOLOV8).build(), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGridAndFlatOutputsTogether() {
+        ModelSpec spec = spec(16, 16, v5Grid("p3", 2), new TensorSpec("output", new int[]{1, 3, 6},
+                TensorSpec.Layout.FLAT, TensorSpec.DataType.FLOAT32));
+        new YoloDecoder(spec, ModelDescriptor.builder().anchors(new float[][]{{1, 1}, {2, 2}}).build(), false);
+    }
+
+    // Two anchors, (6, 4) and (8, 8), over a 4x4 grid of a 32x32 input; stride 8
+    private static void checkYolov5Cell(TensorSpec.Layout layout) {
+        int[] dims = layout == TensorSpec.Layout.NCHW ? new int[]{1, 2 * 7, 4, 4} : new int[]{1, 4, 4, 2 * 7};
+        ModelSpec spec = spec(32, 32, new TensorSpec("p3", dims, layout, TensorSpec.DataType.FLOAT32));
+        ModelDescriptor descriptor = ModelDescriptor.builder()
+                .anchors(new float[][]{{6, 4, 8, 8}})
+                .build();
+        YoloRawOutput outputs = spec.newRawOutput();
+        fill(outputs, spec, 0, BACKGROUND);
+        // Second anchor of cell (1, 0); a sigmoid of 0.75 on x moves the center half a cell right
+        int base = 7;
+        int cell = 1;
+        set(outputs, spec, 0, base, cell, logit(0.75f));
+        set(outputs, spec, 0, base + 1, cell, 0);
+        set(outputs, spec, 0, base + 2, cell, logit(0.75f));
+        set(outputs, spec, 0, base + 3, cell, 0);
+        set(outputs, spec, 0, base + 4, cell, 3);
+        set(outputs, spec, 0, base + 5, cell, -1);
+        set(outputs, spec, 0, base + 6, cell, 2);
+        float[] candidates = new YoloDecoder(spec, descriptor, false).candidates(outputs);
+
+        assertEquals(1, candidates.length / FIELDS);
+        // cx = (0.75 * 2 - 0.5 + 1) * 8, w = (0.75 * 2)^2 * 8; cy = (0.5 * 2 - 0.5) * 8, h = 8
+        assertBox(candidates, 0, 16 - 9, 0, 16 + 9, 8);
+        assertEquals(YoloDecoder.sigmoid(3) * YoloDecoder.sigmoid(2), candidates[4], 1e-6f);
+        assertEquals(1, (int) candidates[5]);
+    }
+
+    /**
+     * Random integer outputs, decoded as they are and as the floats they dequantize to, must give
+     * the same candidates: the integer threshold may neither drop nor keep a cell the float one does not.
+     */
+    private static void checkQuantizedAgainstFloat(ModelDescriptor descriptor, int channels) {
+        Random random = new Random(19);
+        float raw = YoloDecoder.unsigmoid(descriptor.getBoxThreshold());
+        // Scales that put the threshold on a quantization step, and between steps
+        float[] scales = {0.1f, 0.047f, 0.0213f, -raw / 13, -raw / 7.5f};
+        for (TensorSpec.DataType type : new TensorSpec.DataType[]{TensorSpec.DataType.INT8, TensorSpec.DataType.UINT8}) {
+            for (float scale : scales) {
+                int zeroPoint = type == TensorSpec.DataType.UINT8 ? 100 + random.nextInt(56) : random.nextInt(41) - 20;
+                int[] dims = {1, channels, 8, 8};
+                ModelSpec quantized = spec(64, 64, new TensorSpec("p3", dims, TensorSpec.Layout.NCHW, type, scale, zeroPoint));
+                ModelSpec dequantized = spec(64, 64, new TensorSpec("p3", dims, TensorSpec.Layout.NCHW,
+                        TensorSpec.DataType.FLOAT32));
+                YoloRawOutput integers = quantized.newRawOutput();
+                YoloRawOutput floats = dequantized.newRawOutput();
+                ByteBuffer values = ByteBuffer.wrap(floats.mGrid0Out).order(ByteOrder.nativeOrder());
+                random.nextBytes(integers.mGrid0Out);
+                for (int i = 0; i < integers.mGrid0Out.length; i++) {
+                    int q = type == TensorSpec.DataType.UINT8 ? integers.mGrid0Out[i] & 0xFF : integers.mGrid0Out[i];
+                    values.putFloat(i * 4, (q - zeroPoint) * scale);
+                }
+
+                float[] expected = new YoloDecoder(dequantized, descriptor, false).candidates(floats);
+                float[] actual = new YoloDecoder(quantized, descriptor, false).candidates(integers);
+                String name = descriptor.getHead() + " " + type + " scale " + scale + " zp " + zeroPoint;
+                assertTrue(name + " finds nothing", expected.length > 0);
+                assertArrayEquals(name, expected, actual, 0f);
+            }
+        }
+    }
+
+    // One anchor with one class
+    private static TensorSpec v5Grid(String name, int size) {
+        return new TensorSpec(name, new int[]{1, 6, size, size}, TensorSpec.Layout.NCHW, TensorSpec.DataType.FLOAT32);
+    }
+
+    private static ModelSpec spec(int width, int height, TensorSpec... outputs) {
+        TensorSpec input = new TensorSpec("images", new int[]{1, height, width, 3},
+                TensorSpec.Layout.NHWC, TensorSpec.DataType.UINT8);
+        return new ModelSpec(input, Arrays.asList(outputs));
+    }
+
+    static float logit(float p) {
+        return YoloDecoder.unsigmoid(p);
+    }
+
+    static void fill(YoloRawOutput outputs, ModelSpec spec, int output, float value) {
+        TensorSpec tensor = spec.getOutputs().get(output);
+        for (int c = 0; c < tensor.getChannels(); c++) {
+            for (int p = 0; p < tensor.getWidth() * tensor.getHeight(); p++) {
+                set(outputs, spec, output, c, p, value);
+            }
+        }
+    }
+
+    // Writes channel c of grid cell p (row-major), quantizing for integer tensors
+    static void set(YoloRawOutput outputs, ModelSpec spec, int output, int channel, int position, float value) {
+        TensorSpec tensor = spec.getOutputs().get(output);
+        int positions = tensor.getWidth() * tensor.getHeight();
+        int index = tensor.getLayout() == TensorSpec.Layout.NCHW
+                ? channel * positions + position : position * tensor.getChannels() + channel;
+        ByteBuffer buffer = ByteBuffer.wrap(outputs.get(output)).order(ByteOrder.nativeOrder());
+        if (tensor.isQuantized()) {
+            buffer.put(index, (byte) quantize(tensor, value));
+        } else {
+            buffer.putFloat(index * 4, value);
+        }
+    }
+
+    static int quantize(TensorSpec tensor, float value) {
+        int q = Math.round(value / tensor.getScale()) + tensor.getZeroPoint();
+        return tensor.getType() == TensorSpec.DataType.UINT8
+                ? Math.max(0, Math.min(255, q)) : Math.max(-128, Math.min(127, q));
+    }
+
+    // Float elements of output 0 from element index {@code at}
+    static void putFloats(YoloRawOutput outputs, int at, float... values) {
+        ByteBuffer buffer = ByteBuffer.wrap(outputs.mGrid0Out).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < values.length; i++) {
+            buffer.putFloat((at + i) * 4, values[i]);
+        }
+    }
+
+    static void assertBox(float[] candidates, int index, float x1, float y1, float x2, float y2) {
+        float[] box = Arrays.copyOfRange(candidates, index * FIELDS, index * FIELDS + 4);
+        assertArrayEquals("candidate " + index, new float[]{x1, y1, x2, y2}, box, 1e-4f);
+    }
+}
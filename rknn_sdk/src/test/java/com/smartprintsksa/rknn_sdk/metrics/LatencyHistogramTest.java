@@ -0,0 +1,167 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bucketing and percentiles of {@link LatencyHistogram}: percentiles are bucket upper bounds, within
+ * 12.5% of the true value and never above the recorded max.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void everyValueFitsItsBucketWithinTheError() {
+        for (long value = 0; value < 1 << 20; value += 1 + value / 64) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " -> " + upper, upper <= value + value / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            long first = LatencyHistogram.upperBoundOf(bucket - 1) + 1;
+            assertEquals(bucket, LatencyHistogram.bucketOf(first));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket)));
+        }
+    }
+
+    @Test
+    public void uniformLatenciesGiveTheirPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("uniform");
+        // 1..1000 us
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500.0, snapshot.getMeanNanos(), 0.0);
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+        assertWithinBucket(500_000, snapshot.getP50Nanos());
+        assertWithinBucket(900_000, snapshot.getP90Nanos());
+        assertWithinBucket(990_000, snapshot.getP99Nanos());
+        assertEquals(1_000_000, snapshot.getPercentileNanos(100));
+    }
+
+    @Test
+    public void aSlowTailShowsOnlyInTheHighPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram("tail");
+        for (int i = 0; i < 990; i++) {
+            histogram.record(2_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(80_000_000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertWithinBucket(2_000_000, snapshot.getP50Nanos());
+        assertWithinBucket(2_000_000, snapshot.getP99Nanos());
+        assertEquals(80_000_000, snapshot.getPercentileNanos(99.1));
+    }
+
+    @Test
+    public void percentilesAtBucketEdges() {
+        LatencyHistogram exact = new LatencyHistogram("exact");
+        // Values below SUB_BUCKETS * 2 have a bucket each
+        for (int value = 0; value < 16; value++) {
+            exact.record(value);
+        }
+        HistogramSnapshot small = exact.snapshot();
+        assertEquals(7, small.getP50Nanos());
+        assertEquals(0, small.getPercentileNanos(0));
+        assertEquals(14, small.getPercentileNanos(93.75));
+        assertEquals(15, small.getPercentileNanos(93.76));
+
+        LatencyHistogram shared = new LatencyHistogram("shared");
+        // 16 and 17 share a bucket, as do 18 and 19
+        shared.record(16);
+        shared.record(18);
+        HistogramSnapshot edges = shared.snapshot();
+        assertEquals("Upper bound of the first bucket", 17, edges.getP50Nanos());
+        assertEquals("Capped at the max", 18, edges.getPercentileNanos(100));
+        assertEquals("Out-of-range percentiles clamp", 18, edges.getPercentileNanos(150));
+        assertEquals(17, edges.getPercentileNanos(-5));
+    }
+
+    @Test
+    public void extremeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram("extreme");
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getPercentileNanos(50));
+        assertEquals(Long.MAX_VALUE / 2, snapshot.getPercentileNanos(100));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void anEmptyHistogramReportsZero() {
+        HistogramSnapshot snapshot = new LatencyHistogram("empty").snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99Nanos());
+        assertEquals(0.0, snapshot.getMeanNanos(), 0.0);
+    }
+
+    @Test
+    public void resetStartsANewInterval() {
+        LatencyHistogram histogram = new LatencyHistogram("interval");
+        histogram.record(1_000);
+        histogram.record(3_000);
+        HistogramSnapshot first = histogram.snapshotAndReset();
+        assertEquals(2, first.getCount());
+        assertEquals(3_000, first.getMaxNanos());
+
+        histogram.record(500);
+        HistogramSnapshot second = histogram.snapshot();
+        assertEquals(1, second.getCount());
+        assertEquals(500, second.getMaxNanos());
+        assertEquals(500.0, second.getMeanNanos(), 0.0);
+        assertEquals("Snapshots are copies", 2, first.getCount());
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("concurrent");
+        int threads = 4;
+        int perThread = 100_000;
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> recorders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread recorder = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i % 1000 + offset);
+                }
+            });
+            recorders.add(recorder);
+            recorder.start();
+        }
+        go.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        long expectedSum = 0;
+        for (int t = 0; t < threads; t++) {
+            expectedSum += (long) perThread / 1000 * (999L * 1000 / 2 + 1000L * t);
+        }
+        assertEquals(threads * perThread, snapshot.getCount());
+        assertEquals((double) expectedSum / (threads * perThread), snapshot.getMeanNanos(), 1e-9);
+        assertEquals(999 + threads - 1, snapshot.getMaxNanos());
+        assertEquals(snapshot.getMaxNanos(), snapshot.getPercentileNanos(100));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual + " within 12.5% above " + expected,
+                actual >= expected && actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,101 @@
+package com.smartprintsksa.rknn_sdk.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lookup, removal and snapshots of {@link MetricsRegistry}.
+ */
+public class MetricsRegistryTest {
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    public void lookupsByNameShareOneMetric() {
+        assertSame(registry.histogram("a"), registry.histogram("a"));
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertNotSame(registry.counter("a"), registry.counter("b"));
+        assertEquals("a", registry.histogram("a").getName());
+    }
+
+    @Test
+    public void concurrentLookupsShareOneCounter() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    registry.counter("hits").incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, registry.counter("hits").get());
+    }
+
+    @Test
+    public void removeAllDropsOnlyThePrefix() {
+        registry.counter("stream.1.received").incrementAndGet();
+        registry.histogram("stream.1.draw").record(5);
+        registry.gauge("stream.1.depth", () -> 3);
+        registry.counter("stream.10.received").incrementAndGet();
+        registry.gauge("stream.2.depth", () -> 4);
+
+        registry.removeAll("stream.1.");
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(Arrays.asList("stream.10.received"), new ArrayList<>(snapshot.getCounters().keySet()));
+        assertTrue(snapshot.getHistograms().isEmpty());
+        assertEquals(Arrays.asList("stream.2.depth"), new ArrayList<>(snapshot.getGauges().keySet()));
+        assertEquals("Starts again from zero", 0, registry.counter("stream.1.received").get());
+    }
+
+    @Test
+    public void snapshotsCopyCountersAndSampleGauges() {
+        AtomicLong depth = new AtomicLong(2);
+        registry.counter("b.frames").addAndGet(7);
+        registry.counter("a.frames").addAndGet(3);
+        registry.gauge("depth", depth::get);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        depth.set(5);
+        registry.counter("a.frames").incrementAndGet();
+        assertEquals("Sorted by name", Arrays.asList("a.frames", "b.frames"),
+                new ArrayList<>(snapshot.getCounters().keySet()));
+        assertEquals(Long.valueOf(3), snapshot.getCounters().get("a.frames"));
+        assertEquals(Long.valueOf(2), snapshot.getGauges().get("depth"));
+        assertEquals(Long.valueOf(5), registry.snapshot().getGauges().get("depth"));
+    }
+
+    @Test
+    public void resettingSnapshotsZeroOnlyHistograms() {
+        registry.histogram("latency").record(1_000);
+        registry.counter("frames").incrementAndGet();
+
+        MetricsSnapshot first = registry.snapshot(true);
+        assertEquals(1, first.getHistogram("latency").getCount());
+        MetricsSnapshot second = registry.snapshot(true);
+        assertEquals(0, second.getHistogram("latency").getCount());
+        assertEquals(Long.valueOf(1), second.getCounters().get("frames"));
+        assertEquals(Long.valueOf(1), registry.snapshot().getCounters().get("frames"));
+    }
+
+    @Test
+    public void formatSkipsEmptyHistograms() {
+        registry.histogram("idle");
+        registry.histogram("busy").record(2_000_000);
+        registry.counter("frames").incrementAndGet();
+        String summary = registry.snapshot().format();
+        assertTrue(summary, summary.contains("busy n=1"));
+        assertFalse(summary, summary.contains("idle"));
+        assertTrue(summary, summary.contains("counters: frames=1"));
+        assertFalse(summary, summary.contains("gauges"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.smartprintsksa.rknn_sdk.nms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic dense detection scenes, and the straightforward per-class greedy NMS that
+ * {@link NmsEngine}'s single batched pass must agree with.
+ */
+final class DenseScenes {
+    static final int INPUT_SIZE = 640;
+    static final float SCORE_THRESHOLD = 0.2f;
+
+    private DenseScenes() {
+    }
+
+    /**
+     * Objects scattered over a 640x640 input, each surrounded by 10-60 candidates jittered by up
+     * to 15% of its size, as a low box threshold leaves them; scores fall off with the jitter.
+     */
+    static float[] scene(Random random, int count, int classes) {
+        float[] candidates = new float[count * NmsEngine.FIELDS];
+        int i = 0;
+        while (i < count) {
+            float w = 16 + random.nextFloat() * 160;
+            float h = 16 + random.nextFloat() * 160;
+            float cx = random.nextFloat() * INPUT_SIZE;
+            float cy = random.nextFloat() * INPUT_SIZE;
+            int cls = random.nextInt(classes);
+            float peak = 0.5f + random.nextFloat() * 0.5f;
+            int cloud = Math.min(count - i, 10 + random.nextInt(51));
+            for (int c = 0; c < cloud; c++, i++) {
+                float jx = (float) random.nextGaussian() * 0.15f;
+                float jy = (float) random.nextGaussian() * 0.15f;
+                float jw = 1 + (float) random.nextGaussian() * 0.15f;
+                float jh = 1 + (float) random.nextGaussian() * 0.15f;
+                float bx = cx + jx * w;
+                float by = cy + jy * h;
+                float bw = Math.max(2, w * jw);
+                float bh = Math.max(2, h * jh);
+                int at = i * NmsEngine.FIELDS;
+                candidates[at] = clamp(bx - bw / 2);
+                candidates[at + 1] = clamp(by - bh / 2);
+                candidates[at + 2] = clamp(bx + bw / 2);
+                candidates[at + 3] = clamp(by + bh / 2);
+                float distance = (float) Math.sqrt(jx * jx + jy * jy + (jw - 1) * (jw - 1) + (jh - 1) * (jh - 1));
+                candidates[at + 4] = Math.max(SCORE_THRESHOLD, peak * (1 - distance));
+                candidates[at + 5] = cls;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Greedy NMS run separately on each class with a boxed sort and a sweep per kept box, merged
+     * by score (ties to the lower index) and cut to {@code maxDetections}.
+     *
+     * @param diou suppress on DIoU instead of IoU
+     */
+    static int[] perClassNms(float[] candidates, int count, float threshold, boolean diou, int maxDetections) {
+        int classes = 0;
+        for (int i = 0; i < count; i++) {
+            classes = Math.max(classes, (int) candidates[i * NmsEngine.FIELDS + 5] + 1);
+        }
+        Comparator<Integer> byScore = Comparator.<Integer>comparingDouble(i -> -candidates[i * NmsEngine.FIELDS + 4])
+                .thenComparingInt(i -> i);
+        List<Integer> kept = new ArrayList<>();
+        for (int cls = 0; cls < classes; cls++) {
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if ((int) candidates[i * NmsEngine.FIELDS + 5] == cls) order.add(i);
+            }
+            order.sort(byScore);
+            boolean[] removed = new boolean[order.size()];
+            for (int a = 0; a < order.size(); a++) {
+                if (removed[a]) continue;
+                int at = order.get(a) * NmsEngine.FIELDS;
+                kept.add(order.get(a));
+                for (int b = a + 1; b < order.size(); b++) {
+                    if (removed[b]) continue;
+                    int bt = order.get(b) * NmsEngine.FIELDS;
+                    float overlap = diou ? NmsEngine.diou(candidates, at, candidates, bt)
+                            : NmsEngine.iou(candidates, at, candidates, bt);
+                    if (overlap > threshold) removed[b] = true;
+                }
+            }
+        }
+        kept.sort(byScore);
+        int[] keep = new int[Math.min(maxDetections, kept.size())];
+        for (int k = 0; k < keep.length; k++) {
+            keep[k] = kept.get(k);
+        }
+        return keep;
+    }
+
+    static int[] select(NmsEngine engine, float[] candidates, int count, int maxDetections) {
+        int[] keep = new int[Math.min(maxDetections, count)];
+        return Arrays.copyOf(keep, engine.select(candidates, count, keep));
+    }
+
+    private static float clamp(float value) {
+        return value < 0 ? 0 : (value > INPUT_SIZE ? INPUT_SIZE : value);
+    }
+}
@@ -0,0 +1,80 @@
+package com.smartprintsksa.rknn_sdk.nms;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times {@link NmsEngine} on {@link DenseScenes} against the per-class greedy NMS the decoder used
+ * before. Skipped unless benchmarks are asked for:
+ * <pre>
+ * ./gradlew :rknn_sdk:testDebugUnitTest --tests '*NmsBenchmark' -Pbenchmark
+ * </pre>
+ */
+public class NmsBenchmark {
+    private static final float IOU_THRESHOLD = 0.6f;
+    private static final int MAX_DETECTIONS = 64;
+    private static final long MIN_RUN_NANOS = 200_000_000L;
+
+    // One line per scene and method: median microseconds per call and boxes kept
+    @Test
+    public void denseScenes() {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+        int[][] scenes = {
+                // candidates, classes
+                {1_000, 1}, {1_000, 80}, {5_000, 1}, {5_000, 80}, {20_000, 1}, {20_000, 80}
+        };
+        StringBuilder report = new StringBuilder();
+        for (int[] scene : scenes) {
+            int count = scene[0];
+            float[] candidates = DenseScenes.scene(new Random(count * 31L + scene[1]), count, scene[1]);
+            report.append(String.format(Locale.US, "%d candidates, %d classes%n", count, scene[1]));
+
+            time(report, "reference", () -> DenseScenes.perClassNms(candidates, count, IOU_THRESHOLD, false,
+                    MAX_DETECTIONS).length);
+            for (NmsEngine.Method method : NmsEngine.Method.values()) {
+                for (int limit : new int[]{MAX_DETECTIONS, count}) {
+                    NmsEngine engine = new NmsEngine(method, IOU_THRESHOLD, DenseScenes.SCORE_THRESHOLD, 0.5f, limit);
+                    String name = method + (limit == count ? " unbounded" : "");
+                    time(report, name, () -> {
+                        // Soft-NMS rewrites scores, so every call gets a fresh copy; GREEDY pays for it too
+                        float[] copy = candidates.clone();
+                        return engine.select(copy, count, new int[Math.min(limit, count)]);
+                    });
+                    if (method == NmsEngine.Method.GREEDY && count >= NmsEngine.BINNING_MIN_CANDIDATES) {
+                        NmsEngine linear = new NmsEngine(method, IOU_THRESHOLD, DenseScenes.SCORE_THRESHOLD, 0.5f,
+                                limit, Integer.MAX_VALUE);
+                        time(report, name + " without grid", () -> linear.select(candidates.clone(), count,
+                                new int[Math.min(limit, count)]));
+                    }
+                }
+            }
+        }
+        System.out.print(report);
+    }
+
+    private interface Case {
+        int run();
+    }
+
+    private static void time(StringBuilder report, String name, Case benchmark) {
+        // Warm up, then take the median of repeated timings
+        int kept = 0;
+        for (int i = 0; i < 20; i++) {
+            kept = benchmark.run();
+        }
+        long[] samples = new long[64];
+        int n = 0;
+        long start = System.nanoTime();
+        while (n < samples.length && (n < 5 || System.nanoTime() - start < MIN_RUN_NANOS)) {
+            long t = System.nanoTime();
+            kept = benchmark.run();
+            samples[n++] = System.nanoTime() - t;
+        }
+        Arrays.sort(samples, 0, n);
+        report.append(String.format(Locale.US, "  %-28s %10.1f us  kept %d%n", name, samples[n / 2] / 1000.0, kept));
+    }
+}
@@ -0,0 +1,154 @@
+package com.smartprintsksa.rknn_sdk.nms;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NmsEngineTest {
+    private static final int FIELDS = NmsEngine.FIELDS;
+    private static final float IOU_THRESHOLD = 0.6f;
+    private static final float SCORE_THRESHOLD = DenseScenes.SCORE_THRESHOLD;
+    private static final int MAX_DETECTIONS = 64;
+
+    @Test
+    public void greedyMatchesPerClassNmsOnDenseScenes() {
+        checkAgainstPerClassNms(NmsEngine.Method.GREEDY, false);
+    }
+
+    @Test
+    public void diouMatchesPerClassDiouNmsOnDenseScenes() {
+        checkAgainstPerClassNms(NmsEngine.Method.DIOU, true);
+    }
+
+    @Test
+    public void classesNeverSuppressEachOther() {
+        float[] candidates = {
+                10, 10, 110, 110, 0.9f, 0,
+                10, 10, 110, 110, 0.8f, 1,
+                10, 10, 110, 110, 0.7f, 0,
+                // Overlaps the first box, in a third class
+                0, 10, 100, 110, 0.6f, 2,
+        };
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.GREEDY, 0.5f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        assertArrayEquals(new int[]{0, 1, 3}, DenseScenes.select(engine, candidates, 4, MAX_DETECTIONS));
+    }
+
+    @Test
+    public void stopsAtMaxDetections() {
+        float[] candidates = DenseScenes.scene(new Random(5), 3000, 4);
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.GREEDY, IOU_THRESHOLD, SCORE_THRESHOLD, 0.5f, 10);
+        int[] kept = DenseScenes.select(engine, candidates, 3000, 100);
+        assertEquals(10, kept.length);
+        assertArrayEquals(DenseScenes.perClassNms(candidates, 3000, IOU_THRESHOLD, false, 10), kept);
+    }
+
+    @Test
+    public void diouIsIouMinusNormalizedCenterDistance() {
+        float[] a = {0, 0, 100, 100};
+        float[] b = {0, 0, 100, 60};
+        assertEquals(0.6f, NmsEngine.iou(a, 0, b, 0), 1e-6f);
+        // Centers 20 apart, enclosing box diagonal squared 100^2 + 100^2
+        assertEquals(0.6f - 400f / 20000f, NmsEngine.diou(a, 0, b, 0), 1e-6f);
+        assertEquals(0f, NmsEngine.iou(a, 0, new float[]{200, 200, 300, 300}, 0), 0f);
+    }
+
+    @Test
+    public void diouKeepsOffsetNeighboursThatIouSuppresses() {
+        float[] candidates = {
+                0, 0, 100, 100, 0.9f, 0,
+                // IoU 0.6 with the first box, DIoU 0.58
+                0, 0, 100, 60, 0.8f, 0,
+                // Same center as the first box, IoU and DIoU 0.81
+                5, 5, 95, 95, 0.7f, 0,
+        };
+        NmsEngine greedy = new NmsEngine(NmsEngine.Method.GREEDY, 0.59f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        NmsEngine diou = new NmsEngine(NmsEngine.Method.DIOU, 0.59f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        assertArrayEquals(new int[]{0}, DenseScenes.select(greedy, candidates.clone(), 3, MAX_DETECTIONS));
+        assertArrayEquals(new int[]{0, 1}, DenseScenes.select(diou, candidates.clone(), 3, MAX_DETECTIONS));
+    }
+
+    @Test
+    public void softLinearDecaysOverlapsAboveTheThreshold() {
+        float[] candidates = {
+                0, 0, 100, 100, 0.9f, 0,
+                // IoU 0.6 with the first box
+                0, 0, 100, 60, 0.8f, 0,
+                // IoU 0.25, below the threshold
+                0, 0, 50, 50, 0.7f, 0,
+                // Same box as the first, other class
+                0, 0, 100, 100, 0.5f, 1,
+        };
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.SOFT_LINEAR, 0.5f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        int[] kept = DenseScenes.select(engine, candidates, 4, MAX_DETECTIONS);
+
+        assertArrayEquals(new int[]{0, 2, 3, 1}, kept);
+        assertEquals(0.9f, candidates[4], 0f);
+        assertEquals(0.8f * (1 - 0.6f), candidates[FIELDS + 4], 1e-5f);
+        assertEquals(0.7f, candidates[2 * FIELDS + 4], 0f);
+        assertEquals(0.5f, candidates[3 * FIELDS + 4], 0f);
+    }
+
+    @Test
+    public void softGaussianDecaysEveryOverlap() {
+        float sigma = 0.5f;
+        float[] candidates = {
+                0, 0, 100, 100, 0.9f, 0,
+                0, 0, 100, 60, 0.8f, 0,
+                0, 0, 50, 50, 0.7f, 0,
+        };
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.SOFT_GAUSSIAN, 0.5f, SCORE_THRESHOLD, sigma, MAX_DETECTIONS);
+        int[] kept = DenseScenes.select(engine, candidates, 3, MAX_DETECTIONS);
+
+        // The first box decays the others (IoU 0.6 and 0.25), then the third, now ahead, the second (IoU 5/12)
+        float third = 0.7f * (float) Math.exp(-0.0625 / sigma);
+        float second = 0.8f * (float) Math.exp(-0.36 / sigma);
+        second *= (float) Math.exp(-(5.0 / 12) * (5.0 / 12) / sigma);
+        assertArrayEquals(new int[]{0, 2, 1}, kept);
+        assertEquals(second, candidates[FIELDS + 4], 1e-5f);
+        assertEquals(third, candidates[2 * FIELDS + 4], 1e-5f);
+    }
+
+    @Test
+    public void softNmsDropsBoxesDecayedBelowTheScoreThreshold() {
+        float[] candidates = {
+                0, 0, 100, 100, 0.9f, 0,
+                // IoU 0.95: decays to 0.015
+                0, 0, 100, 95, 0.3f, 0,
+                300, 300, 400, 400, 0.25f, 0,
+        };
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.SOFT_LINEAR, 0.5f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        assertArrayEquals(new int[]{0, 2}, DenseScenes.select(engine, candidates, 3, MAX_DETECTIONS));
+    }
+
+    @Test
+    public void emptyInputKeepsNothing() {
+        NmsEngine engine = new NmsEngine(NmsEngine.Method.GREEDY, IOU_THRESHOLD, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+        assertEquals(0, engine.select(new float[0], 0, new int[MAX_DETECTIONS]));
+        assertTrue(engine.run(new float[0], 0).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsThresholdsOutsideTheUnitRange() {
+        new NmsEngine(NmsEngine.Method.GREEDY, 1.5f, SCORE_THRESHOLD, 0.5f, MAX_DETECTIONS);
+    }
+
+    // Scenes on both sides of the spatial grid cut-off, with the grid forced off as well
+    private static void checkAgainstPerClassNms(NmsEngine.Method method, boolean diou) {
+        int[][] scenes = {{200, 1}, {200, 80}, {3000, 1}, {3000, 80}, {8000, 12}};
+        for (int[] scene : scenes) {
+            int count = scene[0];
+            float[] candidates = DenseScenes.scene(new Random(count * 31L + scene[1]), count, scene[1]);
+            for (int limit : new int[]{MAX_DETECTIONS, count}) {
+                int[] expected = DenseScenes.perClassNms(candidates, count, IOU_THRESHOLD, diou, limit);
+                NmsEngine binned = new NmsEngine(method, IOU_THRESHOLD, SCORE_THRESHOLD, 0.5f, limit);
+                NmsEngine linear = new NmsEngine(method, IOU_THRESHOLD, SCORE_THRESHOLD, 0.5f, limit,
+                        Integer.MAX_VALUE);
+                String name = method + " " + count + " candidates, " + scene[1] + " classes, limit " + limit;
+                assertArrayEquals(name, expected, DenseScenes.select(binned, candidates, count, limit));
+                assertArrayEquals(name + " without grid", expected, DenseScenes.select(linear, candidates, count, limit));
+            }
+        }
+    }
+}
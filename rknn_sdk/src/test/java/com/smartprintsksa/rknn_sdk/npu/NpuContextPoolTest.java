@@ -0,0 +1,444 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import com.smartprintsksa.rknn_sdk.structs.YoloRawOutput;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link NpuContextPool} with {@link FakeNpuBackend} contexts, which fail when two threads
+ * enter one context at once and echo their input so results can be matched to frames.
+ */
+public class NpuContextPoolTest {
+    // First input byte of a frame the scripted backend fails, throws on, or runs slowly
+    private static final byte FAIL = 1;
+    private static final byte THROW = 2;
+    private static final byte SLOW = 3;
+
+    private final List<ScriptedBackend> backends = new CopyOnWriteArrayList<>();
+    private NpuContextPool<Integer> pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void contextsArePinnedToTheirCores() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0), NpuCore.RK3588_CORES, null);
+        assertEquals(3, pool.size());
+        for (int i = 0; i < pool.size(); i++) {
+            assertEquals(NpuCore.RK3588_CORES[i], pool.getCoreMask(i));
+        }
+    }
+
+    @Test
+    public void framesAreSpreadOverFreeContexts() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(2000), NpuCore.RK3588_CORES, null);
+        int threads = 6;
+        int framesPerThread = 20;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(callers.submit(() -> {
+                YoloRawOutput outputs = newOutputs();
+                boolean echoed = true;
+                for (int i = 0; i < framesPerThread; i++) {
+                    byte[] input = {0, (byte) thread, (byte) i};
+                    echoed &= pool.run(input, outputs) && outputs.mGrid0Out[1] == thread && outputs.mGrid0Out[2] == i;
+                }
+                return echoed;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue("Every frame gets its own outputs back", result.get(10, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        long total = 0;
+        for (int i = 0; i < pool.size(); i++) {
+            assertTrue("Context " + i + " never ran", pool.getRunCount(i) > 0);
+            // A context entered by two threads at once fails the frame
+            assertEquals(0, pool.getFailureCount(i));
+            total += pool.getRunCount(i);
+        }
+        assertEquals(threads * framesPerThread, total);
+        assertEquals(0, pool.getBusyCount());
+    }
+
+    @Test
+    public void submittedResultsArriveInSequenceOrder() throws Exception {
+        int frames = 60;
+        List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(frames);
+        pool = new NpuContextPool<>(new ScriptedBackend(200, 3000), NpuCore.RK3588_CORES,
+                (sequence, tag, outputs, success) -> {
+                    assertTrue(success);
+                    assertEquals(sequence, (long) tag);
+                    assertEquals((byte) sequence, outputs.mGrid0Out[1]);
+                    sequences.add(sequence);
+                    done.countDown();
+                });
+        for (int i = 0; i < frames; i++) {
+            pool.submit(i, i, new byte[]{0, (byte) i}, newOutputs());
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals(i, (long) sequences.get(i));
+        }
+        assertEquals(0, pool.getPendingCount());
+    }
+
+    @Test
+    public void failuresCountAgainstTheirContext() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+        assertFalse(pool.run(new byte[]{FAIL}, outputs));
+        assertFalse("An exception is a failed frame", pool.run(new byte[]{THROW}, outputs));
+        assertTrue(pool.run(new byte[]{0}, outputs));
+
+        assertEquals(3, pool.getRunCount(0));
+        assertEquals(2, pool.getFailureCount(0));
+        assertEquals("Failed frames give their context back", 0, pool.getBusyCount());
+    }
+
+    @Test
+    public void skippedOrThrowingWritersDoNotCountAsFailures() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+
+        assertFalse(pool.run(input -> false, 3, outputs));
+        try {
+            pool.run(input -> {
+                throw new IllegalArgumentException("unreadable frame");
+            }, 3, outputs);
+            fail("The writer's exception is rethrown");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("unreadable frame", expected.getMessage());
+        }
+        assertEquals(0, pool.getRunCount(0));
+        assertEquals(0, pool.getFailureCount(0));
+        assertEquals(0, pool.getBusyCount());
+
+        assertTrue(pool.run(input -> {
+            input.put(new byte[]{0, 42, 43});
+            return true;
+        }, 3, outputs));
+        assertEquals(42, outputs.mGrid0Out[1]);
+        assertEquals(43, outputs.mGrid0Out[2]);
+        assertEquals(1, pool.getRunCount(0));
+    }
+
+    @Test
+    public void writersFillTheInputMemoryOfTheirContext() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(500, 0, 8), NpuCore.RK3588_CORES, null);
+        List<ByteBuffer> memory = new ArrayList<>();
+        for (ScriptedBackend backend : backends) {
+            memory.add(backend.getInputBuffer());
+        }
+        List<ByteBuffer> written = new CopyOnWriteArrayList<>();
+        int threads = 6;
+        int framesPerThread = 20;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(callers.submit(() -> {
+                YoloRawOutput outputs = newOutputs();
+                boolean echoed = true;
+                for (int i = 0; i < framesPerThread; i++) {
+                    int frame = i;
+                    echoed &= pool.run(input -> {
+                        assertEquals(0, input.position());
+                        assertEquals(3, input.limit());
+                        written.add(input);
+                        input.put(new byte[]{0, (byte) thread, (byte) frame});
+                        return true;
+                    }, 3, outputs) && outputs.mGrid0Out[1] == thread && outputs.mGrid0Out[2] == frame;
+                }
+                return echoed;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue("A context's memory is never shared by two frames", result.get(10, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        assertEquals(threads * framesPerThread, written.size());
+        for (ByteBuffer input : written) {
+            assertTrue("Writers only see context memory", containsSame(memory, input));
+        }
+        for (ByteBuffer own : memory) {
+            assertTrue("Every context's memory is written", containsSame(written, own));
+        }
+    }
+
+    @Test
+    public void contextsWithoutInputMemoryKeepOneBufferAcrossRuns() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+        List<ByteBuffer> written = new ArrayList<>();
+        InputWriter writer = input -> {
+            written.add(input);
+            input.put(new byte[]{0, 7});
+            return true;
+        };
+        assertTrue(pool.run(writer, 3, outputs));
+        assertTrue(pool.run(writer, 3, outputs));
+        assertTrue(written.get(0).isDirect());
+        assertSame(written.get(0), written.get(1));
+
+        // A larger input outgrows the kept buffer
+        assertTrue(pool.run(writer, 64, outputs));
+        assertEquals(64, written.get(2).limit());
+        assertEquals(7, outputs.mGrid0Out[1]);
+    }
+
+    @Test
+    public void inputMemoryTooSmallForTheModelIsNotUsed() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0, 0, 2), new int[]{NpuCore.CORE_0}, null);
+        ByteBuffer[] written = new ByteBuffer[1];
+        assertTrue(pool.run(input -> {
+            written[0] = input;
+            return true;
+        }, 3, newOutputs()));
+        assertNotSame(backends.get(0).getInputBuffer(), written[0]);
+        assertEquals(3, written[0].limit());
+    }
+
+    @Test
+    public void inPlaceOutputsHoldTheirContextUntilReleased() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0, 0, 0, 4), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+        assertTrue(pool.runInPlace(input -> {
+            input.put(new byte[]{0, 42, 43});
+            return true;
+        }, 3, outputs));
+
+        assertTrue(outputs.isZeroCopy());
+        ByteBuffer view = outputs.buffer(0);
+        assertTrue(view.isReadOnly());
+        assertSame(backends.get(0).getOutputBuffers()[0], view);
+        assertEquals(42, view.get(1));
+        assertEquals("The arrays are left alone", 0, outputs.mGrid0Out[1]);
+        assertNull("Outputs the model does not have", outputs.buffer(2));
+        assertEquals(1, pool.getBusyCount());
+
+        // Another caller waits for the context until the views are released
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<Boolean> waiting = caller.submit(() -> pool.run(new byte[]{0, 7}, newOutputs()));
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        outputs.release();
+        assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        caller.shutdown();
+
+        assertFalse(outputs.isZeroCopy());
+        assertEquals("Back to the arrays once released", 0, outputs.buffer(0).get(1));
+        assertEquals(0, pool.getBusyCount());
+    }
+
+    @Test
+    public void releasingTwiceGivesTheContextBackOnce() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0, 0, 0, 4), new int[]{NpuCore.CORE_0, NpuCore.CORE_1}, null);
+        YoloRawOutput first = newOutputs();
+        YoloRawOutput second = newOutputs();
+        assertTrue(pool.runInPlace(input -> true, 3, first));
+        assertTrue(pool.runInPlace(input -> true, 3, second));
+        assertEquals(2, pool.getBusyCount());
+
+        first.release();
+        first.release();
+        assertEquals("A second release must not free the other holder's context", 1, pool.getBusyCount());
+
+        // Running again on held outputs gives their previous context back first
+        assertTrue(pool.runInPlace(input -> true, 3, second));
+        assertEquals(1, pool.getBusyCount());
+        second.release();
+        assertEquals(0, pool.getBusyCount());
+    }
+
+    @Test
+    public void failedInPlaceRunsHoldNothing() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0, 0, 0, 4), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+        assertFalse(pool.runInPlace(input -> {
+            input.put(FAIL);
+            return true;
+        }, 3, outputs));
+        assertFalse(pool.runInPlace(input -> {
+            input.put(THROW);
+            return true;
+        }, 3, outputs));
+        assertFalse("A skipped frame holds nothing either", pool.runInPlace(input -> false, 3, outputs));
+
+        assertFalse(outputs.isZeroCopy());
+        assertEquals(0, pool.getBusyCount());
+        assertEquals(2, pool.getFailureCount(0));
+    }
+
+    @Test
+    public void contextsWithoutOutputMemoryCopyInPlaceRuns() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0), new int[]{NpuCore.CORE_0}, null);
+        YoloRawOutput outputs = newOutputs();
+        assertTrue(pool.runInPlace(input -> {
+            input.put(new byte[]{0, 42});
+            return true;
+        }, 3, outputs));
+        assertFalse(outputs.isZeroCopy());
+        assertEquals(42, outputs.mGrid0Out[1]);
+        assertEquals(0, pool.getBusyCount());
+        outputs.release();
+        assertEquals(0, pool.getBusyCount());
+    }
+
+    @Test
+    public void closeLeavesHeldOutputsValid() throws Exception {
+        pool = new NpuContextPool<>(new ScriptedBackend(0, 0, 0, 4), new int[]{NpuCore.CORE_0, NpuCore.CORE_1}, null);
+        YoloRawOutput outputs = newOutputs();
+        assertTrue(pool.runInPlace(input -> {
+            input.put(new byte[]{0, 42});
+            return true;
+        }, 3, outputs));
+        pool.close(20, TimeUnit.MILLISECONDS);
+
+        int released = 0;
+        for (ScriptedBackend backend : backends) {
+            if (backend.isReleased()) released++;
+        }
+        assertEquals("The held context is not released under its views", 1, released);
+        assertEquals(42, outputs.buffer(0).get(1));
+        outputs.release();
+    }
+
+    @Test
+    public void closeWaitsForFramesInFlight() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        pool = new NpuContextPool<>(new ScriptedBackend(0), NpuCore.RK3588_CORES,
+                (sequence, tag, outputs, success) -> delivered.countDown());
+        pool.submit(0, 0, new byte[]{SLOW}, newOutputs());
+        pool.close();
+
+        assertEquals("The frame finished before the pool was released", 0, delivered.getCount());
+        for (ScriptedBackend backend : backends) {
+            assertTrue(backend.isReleased());
+        }
+    }
+
+    @Test
+    public void closeLeavesContextsStillBusyAlone() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        pool = new NpuContextPool<>(new ScriptedBackend(0), new int[]{NpuCore.CORE_0, NpuCore.CORE_1},
+                (sequence, tag, outputs, success) -> delivered.countDown());
+        pool.submit(0, 0, new byte[]{SLOW}, newOutputs());
+        pool.close(20, TimeUnit.MILLISECONDS);
+
+        int released = 0;
+        for (ScriptedBackend backend : backends) {
+            if (backend.isReleased()) released++;
+        }
+        assertEquals("Only the idle context is released", 1, released);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        try {
+            pool.run(new byte[]{0}, newOutputs());
+            fail("A closed pool runs nothing");
+        } catch (IllegalStateException expected) {
+            // Closed before the call
+        }
+    }
+
+    private static boolean containsSame(List<ByteBuffer> buffers, ByteBuffer buffer) {
+        for (ByteBuffer candidate : buffers) {
+            if (candidate == buffer) return true;
+        }
+        return false;
+    }
+
+    private static YoloRawOutput newOutputs() {
+        YoloRawOutput outputs = new YoloRawOutput();
+        outputs.mGrid0Out = new byte[4];
+        return outputs;
+    }
+
+    // Fails, throws or stalls on frames marked in their first byte, and remembers every context
+    private final class ScriptedBackend extends FakeNpuBackend {
+        private final long latencyMicros;
+        private final long jitterMicros;
+        private final int inputBytes;
+        private final int outputBytes;
+
+        ScriptedBackend(long latencyMicros) {
+            this(latencyMicros, 0);
+        }
+
+        ScriptedBackend(long latencyMicros, long jitterMicros) {
+            this(latencyMicros, jitterMicros, 0);
+        }
+
+        ScriptedBackend(long latencyMicros, long jitterMicros, int inputBytes) {
+            this(latencyMicros, jitterMicros, inputBytes, 0);
+        }
+
+        ScriptedBackend(long latencyMicros, long jitterMicros, int inputBytes, int outputBytes) {
+            super(latencyMicros, jitterMicros, inputBytes, outputBytes);
+            this.latencyMicros = latencyMicros;
+            this.jitterMicros = jitterMicros;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            backends.add(this);
+        }
+
+        @Override
+        public boolean infer(byte[] input, YoloRawOutput outputs) {
+            switch (input[0]) {
+                case FAIL:
+                    return false;
+                case THROW:
+                    throw new IllegalStateException("runtime error");
+                case SLOW:
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                    return super.infer(input, outputs);
+                default:
+                    return super.infer(input, outputs);
+            }
+        }
+
+        @Override
+        public boolean inferInPlace(ByteBuffer input, YoloRawOutput outputs) {
+            switch (input.get(input.position())) {
+                case FAIL:
+                    return false;
+                case THROW:
+                    throw new IllegalStateException("runtime error");
+                default:
+                    return super.inferInPlace(input, outputs);
+            }
+        }
+
+        @Override
+        public NpuBackend duplicate(int coreMask) {
+            ScriptedBackend copy = new ScriptedBackend(latencyMicros, jitterMicros, inputBytes, outputBytes);
+            copy.setCoreMask(coreMask);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.smartprintsksa.rknn_sdk.npu;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReorderBufferTest {
+    private final List<Long> emitted = Collections.synchronizedList(new ArrayList<>());
+    private final ReorderBuffer<String> buffer = new ReorderBuffer<>((sequence, result) -> {
+        assertEquals("result-" + sequence, result);
+        emitted.add(sequence);
+    });
+
+    @Test
+    public void inOrderCompletionPassesStraightThrough() {
+        for (long s = 1; s <= 3; s++) {
+            buffer.register(s);
+        }
+        for (long s = 1; s <= 3; s++) {
+            buffer.complete(s, "result-" + s);
+            assertEquals(s, (long) emitted.get(emitted.size() - 1));
+        }
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getHeldBackCount());
+    }
+
+    @Test
+    public void outOfOrderCompletionIsHeldBack() {
+        for (long s = 1; s <= 3; s++) {
+            buffer.register(s);
+        }
+        buffer.complete(3, "result-3");
+        assertTrue(emitted.isEmpty());
+        assertEquals(3, buffer.size());
+
+        buffer.complete(1, "result-1");
+        assertEquals(Collections.singletonList(1L), emitted);
+
+        buffer.complete(2, "result-2");
+        assertEquals(asList(1, 2, 3), emitted);
+        assertEquals(0, buffer.size());
+        // Only sequence 3 finished while an earlier one was still running
+        assertEquals(1, buffer.getHeldBackCount());
+    }
+
+    @Test
+    public void cancelReleasesLaterResultsWithoutEmitting() {
+        for (long s = 1; s <= 3; s++) {
+            buffer.register(s);
+        }
+        buffer.complete(2, "result-2");
+        buffer.cancel(1);
+        assertEquals(Collections.singletonList(2L), emitted);
+
+        buffer.cancel(3);
+        assertEquals(Collections.singletonList(2L), emitted);
+        assertEquals(0, buffer.size());
+        assertEquals(1, buffer.getHeldBackCount());
+    }
+
+    @Test
+    public void gapsInNumberingDoNotStall() {
+        buffer.register(5);
+        buffer.register(9);
+        buffer.register(40);
+        buffer.complete(9, "result-9");
+        buffer.complete(5, "result-5");
+        buffer.complete(40, "result-40");
+        assertEquals(asList(5, 9, 40), emitted);
+    }
+
+    @Test
+    public void numberingMayRestartOnceDrained() {
+        buffer.register(10);
+        try {
+            buffer.register(3);
+            fail("Decreasing sequence accepted while 10 is pending");
+        } catch (IllegalArgumentException expected) {
+            // 10 is still pending
+        }
+        buffer.complete(10, "result-10");
+        buffer.register(3);
+        buffer.complete(3, "result-3");
+        assertEquals(asList(10, 3), emitted);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void completingAnUnknownSequenceFails() {
+        buffer.register(1);
+        buffer.complete(2, "result-2");
+    }
+
+    @Test
+    public void concurrentCompletionKeepsOrder() throws Exception {
+        int count = 2000;
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(count);
+        for (long s = 0; s < count; s++) {
+            long sequence = s;
+            buffer.register(sequence);
+            workers.execute(() -> {
+                // Every seventh frame is dropped after registration
+                if (sequence % 7 == 3) {
+                    buffer.cancel(sequence);
+                } else {
+                    buffer.complete(sequence, "result-" + sequence);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        workers.shutdown();
+
+        assertEquals(0, buffer.size());
+        List<Long> expected = new ArrayList<>();
+        for (long s = 0; s < count; s++) {
+            if (s % 7 != 3) expected.add(s);
+        }
+        assertEquals(expected, emitted);
+    }
+
+    private static List<Long> asList(long... values) {
+        List<Long> list = new ArrayList<>(values.length);
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}